@@ -1,7 +1,11 @@
 package examples;
 
 import org.jblas.DoubleMatrix;
+import ray_tracer.Matrix3;
 import ray_tracer.MatrixUtil;
+import ray_tracer.SceneGraph;
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
 import ray_tracer.background.Background;
 import ray_tracer.background.GradientBackground;
 import ray_tracer.cameras.Camera;
@@ -9,18 +13,14 @@ import ray_tracer.cameras.CartoonCamera;
 import ray_tracer.cameras.FancyCamera;
 import ray_tracer.cameras.FlatCamera;
 import ray_tracer.cameras.lenses.SimpleLens;
-import ray_tracer.geometry.Geometry;
 import ray_tracer.geometry.Sphere;
 import ray_tracer.lights.AmbientLight;
-import ray_tracer.lights.Light;
 import ray_tracer.lights.PointLight;
 import ray_tracer.lights.SunLight;
 import ray_tracer.material.*;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.Collection;
-import java.util.LinkedList;
 
 /**
  * Created by William Martin III on 12/30/15.
@@ -54,17 +54,59 @@ public class AtomScene {
     Color darkBlue = new Color(0, 0, 16);
     Background background = new GradientBackground(Color.BLACK, darkBlue);
 
+    private final SceneGraph graph = new SceneGraph();
+    private final SceneGraph.Node nucleus;
+    private final SceneGraph.Node shell;
+    private final SceneGraph.Node[] electrons = new SceneGraph.Node[2];
+    private final SceneGraph.Node[] electronLights = new SceneGraph.Node[2];
+
     public AtomScene() {
         camera = new FancyCamera();
         camera.setWidth(WIDTH);
         camera.setHeight(HEIGHT);
-        camera.setBackground(background);
         camera.setLens(new SimpleLens(WIDTH, HEIGHT, 2.0, 3.0));
+
+        // the nucleus turns as a whole while the electrons orbit within a shell turning the opposite way
+        nucleus = graph.getRoot().createChild();
+        nucleus.createChild().setGeometry(new Sphere(new double[] {0, -magic, 1.0}, 1, neutron, null));
+        nucleus.createChild().setGeometry(new Sphere(new double[] {0, -magic, -1.0}, 1, neutron, null));
+        nucleus.createChild().setGeometry(new Sphere(new double[] {1.0, magic, 0}, 1, proton, null));
+        nucleus.createChild().setGeometry(new Sphere(new double[] {-1.0, magic, 0}, 1, proton, null));
+
+        shell = graph.getRoot().createChild();
+        for (int i = 0; i < electrons.length; i++) {
+            electrons[i] = shell.createChild().setGeometry(new Sphere(new double[] {0, 0, 0}, 0.5, electron, null));
+        }
+        for (int i = 0; i < electronLights.length; i++) {
+            electronLights[i] = shell.createChild()
+                    .setLight(new PointLight(Color.CYAN.brighter(), new double[] {0, 0, 0}, 0.1));
+        }
+
+        graph.getRoot().createChild().setLight(new SunLight(darkBlue, new double[] {0, 1, 0}, 1));
+        graph.getRoot().createChild().setLight(new SunLight(darkBlue, new double[] {0, -1, 0}, 0.5));
+        graph.getRoot().createChild().setLight(new AmbientLight(Color.WHITE, 0.01));
+        graph.setBackground(background);
     }
 
     public BufferedImage render(double frame) {
-        Collection<Geometry> geometry = new LinkedList<>();
+        update(frame);
+        return camera.render();
+    }
+
+    /**
+     * Returns a new camera with the settings and scene of the camera as last updated, which may go on rendering while
+     * the scene is updated for another frame.
+     */
+    public Camera copyCamera() {
+        Camera copy = new FancyCamera();
+        copy.copy(camera);
+        return copy;
+    }
 
+    /**
+     * Moves the atom to where it is at the given frame and the camera to where it has been steered, without rendering.
+     */
+    public void update(double frame) {
         double position = (frame / (FRAME_RATE * LENGTH)) * (2 * Math.PI);
 
         DoubleMatrix yRot = new DoubleMatrix(new double[] {Math.sin(position), 0, Math.cos(position)});
@@ -72,46 +114,20 @@ public class AtomScene {
         DoubleMatrix rotation = MatrixUtil.rotate(yRot, MatrixUtil.Y, MatrixUtil.Y);
         rotation = rotation.mmul(MatrixUtil.rotate(zRot, MatrixUtil.Z, MatrixUtil.Z));
 
-        DoubleMatrix n1Pos = new DoubleMatrix(new double[] {0, -magic, 1.0});
-        n1Pos = rotation.mmul(n1Pos);
-        DoubleMatrix n2Pos = new DoubleMatrix(new double[] {0, -magic, -1.0});
-        n2Pos = rotation.mmul(n2Pos);
-        DoubleMatrix p1Pos = new DoubleMatrix(new double[] {1.0, magic, 0});
-        p1Pos = rotation.mmul(p1Pos);
-        DoubleMatrix p2Pos = new DoubleMatrix(new double[] {-1.0, magic, 0});
-        p2Pos = rotation.mmul(p2Pos);
-
-        rotation = rotation.neg();
-
-        DoubleMatrix e1Pos = new DoubleMatrix(new double[] {Math.sin(position * 5), Math.cos(position * 5), 0});
-        e1Pos = rotation.mmul(e1Pos);
-        DoubleMatrix e2Pos = new DoubleMatrix(new double[] {Math.cos(position * 5), 0, Math.sin(position * 5)});
-        e2Pos = rotation.mmul(e2Pos);
-
-        geometry.add(new Sphere(n1Pos.toArray(), 1, neutron, null));
-        geometry.add(new Sphere(n2Pos.toArray(), 1, neutron, null));
-        geometry.add(new Sphere(p1Pos.toArray(), 1, proton, null));
-        geometry.add(new Sphere(p2Pos.toArray(), 1, proton, null));
-        geometry.add(new Sphere(e1Pos.mul(5.0).toArray(), 0.5, electron, null));
-        geometry.add(new Sphere(e2Pos.mul(5.0).toArray(), 0.5, electron, null));
-
-        Collection<Light> lights = new LinkedList<>();
-        lights.add(new PointLight(Color.CYAN.brighter(), e1Pos.mul(3.5).toArray(), 0.1));
-        lights.add(new PointLight(Color.CYAN.brighter(), e2Pos.mul(3.5).toArray(), 0.1));
-
-        lights.add(new SunLight(darkBlue, new double[] {0, 1, 0}, 1));
-        lights.add(new SunLight(darkBlue, new double[] {0, -1, 0}, 0.5));
-//        lights.add(new PointLight(Color.white, new double[] {Math.sin(position) * 5, 2, Math.cos(position) * 5}, 0.5));
-//        lights.add(new SunLight(Color.BLUE, new double[] {0, 1, 0}, 0.2));
-//        lights.add(new SunLight(Color.ORANGE, new double[] {0, -1, 0}, 0.2));
-//        // lights.add(new SunLight(Color.blue.brighter(), new double[] {-0.25, -0.5, 0}, 0.25));
-        lights.add(new AmbientLight(Color.WHITE, 0.01));
-
-        camera.setLights(lights);
-        camera.setGeometry(geometry);
+        nucleus.setTransform(Transform.rotation(Matrix3.of(rotation)));
+        shell.setTransform(Transform.rotation(Matrix3.of(rotation.neg())));
+
+        Vector3[] orbits = {
+                new Vector3(Math.sin(position * 5), Math.cos(position * 5), 0),
+                new Vector3(Math.cos(position * 5), 0, Math.sin(position * 5))
+        };
+        for (int i = 0; i < orbits.length; i++) {
+            electrons[i].setTransform(Transform.translation(orbits[i].mul(5.0)));
+            electronLights[i].setTransform(Transform.translation(orbits[i].mul(3.5)));
+        }
+
+        camera.setScene(graph.update());
         camera.setPosition(cameraPosition);
         camera.setAngle(cameraRotation);
-
-        return camera.render();
     }
 }
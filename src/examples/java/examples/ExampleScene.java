@@ -2,6 +2,7 @@ package examples;
 
 import com.google.common.collect.ImmutableList;
 import org.jblas.DoubleMatrix;
+import ray_tracer.Scene;
 import ray_tracer.background.*;
 import ray_tracer.cameras.Camera;
 import ray_tracer.cameras.CartoonCamera;
@@ -142,17 +143,21 @@ public class ExampleScene {
 //        lights.add(new SunLight(Color.blue.brighter(), new double[] {-0.25, -0.5, 0}, 0.25));
         lights.add(new AmbientLight(Color.WHITE, 0.25));
 
-        fancyCamera.setLights(lights);
-        fancyCamera.setGeometry(geometry);
+        // compiled once and shared by every camera
+        Scene scene = new Scene.Builder()
+                .geometry(geometry)
+                .lights(lights)
+                .background(skyBackground)
+                .build();
+
+        fancyCamera.setScene(scene);
         fancyCamera.setPosition(cameraPosition);
         fancyCamera.setAngle(cameraRotation);
 
         diffuseCamera.copy(fancyCamera);
         cartoonCamera.copy(fancyCamera);
 
-        fancyCamera.setBackground(skyBackground);
-        diffuseCamera.setBackground(skyBackground);
-        cartoonCamera.setBackground(cartoonBackground);
+        cartoonCamera.setScene(scene.withBackground(cartoonBackground));
 
         return fancyCamera.render();
     }
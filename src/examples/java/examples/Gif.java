@@ -1,6 +1,7 @@
 package examples;
 
 import examples.util.GifSequenceWriter;
+import ray_tracer.Renderer;
 
 import javax.imageio.stream.FileImageOutputStream;
 import javax.imageio.stream.ImageOutputStream;
@@ -9,8 +10,13 @@ import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
 
 /**
+ * Renders the atom into a gif, rendering several frames at once on a {@link Renderer} and writing them in order.
+ *
  * Created by William Martin III on 12/25/15.
  */
 public class Gif {
@@ -20,29 +26,40 @@ public class Gif {
         try {
             scene.camera.setSamples(64);
             scene.camera.setBlur(0.01);
+            scene.camera.enableAdaptiveSampling(true);
             int lengthOfFrame = (int) (1.0 / scene.FRAME_RATE * 1000);
             System.out.println(lengthOfFrame + " milliseconds per frame.");
 
             ImageOutputStream stream = new FileImageOutputStream(new File("atomBlurred.gif"));
             GifSequenceWriter writer = new GifSequenceWriter(stream, BufferedImage.TYPE_INT_RGB, lengthOfFrame, true);
 
-            System.out.println("Rendering " + (int) (scene.FRAME_RATE * scene.LENGTH) + " frames...");
+            int frames = (int) (scene.FRAME_RATE * scene.LENGTH);
+            System.out.println("Rendering " + frames + " frames...");
 
-            for (int i = 0; i < scene.LENGTH * scene.FRAME_RATE; i++) {
-                BufferedImage original = scene.render(i);
+            try (Renderer renderer = new Renderer()) {
+                // keeps a frame in flight for every thread, so no thread waits on the frames being written
+                Deque<CompletableFuture<BufferedImage>> rendering = new ArrayDeque<>();
+                int submitted = 0;
+                for (int i = 0; i < frames; i++) {
+                    while (submitted < frames && submitted < i + renderer.getThreadCount()) {
+                        scene.update(submitted++);
+                        rendering.add(renderer.submit(new Renderer.Job.Builder(scene.copyCamera()).build()));
+                    }
+                    BufferedImage original = rendering.remove().join();
 
-                int w = (int) (original.getWidth() * scene.ZOOM);
-                int h = (int) (original.getHeight() * scene.ZOOM);
-                BufferedImage finished = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-                AffineTransform at = new AffineTransform();
-                at.scale(scene.ZOOM, scene.ZOOM);
-                AffineTransformOp scaleOp =
-                        new AffineTransformOp(at, AffineTransformOp.TYPE_BILINEAR);
-                finished = scaleOp.filter(original, finished);
+                    int w = (int) (original.getWidth() * scene.ZOOM);
+                    int h = (int) (original.getHeight() * scene.ZOOM);
+                    BufferedImage finished = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                    AffineTransform at = new AffineTransform();
+                    at.scale(scene.ZOOM, scene.ZOOM);
+                    AffineTransformOp scaleOp =
+                            new AffineTransformOp(at, AffineTransformOp.TYPE_BILINEAR);
+                    finished = scaleOp.filter(original, finished);
 
-                writer.writeToSequence(finished);
+                    writer.writeToSequence(finished);
 
-                System.out.println("Frame " + i + " complete.");
+                    System.out.println("Frame " + i + " complete.");
+                }
             }
 
             writer.close();
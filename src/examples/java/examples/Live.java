@@ -2,14 +2,24 @@ package examples;
 
 import org.jblas.DoubleMatrix;
 import ray_tracer.MatrixUtil;
+import ray_tracer.cameras.ProgressiveRenderer;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 /**
+ * Renders the atom as it turns, steered with the arrow and page keys and by dragging the mouse.
+ *
+ * <p>Each frame renders in the background and is abandoned as soon as the camera is steered, so the view follows the
+ * keys and mouse without waiting for frames of where the camera was. Space pauses the atom, after which the still
+ * image keeps improving pass by pass until it is steered again.
+ *
  * Created by William Martin III on 12/25/15.
  */
 public class Live {
@@ -19,6 +29,22 @@ public class Live {
     static JPanel pane;
     static Timer timer;
 
+    static volatile BufferedImage latest;
+    static volatile boolean paused = false;
+    static volatile boolean moved = false;
+    // the frame being rendered while the atom turns
+    static CompletableFuture<BufferedImage> rendering;
+
+    // refines the image while the atom is paused
+    static ProgressiveRenderer progressive = new ProgressiveRenderer.Builder(scene.camera)
+            .maxPasses(64)
+            .targetError(1.0 / 512)
+            .listener((image, progress) -> {
+                latest = image;
+                System.out.println(progress);
+            })
+            .build();
+
     public static class RepaintListener implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
@@ -58,7 +84,13 @@ public class Live {
                 case KeyEvent.VK_PAGE_DOWN:
                     scene.cameraPosition[1] -= 0.2;
                     break;
+                case KeyEvent.VK_SPACE:
+                    paused = !paused;
+                    break;
+                default:
+                    return;
             }
+            cameraMoved();
         }
 
         @Override
@@ -87,6 +119,7 @@ public class Live {
             scene.cameraRotation = rotation.mmul(camera).toArray();
 
             lastPoint = e.getPoint();
+            cameraMoved();
         }
 
         @Override
@@ -95,6 +128,65 @@ public class Live {
         }
     }
 
+    /**
+     * Abandons the frame or stops refining the image of where the camera was.
+     */
+    static void cameraMoved() {
+        synchronized (Live.class) {
+            moved = true;
+            if (rendering != null) {
+                rendering.cancel(false);
+            }
+            progressive.stop();
+            Live.class.notifyAll();
+        }
+    }
+
+    /**
+     * Renders frames of the turning atom until it is paused, then refines one image of it until the camera moves.
+     */
+    static void renderFrames() {
+        double frame = 0;
+        while (true) {
+            if (!paused) {
+                long time = System.currentTimeMillis();
+                frame = time / 1000.0;
+                scene.update(frame);
+
+                // cancelled workers finish their tiles with a camera of their own while the next frame starts
+                CompletableFuture<BufferedImage> render = scene.copyCamera().renderAsync(ForkJoinPool.commonPool());
+                synchronized (Live.class) {
+                    rendering = render;
+                }
+                try {
+                    latest = render.join();
+                    System.out.println(((System.currentTimeMillis() - time) / 1000.0) + " seconds");
+                } catch (CancellationException e) {
+                    System.out.println("Frame abandoned.");
+                }
+                continue;
+            }
+
+            // a move after this stops the render even if it comes before the render starts
+            synchronized (Live.class) {
+                moved = false;
+                progressive.reset();
+            }
+            scene.update(frame);
+            progressive.render();
+
+            synchronized (Live.class) {
+                while (paused && !moved) {
+                    try {
+                        Live.class.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
     public static void main(String[] args) {
         JFrame frame = new JFrame();
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -104,12 +196,17 @@ public class Live {
         frame.addKeyListener(new KeyPressListener());
         frame.addMouseMotionListener(new MouseListener());
 
+        // passes after the first differ only where the blur moves their rays
+        scene.camera.setBlur(0.002);
+
         pane = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
-                long time = System.currentTimeMillis();
-                BufferedImage original = scene.render((System.currentTimeMillis() / 1000.0));
+                BufferedImage original = latest;
+                if (original == null) {
+                    return;
+                }
 
                 int w = (int) (original.getWidth() * scene.ZOOM);
                 int h = (int) (original.getHeight() * scene.ZOOM);
@@ -121,13 +218,14 @@ public class Live {
                 finished = scaleOp.filter(original, finished);
 
                 g.drawImage(finished, 0, 0, null);
-
-                System.out.println(((System.currentTimeMillis() - time) / 1000.0) + " seconds");
             }
         };
 
         frame.add(pane);
-        pane.repaint();
+
+        Thread renderer = new Thread(Live::renderFrames, "live-renderer");
+        renderer.setDaemon(true);
+        renderer.start();
 
         timer = new Timer((int)(1.0 / scene.FRAME_RATE * 1000.0), new RepaintListener());
         timer.start();
@@ -0,0 +1,131 @@
+package ray_tracer;
+
+import java.awt.*;
+
+/**
+ * A mutable linear RGB color stored as floats for accumulating light contributions in place.
+ *
+ * <p>A component of 1 is the brightest an 8 bit {@link Color} can show but components are never clamped while shading,
+ * so light which would be lost by {@link ColorUtil} rounding and clamping every step is kept until the color is packed
+ * for output with {@link #toRGB()}.
+ *
+ * <p>Instances are not thread safe and are meant to be used as scratch space local to a single computation.
+ *
+ * Created by William Martin III on 1/21/16.
+ */
+public final class FloatColor {
+    private static final float SCALE = 1.0f / ColorUtil.MAX;
+
+    public float r;
+    public float g;
+    public float b;
+
+    public FloatColor() { }
+
+    public FloatColor(float r, float g, float b) {
+        set(r, g, b);
+    }
+
+    public FloatColor(Color color) {
+        set(color);
+    }
+
+    public FloatColor set(float r, float g, float b) {
+        this.r = r;
+        this.g = g;
+        this.b = b;
+        return this;
+    }
+
+    public FloatColor set(FloatColor other) {
+        return set(other.r, other.g, other.b);
+    }
+
+    public FloatColor set(Color color) {
+        return setRGB(color.getRGB());
+    }
+
+    /**
+     * Sets the color from an RGB value packed as by {@link Color#getRGB()}, ignoring alpha.
+     *
+     * @param rgb The packed color
+     * @return This color
+     */
+    public FloatColor setRGB(int rgb) {
+        return set(((rgb >> 16) & 0xFF) * SCALE, ((rgb >> 8) & 0xFF) * SCALE, (rgb & 0xFF) * SCALE);
+    }
+
+    public FloatColor add(FloatColor other) {
+        r += other.r;
+        g += other.g;
+        b += other.b;
+        return this;
+    }
+
+    public FloatColor mul(double scalar) {
+        r *= scalar;
+        g *= scalar;
+        b *= scalar;
+        return this;
+    }
+
+    public FloatColor mul(FloatColor other) {
+        r *= other.r;
+        g *= other.g;
+        b *= other.b;
+        return this;
+    }
+
+    /**
+     * Adds another color scaled by an amount.
+     *
+     * @param other The color to be scaled and added
+     * @param scalar The amount to scale the other color by
+     * @return This color
+     */
+    public FloatColor addScaled(FloatColor other, double scalar) {
+        r += other.r * scalar;
+        g += other.g * scalar;
+        b += other.b * scalar;
+        return this;
+    }
+
+    /**
+     * Adds the product of two colors scaled by an amount, such as a surface color lit by a light of some power.
+     *
+     * @param a The first color
+     * @param b The second color
+     * @param scalar The amount to scale the product by
+     * @return This color
+     */
+    public FloatColor addProduct(FloatColor a, FloatColor b, double scalar) {
+        this.r += a.r * b.r * scalar;
+        this.g += a.g * b.g * scalar;
+        this.b += a.b * b.b * scalar;
+        return this;
+    }
+
+    /**
+     * Returns the color packed as by {@link Color#getRGB()} without alpha, with each component rounded and clamped to
+     * the 8 bit range.
+     *
+     * @return The packed color
+     */
+    public int toRGB() {
+        return (toByte(r) << 16) | (toByte(g) << 8) | toByte(b);
+    }
+
+    public Color toColor() {
+        return new Color(toRGB());
+    }
+
+    @Override
+    public String toString() {
+        return "[" + r + ", " + g + ", " + b + "]";
+    }
+
+    private static int toByte(float value) {
+        int result = (int) (value * ColorUtil.MAX + 0.5f);
+        return result > ColorUtil.MAX ? ColorUtil.MAX : result < ColorUtil.MIN ? ColorUtil.MIN : result;
+    }
+}
@@ -0,0 +1,129 @@
+package ray_tracer;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * An immutable 3x3 matrix stored as primitive fields, typically describing a rotation.
+ *
+ * <p>Like {@link Vector3} this is used in place of {@link DoubleMatrix} on paths which run for every ray.
+ *
+ * Created by William Martin III on 1/17/16.
+ */
+public final class Matrix3 {
+    public static final Matrix3 IDENTITY = new Matrix3(
+            1, 0, 0,
+            0, 1, 0,
+            0, 0, 1);
+
+    private final double m00, m01, m02;
+    private final double m10, m11, m12;
+    private final double m20, m21, m22;
+
+    public Matrix3(double m00, double m01, double m02,
+                   double m10, double m11, double m12,
+                   double m20, double m21, double m22) {
+        this.m00 = m00;
+        this.m01 = m01;
+        this.m02 = m02;
+        this.m10 = m10;
+        this.m11 = m11;
+        this.m12 = m12;
+        this.m20 = m20;
+        this.m21 = m21;
+        this.m22 = m22;
+    }
+
+    /**
+     * Creates a matrix whose columns are the given vectors.
+     *
+     * @param a The first column
+     * @param b The second column
+     * @param c The third column
+     * @return The matrix
+     */
+    public static Matrix3 fromColumns(Vector3 a, Vector3 b, Vector3 c) {
+        return new Matrix3(
+                a.getX(), b.getX(), c.getX(),
+                a.getY(), b.getY(), c.getY(),
+                a.getZ(), b.getZ(), c.getZ());
+    }
+
+    /**
+     * Creates an instance from a 3x3 {@link DoubleMatrix}.
+     *
+     * @param matrix The matrix to copy
+     * @return The matrix
+     */
+    public static Matrix3 of(DoubleMatrix matrix) {
+        return new Matrix3(
+                matrix.get(0, 0), matrix.get(0, 1), matrix.get(0, 2),
+                matrix.get(1, 0), matrix.get(1, 1), matrix.get(1, 2),
+                matrix.get(2, 0), matrix.get(2, 1), matrix.get(2, 2));
+    }
+
+    public Vector3 mmul(Vector3 v) {
+        return new Vector3(
+                m00 * v.getX() + m01 * v.getY() + m02 * v.getZ(),
+                m10 * v.getX() + m11 * v.getY() + m12 * v.getZ(),
+                m20 * v.getX() + m21 * v.getY() + m22 * v.getZ());
+    }
+
+    public Matrix3 mmul(Matrix3 o) {
+        return new Matrix3(
+                m00 * o.m00 + m01 * o.m10 + m02 * o.m20,
+                m00 * o.m01 + m01 * o.m11 + m02 * o.m21,
+                m00 * o.m02 + m01 * o.m12 + m02 * o.m22,
+                m10 * o.m00 + m11 * o.m10 + m12 * o.m20,
+                m10 * o.m01 + m11 * o.m11 + m12 * o.m21,
+                m10 * o.m02 + m11 * o.m12 + m12 * o.m22,
+                m20 * o.m00 + m21 * o.m10 + m22 * o.m20,
+                m20 * o.m01 + m21 * o.m11 + m22 * o.m21,
+                m20 * o.m02 + m21 * o.m12 + m22 * o.m22);
+    }
+
+    /**
+     * Returns the transpose which, for a rotation matrix, is also its inverse.
+     *
+     * @return The transposed matrix
+     */
+    public Matrix3 transpose() {
+        return new Matrix3(
+                m00, m10, m20,
+                m01, m11, m21,
+                m02, m12, m22);
+    }
+
+    /**
+     * Returns whether the rows of the matrix are of unit length and at right angles to each other, so that it preserves
+     * distances and angles, to within the given tolerance on each element of the matrix times its transpose.
+     *
+     * @param tolerance How far each element of the product may be from that of the identity
+     * @return Whether the matrix is orthonormal
+     */
+    public boolean isOrthonormal(double tolerance) {
+        Matrix3 product = mmul(transpose());
+        return Math.abs(product.m00 - 1) <= tolerance && Math.abs(product.m11 - 1) <= tolerance
+                && Math.abs(product.m22 - 1) <= tolerance && Math.abs(product.m01) <= tolerance
+                && Math.abs(product.m02) <= tolerance && Math.abs(product.m12) <= tolerance;
+    }
+
+    /**
+     * Returns a new 3x3 {@link DoubleMatrix} with the same elements.
+     *
+     * @return The matrix
+     */
+    public DoubleMatrix toDoubleMatrix() {
+        return new DoubleMatrix(new double[][] {
+                {m00, m01, m02},
+                {m10, m11, m12},
+                {m20, m21, m22}
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "[" + m00 + ", " + m01 + ", " + m02 + "; "
+                + m10 + ", " + m11 + ", " + m12 + "; "
+                + m20 + ", " + m21 + ", " + m22 + "]";
+    }
+}
@@ -11,6 +11,7 @@ import org.jblas.Solve;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -21,14 +22,12 @@ public class MatrixUtil {
     public static DoubleMatrix Y = new DoubleMatrix(new double[] {0, 1, 0});
     public static DoubleMatrix Z = new DoubleMatrix(new double[] {0, 0, 1});
 
-    private static Random random = new Random();
-
     private static final Cache<String, DoubleMatrix> rotationCache = CacheBuilder.newBuilder()
             .maximumSize(100000)
             .expireAfterWrite(10, TimeUnit.SECONDS)
             .build();
 
-    public synchronized static DoubleMatrix cross(DoubleMatrix a, DoubleMatrix b) {
+    public static DoubleMatrix cross(DoubleMatrix a, DoubleMatrix b) {
         double x = a.get(1) * b.get(2) - a.get(2) * b.get(1);
         double y = a.get(2) * b.get(0) - a.get(0) * b.get(2);
         double z = a.get(0) * b.get(1) - a.get(1) * b.get(0);
@@ -66,6 +65,29 @@ public class MatrixUtil {
         return solution;
     }
 
+    /**
+     * Returns a rotation matrix whose columns are an orthonormal basis with the given angle as its third axis.
+     *
+     * <p>This is the {@link Vector3} equivalent of {@link #rotate(DoubleMatrix, DoubleMatrix, DoubleMatrix)}. Building
+     * the basis is cheaper than looking it up so no cache is used. Since the basis is orthonormal the inverse of the
+     * result is its {@link Matrix3#transpose()}.
+     *
+     * @param angle The direction to become the third axis
+     * @param up The direction which the second axis should lean towards
+     * @param backUp Used in place of up if the angle and up are parallel
+     * @return The rotation matrix
+     */
+    public static Matrix3 rotate(Vector3 angle, Vector3 up, Vector3 backUp) {
+        Vector3 angleVec = angle.normalize();
+        Vector3 u = up.normalize().cross(angleVec).normalize();
+        if (Double.isNaN(u.getY())) {
+            u = backUp.cross(angleVec).normalize();
+        }
+        Vector3 v = angleVec.cross(u);
+
+        return Matrix3.fromColumns(u, v, angleVec);
+    }
+
     public static DoubleMatrix randomRotate(DoubleMatrix angle, double amount) {
         if (Double.compare(amount, 0.0) == 0) {
             return angle;
@@ -102,9 +124,40 @@ public class MatrixUtil {
     }
 
     public static DoubleMatrix cheapRandomRotate(DoubleMatrix angle, double amount) {
+        Random random = ThreadLocalRandom.current();
         double x = random.nextGaussian() * amount;
         double y = random.nextGaussian() * amount;
         double z = random.nextGaussian() * amount;
         return Geometry.normalize(angle.add(new DoubleMatrix(new double[] {x, y, z})));
     }
+
+    /**
+     * Tilts a unit vector by a normally distributed amount, the tilt being chosen by a point in the unit square.
+     *
+     * <p>This is the deterministic counterpart of {@link #cheapRandomRotate(DoubleMatrix, double)} for use with a
+     * {@link ray_tracer.sampling.Sampler}. The point is mapped to two independent normally distributed values with the
+     * Box-Muller transform which offset the vector perpendicular to itself, so evenly spread points give evenly spread
+     * tilts.
+     *
+     * @param angle The unit vector to tilt
+     * @param amount The standard deviation of the offset
+     * @param u The first coordinate of the point, in [0, 1)
+     * @param v The second coordinate of the point, in [0, 1)
+     * @return The tilted unit vector
+     */
+    public static Vector3 gaussianRotate(Vector3 angle, double amount, double u, double v) {
+        double radius = Math.sqrt(-2 * Math.log(1 - u)) * amount;
+        double theta = 2 * Math.PI * v;
+        double a = radius * Math.cos(theta);
+        double b = radius * Math.sin(theta);
+
+        // any two unit vectors perpendicular to the angle and each other
+        Vector3 helper = Math.abs(angle.getX()) < 0.9 ? Vector3.X : Vector3.Y;
+        Vector3 tangent = angle.cross(helper).normalize();
+        Vector3 bitangent = angle.cross(tangent);
+
+        MutableVector3 rotated = new MutableVector3().set(angle);
+        rotated.addScaled(tangent, a).addScaled(bitangent, b);
+        return rotated.normalize().toVector3();
+    }
 }
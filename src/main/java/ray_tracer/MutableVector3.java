@@ -0,0 +1,79 @@
+package ray_tracer;
+
+/**
+ * A mutable three dimensional vector for building up results in place without creating intermediate objects.
+ *
+ * <p>Instances are not thread safe and are meant to be used as scratch space local to a single computation. Once a
+ * result is complete it can be frozen into a {@link Vector3} with {@link #toVector3()}.
+ *
+ * Created by William Martin III on 1/17/16.
+ */
+public final class MutableVector3 {
+    public double x;
+    public double y;
+    public double z;
+
+    public MutableVector3() { }
+
+    public MutableVector3(double x, double y, double z) {
+        set(x, y, z);
+    }
+
+    public MutableVector3 set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public MutableVector3 set(Vector3 other) {
+        return set(other.getX(), other.getY(), other.getZ());
+    }
+
+    public MutableVector3 add(double x, double y, double z) {
+        this.x += x;
+        this.y += y;
+        this.z += z;
+        return this;
+    }
+
+    public MutableVector3 add(Vector3 other) {
+        return add(other.getX(), other.getY(), other.getZ());
+    }
+
+    public MutableVector3 sub(Vector3 other) {
+        return add(-other.getX(), -other.getY(), -other.getZ());
+    }
+
+    public MutableVector3 mul(double scalar) {
+        x *= scalar;
+        y *= scalar;
+        z *= scalar;
+        return this;
+    }
+
+    public MutableVector3 addScaled(Vector3 other, double scalar) {
+        return add(other.getX() * scalar, other.getY() * scalar, other.getZ() * scalar);
+    }
+
+    public double dot(Vector3 other) {
+        return x * other.getX() + y * other.getY() + z * other.getZ();
+    }
+
+    public double length() {
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    public MutableVector3 normalize() {
+        return mul(1.0 / length());
+    }
+
+    public Vector3 toVector3() {
+        return new Vector3(x, y, z);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + x + "; " + y + "; " + z + "]";
+    }
+}
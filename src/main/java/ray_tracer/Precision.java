@@ -0,0 +1,47 @@
+package ray_tracer;
+
+/**
+ * The precision in which a {@link Scene} stores its spheres and triangles and works out where rays hit them.
+ *
+ * <p>{@link #FLOAT} packs the coordinates of the primitives the accelerator tests as 32 bit floats, which halves the
+ * memory read for every leaf of the accelerator, and tests them with 32 bit arithmetic. Points found this way may lie
+ * slightly above or below the true surface, so rays cast from a surface, such as shadows and reflections, must first be
+ * moved further off it than in {@link #DOUBLE}, as given by {@link #getOffset(Vector3)}.
+ *
+ * Created by William Martin III on 1/31/16.
+ */
+public enum Precision {
+    /**
+     * 64 bit coordinates and arithmetic throughout.
+     */
+    DOUBLE(1.0E-10),
+
+    /**
+     * 32 bit coordinates and arithmetic for spheres and triangles. Other geometry, the boxes of the accelerator, and
+     * everything after the closest intersect is found stay in 64 bits.
+     */
+    FLOAT(1.0E-4);
+
+    // the offset of a point at a distance of up to 1 from the origin
+    private final double offset;
+
+    Precision(double offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Returns how far a point on a surface should be moved along the surface's normal so that rays cast from it do not
+     * hit the same surface again through rounding.
+     *
+     * <p>The rounding error of a point grows with the size of its coordinates, so points further from the origin are
+     * moved further.
+     *
+     * @param position The point on the surface
+     * @return The distance to move the point
+     */
+    public double getOffset(Vector3 position) {
+        double magnitude = Math.max(Math.abs(position.getX()), Math.max(Math.abs(position.getY()),
+                Math.abs(position.getZ())));
+        return offset * Math.max(1, magnitude);
+    }
+}
@@ -1,7 +1,434 @@
 package ray_tracer;
 
+import ray_tracer.cameras.Camera;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
 /**
+ * Renders the images of many {@link Job}s at once on a single pool of worker threads.
+ *
+ * <p>Each job is divided into the tiles of its camera's {@link Camera.RenderTask} and the workers take one tile at a
+ * time from each job in turn, so every job in progress gets an equal share of the workers however large it is and a
+ * small job submitted behind a large one is not kept waiting for it to finish. Once every tile of a job has been taken
+ * the workers move on to the other jobs, so the workers stay busy as long as any job has tiles left rather than idling
+ * while the last tiles of one job finish.
+ *
+ * <p>Workers are daemon threads which wait while there is nothing to render. {@link #close()} cancels any jobs which
+ * are not finished and stops the workers.
+ *
  * Created by William Martin on 12/24/15.
  */
-public class Renderer {
+public class Renderer implements AutoCloseable {
+    private final Thread[] workers;
+
+    // jobs with tiles left to take in their current phase, in the order they will next be given a tile
+    private final ArrayDeque<Active> queue = new ArrayDeque<>();
+    // every job which is not finished, including those whose tiles have all been taken, guarded by the queue
+    private final Set<Active> unfinished = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean closed = false;
+
+    /**
+     * Creates a renderer with one worker per processor.
+     */
+    public Renderer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a renderer with the given number of workers.
+     *
+     * @param threads The number of workers
+     * @throws IllegalArgumentException if the number of workers is not greater than zero
+     */
+    public Renderer(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero.");
+        }
+
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::work, "renderer-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Applies the job's settings to its camera, prepares its image, and queues its tiles.
+     *
+     * <p>The scene, size, and sampling set by the job are set on the camera itself and stay set once the job is done,
+     * as a camera renders with whatever settings it has while its tiles are rendered. Jobs which are to render at once
+     * therefore each need a camera of their own, which {@link Camera#copy(Camera)} makes cheap as scenes are shared.
+     * The job's camera must not be changed or used by another job until the returned future is complete, or until the
+     * tiles being rendered are done if it was cancelled. The sink of the job, if any, is given the image by the worker
+     * which finishes it before the returned future is completed, and the future fails with whatever the sink throws.
+     * A job submitted to a closed renderer is rejected before its camera is changed, while one submitted as the
+     * renderer is being closed is cancelled like any other unfinished job.
+     *
+     * @param job The job to render
+     * @return A future completed with the image once every tile is rendered, which may be cancelled to stop the job
+     * @throws IllegalArgumentException if the job has already been submitted
+     * @throws IllegalStateException if the renderer has been closed
+     */
+    public CompletableFuture<BufferedImage> submit(Job job) {
+        // checked before the camera is touched so that a rejected job leaves it as it was
+        synchronized (queue) {
+            if (closed) {
+                throw new IllegalStateException("The renderer has been closed.");
+            }
+            if (job.stats.submitted != 0) {
+                throw new IllegalArgumentException("A job may only be submitted once.");
+            }
+            job.stats.submitted = System.nanoTime();
+        }
+
+        Camera camera = job.camera;
+        if (job.scene != null) {
+            camera.setScene(job.scene);
+        }
+        if (job.width > 0) {
+            camera.setWidth(job.width);
+            camera.setHeight(job.height);
+        }
+        if (job.samples > 0) {
+            camera.setSamples(job.samples);
+        }
+        if (job.adaptiveSampling != null) {
+            camera.enableAdaptiveSampling(job.adaptiveSampling);
+        }
+
+        Active active = new Active(job, camera.prepareRender());
+
+        synchronized (queue) {
+            if (closed) {
+                // closed while the job was being prepared, so it is cancelled along with the rest
+                active.future.cancel(false);
+                return active.future;
+            }
+            if (active.remaining > 0) {
+                unfinished.add(active);
+                queue.add(active);
+                queue.notifyAll();
+            }
+        }
+        if (active.remaining == 0) {
+            // outside of the lock, as the sink may take a while
+            active.finish();
+        }
+        // cancelling the future leaves the job to be dropped by the next worker which reaches it
+        active.future.whenComplete((image, e) -> {
+            synchronized (queue) {
+                unfinished.remove(active);
+            }
+        });
+
+        return active.future;
+    }
+
+    /**
+     * Cancels every job which is not finished and stops the workers once the tiles they are rendering are done.
+     */
+    @Override
+    public void close() {
+        List<Active> cancelled;
+        synchronized (queue) {
+            closed = true;
+            cancelled = new ArrayList<>(unfinished);
+            queue.clear();
+            queue.notifyAll();
+        }
+        // outside of the lock, as cancelling runs whatever depends on the futures
+        for (Active active : cancelled) {
+            active.future.cancel(false);
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    private void work() {
+        while (true) {
+            Active active;
+            int phase;
+            int tile;
+            synchronized (queue) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+
+                active = queue.poll();
+                if (active.future.isDone()) {
+                    // cancelled or failed
+                    continue;
+                }
+                phase = active.phase;
+                tile = active.nextTile++;
+                if (active.nextTile < active.task.getTileCount()) {
+                    // to the back of the line for its next tile
+                    queue.add(active);
+                }
+                if (active.stats.started == 0) {
+                    active.stats.started = System.nanoTime();
+                }
+            }
+
+            long start = System.nanoTime();
+            try {
+                active.task.renderTile(phase, tile);
+            } catch (RuntimeException | Error e) {
+                active.future.completeExceptionally(e);
+                continue;
+            } finally {
+                active.stats.tileTime.add(System.nanoTime() - start);
+                active.stats.tiles.increment();
+            }
+
+            synchronized (queue) {
+                if (--active.remaining > 0 || active.future.isDone()) {
+                    continue;
+                }
+                if (closed) {
+                    // no worker is left to take the tiles of another phase
+                    active.future.cancel(false);
+                    continue;
+                }
+                if (active.phase + 1 < active.task.getPhaseCount()) {
+                    // every tile of the phase is done so the next may begin
+                    active.phase++;
+                    active.nextTile = 0;
+                    active.remaining = active.task.getTileCount();
+                    queue.add(active);
+                    queue.notifyAll();
+                    continue;
+                }
+            }
+            active.finish();
+        }
+    }
+
+    /**
+     * A job being rendered along with how far it has come, guarded by the queue.
+     */
+    private static final class Active {
+        private final Camera.RenderTask task;
+        private final Stats stats;
+        private final Consumer<BufferedImage> sink;
+        private final CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+        private int phase = 0;
+        private int nextTile = 0;
+        private int remaining;
+
+        private Active(Job job, Camera.RenderTask task) {
+            this.task = task;
+            this.stats = job.stats;
+            this.sink = job.sink;
+            remaining = task.getTileCount();
+        }
+
+        /**
+         * Gives the image to the sink, if any, and then completes the future with it, or with what the sink threw.
+         */
+        private void finish() {
+            stats.finished = System.nanoTime();
+            BufferedImage image = task.getImage();
+            if (sink != null) {
+                try {
+                    sink.accept(image);
+                } catch (RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+            }
+            future.complete(image);
+        }
+    }
+
+    /**
+     * An image to be rendered by a {@link Renderer}: the camera and scene to render, the resolution and sampling to
+     * render it with, and where to send the image.
+     */
+    public static final class Job {
+        private final Camera camera;
+        private final Scene scene;
+        private final int width;
+        private final int height;
+        private final int samples;
+        private final Boolean adaptiveSampling;
+        private final Consumer<BufferedImage> sink;
+        private final Stats stats = new Stats();
+
+        private Job(Builder builder) {
+            camera = builder.camera;
+            scene = builder.scene;
+            width = builder.width;
+            height = builder.height;
+            samples = builder.samples;
+            adaptiveSampling = builder.adaptiveSampling;
+            sink = builder.sink;
+        }
+
+        public Camera getCamera() {
+            return camera;
+        }
+
+        /**
+         * Returns the statistics of the job, which are filled in as it is rendered.
+         */
+        public Stats getStats() {
+            return stats;
+        }
+
+        public static class Builder {
+            private final Camera camera;
+            private Scene scene = null;
+            private int width = 0;
+            private int height = 0;
+            private int samples = 0;
+            private Boolean adaptiveSampling = null;
+            private Consumer<BufferedImage> sink = null;
+
+            /**
+             * @param camera The camera to render, which renders its own scene unless the job specifies one
+             */
+            public Builder(Camera camera) {
+                this.camera = camera;
+            }
+
+            /**
+             * Specifies the scene to render, replacing the camera's scene.
+             *
+             * @throws IllegalArgumentException if the scene is null
+             */
+            public Builder scene(Scene scene) {
+                if (scene == null) {
+                    throw new IllegalArgumentException("The scene must not be null.");
+                }
+                this.scene = scene;
+                return this;
+            }
+
+            /**
+             * Specifies the size of the image, overriding the size set on the camera.
+             *
+             * @throws IllegalArgumentException if either dimension is not greater than zero
+             */
+            public Builder size(int width, int height) {
+                if (width <= 0 || height <= 0) {
+                    throw new IllegalArgumentException("The size of the image must be greater than zero.");
+                }
+                this.width = width;
+                this.height = height;
+                return this;
+            }
+
+            /**
+             * Specifies the number of samples per pixel, overriding the number set on the camera.
+             *
+             * @throws IllegalArgumentException if the number is not greater than zero
+             */
+            public Builder samples(int samples) {
+                if (samples <= 0) {
+                    throw new IllegalArgumentException("The number of samples must be greater than zero.");
+                }
+                this.samples = samples;
+                return this;
+            }
+
+            /**
+             * Specifies whether the camera uses adaptive sampling, overriding the camera's setting.
+             */
+            public Builder adaptiveSampling(boolean adaptiveSampling) {
+                this.adaptiveSampling = adaptiveSampling;
+                return this;
+            }
+
+            /**
+             * Specifies what is given the image once it is rendered, such as a video encoder.
+             */
+            public Builder sink(Consumer<BufferedImage> sink) {
+                this.sink = sink;
+                return this;
+            }
+
+            public Job build() {
+                return new Job(this);
+            }
+        }
+    }
+
+    /**
+     * How long a job waited and took to render.
+     */
+    public static final class Stats {
+        private volatile long submitted;
+        private volatile long started;
+        private volatile long finished;
+        private final LongAdder tiles = new LongAdder();
+        private final LongAdder tileTime = new LongAdder();
+
+        private Stats() { }
+
+        /**
+         * Returns how many tiles have been rendered, counting each phase of a tile separately.
+         */
+        public long getTiles() {
+            return tiles.sum();
+        }
+
+        /**
+         * Returns the time from when the job was submitted until a worker started its first tile, or until now.
+         */
+        public long getQueuedMillis() {
+            if (submitted == 0) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis((started != 0 ? started : System.nanoTime()) - submitted);
+        }
+
+        /**
+         * Returns the time from when a worker started the first tile of the job until the last tile was done, or until
+         * now.
+         */
+        public long getRenderMillis() {
+            if (started == 0) {
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis((finished != 0 ? finished : System.nanoTime()) - started);
+        }
+
+        /**
+         * Returns the total time spent by every worker rendering the tiles of the job.
+         */
+        public long getTileMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(tileTime.sum());
+        }
+
+        public boolean isFinished() {
+            return finished != 0;
+        }
+
+        @Override
+        public String toString() {
+            return getTiles() + " tiles, " + getQueuedMillis() + " ms queued, " + getRenderMillis() + " ms rendering, "
+                    + getTileMillis() + " ms in tiles";
+        }
+    }
 }
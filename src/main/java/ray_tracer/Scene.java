@@ -0,0 +1,347 @@
+package ray_tracer;
+
+import ray_tracer.acceleration.Accelerator;
+import ray_tracer.acceleration.AcceleratorType;
+import ray_tracer.acceleration.AcceleratorStats;
+import ray_tracer.acceleration.GeometrySet;
+import ray_tracer.acceleration.RayPacket;
+import ray_tracer.background.Background;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+import ray_tracer.lights.Light;
+import ray_tracer.material.Material;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of everything a camera renders: geometry, lights, materials, and a background.
+ *
+ * <p>Building a scene compiles it once into arrays and builds the acceleration structure over its geometry, so the same
+ * scene may be given to any number of cameras and used by any number of threads at once without copying or rebuilding
+ * anything. Geometry, lights, and distinct materials are each numbered from 0 in the order they were added, and these
+ * IDs never change for the life of the scene. The geometry ID of an intersect found through the scene is recorded in
+ * the {@link RayIntersect}.
+ *
+ * <p>{@link #withLights(Collection)} and {@link #withBackground(Background)} create scenes which share the compiled
+ * geometry of this one, so changing only the lighting or background does not rebuild the acceleration structure.
+ * Scenes which change from frame to frame are better made by a {@link SceneGraph}.
+ *
+ * Created by William Martin III on 1/26/16.
+ */
+public class Scene {
+    private final Geometry[] geometry;
+    // numbered when first asked for, as a scene graph makes a new scene every frame which may never be asked
+    private volatile MaterialTable materialTable;
+    private final Light[] lights;
+    private final Background background;
+
+    private final AcceleratorType acceleratorType;
+    private final Precision precision;
+    private final Accelerator accelerator;
+
+    private final List<Geometry> geometryView;
+    private final List<Light> lightView;
+
+    private Scene(Builder builder) {
+        geometry = builder.geometry.toArray(new Geometry[builder.geometry.size()]);
+        lights = builder.lights.toArray(new Light[builder.lights.size()]);
+        background = builder.background;
+        acceleratorType = builder.acceleratorType;
+        precision = builder.precision;
+        accelerator = acceleratorType.build(new GeometrySet(geometry, precision));
+
+        geometryView = Collections.unmodifiableList(Arrays.asList(geometry));
+        lightView = Collections.unmodifiableList(Arrays.asList(lights));
+    }
+
+    /**
+     * Creates a scene around an accelerator already built over the given geometry, which must not be changed
+     * afterwards.
+     */
+    Scene(Geometry[] geometry, Light[] lights, Background background, AcceleratorType acceleratorType,
+          Precision precision, Accelerator accelerator) {
+        this.geometry = geometry;
+        this.lights = lights;
+        this.background = background;
+        this.acceleratorType = acceleratorType;
+        this.precision = precision;
+        this.accelerator = accelerator;
+
+        geometryView = Collections.unmodifiableList(Arrays.asList(geometry));
+        lightView = Collections.unmodifiableList(Arrays.asList(lights));
+    }
+
+    /**
+     * Creates a scene which shares everything but the lights with another.
+     */
+    private Scene(Scene scene, Light[] lights, Background background) {
+        geometry = scene.geometry;
+        materialTable = scene.materialTable;
+        this.lights = lights;
+        this.background = background;
+        acceleratorType = scene.acceleratorType;
+        precision = scene.precision;
+        accelerator = scene.accelerator;
+        geometryView = scene.geometryView;
+        lightView = Collections.unmodifiableList(Arrays.asList(lights));
+    }
+
+    /**
+     * Returns a scene with the same geometry and background as this one but different lights.
+     *
+     * @param lights The lights of the new scene
+     * @return The new scene
+     */
+    public Scene withLights(Collection<Light> lights) {
+        return new Scene(this, lights.toArray(new Light[lights.size()]), background);
+    }
+
+    /**
+     * Returns a scene with the same geometry and lights as this one but a different background.
+     *
+     * @param background The background of the new scene
+     * @return The new scene
+     */
+    public Scene withBackground(Background background) {
+        return new Scene(this, lights, background);
+    }
+
+    public int getGeometryCount() {
+        return geometry.length;
+    }
+
+    /**
+     * Returns the geometry with the given ID.
+     *
+     * @param id The ID of the geometry, its position in the order it was added
+     * @return The geometry
+     */
+    public Geometry getGeometry(int id) {
+        return geometry[id];
+    }
+
+    /**
+     * Returns every geometry in order of ID as a list which cannot be modified.
+     */
+    public List<Geometry> getGeometry() {
+        return geometryView;
+    }
+
+    public int getMaterialCount() {
+        return getMaterialTable().materials.length;
+    }
+
+    /**
+     * Returns the material with the given ID.
+     *
+     * @param id The ID of the material
+     * @return The material
+     */
+    public Material getMaterial(int id) {
+        return getMaterialTable().materials[id];
+    }
+
+    /**
+     * Returns the ID of the material of a geometry.
+     *
+     * @param geometryId The ID of the geometry
+     * @return The ID of its material
+     */
+    public int getMaterialId(int geometryId) {
+        return getMaterialTable().materialIds[geometryId];
+    }
+
+    public int getLightCount() {
+        return lights.length;
+    }
+
+    public Light getLight(int id) {
+        return lights[id];
+    }
+
+    /**
+     * Returns every light in order of ID as a list which cannot be modified.
+     */
+    public List<Light> getLights() {
+        return lightView;
+    }
+
+    public Background getBackground() {
+        return background;
+    }
+
+    public AcceleratorType getAcceleratorType() {
+        return acceleratorType;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns how long the acceleration structure of the scene took to build and how large it is.
+     */
+    public AcceleratorStats getAcceleratorStats() {
+        return accelerator.getStats();
+    }
+
+    /**
+     * Fills a record with the closest point of geometry which intersects the ray if it is closer than what the record
+     * already holds.
+     *
+     * @param ray The ray to find the closest intersection
+     * @param intersect The record to fill
+     * @return Whether the record was filled
+     */
+    public boolean findClosest(Ray ray, RayIntersect intersect) {
+        return accelerator.findClosest(ray, intersect);
+    }
+
+    /**
+     * Returns whether any geometry intersects the ray between the given distances from its origin.
+     *
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether any geometry is intersected within the bounds
+     */
+    public boolean isOccluded(Ray ray, double minDistance, double maxDistance) {
+        return accelerator.isOccluded(ray, minDistance, maxDistance);
+    }
+
+    /**
+     * Fills a record for each ray of a packet with the closest point of geometry which intersects it, as
+     * {@link #findClosest(Ray, RayIntersect)} does for each ray in turn.
+     *
+     * @param packet The rays to find the closest intersections
+     * @param intersects The record to fill for each ray, in the same order as the packet
+     * @return A mask with a bit set for each ray whose record was filled
+     */
+    public int findClosest(RayPacket packet, RayIntersect[] intersects) {
+        return accelerator.findClosest(packet, intersects);
+    }
+
+    /**
+     * Returns which rays of a packet intersect any geometry between their own distances, as
+     * {@link #isOccluded(Ray, double, double)} does for each ray in turn.
+     *
+     * @param packet The rays to test
+     * @return A mask with a bit set for each ray which is occluded
+     */
+    public int isOccluded(RayPacket packet) {
+        return accelerator.isOccluded(packet);
+    }
+
+    private MaterialTable getMaterialTable() {
+        // racing threads each number the same materials the same way so either table will do
+        MaterialTable table = materialTable;
+        if (table == null) {
+            table = new MaterialTable(geometry);
+            materialTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * The distinct materials of the geometry in the order they are first used.
+     */
+    private static final class MaterialTable {
+        private final Material[] materials;
+        // the material ID of each geometry
+        private final int[] materialIds;
+
+        private MaterialTable(Geometry[] geometry) {
+            Map<Material, Integer> ids = new IdentityHashMap<>();
+            List<Material> distinct = new ArrayList<>();
+            materialIds = new int[geometry.length];
+            for (int i = 0; i < geometry.length; i++) {
+                Material material = geometry[i].getMaterial();
+                Integer id = ids.get(material);
+                if (id == null) {
+                    id = distinct.size();
+                    ids.put(material, id);
+                    distinct.add(material);
+                }
+                materialIds[i] = id;
+            }
+            materials = distinct.toArray(new Material[distinct.size()]);
+        }
+    }
+
+    public static class Builder {
+        private final List<Geometry> geometry = new ArrayList<>();
+        private final List<Light> lights = new ArrayList<>();
+        private Background background;
+        private AcceleratorType acceleratorType = AcceleratorType.BVH;
+        private Precision precision = Precision.DOUBLE;
+
+        public Builder() { }
+
+        /**
+         * Starts from the geometry, lights, background, accelerator type, and precision of an existing scene.
+         *
+         * @param scene The scene to start from
+         */
+        public Builder(Scene scene) {
+            geometry.addAll(scene.geometryView);
+            lights.addAll(scene.lightView);
+            background = scene.background;
+            acceleratorType = scene.acceleratorType;
+            precision = scene.precision;
+        }
+
+        public Builder geometry(Geometry geometry) {
+            this.geometry.add(geometry);
+            return this;
+        }
+
+        public Builder geometry(Collection<? extends Geometry> geometry) {
+            this.geometry.addAll(geometry);
+            return this;
+        }
+
+        public Builder light(Light light) {
+            lights.add(light);
+            return this;
+        }
+
+        public Builder lights(Collection<? extends Light> lights) {
+            this.lights.addAll(lights);
+            return this;
+        }
+
+        public Builder background(Background background) {
+            this.background = background;
+            return this;
+        }
+
+        /**
+         * Specifies the kind of acceleration structure built over the geometry. Defaults to
+         * {@link AcceleratorType#BVH}.
+         */
+        public Builder acceleratorType(AcceleratorType acceleratorType) {
+            this.acceleratorType = acceleratorType;
+            return this;
+        }
+
+        /**
+         * Specifies the precision in which spheres and triangles are stored and tested. Defaults to
+         * {@link Precision#DOUBLE}.
+         */
+        public Builder precision(Precision precision) {
+            this.precision = precision;
+            return this;
+        }
+
+        public Scene build() {
+            return new Scene(this);
+        }
+    }
+}
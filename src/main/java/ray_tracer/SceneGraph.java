@@ -0,0 +1,370 @@
+package ray_tracer;
+
+import ray_tracer.acceleration.Accelerator;
+import ray_tracer.acceleration.AcceleratorType;
+import ray_tracer.acceleration.BoundingVolumeHierarchy;
+import ray_tracer.acceleration.GeometrySet;
+import ray_tracer.background.Background;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.lights.Light;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A tree of {@link Node}s which is kept from frame to frame of an animation and turned into a {@link Scene} each
+ * frame, redoing only the work for what changed since the last.
+ *
+ * <p>Each node has a {@link Transform} relative to its parent and may hold a geometry and a light described relative
+ * to itself. Changing a node marks it dirty, and {@link #update()} moves only the geometry and lights of dirty nodes
+ * and their descendants into place. If geometry was only moved the hierarchy of the last scene is
+ * {@link BoundingVolumeHierarchy#refit refit} above what moved; it is only rebuilt once geometry has been added or
+ * refitting has made the tree twice as loose as when it was built. Likewise only the moved geometry is
+ * {@link GeometrySet#update packed again} for testing, the rest being shared with the last scene. Other kinds of
+ * accelerator, such as a {@link AcceleratorType#GRID grid} for scenes in which everything moves, are built again
+ * whenever geometry changes.
+ *
+ * <p>Geometry is numbered in the order it is first given to a node and keeps its ID in every scene the graph makes,
+ * as do lights. The graph is not safe to change from several threads at once but the scenes it makes are immutable and
+ * may be rendered while the graph is changed for the next frame.
+ *
+ * Created by William Martin III on 1/27/16.
+ */
+public class SceneGraph {
+    // how much looser than when it was built a refit hierarchy may become before it is rebuilt
+    private static final double MAX_DEGRADATION = 2;
+
+    private final Node root = new Node(null);
+    private Background background;
+    private AcceleratorType acceleratorType = AcceleratorType.BVH;
+    private Precision precision = Precision.DOUBLE;
+
+    // the node holding each geometry and light, by ID
+    private final List<Node> geometryNodes = new ArrayList<>();
+    private final List<Node> lightNodes = new ArrayList<>();
+
+    private final List<Node> dirty = new ArrayList<>();
+    private boolean geometryAdded = false;
+    private boolean lightsChanged = false;
+    private boolean backgroundChanged = false;
+    // the IDs of geometry which has moved since the last update
+    private int[] moved = new int[16];
+    private int movedCount = 0;
+
+    // the arrays of the last scene are copied before being changed for the next
+    private Geometry[] geometry = new Geometry[0];
+    private Light[] lights = new Light[0];
+    private boolean geometryShared = false;
+    private boolean lightsShared = false;
+    private GeometrySet primitives;
+    private Accelerator accelerator;
+    private Scene scene;
+
+    private int rebuilds = 0;
+    private int refits = 0;
+
+    /**
+     * Returns the node which every other node descends from.
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    public void setBackground(Background background) {
+        this.background = background;
+        backgroundChanged = true;
+    }
+
+    public Background getBackground() {
+        return background;
+    }
+
+    /**
+     * Sets the kind of acceleration structure built over the geometry from the next update on. Defaults to
+     * {@link AcceleratorType#BVH}, the only kind which is refit rather than built again when geometry moves.
+     *
+     * @throws IllegalArgumentException if the type is null
+     */
+    public void setAcceleratorType(AcceleratorType acceleratorType) {
+        if (acceleratorType == null) {
+            throw new IllegalArgumentException("The graph must have an accelerator type.");
+        }
+        if (acceleratorType != this.acceleratorType) {
+            this.acceleratorType = acceleratorType;
+            accelerator = null;
+        }
+    }
+
+    public AcceleratorType getAcceleratorType() {
+        return acceleratorType;
+    }
+
+    /**
+     * Sets the precision in which spheres and triangles are stored and tested from the next update on. Defaults to
+     * {@link Precision#DOUBLE}.
+     *
+     * @throws IllegalArgumentException if the precision is null
+     */
+    public void setPrecision(Precision precision) {
+        if (precision == null) {
+            throw new IllegalArgumentException("The graph must have a precision.");
+        }
+        if (precision != this.precision) {
+            this.precision = precision;
+            primitives = null;
+            accelerator = null;
+        }
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns a scene of everything in the graph as it is now.
+     *
+     * <p>Only the nodes changed since the last call are visited, and the same scene is returned if nothing changed.
+     *
+     * @return The scene
+     */
+    public Scene update() {
+        if (!dirty.isEmpty()) {
+            // parents first so that each node is placed relative to where its parent is now
+            dirty.sort(Comparator.comparingInt(node -> node.depth));
+            for (Node node : dirty) {
+                if (node.transformDirty) {
+                    place(node);
+                } else if (node.contentDirty) {
+                    bake(node);
+                }
+                node.queued = false;
+            }
+            dirty.clear();
+        }
+
+        boolean geometryChanged = geometryAdded || movedCount > 0;
+        if (scene != null && accelerator != null && !geometryChanged && !lightsChanged && !backgroundChanged) {
+            return scene;
+        }
+
+        if (geometryChanged || accelerator == null) {
+            if (geometryAdded || primitives == null) {
+                primitives = new GeometrySet(geometry, precision);
+            } else if (movedCount > 0) {
+                primitives = primitives.update(geometry, moved, movedCount);
+            }
+            if (!geometryAdded && accelerator instanceof BoundingVolumeHierarchy
+                    && ((BoundingVolumeHierarchy) accelerator).getDegradation() <= MAX_DEGRADATION) {
+                accelerator = ((BoundingVolumeHierarchy) accelerator).refit(primitives, moved, movedCount);
+                refits++;
+            } else {
+                accelerator = acceleratorType.build(primitives);
+                rebuilds++;
+            }
+        }
+
+        scene = new Scene(geometry, lights, background, acceleratorType, precision, accelerator);
+        geometryShared = true;
+        lightsShared = true;
+        geometryAdded = false;
+        lightsChanged = false;
+        backgroundChanged = false;
+        movedCount = 0;
+        return scene;
+    }
+
+    /**
+     * Returns how many times {@link #update()} has built a new hierarchy over the geometry.
+     */
+    public int getRebuildCount() {
+        return rebuilds;
+    }
+
+    /**
+     * Returns how many times {@link #update()} has refit the hierarchy rather than building a new one.
+     */
+    public int getRefitCount() {
+        return refits;
+    }
+
+    /**
+     * Works out where a node and every node below it now are and moves their geometry and lights there.
+     */
+    private void place(Node node) {
+        node.world = node.parent == null ? node.transform : node.parent.world.compose(node.transform);
+        bake(node);
+        node.transformDirty = false;
+        for (Node child : node.children) {
+            place(child);
+        }
+    }
+
+    /**
+     * Moves the geometry and light of a node to where the node is.
+     */
+    private void bake(Node node) {
+        if (node.geometry != null) {
+            Geometry placed = node.world == Transform.IDENTITY ? node.geometry : node.geometry.transform(node.world);
+            // the hierarchy is rebuilt once geometry has been added so there is no need to say what moved
+            if (!geometryAdded) {
+                markMoved(node.geometryId);
+            }
+            if (geometryShared || node.geometryId >= geometry.length) {
+                geometry = Arrays.copyOf(geometry, geometryNodes.size());
+                geometryShared = false;
+            }
+            geometry[node.geometryId] = placed;
+        }
+        if (node.light != null) {
+            if (lightsShared || node.lightId >= lights.length) {
+                lights = Arrays.copyOf(lights, lightNodes.size());
+                lightsShared = false;
+            }
+            lights[node.lightId] = node.world == Transform.IDENTITY ? node.light : node.light.transform(node.world);
+            lightsChanged = true;
+        }
+        node.contentDirty = false;
+    }
+
+    private void markMoved(int id) {
+        if (movedCount == moved.length) {
+            moved = Arrays.copyOf(moved, moved.length * 2);
+        }
+        moved[movedCount++] = id;
+    }
+
+    /**
+     * A point in the graph with a transform relative to its parent, and optionally a geometry and a light placed by
+     * that transform.
+     */
+    public final class Node {
+        private final Node parent;
+        private final int depth;
+        private final List<Node> children = new ArrayList<>();
+
+        private Transform transform = Transform.IDENTITY;
+        private Transform world = Transform.IDENTITY;
+        private Geometry geometry;
+        private int geometryId = -1;
+        private Light light;
+        private int lightId = -1;
+
+        // the transform changed so this node and every node below it must be placed again
+        private boolean transformDirty = false;
+        // only the geometry or light of this node changed
+        private boolean contentDirty = false;
+        // whether the node is in the graph's list of dirty nodes
+        private boolean queued = false;
+
+        private Node(Node parent) {
+            this.parent = parent;
+            depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        /**
+         * Adds a new node below this one, with no transform of its own.
+         *
+         * @return The new node
+         */
+        public Node createChild() {
+            Node child = new Node(this);
+            child.world = world;
+            children.add(child);
+            return child;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        /**
+         * Sets where the node is relative to its parent, moving everything below it too.
+         *
+         * @param transform The transform from the space of the node to that of its parent
+         * @return This node
+         * @throws IllegalArgumentException if the transform is null
+         */
+        public Node setTransform(Transform transform) {
+            if (transform == null) {
+                throw new IllegalArgumentException("A node must have a transform.");
+            }
+            this.transform = transform;
+            transformDirty = true;
+            markDirty();
+            return this;
+        }
+
+        public Transform getTransform() {
+            return transform;
+        }
+
+        /**
+         * Sets the geometry of the node, described relative to the node. The first geometry given to a node is added
+         * to the scene and the graph's hierarchy is rebuilt for it; replacing it after that only refits the hierarchy.
+         *
+         * @param geometry The geometry, which must support {@link Geometry#transform(Transform)} unless the node is
+         *                 never moved from where its parent is
+         * @return This node
+         * @throws IllegalArgumentException if the geometry is null
+         */
+        public Node setGeometry(Geometry geometry) {
+            if (geometry == null) {
+                throw new IllegalArgumentException("A node's geometry may be replaced but not removed.");
+            }
+            this.geometry = geometry;
+            if (geometryId == -1) {
+                geometryId = geometryNodes.size();
+                geometryNodes.add(this);
+                geometryAdded = true;
+            }
+            contentDirty = true;
+            markDirty();
+            return this;
+        }
+
+        public Geometry getGeometry() {
+            return geometry;
+        }
+
+        /**
+         * Returns the ID the geometry of the node has in every scene, or -1 if the node has no geometry.
+         */
+        public int getGeometryId() {
+            return geometryId;
+        }
+
+        /**
+         * Sets the light of the node, described relative to the node.
+         *
+         * @param light The light
+         * @return This node
+         * @throws IllegalArgumentException if the light is null
+         */
+        public Node setLight(Light light) {
+            if (light == null) {
+                throw new IllegalArgumentException("A node's light may be replaced but not removed.");
+            }
+            this.light = light;
+            if (lightId == -1) {
+                lightId = lightNodes.size();
+                lightNodes.add(this);
+            }
+            contentDirty = true;
+            markDirty();
+            return this;
+        }
+
+        public Light getLight() {
+            return light;
+        }
+
+        private void markDirty() {
+            if (!queued) {
+                queued = true;
+                dirty.add(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ray_tracer;
+
+/**
+ * An immutable rigid transform: a rotation followed by a translation.
+ *
+ * <p>The rotation must be orthonormal so that distances and angles are preserved, which lets geometry such as a sphere
+ * keep its radius, lets an {@link ray_tracer.geometry.Instance} measure distances along rays in the space of its
+ * geometry, and lets {@link #inverse()} use the transpose of the rotation.
+ *
+ * Created by William Martin III on 1/27/16.
+ */
+public final class Transform {
+    public static final Transform IDENTITY = new Transform(Matrix3.IDENTITY, Vector3.ZERO);
+
+    // how far the rotation times its transpose may be from the identity, allowing for rounding as transforms compose
+    private static final double TOLERANCE = 1.0E-6;
+
+    private final Matrix3 rotation;
+    private final Vector3 translation;
+
+    /**
+     * Creates a transform which rotates points about the origin and then moves them.
+     *
+     * @param rotation The rotation, which may also reflect but must not scale or shear
+     * @param translation The distance to move along each axis
+     * @throws IllegalArgumentException if either is null or the rotation is not orthonormal
+     */
+    public Transform(Matrix3 rotation, Vector3 translation) {
+        if (rotation == null || translation == null) {
+            throw new IllegalArgumentException("A transform must have a rotation and a translation.");
+        }
+        if (!rotation.isOrthonormal(TOLERANCE)) {
+            throw new IllegalArgumentException("A transform must be rigid but the rotation " + rotation
+                    + " is not orthonormal.");
+        }
+        this.rotation = rotation;
+        this.translation = translation;
+    }
+
+    /**
+     * Creates a transform which only moves points.
+     *
+     * @param translation The distance to move along each axis
+     * @return The transform
+     */
+    public static Transform translation(Vector3 translation) {
+        return new Transform(Matrix3.IDENTITY, translation);
+    }
+
+    /**
+     * Creates a transform which only rotates points about the origin.
+     *
+     * @param rotation The rotation
+     * @return The transform
+     */
+    public static Transform rotation(Matrix3 rotation) {
+        return new Transform(rotation, Vector3.ZERO);
+    }
+
+    public Matrix3 getRotation() {
+        return rotation;
+    }
+
+    public Vector3 getTranslation() {
+        return translation;
+    }
+
+    /**
+     * Returns where this transform moves a point.
+     *
+     * @param point The point to transform
+     * @return The transformed point
+     */
+    public Vector3 apply(Vector3 point) {
+        return rotation.mmul(point).add(translation);
+    }
+
+    /**
+     * Returns how this transform turns a direction, which is only rotated.
+     *
+     * @param direction The direction to transform
+     * @return The transformed direction
+     */
+    public Vector3 applyToDirection(Vector3 direction) {
+        return rotation.mmul(direction);
+    }
+
+    /**
+     * Returns the transform which applies another and then this one, such as a parent's transform applied to the
+     * transform of a child relative to it.
+     *
+     * @param other The transform to apply first
+     * @return The combined transform
+     */
+    public Transform compose(Transform other) {
+        return new Transform(rotation.mmul(other.rotation), apply(other.translation));
+    }
+
+    /**
+     * Returns the transform which undoes this one.
+     *
+     * @return The inverse transform
+     */
+    public Transform inverse() {
+        Matrix3 inverse = rotation.transpose();
+        return new Transform(inverse, inverse.mmul(translation).neg());
+    }
+
+    @Override
+    public String toString() {
+        return "rotate " + rotation + " then translate " + translation;
+    }
+}
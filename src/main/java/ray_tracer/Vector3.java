@@ -0,0 +1,186 @@
+package ray_tracer;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * An immutable three dimensional vector stored as primitive fields.
+ *
+ * <p>This is used in place of {@link DoubleMatrix} wherever vectors are created for every ray since it avoids the
+ * backing array and the generality of jblas. {@link #of(DoubleMatrix)} and {@link #toDoubleMatrix()} adapt between the
+ * two so that existing {@link DoubleMatrix} based APIs continue to work. For vectors which are built up in steps see
+ * {@link MutableVector3}.
+ *
+ * Created by William Martin III on 1/17/16.
+ */
+public final class Vector3 {
+    public static final Vector3 ZERO = new Vector3(0, 0, 0);
+    public static final Vector3 X = new Vector3(1, 0, 0);
+    public static final Vector3 Y = new Vector3(0, 1, 0);
+    public static final Vector3 Z = new Vector3(0, 0, 1);
+
+    private final double x;
+    private final double y;
+    private final double z;
+
+    public Vector3(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Creates an instance from a double array of length three.
+     *
+     * @param values The x, y, and z components
+     * @return The vector
+     */
+    public static Vector3 of(double[] values) {
+        return new Vector3(values[0], values[1], values[2]);
+    }
+
+    /**
+     * Creates an instance from the first three elements of a {@link DoubleMatrix}.
+     *
+     * @param matrix The column or row vector
+     * @return The vector
+     */
+    public static Vector3 of(DoubleMatrix matrix) {
+        return new Vector3(matrix.get(0), matrix.get(1), matrix.get(2));
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * Returns a component of the vector by index.
+     *
+     * @param index 0, 1, or 2 for the x, y, or z component respectively
+     * @return The component
+     */
+    public double get(int index) {
+        return index == 0 ? x : index == 1 ? y : z;
+    }
+
+    public Vector3 add(Vector3 other) {
+        return new Vector3(x + other.x, y + other.y, z + other.z);
+    }
+
+    public Vector3 sub(Vector3 other) {
+        return new Vector3(x - other.x, y - other.y, z - other.z);
+    }
+
+    public Vector3 mul(double scalar) {
+        return new Vector3(x * scalar, y * scalar, z * scalar);
+    }
+
+    /**
+     * Returns this vector plus another vector scaled by an amount.
+     *
+     * @param other The vector to be scaled and added
+     * @param scalar The amount to scale the other vector by
+     * @return The sum
+     */
+    public Vector3 addScaled(Vector3 other, double scalar) {
+        return new Vector3(x + other.x * scalar, y + other.y * scalar, z + other.z * scalar);
+    }
+
+    public Vector3 neg() {
+        return new Vector3(-x, -y, -z);
+    }
+
+    public double dot(Vector3 other) {
+        return x * other.x + y * other.y + z * other.z;
+    }
+
+    public Vector3 cross(Vector3 other) {
+        return new Vector3(
+                y * other.z - z * other.y,
+                z * other.x - x * other.z,
+                x * other.y - y * other.x);
+    }
+
+    /**
+     * Returns the length of the other vector projected onto this one relative to the length of this one.
+     *
+     * <p>This matches {@link DoubleMatrix#project(DoubleMatrix)}.
+     *
+     * @param other The vector to project
+     * @return The dot product of the vectors divided by the squared length of this vector
+     */
+    public double project(Vector3 other) {
+        return dot(other) / dot(this);
+    }
+
+    public double length() {
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    public double distance(Vector3 other) {
+        double dx = x - other.x;
+        double dy = y - other.y;
+        double dz = z - other.z;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Returns a vector in the same direction with a length of one.
+     *
+     * <p>Like {@link org.jblas.Geometry#normalize(DoubleMatrix)} the zero vector results in NaN components.
+     *
+     * @return The normalized vector
+     */
+    public Vector3 normalize() {
+        double length = length();
+        return new Vector3(x / length, y / length, z / length);
+    }
+
+    public double[] toArray() {
+        return new double[] {x, y, z};
+    }
+
+    /**
+     * Returns a new column {@link DoubleMatrix} with the same components.
+     *
+     * @return The column vector
+     */
+    public DoubleMatrix toDoubleMatrix() {
+        return new DoubleMatrix(new double[] {x, y, z});
+    }
+
+    @Override
+    public String toString() {
+        return "[" + x + "; " + y + "; " + z + "]";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Vector3)) {
+            return false;
+        }
+
+        Vector3 other = (Vector3) obj;
+
+        return Double.compare(x, other.x) == 0
+                && Double.compare(y, other.y) == 0
+                && Double.compare(z, other.z) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 7;
+        result = 37 * result + Double.hashCode(x);
+        result = 37 * result + Double.hashCode(y);
+        result = 37 * result + Double.hashCode(z);
+
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+/**
+ * A structure built over a {@link PrimitiveSet} which answers which primitive a ray hits first.
+ *
+ * <p>Implementations must be safe to query from many threads at once once they have been built.
+ *
+ * Created by William Martin III on 1/16/16.
+ */
+public interface Accelerator {
+
+    /**
+     * Records the intersect of the ray with the primitive closest to its origin in the direction of its angle.
+     *
+     * <p>The distance already held by the record bounds the search, so a freshly {@link RayIntersect#reset() reset}
+     * record finds the closest intersect overall. Each primitive fills the record itself as it is found to be closer,
+     * so the closest primitive is never intersected a second time.
+     *
+     * @param ray The ray to find the closest intersection
+     * @param intersect The record to fill
+     * @return Whether any primitive closer than the record's distance was intersected
+     */
+    boolean findClosest(Ray ray, RayIntersect intersect);
+
+    /**
+     * Returns whether the ray intersects any primitive between the given distances from its origin (inclusive).
+     *
+     * <p>Unlike {@link #findClosest(Ray, RayIntersect)} this may stop at the first intersect found, which makes it the
+     * cheaper choice for shadow rays and other queries where only whether something is hit matters.
+     *
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether any primitive is intersected within the bounds
+     */
+    boolean isOccluded(Ray ray, double minDistance, double maxDistance);
+
+    /**
+     * Records the closest intersect of each ray of a packet, as {@link #findClosest(Ray, RayIntersect)} does for each
+     * ray in turn. The distances the rays were added to the packet with are ignored; each record's own distance bounds
+     * its search instead.
+     *
+     * <p>Accelerators which can walk their structure once for the whole packet should override this.
+     *
+     * @param packet The rays to find the closest intersections
+     * @param intersects The record to fill for each ray, in the same order as the packet
+     * @return A mask with a bit set for each ray which intersected a primitive closer than its record's distance
+     */
+    default int findClosest(RayPacket packet, RayIntersect[] intersects) {
+        int found = 0;
+        for (int i = 0; i < packet.size(); i++) {
+            if (findClosest(packet.getRay(i), intersects[i])) {
+                found |= 1 << i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns which rays of a packet intersect any primitive between their own distances, as
+     * {@link #isOccluded(Ray, double, double)} does for each ray in turn.
+     *
+     * @param packet The rays to test
+     * @return A mask with a bit set for each ray which is occluded
+     */
+    default int isOccluded(RayPacket packet) {
+        int occluded = 0;
+        for (int i = 0; i < packet.size(); i++) {
+            if (isOccluded(packet.getRay(i), packet.getMinDistance(i), packet.getMaxDistance(i))) {
+                occluded |= 1 << i;
+            }
+        }
+        return occluded;
+    }
+
+    /**
+     * Returns how long the accelerator took to build and how large it is.
+     *
+     * @return The statistics of the accelerator
+     */
+    AcceleratorStats getStats();
+}
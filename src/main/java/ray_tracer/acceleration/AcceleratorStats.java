@@ -0,0 +1,131 @@
+package ray_tracer.acceleration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long an {@link Accelerator} took to build and how large it is, so that different kinds may be compared on the
+ * same scene. Accelerators which are trees also report their shape and expected cost.
+ *
+ * Created by William Martin III on 1/28/16.
+ */
+public final class AcceleratorStats {
+    private final long buildNanos;
+    private final int nodeCount;
+    private final long primitiveReferences;
+    private final long memoryBytes;
+    private final int depth;
+    private final int leafCount;
+    private final int maxLeafSize;
+    private final double sahCost;
+
+    /**
+     * @param buildNanos The time taken to build or refit the accelerator
+     * @param nodeCount The number of nodes or cells
+     * @param primitiveReferences How many times primitives are referred to, counting a primitive in several cells more
+     *                            than once
+     * @param memoryBytes The approximate size of the accelerator's own arrays, not counting the primitives
+     */
+    AcceleratorStats(long buildNanos, int nodeCount, long primitiveReferences, long memoryBytes) {
+        this(buildNanos, nodeCount, primitiveReferences, memoryBytes, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates the statistics of a tree.
+     *
+     * @param depth The number of levels of the tree
+     * @param leafCount The number of leaves
+     * @param maxLeafSize The most primitives held by any leaf
+     * @param sahCost The expected cost of tracing a ray according to the surface area heuristic
+     */
+    AcceleratorStats(long buildNanos, int nodeCount, long primitiveReferences, long memoryBytes, int depth,
+                     int leafCount, int maxLeafSize, double sahCost) {
+        this.buildNanos = buildNanos;
+        this.nodeCount = nodeCount;
+        this.primitiveReferences = primitiveReferences;
+        this.memoryBytes = memoryBytes;
+        this.depth = depth;
+        this.leafCount = leafCount;
+        this.maxLeafSize = maxLeafSize;
+        this.sahCost = sahCost;
+    }
+
+    /**
+     * Returns the time taken to build the accelerator, or to refit it if it was refit.
+     */
+    public long getBuildMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(buildNanos);
+    }
+
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Returns the number of nodes of a hierarchy or cells of a grid.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns how many times primitives are referred to, which is more than the number of primitives when they may be
+     * held in several places at once as in a grid.
+     */
+    public long getPrimitiveReferences() {
+        return primitiveReferences;
+    }
+
+    /**
+     * Returns the approximate size in bytes of the arrays of the accelerator, not counting the primitives.
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Returns the number of levels of a tree, or 0 if the accelerator is not a tree.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of leaves of a tree, or 0 if the accelerator is not a tree.
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Returns the average number of primitives held by each leaf of a tree, or 0 if the accelerator is not a tree.
+     */
+    public double getAverageLeafSize() {
+        return leafCount > 0 ? (double) primitiveReferences / leafCount : 0;
+    }
+
+    /**
+     * Returns the most primitives held by any leaf of a tree, or 0 if the accelerator is not a tree.
+     */
+    public int getMaxLeafSize() {
+        return maxLeafSize;
+    }
+
+    /**
+     * Returns the expected cost of tracing a ray which enters a tree according to the surface area heuristic, in units
+     * of the cost of testing a primitive, or 0 if the accelerator is not a tree. Lower is better.
+     */
+    public double getSahCost() {
+        return sahCost;
+    }
+
+    @Override
+    public String toString() {
+        String stats = String.format("built in %.3f ms, %d nodes, %d primitive references, %d KB",
+                buildNanos / 1e6, nodeCount, primitiveReferences, memoryBytes / 1024);
+        if (leafCount > 0) {
+            stats += String.format(", depth %d, %d leaves of %.2f primitives on average and %d at most, SAH cost %.2f",
+                    depth, leafCount, getAverageLeafSize(), maxLeafSize, sahCost);
+        }
+        return stats;
+    }
+}
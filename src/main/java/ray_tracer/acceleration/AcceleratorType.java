@@ -0,0 +1,58 @@
+package ray_tracer.acceleration;
+
+/**
+ * The kinds of {@link Accelerator} which may be used to find ray intersections.
+ *
+ * Created by William Martin III on 1/16/16.
+ */
+public enum AcceleratorType {
+    /**
+     * Tests every primitive for every ray.
+     */
+    LINEAR {
+        @Override
+        public Accelerator build(PrimitiveSet primitives) {
+            return new LinearAccelerator(primitives);
+        }
+    },
+
+    /**
+     * A {@link BoundingVolumeHierarchy} whose query cost grows roughly with the log of the number of primitives.
+     */
+    BVH {
+        @Override
+        public Accelerator build(PrimitiveSet primitives) {
+            return new BoundingVolumeHierarchy(primitives);
+        }
+    },
+
+    /**
+     * A {@link UniformGrid}, which is quicker to build than a hierarchy and so suits scenes in which everything moves
+     * every frame.
+     */
+    GRID {
+        @Override
+        public Accelerator build(PrimitiveSet primitives) {
+            return new UniformGrid(primitives);
+        }
+    },
+
+    /**
+     * A {@link CompressedHierarchy}, which takes several times less memory than a {@link #BVH} and suits scenes so
+     * large that the tree no longer fits in the processor's caches.
+     */
+    COMPRESSED_BVH {
+        @Override
+        public Accelerator build(PrimitiveSet primitives) {
+            return new CompressedHierarchy(primitives);
+        }
+    };
+
+    /**
+     * Builds an accelerator of this type over the given primitives.
+     *
+     * @param primitives The primitives to be accelerated
+     * @return The built accelerator
+     */
+    public abstract Accelerator build(PrimitiveSet primitives);
+}
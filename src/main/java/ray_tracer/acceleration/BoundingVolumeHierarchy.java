@@ -0,0 +1,616 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.Vector3;
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+import java.util.Arrays;
+
+/**
+ * An {@link Accelerator} which arranges primitives into a binary tree of nested {@link BoundingBox}es.
+ *
+ * <p>A ray only tests the primitives within the boxes it passes through, so the cost of a query grows roughly with the
+ * log of the number of primitives rather than linearly. Children are visited nearest first so that boxes beyond the
+ * closest intersection found so far can be skipped entirely.
+ *
+ * <p>The tree is built by a {@link HierarchyBuilder} which splits nodes where the surface area heuristic expects rays
+ * to be cheapest to trace, building large subtrees in parallel. The tree is stored in flat arrays rather than as node
+ * objects. The left child of an interior node always directly follows its parent so only the index of the right child
+ * is stored.
+ *
+ * <p>When primitives move without being added or removed the hierarchy may be {@link #refit refit} instead of rebuilt,
+ * which keeps the shape of the tree and only resizes the boxes above the primitives which moved. The boxes are stored
+ * in chunks of nodes so that a refit hierarchy copies only the chunks holding the boxes it resizes and shares the rest
+ * with the hierarchy it was refit from.
+ *
+ * Created by William Martin III on 1/16/16.
+ */
+public class BoundingVolumeHierarchy implements Accelerator {
+    private static final int MAX_DEPTH = 64;
+    // the number of nodes whose boxes are stored in each chunk, as a power of two
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final PrimitiveSet primitives;
+
+    // minX, minY, minZ, maxX, maxY, maxZ for each node, in chunks which a refit copies before changing
+    private final double[][] nodeBounds;
+    // for leaves the offset into order and the number of primitives, for interior nodes the right child and zero
+    private final int[] nodeData;
+    private final int[] order;
+    private int nodeCount;
+
+    // the parent of each node, -1 for the root, and the leaf holding each primitive, so a refit can walk up from the
+    // leaves of the primitives which moved
+    private final int[] parents;
+    private final int[] leaves;
+    // the total surface area of the interior nodes, and of the leaves each times the number of primitives it holds,
+    // which make up the surface area heuristic cost and grow as refitting loosens the tree
+    private double interiorArea;
+    private double leafArea;
+    private final double builtCost;
+    private final int depth;
+
+    private AcceleratorStats stats;
+
+    /**
+     * Builds a hierarchy over the given primitives.
+     *
+     * @param primitives The primitives to be accelerated
+     */
+    public BoundingVolumeHierarchy(PrimitiveSet primitives) {
+        long start = System.nanoTime();
+        this.primitives = primitives;
+
+        HierarchyBuilder builder = new HierarchyBuilder(primitives, MAX_DEPTH);
+        order = builder.getOrder();
+        nodeCount = builder.getNodeCount();
+        double[] bounds = new double[nodeCount * 6];
+        nodeData = new int[nodeCount * 2];
+        parents = new int[nodeCount];
+        leaves = new int[order.length];
+        builder.write(bounds, nodeData, parents, leaves);
+
+        nodeBounds = new double[((nodeCount - 1) >> CHUNK_SHIFT) + 1][];
+        for (int chunk = 0; chunk < nodeBounds.length; chunk++) {
+            int from = (chunk << CHUNK_SHIFT) * 6;
+            nodeBounds[chunk] = Arrays.copyOfRange(bounds, from, Math.min(bounds.length, from + (CHUNK_MASK + 1) * 6));
+        }
+
+        // parents always come before their children
+        int[] depths = new int[nodeCount];
+        int deepest = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            int count = nodeData[node * 2 + 1];
+            if (count > 0) {
+                leafArea += getSurfaceArea(node) * count;
+            } else if (order.length > 0) {
+                interiorArea += getSurfaceArea(node);
+            }
+            if (node > 0) {
+                depths[node] = depths[parents[node]] + 1;
+                deepest = Math.max(deepest, depths[node]);
+            }
+        }
+        depth = deepest + 1;
+        builtCost = getCost();
+        stats = createStats(System.nanoTime() - start);
+    }
+
+    /**
+     * Creates a refit copy of another hierarchy, sharing its tree and, until they are refit, its chunks of boxes.
+     */
+    private BoundingVolumeHierarchy(BoundingVolumeHierarchy other, PrimitiveSet primitives) {
+        this.primitives = primitives;
+        nodeBounds = other.nodeBounds.clone();
+        nodeData = other.nodeData;
+        order = other.order;
+        nodeCount = other.nodeCount;
+        parents = other.parents;
+        leaves = other.leaves;
+        interiorArea = other.interiorArea;
+        leafArea = other.leafArea;
+        builtCost = other.builtCost;
+        depth = other.depth;
+    }
+
+    /**
+     * Returns a hierarchy over primitives which are the same as those of this one except that some may have moved.
+     *
+     * <p>The tree of this hierarchy is kept and only the boxes above the primitives which moved are resized, which
+     * takes time in proportion to the number moved times the depth of the tree rather than rebuilding it. This
+     * hierarchy is left as it was so it may still be queried, sharing the boxes which did not change with the refit
+     * one. A refit tree groups primitives as they were when it was built, so queries slow down as primitives move away
+     * from those they were grouped with; {@link #getDegradation()} says how far this has gone.
+     *
+     * @param primitives The primitives, indexed as those the hierarchy was built over
+     * @param moved The indices of the primitives whose bounds may have changed
+     * @param count The number of indices in moved to use
+     * @return The refit hierarchy
+     * @throws IllegalArgumentException if there are not as many primitives as the hierarchy was built over
+     */
+    public BoundingVolumeHierarchy refit(PrimitiveSet primitives, int[] moved, int count) {
+        if (primitives.size() != order.length) {
+            throw new IllegalArgumentException("A hierarchy can only be refit over the same number of primitives.");
+        }
+
+        long start = System.nanoTime();
+        BoundingVolumeHierarchy refit = new BoundingVolumeHierarchy(this, primitives);
+        for (int i = 0; i < count; i++) {
+            // boxes above one which did not change can not change either
+            int node = leaves[moved[i]];
+            while (node != -1 && refit.refitNode(node, this)) {
+                node = parents[node];
+            }
+        }
+        refit.stats = refit.createStats(System.nanoTime() - start);
+        return refit;
+    }
+
+    /**
+     * Returns the statistics of the build, or of the refit if this hierarchy was refit.
+     */
+    @Override
+    public AcceleratorStats getStats() {
+        return stats;
+    }
+
+    private AcceleratorStats createStats(long buildNanos) {
+        long memory = nodeCount * 6 * 8L + (nodeData.length + parents.length + order.length + leaves.length) * 4L;
+        int leafCount = 0;
+        int maxLeafSize = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (nodeData[node * 2 + 1] > 0) {
+                leafCount++;
+                maxLeafSize = Math.max(maxLeafSize, nodeData[node * 2 + 1]);
+            }
+        }
+        return new AcceleratorStats(buildNanos, nodeCount, order.length, memory, depth, leafCount, maxLeafSize,
+                getCost());
+    }
+
+    /**
+     * Returns the surface area heuristic cost of the tree relative to when it was built, which starts at 1 and grows
+     * as refitting loosens the tree. This estimates how much slower queries have become.
+     *
+     * @return The relative cost of the tree
+     */
+    public double getDegradation() {
+        return builtCost > 0 ? getCost() / builtCost : 1;
+    }
+
+    /**
+     * Returns the expected cost of tracing a ray which hits the root according to the surface area heuristic: the
+     * chance of visiting each node, its area relative to the root, times the cost of testing its box or primitives.
+     */
+    private double getCost() {
+        double rootArea = getSurfaceArea(0);
+        if (order.length == 0 || !(rootArea > 0)) {
+            return 0;
+        }
+        return (HierarchyBuilder.TRAVERSAL_COST * interiorArea + HierarchyBuilder.INTERSECT_COST * leafArea)
+                / rootArea;
+    }
+
+    @Override
+    public boolean findClosest(Ray ray, RayIntersect intersect) {
+        if (order.length == 0) {
+            return false;
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double ox = position.getX();
+        double oy = position.getY();
+        double oz = position.getZ();
+        double ix = 1.0 / angle.getX();
+        double iy = 1.0 / angle.getY();
+        double iz = 1.0 / angle.getZ();
+
+        boolean found = false;
+
+        int[] stack = new int[MAX_DEPTH];
+        int stackSize = 0;
+        int node = 0;
+
+        if (intersectNode(node, ox, oy, oz, ix, iy, iz, 0, intersect.getDistance()) == Double.POSITIVE_INFINITY) {
+            return false;
+        }
+
+        while (true) {
+            int count = nodeData[node * 2 + 1];
+            if (count > 0) {
+                int offset = nodeData[node * 2];
+                found |= primitives.intersect(order, offset, offset + count, ray, intersect);
+            } else {
+                int left = node + 1;
+                int right = nodeData[node * 2];
+                double distance = intersect.getDistance();
+                double leftDist = intersectNode(left, ox, oy, oz, ix, iy, iz, 0, distance);
+                double rightDist = intersectNode(right, ox, oy, oz, ix, iy, iz, 0, distance);
+
+                if (leftDist != Double.POSITIVE_INFINITY && rightDist != Double.POSITIVE_INFINITY) {
+                    if (leftDist <= rightDist) {
+                        stack[stackSize++] = right;
+                        node = left;
+                    } else {
+                        stack[stackSize++] = left;
+                        node = right;
+                    }
+                    continue;
+                } else if (leftDist != Double.POSITIVE_INFINITY) {
+                    node = left;
+                    continue;
+                } else if (rightDist != Double.POSITIVE_INFINITY) {
+                    node = right;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0) {
+                break;
+            }
+            node = stack[--stackSize];
+        }
+
+        return found;
+    }
+
+    @Override
+    public boolean isOccluded(Ray ray, double minDistance, double maxDistance) {
+        if (order.length == 0) {
+            return false;
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double ox = position.getX();
+        double oy = position.getY();
+        double oz = position.getZ();
+        double ix = 1.0 / angle.getX();
+        double iy = 1.0 / angle.getY();
+        double iz = 1.0 / angle.getZ();
+
+        // any intersect will do so there is no need to visit children in order
+        int[] stack = new int[MAX_DEPTH + 1];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (intersectNode(node, ox, oy, oz, ix, iy, iz, minDistance, maxDistance) == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+
+            int count = nodeData[node * 2 + 1];
+            if (count > 0) {
+                int offset = nodeData[node * 2];
+                if (primitives.intersects(order, offset, offset + count, ray, minDistance, maxDistance)) {
+                    return true;
+                }
+            } else {
+                stack[stackSize++] = nodeData[node * 2];
+                stack[stackSize++] = node + 1;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Walks the tree once for the whole packet, keeping track only of the first ray of the packet which reaches each
+     * node. Rays of a coherent packet mostly reach the same nodes, so a node is usually entered as soon as the first
+     * ray tested hits its box and the rest of the packet is only tested against the boxes of leaves, before their
+     * primitives. Children are visited in the order the first ray reaching both would visit them.
+     */
+    @Override
+    public int findClosest(RayPacket packet, RayIntersect[] intersects) {
+        int size = packet.size();
+        if (order.length == 0 || size == 0) {
+            return 0;
+        }
+
+        int all = packet.getMask();
+        int found = 0;
+        // where the first ray reaching each child enters it
+        double[] entries = new double[2];
+
+        int[] stack = new int[MAX_DEPTH];
+        int[] firsts = new int[MAX_DEPTH];
+        int stackSize = 0;
+        int node = 0;
+        int first = findFirstHit(node, packet, 0, all, intersects, entries, 0);
+        if (first == size) {
+            return 0;
+        }
+
+        while (true) {
+            int count = nodeData[node * 2 + 1];
+            if (count > 0) {
+                int offset = nodeData[node * 2];
+                for (int i = first; i < size; i++) {
+                    if ((i == first || intersectNode(node, packet, i, 0, intersects[i].getDistance()))
+                            && primitives.intersect(order, offset, offset + count, packet.getRay(i), intersects[i])) {
+                        found |= 1 << i;
+                    }
+                }
+            } else {
+                int left = node + 1;
+                int right = nodeData[node * 2];
+                int leftFirst = findFirstHit(left, packet, first, all, intersects, entries, 0);
+                int rightFirst = findFirstHit(right, packet, first, all, intersects, entries, 1);
+
+                if (leftFirst < size && rightFirst < size) {
+                    boolean leftNearer = leftFirst == rightFirst ? entries[0] <= entries[1] : leftFirst < rightFirst;
+                    if (leftNearer) {
+                        stack[stackSize] = right;
+                        firsts[stackSize++] = rightFirst;
+                        node = left;
+                        first = leftFirst;
+                    } else {
+                        stack[stackSize] = left;
+                        firsts[stackSize++] = leftFirst;
+                        node = right;
+                        first = rightFirst;
+                    }
+                    continue;
+                } else if (leftFirst < size) {
+                    node = left;
+                    first = leftFirst;
+                    continue;
+                } else if (rightFirst < size) {
+                    node = right;
+                    first = rightFirst;
+                    continue;
+                }
+            }
+
+            if (stackSize == 0) {
+                break;
+            }
+            node = stack[--stackSize];
+            first = firsts[stackSize];
+        }
+
+        return found;
+    }
+
+    /**
+     * Walks the tree once for the whole packet, as {@link #findClosest(RayPacket, RayIntersect[])} does, passing over
+     * each ray as soon as it is found to be occluded.
+     */
+    @Override
+    public int isOccluded(RayPacket packet) {
+        int size = packet.size();
+        if (order.length == 0 || size == 0) {
+            return 0;
+        }
+
+        int all = packet.getMask();
+        int occluded = 0;
+
+        int[] stack = new int[MAX_DEPTH + 1];
+        int[] firsts = new int[MAX_DEPTH + 1];
+        int stackSize = 0;
+        stack[stackSize] = 0;
+        firsts[stackSize++] = 0;
+
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            int active = all & ~occluded;
+            int first = findFirstHit(node, packet, firsts[stackSize], active, null, null, 0);
+            if (first == size) {
+                continue;
+            }
+
+            int count = nodeData[node * 2 + 1];
+            if (count > 0) {
+                int offset = nodeData[node * 2];
+                for (int i = first; i < size; i++) {
+                    double minDistance = packet.minDistances[i];
+                    double maxDistance = packet.maxDistances[i];
+                    if ((active & 1 << i) != 0
+                            && (i == first || intersectNode(node, packet, i, minDistance, maxDistance))
+                            && primitives.intersects(order, offset, offset + count, packet.getRay(i), minDistance,
+                                    maxDistance)) {
+                        occluded |= 1 << i;
+                    }
+                }
+                if (occluded == all) {
+                    break;
+                }
+            } else {
+                stack[stackSize] = nodeData[node * 2];
+                firsts[stackSize++] = first;
+                stack[stackSize] = node + 1;
+                firsts[stackSize++] = first;
+            }
+        }
+
+        return occluded;
+    }
+
+    /**
+     * Returns the position of the first ray of the mask from the given position on which hits the node's box, each
+     * within the distance its record already holds if records are given and otherwise within its own distances in the
+     * packet, or the size of the packet if none do. Where the ray found enters the box is written to the entries.
+     */
+    private int findFirstHit(int node, RayPacket packet, int first, int mask, RayIntersect[] intersects,
+                             double[] entries, int entry) {
+        boolean tested = false;
+        for (int i = first; i < packet.size(); i++) {
+            if ((mask & 1 << i) == 0) {
+                continue;
+            }
+            double minDistance = intersects == null ? packet.minDistances[i] : 0;
+            double maxDistance = intersects == null ? packet.maxDistances[i] : intersects[i].getDistance();
+            double distance = intersectNode(node, packet.ox[i], packet.oy[i], packet.oz[i],
+                    packet.ix[i], packet.iy[i], packet.iz[i], minDistance, maxDistance);
+            if (distance != Double.POSITIVE_INFINITY) {
+                if (entries != null) {
+                    entries[entry] = distance;
+                }
+                return i;
+            }
+
+            // once one ray has missed, check whether any ray of the packet could hit before testing the rest
+            if (!tested) {
+                tested = true;
+                if (intersects == null
+                        ? missesPacket(node, packet, packet.leastDistance, packet.greatestDistance)
+                        : missesPacket(node, packet, 0, Double.POSITIVE_INFINITY)) {
+                    break;
+                }
+            }
+        }
+        return packet.size();
+    }
+
+    /**
+     * Returns whether no ray of the packet can hit the node's box between the given distances, judged from the ranges
+     * of the packet's origins and inverse directions. Rounding never moves a product past the products of the ends of
+     * the ranges, so a box culled here is one every ray would miss on its own.
+     */
+    private boolean missesPacket(int node, RayPacket packet, double minDistance, double maxDistance) {
+        if (!packet.coherent) {
+            return false;
+        }
+
+        double[] bounds = nodeBounds[node >> CHUNK_SHIFT];
+        int base = (node & CHUNK_MASK) * 6;
+        double near = minDistance;
+        double far = maxDistance;
+        for (int axis = 0; axis < 3; axis++) {
+            double inverseMin = packet.inverseMin[axis];
+            double inverseMax = packet.inverseMax[axis];
+            // rays heading the negative way along the axis enter through the far side of the box
+            double entry = inverseMin > 0 ? bounds[base + axis] : bounds[base + 3 + axis];
+            double exit = inverseMin > 0 ? bounds[base + 3 + axis] : bounds[base + axis];
+
+            double low = entry - packet.originMax[axis];
+            double high = entry - packet.originMin[axis];
+            double earliest = Math.min(Math.min(low * inverseMin, low * inverseMax),
+                    Math.min(high * inverseMin, high * inverseMax));
+
+            low = exit - packet.originMax[axis];
+            high = exit - packet.originMin[axis];
+            double latest = Math.max(Math.max(low * inverseMin, low * inverseMax),
+                    Math.max(high * inverseMin, high * inverseMax));
+
+            if (earliest > near) near = earliest;
+            if (latest < far) far = latest;
+        }
+        return near > far;
+    }
+
+    /**
+     * Returns whether one ray of a packet hits the node's box between the given distances.
+     */
+    private boolean intersectNode(int node, RayPacket packet, int ray, double minDistance, double maxDistance) {
+        return intersectNode(node, packet.ox[ray], packet.oy[ray], packet.oz[ray],
+                packet.ix[ray], packet.iy[ray], packet.iz[ray], minDistance, maxDistance) != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the distance at which the ray enters the node's box or positive infinity if the part of the ray between
+     * the given distances misses the box.
+     */
+    private double intersectNode(int node, double ox, double oy, double oz, double ix, double iy, double iz,
+                                 double minDistance, double maxDistance) {
+        double[] bounds = nodeBounds[node >> CHUNK_SHIFT];
+        int base = (node & CHUNK_MASK) * 6;
+        double near = minDistance;
+        double far = maxDistance;
+
+        // comparisons against NaN (from a ray lying exactly on a slab) are false and leave near and far untouched
+        double t1 = (bounds[base] - ox) * ix;
+        double t2 = (bounds[base + 3] - ox) * ix;
+        if (t1 > t2) {
+            double temp = t1;
+            t1 = t2;
+            t2 = temp;
+        }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        t1 = (bounds[base + 1] - oy) * iy;
+        t2 = (bounds[base + 4] - oy) * iy;
+        if (t1 > t2) {
+            double temp = t1;
+            t1 = t2;
+            t2 = temp;
+        }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        t1 = (bounds[base + 2] - oz) * iz;
+        t2 = (bounds[base + 5] - oz) * iz;
+        if (t1 > t2) {
+            double temp = t1;
+            t1 = t2;
+            t2 = temp;
+        }
+        if (t1 > near) near = t1;
+        if (t2 < far) far = t2;
+
+        return near <= far ? near : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Recomputes the box of a node from its primitives or its children and returns whether it changed, first copying
+     * the chunk holding it if that is still shared with the hierarchy this was refit from.
+     */
+    private boolean refitNode(int node, BoundingVolumeHierarchy source) {
+        double[] box = {
+                Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+        int count = nodeData[node * 2 + 1];
+        if (count > 0) {
+            int offset = nodeData[node * 2];
+            for (int i = offset; i < offset + count; i++) {
+                BoundingBox bounds = primitives.getBounds(order[i]);
+                for (int axis = 0; axis < 3; axis++) {
+                    box[axis] = Math.min(box[axis], bounds.getMin(axis));
+                    box[3 + axis] = Math.max(box[3 + axis], bounds.getMax(axis));
+                }
+            }
+        } else {
+            int left = node + 1;
+            int right = nodeData[node * 2];
+            double[] leftBounds = nodeBounds[left >> CHUNK_SHIFT];
+            double[] rightBounds = nodeBounds[right >> CHUNK_SHIFT];
+            int leftBase = (left & CHUNK_MASK) * 6;
+            int rightBase = (right & CHUNK_MASK) * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(leftBounds[leftBase + axis], rightBounds[rightBase + axis]);
+                box[3 + axis] = Math.max(leftBounds[leftBase + 3 + axis], rightBounds[rightBase + 3 + axis]);
+            }
+        }
+
+        int chunk = node >> CHUNK_SHIFT;
+        int base = (node & CHUNK_MASK) * 6;
+        boolean changed = false;
+        for (int i = 0; i < 6; i++) {
+            changed |= box[i] != nodeBounds[chunk][base + i];
+        }
+        if (changed) {
+            if (nodeBounds[chunk] == source.nodeBounds[chunk]) {
+                nodeBounds[chunk] = nodeBounds[chunk].clone();
+            }
+            double area = getSurfaceArea(node);
+            System.arraycopy(box, 0, nodeBounds[chunk], base, 6);
+            if (count > 0) {
+                leafArea += (getSurfaceArea(node) - area) * count;
+            } else {
+                interiorArea += getSurfaceArea(node) - area;
+            }
+        }
+        return changed;
+    }
+
+    private double getSurfaceArea(int node) {
+        return HierarchyBuilder.area(nodeBounds[node >> CHUNK_SHIFT], (node & CHUNK_MASK) * 6);
+    }
+}
@@ -0,0 +1,443 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.Vector3;
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An {@link Accelerator} which stores a bounding volume hierarchy in a compact form for scenes so large that reading
+ * the tree from memory, rather than testing boxes, limits how fast rays can be traced.
+ *
+ * <p>The tree is built as a {@link BoundingVolumeHierarchy} is and then collapsed so that every node has up to four
+ * children, by repeatedly replacing the largest child with its own children, which leaves a third as many nodes. The
+ * box of each child is stored in six bytes, each bound rounded outwards to one of 256 steps across the box of its
+ * parent, whose corner and step size are stored as floats. A node with its four children takes 64 bytes, a single
+ * cache line, where the three binary nodes it replaces take 180, and a ray reads all four children of a node at once.
+ *
+ * <p>The nodes are stored in one flat array of ints. Each child is referred to by a single int: zero for an unused
+ * slot, the index of its node, or for a leaf the offset of its primitives with the sign bit set and the number of them
+ * in the lowest five bits.
+ *
+ * Created by William Martin III on 1/30/16.
+ */
+public class CompressedHierarchy implements Accelerator {
+    private static final int WIDTH = 4;
+    private static final int MAX_DEPTH = 64;
+    private static final int STEPS = 255;
+    private static final int LEAF = Integer.MIN_VALUE;
+    private static final int MAX_LEAF_SIZE = 31;
+    private static final int MAX_OFFSET = (1 << 26) - 1;
+
+    // the layout of each node: the corner of its box and the size of a step along each axis as float bits, the
+    // references to its children, then each of minX, minY, minZ, maxX, maxY, maxZ with one byte for each child
+    private static final int NODE_SIZE = 16;
+    private static final int CORNER = 0;
+    private static final int SCALE = 3;
+    private static final int CHILDREN = 6;
+    private static final int BOUNDS = 10;
+
+    // each step as a double, which is quicker to look up than to convert
+    private static final double[] STEP_VALUES = new double[STEPS + 1];
+
+    static {
+        for (int step = 0; step <= STEPS; step++) {
+            STEP_VALUES[step] = step;
+        }
+    }
+
+    private final PrimitiveSet primitives;
+    private final int[] order;
+
+    private final int[] nodes;
+    private final int nodeCount;
+    private final int depth;
+
+    private final AcceleratorStats stats;
+
+    /**
+     * Builds a compressed hierarchy over the given primitives, which must all have finite bounds.
+     *
+     * @param primitives The primitives to be accelerated
+     * @throws IllegalArgumentException if there are too many primitives to refer to
+     */
+    public CompressedHierarchy(PrimitiveSet primitives) {
+        long start = System.nanoTime();
+        this.primitives = primitives;
+
+        int size = primitives.size();
+        if (size > MAX_OFFSET) {
+            throw new IllegalArgumentException("A compressed hierarchy can hold at most " + MAX_OFFSET
+                    + " primitives.");
+        }
+
+        HierarchyBuilder builder = new HierarchyBuilder(primitives, MAX_DEPTH);
+        order = builder.getOrder();
+        int binaryCount = builder.getNodeCount();
+        double[] binaryBounds = new double[binaryCount * 6];
+        int[] binaryData = new int[binaryCount * 2];
+        builder.write(binaryBounds, binaryData, new int[binaryCount], new int[size]);
+
+        Collapser collapser = new Collapser(binaryBounds, binaryData, Math.max(1, binaryCount / 2));
+        if (size > 0) {
+            collapser.collapse(0, 1);
+        }
+
+        nodeCount = collapser.nodeCount;
+        depth = collapser.depth;
+        nodes = Arrays.copyOf(collapser.nodes, nodeCount * NODE_SIZE);
+
+        double rootArea = HierarchyBuilder.area(binaryBounds, 0);
+        double cost = size > 0 && rootArea > 0
+                ? (HierarchyBuilder.TRAVERSAL_COST * collapser.interiorArea
+                + HierarchyBuilder.INTERSECT_COST * collapser.leafArea) / rootArea
+                : 0;
+        long memory = (nodes.length + order.length) * 4L;
+        stats = new AcceleratorStats(System.nanoTime() - start, nodeCount, size, memory, depth,
+                collapser.leafCount, collapser.maxLeafSize, cost);
+    }
+
+    @Override
+    public boolean findClosest(Ray ray, RayIntersect intersect) {
+        if (order.length == 0) {
+            return false;
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double ox = position.getX();
+        double oy = position.getY();
+        double oz = position.getZ();
+        double ix = 1.0 / angle.getX();
+        double iy = 1.0 / angle.getY();
+        double iz = 1.0 / angle.getZ();
+
+        boolean found = false;
+
+        // every child of every node on the way down may be waiting, along with the distance at which it is entered
+        int[] stack = new int[depth * (WIDTH - 1) + 1];
+        double[] stackDistances = new double[stack.length];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+
+        double[] childDistances = new double[WIDTH];
+        int[] hitChildren = new int[WIDTH];
+        double[] hitDistances = new double[WIDTH];
+
+        while (stackSize > 0) {
+            stackSize--;
+            int ref = stack[stackSize];
+            if (stackDistances[stackSize] > intersect.getDistance()) {
+                continue;
+            }
+
+            if (ref < 0) {
+                int offset = (ref & ~LEAF) >>> 5;
+                int count = ref & MAX_LEAF_SIZE;
+                found |= primitives.intersect(order, offset, offset + count, ray, intersect);
+                continue;
+            }
+
+            // sort the children the ray enters nearest first
+            int count = intersectChildren(ref, ox, oy, oz, ix, iy, iz, 0, intersect.getDistance(), childDistances);
+            int hits = 0;
+            for (int child = 0; child < count; child++) {
+                double distance = childDistances[child];
+                if (distance == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                int i = hits++;
+                while (i > 0 && hitDistances[i - 1] > distance) {
+                    hitChildren[i] = hitChildren[i - 1];
+                    hitDistances[i] = hitDistances[i - 1];
+                    i--;
+                }
+                hitChildren[i] = nodes[ref * NODE_SIZE + CHILDREN + child];
+                hitDistances[i] = distance;
+            }
+            for (int i = hits - 1; i >= 0; i--) {
+                stack[stackSize] = hitChildren[i];
+                stackDistances[stackSize] = hitDistances[i];
+                stackSize++;
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public boolean isOccluded(Ray ray, double minDistance, double maxDistance) {
+        if (order.length == 0) {
+            return false;
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double ox = position.getX();
+        double oy = position.getY();
+        double oz = position.getZ();
+        double ix = 1.0 / angle.getX();
+        double iy = 1.0 / angle.getY();
+        double iz = 1.0 / angle.getZ();
+
+        int[] stack = new int[depth * (WIDTH - 1) + 1];
+        double[] childDistances = new double[WIDTH];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+
+        while (stackSize > 0) {
+            int ref = stack[--stackSize];
+            if (ref < 0) {
+                int offset = (ref & ~LEAF) >>> 5;
+                int count = ref & MAX_LEAF_SIZE;
+                if (primitives.intersects(order, offset, offset + count, ray, minDistance, maxDistance)) {
+                    return true;
+                }
+                continue;
+            }
+
+            int count = intersectChildren(ref, ox, oy, oz, ix, iy, iz, minDistance, maxDistance, childDistances);
+            for (int child = count - 1; child >= 0; child--) {
+                if (childDistances[child] != Double.POSITIVE_INFINITY) {
+                    stack[stackSize++] = nodes[ref * NODE_SIZE + CHILDREN + child];
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public AcceleratorStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Fills in the distance at which the ray enters the box of each child of a node, or positive infinity if the part
+     * of the ray between the given distances misses it, and returns the number of children.
+     */
+    private int intersectChildren(int node, double ox, double oy, double oz, double ix, double iy, double iz,
+                                  double minDistance, double maxDistance, double[] distances) {
+        int base = node * NODE_SIZE;
+        // the distance along the ray to the corner of the node's box and to each step across it
+        double cx = (Float.intBitsToFloat(nodes[base + CORNER]) - ox) * ix;
+        double cy = (Float.intBitsToFloat(nodes[base + CORNER + 1]) - oy) * iy;
+        double cz = (Float.intBitsToFloat(nodes[base + CORNER + 2]) - oz) * iz;
+        double sx = Float.intBitsToFloat(nodes[base + SCALE]) * ix;
+        double sy = Float.intBitsToFloat(nodes[base + SCALE + 1]) * iy;
+        double sz = Float.intBitsToFloat(nodes[base + SCALE + 2]) * iz;
+        int minX = nodes[base + BOUNDS];
+        int minY = nodes[base + BOUNDS + 1];
+        int minZ = nodes[base + BOUNDS + 2];
+        int maxX = nodes[base + BOUNDS + 3];
+        int maxY = nodes[base + BOUNDS + 4];
+        int maxZ = nodes[base + BOUNDS + 5];
+
+        int child = 0;
+        for (; child < WIDTH && nodes[base + CHILDREN + child] != 0; child++) {
+            int shift = child * 8;
+            double near = minDistance;
+            double far = maxDistance;
+
+            // comparisons against NaN (from a ray parallel to an axis) are false and leave near and far untouched, which
+            // at worst visits a child the ray misses
+            double t1 = cx + STEP_VALUES[minX >>> shift & 0xff] * sx;
+            double t2 = cx + STEP_VALUES[maxX >>> shift & 0xff] * sx;
+            if (t1 > t2) {
+                double temp = t1;
+                t1 = t2;
+                t2 = temp;
+            }
+            if (t1 > near) near = t1;
+            if (t2 < far) far = t2;
+
+            t1 = cy + STEP_VALUES[minY >>> shift & 0xff] * sy;
+            t2 = cy + STEP_VALUES[maxY >>> shift & 0xff] * sy;
+            if (t1 > t2) {
+                double temp = t1;
+                t1 = t2;
+                t2 = temp;
+            }
+            if (t1 > near) near = t1;
+            if (t2 < far) far = t2;
+
+            t1 = cz + STEP_VALUES[minZ >>> shift & 0xff] * sz;
+            t2 = cz + STEP_VALUES[maxZ >>> shift & 0xff] * sz;
+            if (t1 > t2) {
+                double temp = t1;
+                t1 = t2;
+                t2 = temp;
+            }
+            if (t1 > near) near = t1;
+            if (t2 < far) far = t2;
+
+            distances[child] = near <= far ? near : Double.POSITIVE_INFINITY;
+        }
+        return child;
+    }
+
+    /**
+     * Collapses a binary tree into nodes of up to four children with quantized boxes.
+     */
+    private final class Collapser {
+        private final double[] binaryBounds;
+        private final int[] binaryData;
+
+        private int[] nodes;
+        private int nodeCount;
+        private int depth;
+
+        private double interiorArea;
+        private double leafArea;
+        private int leafCount;
+        private int maxLeafSize;
+
+        private Collapser(double[] binaryBounds, int[] binaryData, int capacity) {
+            this.binaryBounds = binaryBounds;
+            this.binaryData = binaryData;
+            nodes = new int[capacity * NODE_SIZE];
+        }
+
+        /**
+         * Adds a node whose box is the given box and returns its index.
+         */
+        private int addNode(double[] box, int offset) {
+            if (nodeCount * NODE_SIZE == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            }
+            int node = nodeCount++;
+
+            for (int axis = 0; axis < 3; axis++) {
+                double min = box[offset + axis];
+                double max = box[offset + 3 + axis];
+                // the corner is below and the last step above every bound so that the rounded boxes hold the exact ones
+                float corner = Math.nextDown((float) min);
+                while (corner > min) {
+                    corner = Math.nextDown(corner);
+                }
+                float scale = (float) ((max - corner) / STEPS);
+                if (!(scale > 0)) {
+                    scale = Float.MIN_VALUE;
+                }
+                while (corner + STEPS * (double) scale < max) {
+                    scale = Math.nextUp(scale);
+                }
+                nodes[node * NODE_SIZE + CORNER + axis] = Float.floatToRawIntBits(corner);
+                nodes[node * NODE_SIZE + SCALE + axis] = Float.floatToRawIntBits(scale);
+            }
+            interiorArea += HierarchyBuilder.area(box, offset);
+            return node;
+        }
+
+        /**
+         * Collapses the subtree below a binary interior node into a node and returns its index.
+         */
+        private int collapse(int binaryNode, int level) {
+            depth = Math.max(depth, level);
+
+            // open the largest interior child until there are four children or only leaves
+            List<Integer> open = new ArrayList<>(WIDTH);
+            open.add(binaryNode);
+            while (open.size() < WIDTH) {
+                int largest = -1;
+                double largestArea = -1;
+                for (int i = 0; i < open.size(); i++) {
+                    int candidate = open.get(i);
+                    double area = HierarchyBuilder.area(binaryBounds, candidate * 6);
+                    if (binaryData[candidate * 2 + 1] == 0 && area > largestArea) {
+                        largest = i;
+                        largestArea = area;
+                    }
+                }
+                if (largest == -1) {
+                    break;
+                }
+                int opened = open.remove(largest);
+                open.add(largest, binaryData[opened * 2]);
+                open.add(largest, opened + 1);
+            }
+
+            int node = addNode(binaryBounds, binaryNode * 6);
+            for (int child = 0; child < open.size(); child++) {
+                int binaryChild = open.get(child);
+                int count = binaryData[binaryChild * 2 + 1];
+                int ref;
+                if (count == 0) {
+                    ref = collapse(binaryChild, level + 1);
+                } else {
+                    ref = leaf(binaryData[binaryChild * 2], count, level + 1);
+                }
+                setChild(node, child, ref, binaryBounds, binaryChild * 6);
+            }
+            return node;
+        }
+
+        /**
+         * Returns a reference to the primitives between offset and offset + count, adding nodes below to hold them if
+         * there are too many for one leaf.
+         */
+        private int leaf(int offset, int count, int level) {
+            depth = Math.max(depth, level);
+            if (count <= MAX_LEAF_SIZE) {
+                leafCount++;
+                maxLeafSize = Math.max(maxLeafSize, count);
+                return LEAF | offset << 5 | count;
+            }
+
+            double[] box = getBounds(offset, count);
+            int node = addNode(box, 0);
+            int part = (count + WIDTH - 1) / WIDTH;
+            for (int child = 0; child * part < count; child++) {
+                int childOffset = offset + child * part;
+                int childCount = Math.min(part, count - child * part);
+                int ref = leaf(childOffset, childCount, level + 1);
+                setChild(node, child, ref, getBounds(childOffset, childCount), 0);
+            }
+            return node;
+        }
+
+        private void setChild(int node, int child, int ref, double[] box, int offset) {
+            int base = node * NODE_SIZE;
+            nodes[base + CHILDREN + child] = ref;
+            double[] quantized = new double[6];
+            for (int axis = 0; axis < 3; axis++) {
+                double corner = Float.intBitsToFloat(nodes[base + CORNER + axis]);
+                double scale = Float.intBitsToFloat(nodes[base + SCALE + axis]);
+
+                int low = (int) Math.max(0, Math.floor((box[offset + axis] - corner) / scale));
+                while (low > 0 && corner + low * scale > box[offset + axis]) {
+                    low--;
+                }
+                int high = (int) Math.min(STEPS, Math.ceil((box[offset + 3 + axis] - corner) / scale));
+                while (high < STEPS && corner + high * scale < box[offset + 3 + axis]) {
+                    high++;
+                }
+                nodes[base + BOUNDS + axis] |= low << child * 8;
+                nodes[base + BOUNDS + 3 + axis] |= high << child * 8;
+                quantized[axis] = corner + low * scale;
+                quantized[3 + axis] = corner + high * scale;
+            }
+            if (ref < 0) {
+                leafArea += HierarchyBuilder.area(quantized, 0) * (ref & MAX_LEAF_SIZE);
+            }
+        }
+
+        private double[] getBounds(int offset, int count) {
+            double[] box = {
+                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            for (int i = offset; i < offset + count; i++) {
+                BoundingBox bounds = primitives.getBounds(order[i]);
+                for (int axis = 0; axis < 3; axis++) {
+                    box[axis] = Math.min(box[axis], bounds.getMin(axis));
+                    box[3 + axis] = Math.max(box[3 + axis], bounds.getMax(axis));
+                }
+            }
+            return box;
+        }
+    }
+}
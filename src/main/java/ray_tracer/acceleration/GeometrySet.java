@@ -0,0 +1,116 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.Precision;
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.GeometryBatch;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+import java.util.Collection;
+
+/**
+ * A {@link PrimitiveSet} backed by an array of {@link Geometry}.
+ *
+ * <p>The spheres and triangles are also packed into a {@link GeometryBatch} so that the primitives of a leaf are tested
+ * together from flat arrays rather than one object at a time.
+ *
+ * Created by William Martin III on 1/16/16.
+ */
+public class GeometrySet implements PrimitiveSet {
+    private final Geometry[] geometry;
+    private final GeometryBatch batch;
+
+    public GeometrySet(Collection<Geometry> geometry) {
+        this(geometry.toArray(new Geometry[geometry.size()]));
+    }
+
+    /**
+     * Creates a set backed by the given array, which must not be changed afterwards.
+     *
+     * @param geometry The geometry, each indexed by its position in the array
+     */
+    public GeometrySet(Geometry[] geometry) {
+        this(geometry, Precision.DOUBLE);
+    }
+
+    /**
+     * Creates a set backed by the given array, which must not be changed afterwards, whose spheres and triangles are
+     * packed and tested in the given precision.
+     *
+     * @param geometry The geometry, each indexed by its position in the array
+     * @param precision The precision of the packed spheres and triangles
+     */
+    public GeometrySet(Geometry[] geometry, Precision precision) {
+        this(geometry, new GeometryBatch(geometry, precision));
+    }
+
+    private GeometrySet(Geometry[] geometry, GeometryBatch batch) {
+        this.geometry = geometry;
+        this.batch = batch;
+    }
+
+    /**
+     * Returns a set backed by the given array, which must not be changed afterwards, holding the same geometry as this
+     * set except that some may have been replaced. Only the replaced geometry is packed again, as
+     * {@link GeometryBatch#update} does, and this set is left as it was.
+     *
+     * @param geometry The geometry, indexed as that of this set
+     * @param moved The indices of the geometry which may have been replaced
+     * @param count The number of indices in moved to use
+     * @return The set of the given geometry
+     * @throws IllegalArgumentException if there is not as much geometry as in this set
+     */
+    public GeometrySet update(Geometry[] geometry, int[] moved, int count) {
+        return new GeometrySet(geometry, batch.update(geometry, moved, count));
+    }
+
+    /**
+     * Returns the geometry at the given index.
+     *
+     * @param index The index of the geometry
+     * @return The geometry
+     */
+    public Geometry get(int index) {
+        return geometry[index];
+    }
+
+    @Override
+    public int size() {
+        return geometry.length;
+    }
+
+    @Override
+    public BoundingBox getBounds(int index) {
+        return geometry[index].getBounds();
+    }
+
+    @Override
+    public boolean intersect(int index, Ray ray, RayIntersect intersect) {
+        if (geometry[index].intersect(ray, intersect)) {
+            intersect.setGeometryId(index);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean intersects(int index, Ray ray, double minDistance, double maxDistance) {
+        return geometry[index].intersects(ray, minDistance, maxDistance);
+    }
+
+    @Override
+    public boolean intersect(int[] indices, int start, int end, Ray ray, RayIntersect intersect) {
+        int found = batch.intersect(indices, start, end, ray, intersect);
+        if (found < 0) {
+            return false;
+        }
+        intersect.setGeometryId(found);
+        return true;
+    }
+
+    @Override
+    public boolean intersects(int[] indices, int start, int end, Ray ray, double minDistance, double maxDistance) {
+        return batch.intersects(indices, start, end, ray, minDistance, maxDistance);
+    }
+}
@@ -0,0 +1,502 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.geometry.BoundingBox;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Builds the tree of a {@link BoundingVolumeHierarchy} with the binned surface area heuristic, in parallel on the
+ * common fork-join pool.
+ *
+ * <p>The primitives are first sorted by the Morton code of their centers, which orders them along a curve through space
+ * so that primitives close together in space are close together in memory while the tree is built and in the order
+ * its leaves refer to them. Each node is then split where the surface area heuristic says rays will be cheapest to
+ * trace: the centers are sorted into a fixed number of bins along the axis in which they are most spread out and every
+ * boundary between bins is tried, the expected cost of a split being the area of each side times the number of
+ * primitives on it. Nodes which are cheaper to test whole are left as leaves.
+ *
+ * <p>Large nodes build their two children as separate tasks. Every subtree small enough to be built on one thread is
+ * built into arrays of its own in the layout of the finished tree, and once every task is done the subtrees are copied
+ * into place after the few nodes above them.
+ *
+ * Created by William Martin III on 1/29/16.
+ */
+final class HierarchyBuilder {
+    // the relative costs of testing a ray against a node's box and against a primitive
+    static final double TRAVERSAL_COST = 1;
+    static final double INTERSECT_COST = 1;
+
+    // nodes this small are always leaves, and nodes up to MAX_SAH_LEAF_SIZE are if no split is cheaper
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final int MAX_SAH_LEAF_SIZE = 8;
+    private static final int BIN_COUNT = 16;
+    // nodes with fewer primitives than this are built on one thread
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private final int maxDepth;
+    private final int parallelThreshold;
+
+    // the primitive at each position, and its box and center, all in the order the tree is built in
+    private final int[] order;
+    private final double[] bounds;
+    private final double[] centers;
+
+    private final Subtree root;
+
+    /**
+     * Builds a tree over the given primitives.
+     *
+     * @param primitives The primitives to build the tree over
+     * @param maxDepth The number of levels the tree may have, below which every node is a leaf
+     */
+    HierarchyBuilder(PrimitiveSet primitives, int maxDepth) {
+        this(primitives, maxDepth, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Builds a tree over the given primitives, working in parallel only on sets and nodes of at least the given number
+     * of primitives. The tree is the same whatever the threshold.
+     *
+     * @param primitives The primitives to build the tree over
+     * @param maxDepth The number of levels the tree may have, below which every node is a leaf
+     * @param parallelThreshold The fewest primitives worked on in parallel
+     */
+    HierarchyBuilder(PrimitiveSet primitives, int maxDepth, int parallelThreshold) {
+        this.maxDepth = maxDepth;
+        this.parallelThreshold = parallelThreshold;
+        int size = primitives.size();
+
+        double[] primitiveBounds = new double[size * 6];
+        parallel(size).forEach(i -> {
+            BoundingBox box = primitives.getBounds(i);
+            for (int axis = 0; axis < 3; axis++) {
+                primitiveBounds[i * 6 + axis] = box.getMin(axis);
+                primitiveBounds[i * 6 + 3 + axis] = box.getMax(axis);
+            }
+        });
+
+        order = sortByMortonCode(primitiveBounds);
+        bounds = new double[size * 6];
+        centers = new double[size * 3];
+        parallel(size).forEach(i -> {
+            int primitive = order[i];
+            System.arraycopy(primitiveBounds, primitive * 6, bounds, i * 6, 6);
+            for (int axis = 0; axis < 3; axis++) {
+                centers[i * 3 + axis] = (bounds[i * 6 + axis] + bounds[i * 6 + 3 + axis]) / 2;
+            }
+        });
+
+        if (size >= parallelThreshold) {
+            root = ForkJoinPool.commonPool().invoke(new BuildTask(0, size, 0));
+        } else {
+            root = build(0, size, 0);
+        }
+    }
+
+    /**
+     * Returns the primitive referred to by each position of the leaves.
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    int getNodeCount() {
+        return root.nodeCount;
+    }
+
+    /**
+     * Writes the finished tree into arrays laid out as those of {@link BoundingVolumeHierarchy}.
+     */
+    void write(double[] nodeBounds, int[] nodeData, int[] parents, int[] leaves) {
+        if (order.length == 0) {
+            // an empty leaf, which would otherwise look like an interior node
+            parents[0] = -1;
+            return;
+        }
+        root.write(0, -1, nodeBounds, nodeData, parents, leaves, order);
+    }
+
+    private IntStream parallel(int size) {
+        IntStream indices = IntStream.range(0, size);
+        return size >= parallelThreshold ? indices.parallel() : indices;
+    }
+
+    /**
+     * Returns the primitives in order of the Morton code of their centers within the bounds of every center.
+     */
+    private int[] sortByMortonCode(double[] primitiveBounds) {
+        int size = primitiveBounds.length / 6;
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = 0; i < size; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double center = (primitiveBounds[i * 6 + axis] + primitiveBounds[i * 6 + 3 + axis]) / 2;
+                min[axis] = Math.min(min[axis], center);
+                max[axis] = Math.max(max[axis], center);
+            }
+        }
+
+        // the code in the high bits and the primitive in the low so that sorting the keys sorts the primitives
+        long[] keys = new long[size];
+        parallel(size).forEach(i -> {
+            long code = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                double center = (primitiveBounds[i * 6 + axis] + primitiveBounds[i * 6 + 3 + axis]) / 2;
+                double extent = max[axis] - min[axis];
+                int cell = extent > 0 ? (int) Math.min(1023, (center - min[axis]) / extent * 1024) : 0;
+                code |= spreadBits(cell) << (2 - axis);
+            }
+            keys[i] = code << 32 | i;
+        });
+        if (size >= parallelThreshold) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Spreads the low ten bits of a value out so that two zero bits follow each.
+     */
+    private static long spreadBits(int value) {
+        long bits = value & 0x3ff;
+        bits = (bits | bits << 16) & 0x30000ffL;
+        bits = (bits | bits << 8) & 0x300f00fL;
+        bits = (bits | bits << 4) & 0x30c30c3L;
+        bits = (bits | bits << 2) & 0x9249249L;
+        return bits;
+    }
+
+    /**
+     * Builds the subtree over the primitives between start and end, forking tasks for its children while it is large.
+     */
+    private Subtree build(int start, int end, int depth) {
+        double[] box = new double[6];
+        Split split = findSplit(start, end, depth, box);
+        if (split == null || end - start < parallelThreshold) {
+            Chunk chunk = new Chunk(Math.max(1, (end - start) / 2));
+            buildChunk(chunk, start, end, depth, box, split);
+            return chunk;
+        }
+
+        int middle = partition(start, end, split);
+        BuildTask left = new BuildTask(start, middle, depth + 1);
+        BuildTask right = new BuildTask(middle, end, depth + 1);
+        ForkJoinTask.invokeAll(left, right);
+        return new Branch(box, left.join(), right.join());
+    }
+
+    /**
+     * Builds the subtree over the primitives between start and end on this thread in depth-first order, so that the
+     * left child of every node directly follows it.
+     */
+    private void buildChunk(Chunk chunk, int start, int end, int depth, double[] box, Split split) {
+        int node = chunk.add(box);
+        if (split == null) {
+            chunk.data[node * 2] = start;
+            chunk.data[node * 2 + 1] = end - start;
+            return;
+        }
+
+        int middle = partition(start, end, split);
+        double[] childBox = new double[6];
+        buildChunk(chunk, start, middle, depth + 1, childBox, findSplit(start, middle, depth + 1, childBox));
+        int right = chunk.nodeCount;
+        buildChunk(chunk, middle, end, depth + 1, childBox, findSplit(middle, end, depth + 1, childBox));
+        chunk.data[node * 2] = right;
+        chunk.data[node * 2 + 1] = 0;
+    }
+
+    /**
+     * Fills box with the bounds of the primitives between start and end and returns where they should be split, or
+     * null if they should be a leaf.
+     */
+    private Split findSplit(int start, int end, int depth, double[] box) {
+        double[] centerMin = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] centerMax = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = Double.POSITIVE_INFINITY;
+            box[3 + axis] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = start; i < end; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(box[axis], bounds[i * 6 + axis]);
+                box[3 + axis] = Math.max(box[3 + axis], bounds[i * 6 + 3 + axis]);
+                centerMin[axis] = Math.min(centerMin[axis], centers[i * 3 + axis]);
+                centerMax[axis] = Math.max(centerMax[axis], centers[i * 3 + axis]);
+            }
+        }
+
+        // the stack used while querying must be able to hold one node per level
+        int count = end - start;
+        if (count <= MAX_LEAF_SIZE || depth >= maxDepth - 1) {
+            return null;
+        }
+
+        // bin along the axis in which the centers are most spread out, which is nearly always where the best split
+        // is found and takes a third of the time of trying every axis
+        int axis = 0;
+        for (int i = 1; i < 3; i++) {
+            if (centerMax[i] - centerMin[i] > centerMax[axis] - centerMin[axis]) {
+                axis = i;
+            }
+        }
+        double extent = centerMax[axis] - centerMin[axis];
+        if (!(extent > 0)) {
+            // every center is in the same place so any split is as good as another
+            return new Split(-1, 0, 0, 0);
+        }
+
+        int[] binCounts = new int[BIN_COUNT];
+        double[] binBounds = new double[BIN_COUNT * 6];
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            reset(binBounds, bin * 6);
+        }
+        double scale = BIN_COUNT / extent;
+        for (int i = start; i < end; i++) {
+            int bin = getBin(centers[i * 3 + axis], centerMin[axis], scale);
+            binCounts[bin]++;
+            grow(binBounds, bin * 6, bounds, i * 6);
+        }
+
+        // the area of everything in or after each bin, then every split from the left
+        double[] rightAreas = new double[BIN_COUNT];
+        double[] sweep = new double[6];
+        reset(sweep, 0);
+        for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+            grow(sweep, 0, binBounds, bin * 6);
+            rightAreas[bin] = area(sweep, 0);
+        }
+
+        // costs are left multiplied by the area of the node, which makes no difference to which is least
+        int bestBin = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        reset(sweep, 0);
+        int leftCount = 0;
+        for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+            grow(sweep, 0, binBounds, bin * 6);
+            leftCount += binCounts[bin];
+            int rightCount = count - leftCount;
+            if (leftCount == 0 || rightCount == 0) {
+                continue;
+            }
+            double cost = TRAVERSAL_COST * area(box, 0)
+                    + INTERSECT_COST * (area(sweep, 0) * leftCount + rightAreas[bin + 1] * rightCount);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestBin = bin;
+            }
+        }
+
+        if (bestBin == -1) {
+            return new Split(-1, 0, 0, 0);
+        }
+        if (count <= MAX_SAH_LEAF_SIZE && INTERSECT_COST * count * area(box, 0) <= bestCost) {
+            return null;
+        }
+        return new Split(axis, bestBin, centerMin[axis], scale);
+    }
+
+    /**
+     * Moves the primitives between start and end which belong on the left of the split before those which belong on
+     * the right and returns the position of the first on the right.
+     */
+    private int partition(int start, int end, Split split) {
+        if (split.axis == -1) {
+            return (start + end) >>> 1;
+        }
+
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            if (getBin(centers[i * 3 + split.axis], split.min, split.scale) <= split.bin) {
+                i++;
+            } else {
+                swap(i, j--);
+            }
+        }
+        // rounding can only put a center in a different bin than when binned if the bins were computed differently
+        return i == start || i == end ? (start + end) >>> 1 : i;
+    }
+
+    private void swap(int a, int b) {
+        int primitive = order[a];
+        order[a] = order[b];
+        order[b] = primitive;
+        for (int k = 0; k < 6; k++) {
+            double temp = bounds[a * 6 + k];
+            bounds[a * 6 + k] = bounds[b * 6 + k];
+            bounds[b * 6 + k] = temp;
+        }
+        for (int k = 0; k < 3; k++) {
+            double temp = centers[a * 3 + k];
+            centers[a * 3 + k] = centers[b * 3 + k];
+            centers[b * 3 + k] = temp;
+        }
+    }
+
+    private static int getBin(double center, double min, double scale) {
+        return Math.min(BIN_COUNT - 1, (int) ((center - min) * scale));
+    }
+
+    private static void reset(double[] box, int offset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[offset + axis] = Double.POSITIVE_INFINITY;
+            box[offset + 3 + axis] = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    private static void grow(double[] box, int offset, double[] other, int otherOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[offset + axis] = Math.min(box[offset + axis], other[otherOffset + axis]);
+            box[offset + 3 + axis] = Math.max(box[offset + 3 + axis], other[otherOffset + 3 + axis]);
+        }
+    }
+
+    /**
+     * Returns the surface area of a box, or zero if it is empty.
+     */
+    static double area(double[] box, int offset) {
+        double x = box[offset + 3] - box[offset];
+        double y = box[offset + 4] - box[offset + 1];
+        double z = box[offset + 5] - box[offset + 2];
+        if (!(x >= 0 && y >= 0 && z >= 0)) {
+            return 0;
+        }
+        return 2 * (x * y + y * z + z * x);
+    }
+
+    /**
+     * Where to split a node: after the given bin of the centers along an axis, or in the middle if the axis is -1.
+     */
+    private static final class Split {
+        private final int axis;
+        private final int bin;
+        private final double min;
+        private final double scale;
+
+        private Split(int axis, int bin, double min, double scale) {
+            this.axis = axis;
+            this.bin = bin;
+            this.min = min;
+            this.scale = scale;
+        }
+    }
+
+    private final class BuildTask extends RecursiveTask<Subtree> {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final int depth;
+
+        private BuildTask(int start, int end, int depth) {
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Subtree compute() {
+            return build(start, end, depth);
+        }
+    }
+
+    /**
+     * A part of the tree built by one task.
+     */
+    private abstract static class Subtree {
+        int nodeCount;
+
+        /**
+         * Writes the subtree with its root at the given node.
+         */
+        abstract void write(int node, int parent, double[] nodeBounds, int[] nodeData, int[] parents, int[] leaves,
+                            int[] order);
+    }
+
+    /**
+     * A node built by a task which forked tasks for its children.
+     */
+    private static final class Branch extends Subtree {
+        private final double[] box;
+        private final Subtree left;
+        private final Subtree right;
+
+        private Branch(double[] box, Subtree left, Subtree right) {
+            this.box = box;
+            this.left = left;
+            this.right = right;
+            nodeCount = 1 + left.nodeCount + right.nodeCount;
+        }
+
+        @Override
+        void write(int node, int parent, double[] nodeBounds, int[] nodeData, int[] parents, int[] leaves,
+                   int[] order) {
+            System.arraycopy(box, 0, nodeBounds, node * 6, 6);
+            parents[node] = parent;
+            int rightNode = node + 1 + left.nodeCount;
+            nodeData[node * 2] = rightNode;
+            nodeData[node * 2 + 1] = 0;
+            left.write(node + 1, node, nodeBounds, nodeData, parents, leaves, order);
+            right.write(rightNode, node, nodeBounds, nodeData, parents, leaves, order);
+        }
+    }
+
+    /**
+     * A subtree built on one thread into arrays laid out as those of the finished tree but numbered from zero.
+     */
+    private static final class Chunk extends Subtree {
+        private double[] bounds;
+        private int[] data;
+
+        private Chunk(int capacity) {
+            bounds = new double[capacity * 6];
+            data = new int[capacity * 2];
+        }
+
+        private int add(double[] box) {
+            if (nodeCount * 2 == data.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            System.arraycopy(box, 0, bounds, nodeCount * 6, 6);
+            return nodeCount++;
+        }
+
+        @Override
+        void write(int node, int parent, double[] nodeBounds, int[] nodeData, int[] parents, int[] leaves,
+                   int[] order) {
+            System.arraycopy(bounds, 0, nodeBounds, node * 6, nodeCount * 6);
+            for (int i = 0; i < nodeCount; i++) {
+                int count = data[i * 2 + 1];
+                if (count > 0) {
+                    nodeData[(node + i) * 2] = data[i * 2];
+                    for (int j = data[i * 2]; j < data[i * 2] + count; j++) {
+                        leaves[order[j]] = node + i;
+                    }
+                } else {
+                    nodeData[(node + i) * 2] = node + data[i * 2];
+                }
+                nodeData[(node + i) * 2 + 1] = count;
+            }
+            parents[node] = parent;
+            for (int i = 0; i < nodeCount; i++) {
+                if (data[i * 2 + 1] == 0) {
+                    parents[node + i + 1] = node + i;
+                    parents[node + data[i * 2]] = node + i;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+/**
+ * An {@link Accelerator} which simply tests every primitive.
+ *
+ * <p>This has no build cost and is the fastest choice for very small scenes, but its cost grows linearly with the
+ * number of primitives.
+ *
+ * Created by William Martin III on 1/16/16.
+ */
+public class LinearAccelerator implements Accelerator {
+    private final PrimitiveSet primitives;
+    // every index in order, so that every primitive is tested as one batch
+    private final int[] indices;
+    private final AcceleratorStats stats;
+
+    public LinearAccelerator(PrimitiveSet primitives) {
+        this.primitives = primitives;
+        indices = new int[primitives.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        stats = new AcceleratorStats(0, 0, primitives.size(), indices.length * 4L);
+    }
+
+    @Override
+    public boolean findClosest(Ray ray, RayIntersect intersect) {
+        return primitives.intersect(indices, 0, indices.length, ray, intersect);
+    }
+
+    @Override
+    public boolean isOccluded(Ray ray, double minDistance, double maxDistance) {
+        return primitives.intersects(indices, 0, indices.length, ray, minDistance, maxDistance);
+    }
+
+    @Override
+    public AcceleratorStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,96 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+/**
+ * An indexed collection of primitives which an {@link Accelerator} may be built over.
+ *
+ * <p>Primitives are referred to only by their index so that implementations are free to store them however is
+ * cheapest, be it as {@link ray_tracer.geometry.Geometry} objects or as packed arrays.
+ *
+ * Created by William Martin III on 1/16/16.
+ */
+public interface PrimitiveSet {
+
+    /**
+     * Returns the number of primitives in the set.
+     *
+     * @return The number of primitives
+     */
+    int size();
+
+    /**
+     * Returns a box which fully contains the primitive at the given index.
+     *
+     * @param index The index of the primitive
+     * @return The bounds of the primitive
+     */
+    BoundingBox getBounds(int index);
+
+    /**
+     * Records where the ray intersects the primitive at the given index if that is closer to the ray's origin than the
+     * distance the record already holds.
+     *
+     * @param index The index of the primitive
+     * @param ray The ray to find the intersect
+     * @param intersect The record to fill, left untouched if nothing closer is found
+     * @return Whether the record was filled
+     */
+    boolean intersect(int index, Ray ray, RayIntersect intersect);
+
+    /**
+     * Returns whether the ray intersects the primitive at the given index between the given distances (inclusive).
+     *
+     * @param index The index of the primitive
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether an intersect was found within the bounds
+     */
+    boolean intersects(int index, Ray ray, double minDistance, double maxDistance);
+
+    /**
+     * Records the closest intersect of the ray with several primitives, as {@link #intersect(int, Ray, RayIntersect)}
+     * does for each in turn, such as the primitives of a leaf of a hierarchy.
+     *
+     * <p>Sets which store their primitives in packed arrays should override this to test them all in one loop which
+     * reads the ray only once.
+     *
+     * @param indices An array holding the indices of the primitives
+     * @param start The position in the array of the first primitive to test
+     * @param end The position in the array after the last primitive to test
+     * @param ray The ray to find the intersect
+     * @param intersect The record to fill, left untouched if nothing closer is found
+     * @return Whether the record was filled
+     */
+    default boolean intersect(int[] indices, int start, int end, Ray ray, RayIntersect intersect) {
+        boolean found = false;
+        for (int i = start; i < end; i++) {
+            found |= intersect(indices[i], ray, intersect);
+        }
+        return found;
+    }
+
+    /**
+     * Returns whether the ray intersects any of several primitives between the given distances (inclusive), as
+     * {@link #intersects(int, Ray, double, double)} does for each in turn.
+     *
+     * @param indices An array holding the indices of the primitives
+     * @param start The position in the array of the first primitive to test
+     * @param end The position in the array after the last primitive to test
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether an intersect was found within the bounds
+     */
+    default boolean intersects(int[] indices, int start, int end, Ray ray, double minDistance, double maxDistance) {
+        for (int i = start; i < end; i++) {
+            if (intersects(indices[i], ray, minDistance, maxDistance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
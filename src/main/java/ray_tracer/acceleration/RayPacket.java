@@ -0,0 +1,165 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.Vector3;
+import ray_tracer.geometry.Ray;
+
+/**
+ * A group of up to {@link #MAX_SIZE} rays which are traced together, such as the rays from the lens through
+ * neighbouring pixels or the shadow rays from neighbouring surfaces toward one light.
+ *
+ * <p>Rays which start close together and point almost the same way pass through mostly the same nodes of an
+ * accelerator, so an accelerator may walk its nodes once for the whole packet, testing each node against every ray
+ * which could still reach it, rather than once for every ray. The origin and inverse direction of each ray are kept in
+ * flat arrays along with the distances between which each ray counts intersects.
+ *
+ * <p>The packet also keeps the range each coordinate of the origins and inverse directions spans over all of its rays.
+ * When every ray heads the same way along each axis these ranges bound where any ray of the packet can enter and leave
+ * a box, so a box can be culled for the whole packet with one test much like that of a single ray, which is what keeps
+ * the packet from paying for each of its rays at boxes none of them hits.
+ *
+ * <p>A packet is meant to be reused by one thread for packet after packet.
+ *
+ * Created by William Martin III on 1/30/16.
+ */
+public final class RayPacket {
+    /**
+     * The most rays a packet can hold, which is also the number of bits in a mask of rays.
+     */
+    public static final int MAX_SIZE = 16;
+
+    private final Ray[] rays = new Ray[MAX_SIZE];
+    final double[] ox = new double[MAX_SIZE];
+    final double[] oy = new double[MAX_SIZE];
+    final double[] oz = new double[MAX_SIZE];
+    final double[] ix = new double[MAX_SIZE];
+    final double[] iy = new double[MAX_SIZE];
+    final double[] iz = new double[MAX_SIZE];
+    final double[] minDistances = new double[MAX_SIZE];
+    final double[] maxDistances = new double[MAX_SIZE];
+    private int size;
+
+    // the range of the origins and inverse directions over every ray, and of their distances
+    final double[] originMin = new double[3];
+    final double[] originMax = new double[3];
+    final double[] inverseMin = new double[3];
+    final double[] inverseMax = new double[3];
+    double leastDistance;
+    double greatestDistance;
+    // whether the inverse directions of every ray are finite and of the same sign along each axis
+    boolean coherent;
+
+    /**
+     * Empties the packet so that it may be filled again.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            rays[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds a ray whose closest intersect is wanted.
+     *
+     * @param ray The ray to add
+     * @return The position of the ray in the packet
+     * @throws IllegalStateException if the packet is full
+     */
+    public int add(Ray ray) {
+        return add(ray, 0, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Adds a ray which only counts intersects between the given distances from its origin (inclusive).
+     *
+     * @param ray The ray to add
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return The position of the ray in the packet
+     * @throws IllegalStateException if the packet is full
+     */
+    public int add(Ray ray, double minDistance, double maxDistance) {
+        if (size == MAX_SIZE) {
+            throw new IllegalStateException("A packet holds at most " + MAX_SIZE + " rays.");
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double x = position.getX();
+        double y = position.getY();
+        double z = position.getZ();
+        double inverseX = 1.0 / angle.getX();
+        double inverseY = 1.0 / angle.getY();
+        double inverseZ = 1.0 / angle.getZ();
+        rays[size] = ray;
+        ox[size] = x;
+        oy[size] = y;
+        oz[size] = z;
+        ix[size] = inverseX;
+        iy[size] = inverseY;
+        iz[size] = inverseZ;
+        minDistances[size] = minDistance;
+        maxDistances[size] = maxDistance;
+
+        if (size == 0) {
+            originMin[0] = originMax[0] = x;
+            originMin[1] = originMax[1] = y;
+            originMin[2] = originMax[2] = z;
+            inverseMin[0] = inverseMax[0] = inverseX;
+            inverseMin[1] = inverseMax[1] = inverseY;
+            inverseMin[2] = inverseMax[2] = inverseZ;
+            leastDistance = minDistance;
+            greatestDistance = maxDistance;
+            coherent = Double.isFinite(inverseX) && Double.isFinite(inverseY) && Double.isFinite(inverseZ);
+        } else {
+            extend(0, x, inverseX);
+            extend(1, y, inverseY);
+            extend(2, z, inverseZ);
+            if (minDistance < leastDistance) leastDistance = minDistance;
+            if (maxDistance > greatestDistance) greatestDistance = maxDistance;
+        }
+
+        return size++;
+    }
+
+    /**
+     * Widens the ranges along an axis to take in another ray, which leaves the packet coherent only if the ray heads
+     * the same way along the axis as every other.
+     */
+    private void extend(int axis, double origin, double inverse) {
+        if (origin < originMin[axis]) originMin[axis] = origin;
+        if (origin > originMax[axis]) originMax[axis] = origin;
+        if (inverse < inverseMin[axis]) inverseMin[axis] = inverse;
+        if (inverse > inverseMax[axis]) inverseMax[axis] = inverse;
+        coherent &= Double.isFinite(inverse) && (inverseMin[axis] > 0) == (inverseMax[axis] > 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Ray getRay(int index) {
+        return rays[index];
+    }
+
+    public double getMinDistance(int index) {
+        return minDistances[index];
+    }
+
+    public double getMaxDistance(int index) {
+        return maxDistances[index];
+    }
+
+    /**
+     * Returns a mask with a bit set for every ray in the packet.
+     *
+     * @return The mask of every ray
+     */
+    public int getMask() {
+        return (1 << size) - 1;
+    }
+}
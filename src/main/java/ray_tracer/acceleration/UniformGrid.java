@@ -0,0 +1,341 @@
+package ray_tracer.acceleration;
+
+import ray_tracer.Vector3;
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * An {@link Accelerator} which divides the bounds of the primitives into a grid of equal cells, each listing the
+ * primitives whose boxes overlap it.
+ *
+ * <p>A grid takes time linear in the number of primitives to build, with no sorting, so it suits scenes in which
+ * everything moves every frame and must be built again each time. A ray walks the cells it passes through in order
+ * with a 3D digital differential analyzer and stops at the first cell which ends beyond the closest intersect found,
+ * since nothing in a later cell can be closer. Grids do poorly when primitives are very unevenly spread out, where a
+ * {@link BoundingVolumeHierarchy} is the better choice.
+ *
+ * <p>The cells are stored as a flat array of the primitives of every cell in turn along with the offset of the first
+ * primitive of each cell. Primitives with unbounded boxes are kept aside and tested against every ray.
+ *
+ * <p>Large grids are built on several threads: the boxes are gathered, the primitives of each cell are counted and
+ * then written into the cells by several runs of primitives at once. Finding the bounds of the grid and summing the
+ * counts of the cells into offsets take a single pass each on the calling thread.
+ *
+ * Created by William Martin III on 1/28/16.
+ */
+public class UniformGrid implements Accelerator {
+    // the number of cells per primitive the resolution aims for
+    private static final double DENSITY = 2;
+    private static final int MAX_RESOLUTION = 256;
+    // below this many primitives the grid is built on the calling thread alone
+    private static final int PARALLEL_THRESHOLD = 4096;
+    // each run of primitives counted at once keeps a count for every cell, so their number is kept small
+    private static final int MAX_RUNS = 8;
+
+    private final PrimitiveSet primitives;
+
+    private final double[] min = new double[3];
+    private final double[] max = new double[3];
+    private final double[] cellSize = new double[3];
+    private final int[] resolution = new int[3];
+
+    // cellStart[c] to cellStart[c + 1] is the range of cellPrimitives listing the primitives of cell c
+    private final int[] cellStart;
+    private final int[] cellPrimitives;
+    private final int[] unbounded;
+
+    private final AcceleratorStats stats;
+
+    /**
+     * Builds a grid over the given primitives.
+     *
+     * @param primitives The primitives to be accelerated
+     */
+    public UniformGrid(PrimitiveSet primitives) {
+        long start = System.nanoTime();
+        this.primitives = primitives;
+
+        int size = primitives.size();
+        boolean parallel = size >= PARALLEL_THRESHOLD;
+        double[] bounds = new double[size * 6];
+        range(size, parallel).forEach(i -> {
+            BoundingBox box = primitives.getBounds(i);
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[i * 6 + axis] = box.getMin(axis);
+                bounds[i * 6 + 3 + axis] = box.getMax(axis);
+            }
+        });
+
+        int unboundedCount = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            min[axis] = Double.POSITIVE_INFINITY;
+            max[axis] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!isBounded(bounds, i)) {
+                unboundedCount++;
+                continue;
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], bounds[i * 6 + axis]);
+                max[axis] = Math.max(max[axis], bounds[i * 6 + 3 + axis]);
+            }
+        }
+        unbounded = new int[unboundedCount];
+        unboundedCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isBounded(bounds, i)) {
+                unbounded[unboundedCount++] = i;
+            }
+        }
+
+        int boundedCount = size - unbounded.length;
+        if (boundedCount == 0) {
+            resolution[0] = resolution[1] = resolution[2] = 0;
+        } else {
+            chooseResolution(boundedCount);
+        }
+        int cellCount = resolution[0] * resolution[1] * resolution[2];
+
+        // the primitives are split into runs which each count their primitives in every cell of their own, so runs
+        // are counted and scattered at once without sharing counters
+        int runs = parallel ? Math.min(Math.min(ForkJoinPool.getCommonPoolParallelism(), MAX_RUNS),
+                size / PARALLEL_THRESHOLD) : 1;
+        int[][] counts = new int[runs][cellCount];
+        int[] ranges = new int[size * 6];
+        range(counts.length, parallel).forEach(run -> {
+            int[] count = counts[run];
+            for (int i = getRunStart(run, counts.length, size); i < getRunStart(run + 1, counts.length, size); i++) {
+                if (!isBounded(bounds, i)) {
+                    continue;
+                }
+                for (int axis = 0; axis < 3; axis++) {
+                    ranges[i * 6 + axis] = getCell(bounds[i * 6 + axis], axis);
+                    ranges[i * 6 + 3 + axis] = getCell(bounds[i * 6 + 3 + axis], axis);
+                }
+                forEachCell(ranges, i, cell -> count[cell]++);
+            }
+        });
+
+        // turn the counts into offsets, giving each run of each cell the slots after those of the runs before it so
+        // that every cell lists its primitives in order
+        cellStart = new int[cellCount + 1];
+        range(cellCount, parallel).forEach(cell -> {
+            for (int[] count : counts) {
+                cellStart[cell + 1] += count[cell];
+            }
+        });
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        range(cellCount, parallel).forEach(cell -> {
+            int offset = cellStart[cell];
+            for (int[] count : counts) {
+                int primitivesInRun = count[cell];
+                count[cell] = offset;
+                offset += primitivesInRun;
+            }
+        });
+
+        cellPrimitives = new int[cellStart[cellCount]];
+        range(counts.length, parallel).forEach(run -> {
+            int[] next = counts[run];
+            for (int i = getRunStart(run, counts.length, size); i < getRunStart(run + 1, counts.length, size); i++) {
+                if (isBounded(bounds, i)) {
+                    int primitive = i;
+                    forEachCell(ranges, i, cell -> cellPrimitives[next[cell]++] = primitive);
+                }
+            }
+        });
+
+        long memory = (cellStart.length + cellPrimitives.length + unbounded.length) * 4L;
+        stats = new AcceleratorStats(System.nanoTime() - start, cellCount, cellPrimitives.length + unbounded.length,
+                memory);
+    }
+
+    @Override
+    public boolean findClosest(Ray ray, RayIntersect intersect) {
+        boolean found = false;
+        for (int primitive : unbounded) {
+            found |= primitives.intersect(primitive, ray, intersect);
+        }
+        return traverse(ray, 0, Double.POSITIVE_INFINITY, intersect) | found;
+    }
+
+    @Override
+    public boolean isOccluded(Ray ray, double minDistance, double maxDistance) {
+        for (int primitive : unbounded) {
+            if (primitives.intersects(primitive, ray, minDistance, maxDistance)) {
+                return true;
+            }
+        }
+        return traverse(ray, minDistance, maxDistance, null);
+    }
+
+    @Override
+    public AcceleratorStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Walks the cells the ray passes through between the given distances, either filling the record with the closest
+     * intersect or, without a record, returning as soon as anything is intersected.
+     */
+    private boolean traverse(Ray ray, double minDistance, double maxDistance, RayIntersect intersect) {
+        if (cellStart.length == 1) {
+            return false;
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double[] origin = {position.getX(), position.getY(), position.getZ()};
+        double[] direction = {angle.getX(), angle.getY(), angle.getZ()};
+
+        // clip the ray to the bounds of the grid
+        double near = minDistance;
+        double far = intersect != null ? Math.min(maxDistance, intersect.getDistance()) : maxDistance;
+        for (int axis = 0; axis < 3; axis++) {
+            if (direction[axis] == 0) {
+                if (origin[axis] < min[axis] || origin[axis] > max[axis]) {
+                    return false;
+                }
+                continue;
+            }
+            double t1 = (min[axis] - origin[axis]) / direction[axis];
+            double t2 = (max[axis] - origin[axis]) / direction[axis];
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+        }
+        if (near > far) {
+            return false;
+        }
+
+        int[] cell = new int[3];
+        int[] step = new int[3];
+        // the distance along the ray to the next cell boundary on each axis, and between boundaries
+        double[] next = new double[3];
+        double[] delta = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            cell[axis] = getCell(origin[axis] + direction[axis] * near, axis);
+            if (direction[axis] > 0) {
+                step[axis] = 1;
+                next[axis] = (min[axis] + (cell[axis] + 1) * cellSize[axis] - origin[axis]) / direction[axis];
+                delta[axis] = cellSize[axis] / direction[axis];
+            } else if (direction[axis] < 0) {
+                step[axis] = -1;
+                next[axis] = (min[axis] + cell[axis] * cellSize[axis] - origin[axis]) / direction[axis];
+                delta[axis] = -cellSize[axis] / direction[axis];
+            } else {
+                step[axis] = 0;
+                next[axis] = Double.POSITIVE_INFINITY;
+                delta[axis] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        boolean found = false;
+        while (true) {
+            int index = (cell[2] * resolution[1] + cell[1]) * resolution[0] + cell[0];
+            double exit = Math.min(next[0], Math.min(next[1], next[2]));
+
+            if (intersect == null) {
+                if (primitives.intersects(cellPrimitives, cellStart[index], cellStart[index + 1], ray, minDistance,
+                        maxDistance)) {
+                    return true;
+                }
+            } else {
+                found |= primitives.intersect(cellPrimitives, cellStart[index], cellStart[index + 1], ray, intersect);
+            }
+
+            // a primitive overlapping several cells may be hit beyond this one, where a later cell could hold
+            // something closer, so only a hit within this cell ends the walk
+            if (intersect != null) {
+                far = Math.min(far, intersect.getDistance());
+            }
+            if (exit >= far) {
+                return found;
+            }
+
+            int axis = next[0] == exit ? 0 : next[1] == exit ? 1 : 2;
+            cell[axis] += step[axis];
+            if (cell[axis] < 0 || cell[axis] >= resolution[axis]) {
+                return found;
+            }
+            next[axis] += delta[axis];
+        }
+    }
+
+    /**
+     * Picks the number of cells along each axis in proportion to the extent of the grid along it so that cells are
+     * roughly cubes and there are about DENSITY of them per primitive.
+     */
+    private void chooseResolution(int count) {
+        double[] extent = new double[3];
+        double largest = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            extent[axis] = max[axis] - min[axis];
+            largest = Math.max(largest, extent[axis]);
+        }
+        // flat or point-like scenes still need some thickness for the volume to be meaningful
+        double floor = largest > 0 ? largest * 1e-3 : 1;
+        double volume = 1;
+        for (int axis = 0; axis < 3; axis++) {
+            extent[axis] = Math.max(extent[axis], floor);
+            volume *= extent[axis];
+        }
+
+        double cellsPerUnit = Math.cbrt(DENSITY * count / volume);
+        for (int axis = 0; axis < 3; axis++) {
+            resolution[axis] = (int) Math.max(1, Math.min(MAX_RESOLUTION, Math.round(extent[axis] * cellsPerUnit)));
+            cellSize[axis] = (max[axis] - min[axis]) / resolution[axis];
+        }
+    }
+
+    /**
+     * Returns the cell along an axis which holds a coordinate, clamped to the grid.
+     */
+    private int getCell(double coordinate, int axis) {
+        if (cellSize[axis] == 0) {
+            return 0;
+        }
+        int cell = (int) ((coordinate - min[axis]) / cellSize[axis]);
+        return Math.max(0, Math.min(resolution[axis] - 1, cell));
+    }
+
+    private void forEachCell(int[] ranges, int primitive, IntConsumer action) {
+        int base = primitive * 6;
+        for (int z = ranges[base + 2]; z <= ranges[base + 5]; z++) {
+            for (int y = ranges[base + 1]; y <= ranges[base + 4]; y++) {
+                for (int x = ranges[base]; x <= ranges[base + 3]; x++) {
+                    action.accept((z * resolution[1] + y) * resolution[0] + x);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first primitive of a run when the primitives are split into the given number of runs.
+     */
+    private static int getRunStart(int run, int runs, int size) {
+        return (int) ((long) size * run / runs);
+    }
+
+    private static IntStream range(int size, boolean parallel) {
+        IntStream indices = IntStream.range(0, size);
+        return parallel ? indices.parallel() : indices;
+    }
+
+    private static boolean isBounded(double[] bounds, int primitive) {
+        for (int i = 0; i < 6; i++) {
+            double value = bounds[primitive * 6 + i];
+            if (Double.isInfinite(value) || Double.isNaN(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
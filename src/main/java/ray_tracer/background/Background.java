@@ -1,5 +1,6 @@
 package ray_tracer.background;
 
+import ray_tracer.FloatColor;
 import ray_tracer.geometry.Ray;
 
 import java.awt.*;
@@ -9,4 +10,16 @@ import java.awt.*;
  */
 public interface Background {
     Color getColor(Ray ray);
+
+    /**
+     * Sets a {@link FloatColor} to the color seen by the ray.
+     *
+     * <p>Backgrounds which can compute their color without creating a {@link Color} should override this.
+     *
+     * @param ray The ray which hit nothing
+     * @param color The color to set
+     */
+    default void getColor(Ray ray, FloatColor color) {
+        color.set(getColor(ray));
+    }
 }
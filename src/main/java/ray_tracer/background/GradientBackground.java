@@ -1,6 +1,6 @@
 package ray_tracer.background;
 
-import ray_tracer.ColorUtil;
+import ray_tracer.FloatColor;
 import ray_tracer.geometry.Ray;
 
 import java.awt.*;
@@ -21,7 +21,14 @@ public class GradientBackground implements Background {
     }
 
     public Color getColor(Ray ray) {
-        double amount = ray.getAngle().get(1) / 2.0 + 0.5;
+        FloatColor color = new FloatColor();
+        getColor(ray, color);
+        return color.toColor();
+    }
+
+    @Override
+    public void getColor(Ray ray, FloatColor color) {
+        double amount = ray.getAngleVector().getY() / 2.0 + 0.5;
         Stop lower = null;
         Stop upper = null;
 
@@ -41,10 +48,9 @@ public class GradientBackground implements Background {
 
         double total = upper.position - lower.position;
 
-        return ColorUtil.add(
-                ColorUtil.multiply(upper.color, (amount - lower.position) / total),
-                ColorUtil.multiply(lower.color, (upper.position - amount) / total)
-        );
+        color.set(0, 0, 0)
+                .addScaled(upper.floatColor, (amount - lower.position) / total)
+                .addScaled(lower.floatColor, (upper.position - amount) / total);
     }
 
     public void addStop(double position, Color color) {
@@ -61,10 +67,12 @@ public class GradientBackground implements Background {
     private class Stop implements Comparable<Stop> {
         double position;
         Color color;
+        FloatColor floatColor;
 
         Stop(double position, Color color) {
             this.position = position;
             this.color = color;
+            this.floatColor = new FloatColor(color);
         }
 
         @Override
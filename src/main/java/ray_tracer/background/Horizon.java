@@ -17,7 +17,7 @@ public class Horizon implements Background {
 
     }
     public Color getColor(Ray ray) {
-        if (ray.getAngle().get(1) > 0) {
+        if (ray.getAngleVector().getY() > 0) {
             return sky;
         } else {
             return ground;
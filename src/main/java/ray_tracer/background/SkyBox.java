@@ -35,9 +35,9 @@ public class SkyBox implements Background {
 
     @Override
     public Color getColor(Ray ray) {
-        double x = ray.getAngle().get(0);
-        double y = ray.getAngle().get(1);
-        double z = ray.getAngle().get(2);
+        double x = ray.getAngleVector().getX();
+        double y = ray.getAngleVector().getY();
+        double z = ray.getAngleVector().getZ();
 
         double absX = Math.abs(x);
         double absY = Math.abs(y);
@@ -2,21 +2,37 @@ package ray_tracer.cameras;
 
 import javafx.util.Pair;
 import org.jblas.DoubleMatrix;
+import ray_tracer.FloatColor;
+import ray_tracer.Matrix3;
 import ray_tracer.MatrixUtil;
+import ray_tracer.Scene;
+import ray_tracer.Vector3;
+import ray_tracer.acceleration.AcceleratorType;
+import ray_tracer.acceleration.RayPacket;
 import ray_tracer.background.Background;
 import ray_tracer.cameras.lenses.Lens;
 import ray_tracer.geometry.Ray;
 import ray_tracer.geometry.RayIntersect;
 import ray_tracer.geometry.Geometry;
+import ray_tracer.image.FrameBuffer;
+import ray_tracer.image.ToneMapper;
 import ray_tracer.lights.Light;
+import ray_tracer.sampling.Sampler;
+import ray_tracer.sampling.SobolSampler;
 
 import java.awt.*;
 import java.awt.font.NumericShaper;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 /**
  * The base for all cameras which describe how rays interact with their environment to generate an image.
@@ -47,38 +63,76 @@ public abstract class Camera {
     protected int height;
     protected int width;
 
-    protected Background background;
-    protected Collection<Geometry> geometry;
-    protected Collection<Light> lights;
+    private Scene scene = new Scene.Builder().build();
 
     protected BufferedImage image;
 
-    private DoubleMatrix position;
-    private DoubleMatrix angle;
-    private DoubleMatrix rotate;
-    private DoubleMatrix up = new DoubleMatrix(new double[] {0, 1, 0});
+    private Vector3 position;
+    private Vector3 angle;
+    private Matrix3 rotate;
+    private Vector3 up = Vector3.Y;
 
     private Lens lens;
 
     private int samples = 1;
     private double blur = 0;
+    private Sampler sampler = new SobolSampler(0);
+    private boolean adaptiveSamplingEnabled = false;
+    private int minSamples = 4;
+    private double maxError = 1.0 / 256;
+    // the samples taken for each pixel of the latest render and the size and number of samples it was rendered with
+    private int[] sampleCounts;
+    private int renderedWidth;
+    private int renderedHeight;
+    private int renderedSamples;
+
+    private int parallelism = 0;
+    private int tileSize = 16;
+    private TileOrder tileOrder = TileOrder.MORTON;
+
+    private ToneMapper toneMapper;
+    private FrameBuffer frameBuffer;
+
+    // how many times the maximum error neighbouring pixels must differ by for adaptive sampling to treat them as an edge
+    private static final double EDGE_CONTRAST = 8;
+
+    // the width and height of the blocks of pixels traced together as a packet when each pixel takes one sample
+    private static final int BLOCK_SIZE = 4;
+    // the least geometry for which tracing rays as packets saves more than filling the packets costs
+    static final int MIN_PACKET_GEOMETRY = 256;
+
+    // hit records reused by each rendering thread, one per level of recursion
+    private final ThreadLocal<RayIntersect[]> intersects = ThreadLocal.withInitial(() -> new RayIntersect[0]);
+    // the sample whose ray each rendering thread is following
+    private final ThreadLocal<CurrentSample> currentSamples = ThreadLocal.withInitial(CurrentSample::new);
 
     /**
      * Copies all internal parameters of the other camera that petain to the output image.
      *
+     * <p>This covers the size, scene, placement, and lens, how pixels are sampled, and how tiles are rendered. What the
+     * latest render of the other camera left behind, such as its frame buffer and sample counts, is not copied.
+     *
      * @param other The camera whose properties are to be copied
      */
     public void copy(Camera other) {
         this.width = other.width;
         this.height = other.height;
-        this.background = other.background;
-        this.geometry = other.geometry;
-        this.lights = other.lights;
+        this.scene = other.scene;
         this.position = other.position;
         this.angle = other.angle;
         this.rotate = other.rotate;
         this.up = other.up;
         this.lens = other.lens;
+        this.toneMapper = other.toneMapper;
+        this.samples = other.samples;
+        this.blur = other.blur;
+        this.sampler = other.sampler;
+        this.adaptiveSamplingEnabled = other.adaptiveSamplingEnabled;
+        this.minSamples = other.minSamples;
+        this.maxError = other.maxError;
+        this.parallelism = other.parallelism;
+        this.tileSize = other.tileSize;
+        this.tileOrder = other.tileOrder;
     }
 
     /**
@@ -105,7 +159,7 @@ public abstract class Camera {
      * @param position A vector describing the position of the camera
      */
     public void setPosition(DoubleMatrix position) {
-        this.position = position;
+        this.position = Vector3.of(position);
     }
 
     /**
@@ -123,8 +177,7 @@ public abstract class Camera {
      * @param angle A vector describing the angle of the camera
      */
     public void setAngle(DoubleMatrix angle) {
-        this.angle = angle.neg();
-        org.jblas.Geometry.normalize(this.angle);
+        this.angle = Vector3.of(angle).neg().normalize();
 
         calcRotate();
     }
@@ -145,7 +198,7 @@ public abstract class Camera {
      */
     public void lookAt(DoubleMatrix point)
     {
-        setAngle(point.sub(position));
+        setAngle(point.sub(position.toDoubleMatrix()));
     }
 
     /**
@@ -154,7 +207,7 @@ public abstract class Camera {
      * @param up The angle pointing up
      */
     public void setUpDirection(DoubleMatrix up) {
-        this.up = up;
+        this.up = Vector3.of(up);
     }
 
     /**
@@ -166,31 +219,74 @@ public abstract class Camera {
         this.lens = lens;
     }
 
+    /**
+     * Sets the scene to render.
+     *
+     * <p>Scenes are immutable, so the same scene may be given to any number of cameras without being copied or rebuilt.
+     *
+     * @param scene The scene to use
+     * @throws IllegalArgumentException if the scene is null
+     */
+    public void setScene(Scene scene) {
+        if (scene == null) {
+            throw new IllegalArgumentException("The scene must not be null.");
+        }
+        this.scene = scene;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
     /**
      * Sets the background of the scene to render.
      *
+     * <p>This replaces the camera's scene with one sharing the same geometry and lights.
+     *
      * @param background The background to use
      */
     public void setBackground(Background background) {
-        this.background = background;
+        scene = scene.withBackground(background);
     }
 
     /**
      * Sets all geometry to be considered while rendering a scene.
      *
+     * <p>This replaces the camera's scene with one built over the geometry, so geometry added to or removed from the
+     * collection afterwards will not be seen until this is called again.
+     *
      * @param geometry A collection of geometry to be used
      */
     public void setGeometry(Collection<Geometry> geometry) {
-        this.geometry = geometry;
+        scene = new Scene.Builder()
+                .geometry(geometry)
+                .lights(scene.getLights())
+                .background(scene.getBackground())
+                .acceleratorType(scene.getAcceleratorType())
+                .build();
+    }
+
+    /**
+     * Specifies the kind of acceleration structure used to find which geometry a ray intersects.
+     *
+     * <p>This rebuilds the camera's scene with the new kind of structure. Defaults to {@link AcceleratorType#BVH}.
+     *
+     * @param acceleratorType The kind of acceleration structure to use
+     */
+    public void setAcceleratorType(AcceleratorType acceleratorType) {
+        scene = new Scene.Builder(scene).acceleratorType(acceleratorType).build();
     }
 
     /**
      * Specifies all light sources to be considered while rendering a scene.
      *
+     * <p>This replaces the camera's scene with one sharing the same geometry and background, so lights added to or
+     * removed from the collection afterwards will not be seen until this is called again.
+     *
      * @param lights A collection of lights to be used
      */
     public void setLights(Collection<Light> lights) {
-        this.lights = lights;
+        scene = scene.withLights(lights);
     }
 
     /**
@@ -219,6 +315,181 @@ public abstract class Camera {
         this.blur = blur;
     }
 
+    /**
+     * Specifies how the rays shot for each pixel are spread when more than one sample is taken.
+     *
+     * <p>Each sample of a pixel offsets the direction of its ray by the blur amount in a direction chosen by the
+     * sampler. Defaults to a {@link SobolSampler}, which reaches the same quality as independent random samples with far
+     * fewer of them. The same sampler always renders the same image.
+     *
+     * @param sampler The sampler used to place samples
+     * @throws IllegalArgumentException if the sampler is null
+     */
+    public void setSampler(Sampler sampler) {
+        if (sampler == null) {
+            throw new IllegalArgumentException("The sampler must not be null.");
+        }
+        this.sampler = sampler;
+    }
+
+    /**
+     * Specifies whether pixels stop taking samples once their color has settled rather than always taking as many as
+     * were set by {@link #setSamples(int)}.
+     *
+     * <p>Each pixel first takes the minimum number of samples and then keeps taking more, up to the set number, only
+     * while the standard error of the mean of their brightness is above the maximum error. Pixels which every sample
+     * agrees on, such as those showing flat background or the middle of a surface, stop early and the time is spent on
+     * edges and other detail instead. How many samples each pixel took is available from {@link #getSampleCountMap()}.
+     * Disabled by default.
+     *
+     * @param enable Whether adaptive sampling is used
+     */
+    public void enableAdaptiveSampling(boolean enable) {
+        adaptiveSamplingEnabled = enable;
+    }
+
+    /**
+     * Specifies how many samples every pixel takes before adaptive sampling decides whether it needs more.
+     *
+     * <p>Defaults to 4.
+     *
+     * @param minSamples The least number of samples per pixel
+     * @throws IllegalArgumentException if the number is less than two, as one sample says nothing about the error
+     */
+    public void setMinSamples(int minSamples) {
+        if (minSamples < 2) {
+            throw new IllegalArgumentException("The minimum number of samples must be at least two.");
+        }
+        this.minSamples = minSamples;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Specifies the standard error of a pixel's brightness below which adaptive sampling stops taking samples.
+     *
+     * <p>Brightness is measured with 1 as full white. Defaults to 1/256, the smallest step of an 8 bit color channel.
+     *
+     * @param maxError The greatest acceptable error
+     * @throws IllegalArgumentException if the error is negative
+     */
+    public void setMaxError(double maxError) {
+        if (maxError < 0) {
+            throw new IllegalArgumentException("The maximum error must not be negative.");
+        }
+        this.maxError = maxError;
+    }
+
+    /**
+     * Returns how many samples were taken for a pixel in the latest render.
+     *
+     * <p>Pixels are those of the latest render even if the size of the camera has since been changed.
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @return The number of samples
+     * @throws IllegalStateException if nothing has been rendered
+     * @throws IllegalArgumentException if the pixel lies outside of the latest render
+     */
+    public int getSampleCount(int x, int y) {
+        if (sampleCounts == null) {
+            throw new IllegalStateException("Nothing has been rendered.");
+        }
+        if (x < 0 || y < 0 || x >= renderedWidth || y >= renderedHeight) {
+            throw new IllegalArgumentException("The pixel must lie within the latest render.");
+        }
+        return sampleCounts[y * renderedWidth + x];
+    }
+
+    /**
+     * Returns an image of how many samples were taken for each pixel in the latest render, black being none and white
+     * being the number of samples it was rendered with.
+     *
+     * @return A grayscale image the size of the latest render
+     * @throws IllegalStateException if nothing has been rendered
+     */
+    public BufferedImage getSampleCountMap() {
+        if (sampleCounts == null) {
+            throw new IllegalStateException("Nothing has been rendered.");
+        }
+        BufferedImage map = new BufferedImage(renderedWidth, renderedHeight, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) map.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) Math.min(255, sampleCounts[i] * 255 / renderedSamples);
+        }
+        return map;
+    }
+
+    /**
+     * Specifies the most tiles which may be rendered at once.
+     *
+     * <p>Defaults to 0, which matches the executor: the parallelism of a {@link ForkJoinPool} (plus the calling thread
+     * for the common pool) or otherwise the number of processors.
+     *
+     * @param parallelism The number of workers or 0 to match the executor
+     * @throws IllegalArgumentException if the parallelism is negative
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("The parallelism must not be negative.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Specifies the width and height in pixels of the square tiles the image is divided into while rendering.
+     *
+     * <p>Each tile is rendered by a single thread. Smaller tiles spread work more evenly across threads while larger
+     * tiles have less overhead. Defaults to 16.
+     *
+     * @param tileSize The width and height of each tile
+     * @throws IllegalArgumentException if the tile size is not greater than zero
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("The tile size must be greater than zero.");
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Specifies the order in which tiles are rendered.
+     *
+     * <p>Defaults to {@link TileOrder#MORTON}.
+     *
+     * @param tileOrder The order of the tiles
+     */
+    public void setTileOrder(TileOrder tileOrder) {
+        this.tileOrder = tileOrder;
+    }
+
+    /**
+     * Specifies that samples should be accumulated in a high dynamic range {@link FrameBuffer} which is turned into the
+     * rendered image by the given {@link ToneMapper}.
+     *
+     * <p>The frame buffer of the latest render is available from {@link #getFrameBuffer()} and may be mapped again with
+     * a different {@link ToneMapper} without rendering again. Defaults to null, in which case each pixel is written
+     * straight into the image.
+     *
+     * @param toneMapper How the frame buffer is mapped to the image or null to render without a frame buffer
+     */
+    public void setToneMapper(ToneMapper toneMapper) {
+        this.toneMapper = toneMapper;
+    }
+
+    /**
+     * Returns the frame buffer filled by the latest render.
+     *
+     * <p>Will return null unless a {@link ToneMapper} was set when rendering.
+     *
+     * @return The frame buffer or null if there is none
+     */
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
     /**
      * Renders an image of the scene specified.
      *
@@ -232,32 +503,559 @@ public abstract class Camera {
      * and lights
      */
     public final BufferedImage render() {
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-        if (samples == 1) {
-            StreamSupport.stream(Spliterators.spliterator(new PointIterator(width, height), height * width,
-                    Spliterator.NONNULL), true)
-                    .forEach(point -> image.setRGB(point.x, point.y, getColor(pointToRay(point)).getRGB()));
-        } else {
-            StreamSupport.stream(Spliterators.spliterator(new PointIterator(width, height), height * width,
-                    Spliterator.NONNULL), true)
-                    .forEach(point -> {
+        return render(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Renders an image of the scene specified using the threads of an executor, as described by {@link #render()}.
+     *
+     * <p>The calling thread renders tiles as well and the number of tiles rendered at once is limited by
+     * {@link #setParallelism(int)}, so a {@link ForkJoinPool} or fixed thread pool dedicated to rendering keeps it from
+     * competing with other work.
+     *
+     * @param executor The executor which runs the workers
+     * @return An image of the scene
+     */
+    public final BufferedImage render(Executor executor) {
+        RenderTask task = prepareRender();
+        int workers = TileWorkers.getWorkerCount(executor, parallelism, true);
+        for (IntConsumer phase : task.phases) {
+            TileWorkers.run(executor, workers, task.getTileCount(), phase, () -> false);
+        }
+        return task.image;
+    }
+
+    /**
+     * Starts rendering an image of the scene specified using the threads of an executor and returns without waiting for
+     * it to finish.
+     *
+     * <p>Cancelling the returned future stops the render once the tiles already being rendered are done. The camera must
+     * not be changed or asked to render again until the future is complete, or until the workers have finished if the
+     * future was cancelled.
+     *
+     * @param executor The executor which runs the workers
+     * @return A future completed with the image once every tile is rendered
+     */
+    public final CompletableFuture<BufferedImage> renderAsync(Executor executor) {
+        RenderTask task = prepareRender();
+        CompletableFuture<BufferedImage> result = new CompletableFuture<>();
+        int workers = TileWorkers.getWorkerCount(executor, parallelism, false);
+
+        CompletableFuture<Void> work = CompletableFuture.completedFuture(null);
+        for (IntConsumer phase : task.phases) {
+            work = work.thenCompose(ignored ->
+                    TileWorkers.runAsync(executor, workers, task.getTileCount(), phase, result::isDone));
+        }
+        work.whenComplete((ignored, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            } else {
+                result.complete(task.image);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Prepares to render an image of the scene specified as a set of tiles which may be rendered by any threads, for
+     * renderers which schedule the work of many cameras themselves.
+     *
+     * <p>The image and frame buffer are created (or cleared) straight away. The camera must not be changed or asked to
+     * render again until every tile of the task is done.
+     *
+     * @return The task rendering the image
+     */
+    public final RenderTask prepareRender() {
+        return new RenderTask();
+    }
+
+    /**
+     * The image being rendered by a camera and the phases which render it.
+     *
+     * <p>Each phase must be run on every tile before any tile of the next phase, while the tiles within a phase may be
+     * run in any order and by any number of threads at once. Most renders have only one phase, but adaptive sampling
+     * takes the first samples of every pixel before deciding where to take more.
+     */
+    public final class RenderTask {
+        private final BufferedImage image;
+        private final TileScheduler tiles;
+        private final IntConsumer[] phases;
+
+        private RenderTask() {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Camera.this.image = image;
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+            if (toneMapper == null) {
+                frameBuffer = null;
+            } else if (frameBuffer == null || frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
+                frameBuffer = new FrameBuffer(width, height);
+            } else {
+                frameBuffer.clear();
+            }
+
+            if (sampleCounts == null || sampleCounts.length != width * height) {
+                sampleCounts = new int[width * height];
+            }
+            renderedWidth = width;
+            renderedHeight = height;
+            renderedSamples = samples;
+
+            tiles = createTileScheduler();
+            if (adaptiveSamplingEnabled && samples > minSamples) {
+                // every pixel's first samples are taken before any pixel decides whether it is on an edge
+                PixelStats stats = new PixelStats(width * height);
+                phases = new IntConsumer[] {
+                        tile -> sampleTile(tiles, tile, stats),
+                        tile -> refineTile(tiles, tile, stats, pixels)
+                };
+            } else {
+                phases = new IntConsumer[] {tile -> Camera.this.renderTile(tiles, tile, pixels)};
+            }
+        }
+
+        public int getPhaseCount() {
+            return phases.length;
+        }
+
+        public int getTileCount() {
+            return tiles.getTileCount();
+        }
+
+        /**
+         * Renders one tile for one phase.
+         *
+         * @param phase The phase, starting at 0
+         * @param tile The tile, its position in the order chosen by {@link #setTileOrder(TileOrder)}
+         */
+        public void renderTile(int phase, int tile) {
+            phases[phase].accept(tile);
+        }
+
+        /**
+         * Returns the image, which is complete once every phase has been run on every tile.
+         */
+        public BufferedImage getImage() {
+            return image;
+        }
+    }
+
+    /**
+     * Renders every pixel within a tile directly into the backing array of the image, or into the frame buffer if there
+     * is one.
+     *
+     * <p>Unless the scene is small enough that each ray is cheap to trace on its own, the rays of neighbouring pixels,
+     * or of the samples of one pixel, are traced together as packets before any of them is shaded.
+     */
+    private void renderTile(TileScheduler tiles, int tile, int[] pixels) {
+        Point point = new Point();
+        FloatColor pixel = new FloatColor();
+        FloatColor sample = new FloatColor();
+        double[] offset = new double[2];
+        WavefrontEngine wavefront = getWavefrontEngine();
+        if (wavefront != null) {
+            renderWavefront(tiles, tile, pixels, wavefront);
+            return;
+        }
+
+        PacketTrace trace = scene.getGeometryCount() >= MIN_PACKET_GEOMETRY ? new PacketTrace() : null;
+        CurrentSample current = currentSamples.get();
+
+        if (samples > 1 || trace == null) {
+            for (int y = tiles.getY(tile); y < tiles.getEndY(tile); y++) {
+                for (int x = tiles.getX(tile); x < tiles.getEndX(tile); x++) {
+                    point.setLocation(x, y);
+                    Ray ray = pointToRay(point);
+
+                    if (samples == 1) {
+                        current.set(y * width + x, 0);
+                        getColor(ray, pixel);
+                    } else {
+                        samplePixel(ray, x, y, pixel, sample, offset, trace, current);
+                    }
+                    writePixel(x, y, pixel, pixels);
+                }
+            }
+            return;
+        }
+
+        for (int blockY = tiles.getY(tile); blockY < tiles.getEndY(tile); blockY += BLOCK_SIZE) {
+            int endY = Math.min(blockY + BLOCK_SIZE, tiles.getEndY(tile));
+            for (int blockX = tiles.getX(tile); blockX < tiles.getEndX(tile); blockX += BLOCK_SIZE) {
+                int endX = Math.min(blockX + BLOCK_SIZE, tiles.getEndX(tile));
+
+                trace.clear();
+                for (int y = blockY; y < endY; y++) {
+                    for (int x = blockX; x < endX; x++) {
+                        point.setLocation(x, y);
+                        trace.add(pointToRay(point));
+                    }
+                }
+                tracePackets(trace);
+
+                int index = 0;
+                for (int y = blockY; y < endY; y++) {
+                    for (int x = blockX; x < endX; x++) {
+                        current.set(y * width + x, 0);
+                        getColor(trace.rays[index++], pixel);
+                        writePixel(x, y, pixel, pixels);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders every pixel within a tile by following the rays of all of its samples together as waves.
+     *
+     * <p>The rays are queued a block of pixels at a time, with the samples of each pixel next to each other, so that
+     * neighbouring rays in the queue may be traced as packets.
+     */
+    private void renderWavefront(TileScheduler tiles, int tile, int[] pixels, WavefrontEngine wavefront) {
+        int startX = tiles.getX(tile);
+        int startY = tiles.getY(tile);
+        int endX = tiles.getEndX(tile);
+        int endY = tiles.getEndY(tile);
+        int count = (endX - startX) * (endY - startY) * samples;
+        Ray[] rays = new Ray[count];
+        int[] rayPixels = new int[count];
+        int[] raySamples = new int[count];
+        FloatColor[] colors = new FloatColor[count];
+        Point point = new Point();
+        double[] offset = new double[2];
+
+        int index = 0;
+        for (int blockY = startY; blockY < endY; blockY += BLOCK_SIZE) {
+            for (int blockX = startX; blockX < endX; blockX += BLOCK_SIZE) {
+                for (int y = blockY; y < Math.min(blockY + BLOCK_SIZE, endY); y++) {
+                    for (int x = blockX; x < Math.min(blockX + BLOCK_SIZE, endX); x++) {
+                        point.setLocation(x, y);
                         Ray ray = pointToRay(point);
-                        int[] rgb = {0, 0, 0};
                         for (int i = 0; i < samples; i++) {
-                            DoubleMatrix angle = MatrixUtil.cheapRandomRotate(ray.getAngle(), blur);
-                            Color color = getColor(new Ray(ray.getPosition(), angle));
-                            rgb[0] += color.getRed();
-                            rgb[1] += color.getGreen();
-                            rgb[2] += color.getBlue();
+                            colors[index] = new FloatColor();
+                            rayPixels[index] = y * width + x;
+                            raySamples[index] = i;
+                            rays[index++] = samples == 1 ? ray : sampleRay(ray, x, y, i, samples, offset);
+                        }
+                    }
+                }
+            }
+        }
+        wavefront.trace(rays, rayPixels, raySamples, count, colors);
+
+        FloatColor pixel = new FloatColor();
+        index = 0;
+        for (int blockY = startY; blockY < endY; blockY += BLOCK_SIZE) {
+            for (int blockX = startX; blockX < endX; blockX += BLOCK_SIZE) {
+                for (int y = blockY; y < Math.min(blockY + BLOCK_SIZE, endY); y++) {
+                    for (int x = blockX; x < Math.min(blockX + BLOCK_SIZE, endX); x++) {
+                        pixel.set(0, 0, 0);
+                        for (int i = 0; i < samples; i++) {
+                            pixel.add(colors[index++]);
+                        }
+                        if (samples > 1) {
+                            pixel.mul(1.0 / samples);
+                        }
+                        writePixel(x, y, pixel, pixels);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the engine with which to render whole tiles a stage at a time rather than a pixel at a time, or null to
+     * render a pixel at a time with {@link #getColor(Ray, FloatColor)}.
+     *
+     * <p>Adaptive sampling always renders a pixel at a time. Defaults to null.
+     *
+     * @return The engine to render tiles with, or null
+     */
+    protected WavefrontEngine getWavefrontEngine() {
+        return null;
+    }
+
+    /**
+     * Writes a pixel which took every sample into the backing array of the image, or into the frame buffer if there is
+     * one.
+     */
+    private void writePixel(int x, int y, FloatColor pixel, int[] pixels) {
+        sampleCounts[y * width + x] = samples;
+
+        if (frameBuffer != null) {
+            frameBuffer.addSamples(x, y, pixel, samples);
+            pixels[y * width + x] = toneMapper.map(frameBuffer.getColor(x, y, pixel));
+            return;
+        }
+
+        // the only time the pixel is converted to 8 bits
+        pixels[y * width + x] = pixel.toRGB();
+    }
+
+    /**
+     * Sets a color to the average of every sample of a pixel, tracing the samples together as packets if given a trace
+     * to hold them.
+     */
+    private void samplePixel(Ray ray, int x, int y, FloatColor pixel, FloatColor sample, double[] offset,
+                             PacketTrace trace, CurrentSample current) {
+        pixel.set(0, 0, 0);
+        if (trace == null) {
+            for (int i = 0; i < samples; i++) {
+                current.set(y * width + x, i);
+                getColor(sampleRay(ray, x, y, i, samples, offset), sample);
+                pixel.add(sample);
+            }
+            pixel.mul(1.0 / samples);
+            return;
+        }
+
+        for (int start = 0; start < samples; start += RayPacket.MAX_SIZE) {
+            int end = Math.min(start + RayPacket.MAX_SIZE, samples);
+
+            trace.clear();
+            for (int i = start; i < end; i++) {
+                trace.add(sampleRay(ray, x, y, i, samples, offset));
+            }
+            tracePackets(trace);
+
+            for (int i = 0; i < end - start; i++) {
+                current.set(y * width + x, start + i);
+                getColor(trace.rays[i], sample);
+                pixel.add(sample);
+            }
+        }
+        pixel.mul(1.0 / samples);
+    }
+
+    /**
+     * Finds the closest intersect of every ray of a trace as one packet, and then tests the shadow rays which shading
+     * each intersect will cast toward each light as one packet per light.
+     */
+    private void tracePackets(PacketTrace trace) {
+        RayPacket packet = trace.packet;
+        packet.clear();
+        for (int i = 0; i < trace.count; i++) {
+            trace.intersects[i].reset();
+            packet.add(trace.rays[i]);
+        }
+        int hits = scene.findClosest(packet, trace.intersects);
+
+        int lightCount = scene.getLightCount();
+        trace.setLightCount(lightCount);
+        for (int i = 0; i < trace.count; i++) {
+            Arrays.fill(trace.shadowRays[i], null);
+            if ((hits & 1 << i) != 0) {
+                getShadowRays(trace.intersects[i], trace.shadowRays[i], trace.shadowDistances[i]);
+            }
+        }
+
+        for (int light = 0; light < lightCount; light++) {
+            packet.clear();
+            for (int i = 0; i < trace.count; i++) {
+                Ray shadow = trace.shadowRays[i][light];
+                if (shadow != null) {
+                    trace.slots[packet.add(shadow, 0, trace.shadowDistances[i][light])] = i;
+                }
+            }
+
+            int occluded = packet.isEmpty() ? 0 : scene.isOccluded(packet);
+            int mask = 0;
+            for (int slot = 0; slot < packet.size(); slot++) {
+                if ((occluded & 1 << slot) != 0) {
+                    mask |= 1 << trace.slots[slot];
+                }
+            }
+            trace.occluded[light] = mask;
+        }
+    }
+
+    /**
+     * Fills in the shadow ray which shading the given intersect will test with
+     * {@link #isOccluded(RayIntersect, Ray, double, double)} toward each light of the scene, along with the greatest
+     * distance tested along each, leaving null those of lights which cast no shadow.
+     *
+     * <p>The shadow rays of neighbouring pixels are traced together toward each light before any of the pixels is
+     * shaded, and the answers given back when shading tests the very same rays from the same intersect, so only rays
+     * which match exactly in every coordinate and distance from a least distance of 0 are sped up. A
+     * {@link WavefrontEngine} does the same for the surfaces hit at every depth. Cameras which cast no shadows, or
+     * which would rather trace them one at a time, need not override this.
+     *
+     * @param intersect The closest intersect of a traced ray, which must not be changed
+     * @param rays The shadow ray toward each light, indexed as the lights of the scene
+     * @param maxDistances The furthest distance along each shadow ray which counts as an intersect
+     */
+    protected void getShadowRays(RayIntersect intersect, Ray[] rays, double[] maxDistances) { }
+
+    /**
+     * Takes the minimum number of samples of every pixel within a tile for adaptive sampling.
+     */
+    private void sampleTile(TileScheduler tiles, int tile, PixelStats stats) {
+        Point point = new Point();
+        FloatColor sample = new FloatColor();
+        double[] offset = new double[2];
+        CurrentSample current = currentSamples.get();
+        for (int y = tiles.getY(tile); y < tiles.getEndY(tile); y++) {
+            for (int x = tiles.getX(tile); x < tiles.getEndX(tile); x++) {
+                point.setLocation(x, y);
+                Ray ray = pointToRay(point);
+
+                int index = y * width + x;
+                double mean = 0;
+                double squares = 0;
+                for (int i = 0; i < minSamples; i++) {
+                    current.set(index, i);
+                    getColor(sampleRay(ray, x, y, i, samples, offset), sample);
+                    stats.add(index, sample);
+
+                    // running mean and sum of squared differences of the brightness, by Welford's method
+                    double delta = luminance(sample) - mean;
+                    mean += delta / (i + 1);
+                    squares += delta * (luminance(sample) - mean);
+                }
+                stats.means[index] = mean;
+                stats.squares[index] = squares;
+                sampleCounts[index] = minSamples;
+            }
+        }
+    }
+
+    /**
+     * Takes more samples of the pixels within a tile whose error is too high or which lie on an edge, then writes every
+     * pixel of the tile into the image, or the frame buffer if there is one.
+     */
+    private void refineTile(TileScheduler tiles, int tile, PixelStats stats, int[] pixels) {
+        Point point = new Point();
+        FloatColor pixel = new FloatColor();
+        FloatColor sample = new FloatColor();
+        double[] offset = new double[2];
+        CurrentSample current = currentSamples.get();
+        double maxVariance = maxError * maxError;
+        for (int y = tiles.getY(tile); y < tiles.getEndY(tile); y++) {
+            for (int x = tiles.getX(tile); x < tiles.getEndX(tile); x++) {
+                int index = y * width + x;
+                int count = minSamples;
+                // only the means of the first pass are shared so that neighbours see the same values on every render
+                double mean = stats.means[index];
+                double squares = stats.squares[index];
+                boolean edge = stats.isEdge(x, y, width, height, EDGE_CONTRAST * maxError);
+
+                if (edge || squares / ((count - 1) * (double) count) > maxVariance) {
+                    point.setLocation(x, y);
+                    Ray ray = pointToRay(point);
+                    while (count < samples) {
+                        current.set(index, count);
+                        getColor(sampleRay(ray, x, y, count, samples, offset), sample);
+                        stats.add(index, sample);
+                        count++;
+
+                        double delta = luminance(sample) - mean;
+                        mean += delta / count;
+                        squares += delta * (luminance(sample) - mean);
+
+                        // the variance of the mean is the variance of the samples over their number
+                        if (!edge && squares / ((count - 1) * (double) count) <= maxVariance) {
+                            break;
                         }
+                    }
+                }
+                sampleCounts[index] = count;
 
-                        Color color = new Color(rgb[0] / samples, rgb[1] / samples, rgb[2] / samples);
-                        image.setRGB(point.x, point.y, color.getRGB());
-                    });
+                stats.getAverage(index, count, pixel);
+                if (frameBuffer != null) {
+                    frameBuffer.addSamples(x, y, pixel, count);
+                    pixels[index] = toneMapper.map(frameBuffer.getColor(x, y, pixel));
+                } else {
+                    pixels[index] = pixel.toRGB();
+                }
+            }
         }
+    }
+
+    private static double luminance(FloatColor color) {
+        return 0.2126 * color.r + 0.7152 * color.g + 0.0722 * color.b;
+    }
+
+    /**
+     * Returns the ray for one of several samples of a pixel, tilted from the pixel's ray as chosen by the sampler.
+     */
+    private Ray sampleRay(Ray ray, int x, int y, int index, int count, double[] offset) {
+        sampler.get2D(x, y, index, count, offset);
+        Vector3 angle = MatrixUtil.gaussianRotate(ray.getAngleVector(), blur, offset[0], offset[1]);
+        return new Ray(ray.getPositionVector(), angle);
+    }
+
+    /**
+     * Returns a schedule of the image's tiles using the tile size and order of this camera.
+     */
+    TileScheduler createTileScheduler() {
+        return new TileScheduler(width, height, tileSize, tileOrder);
+    }
+
+    /**
+     * Sets a color to one sample of a pixel, for renderers which take the samples of each pixel over time.
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @param index Which sample of the pixel, starting at 0
+     * @param count How many samples the pixel is expected to take in all
+     * @param color The color to set
+     */
+    void getSample(int x, int y, int index, int count, FloatColor color) {
+        Ray ray = pointToRay(new Point(x, y));
+        currentSamples.get().set(y * width + x, index);
+        getColor(sampleRay(ray, x, y, index, count, new double[2]), color);
+    }
+
+    /**
+     * Returns a value in [0, 1) for a random choice made while following the ray of the sample the calling thread is
+     * rendering, such as whether russian roulette ends a chain of reflections.
+     *
+     * <p>The value is given by the camera's {@link Sampler} from the pixel, which sample of the pixel it is, and which
+     * choice is made, so an image which makes random choices always renders the same. Rays followed outside of a render
+     * share the choices of the first sample of the first pixel.
+     *
+     * @param dimension Which choice, starting at 0
+     * @return The value of the choice
+     */
+    protected final double getRandom(int dimension) {
+        CurrentSample current = currentSamples.get();
+        return getRandom(current.pixel, current.sample, dimension);
+    }
 
-        return image;
+    /**
+     * Returns a value in [0, 1) for a random choice made while following the ray of the given sample, as
+     * {@link #getRandom(int)} does.
+     *
+     * @param pixel The pixel, as y * width + x
+     * @param sample Which sample of the pixel, starting at 0
+     * @param dimension Which choice, starting at 0
+     */
+    final double getRandom(int pixel, int sample, int dimension) {
+        int x = width > 0 ? pixel % width : 0;
+        int y = width > 0 ? pixel / width : 0;
+        return sampler.get1D(x, y, sample, dimension);
+    }
+
+    /**
+     * Returns the pixel and sample whose ray the calling thread is following, as set by the render before each sample.
+     */
+    final CurrentSample getCurrentSample() {
+        return currentSamples.get();
+    }
+
+    /**
+     * Returns the color returned by the given ray.
+     *
+     * <p>This is a convenience for {@link #getColor(Ray, FloatColor)} which creates a new color for every call.
+     *
+     * @param ray The ray which will be shot into the scene.
+     * @return The color that that ray encounters
+     */
+    public Color getColor(Ray ray) {
+        FloatColor color = new FloatColor();
+        getColor(ray, color);
+        return color.toColor();
     }
 
     /**
@@ -268,78 +1066,277 @@ public abstract class Camera {
      * of the rays which will be shot into the scene and it is the job of implementations only to describe how the rays
      * interact with the scene.
      *
+     * <p>The color is accumulated in linear floating point and is only clamped to 8 bits once per pixel, so
+     * implementations should add light contributions to the given color in place rather than through {@link Color}s.
+     *
      * @param ray The ray which will be shot into the scene.
-     * @return The color that that ray encounters
+     * @param color The color to set to the color that the ray encounters
      */
-    public abstract Color getColor(Ray ray);
+    public abstract void getColor(Ray ray, FloatColor color);
 
     /**
      * Returns the closest point of geometry which intersects the ray as described by a {@link RayIntersect}.
      *
-     * <p>The geometry used is specified by the {@link #setGeometry(Collection)} call.
+     * <p>The geometry used is that of the camera's {@link Scene} and is searched using the scene's acceleration
+     * structure.
      *
      * <p>This will return only the closest intersection in the "forward" direction of the ray as described by its
-     * angle.
+     * angle. A new record is created for every call; {@link #findClosest(Ray, RayIntersect)} with a record from
+     * {@link #getIntersectRecord(int)} avoids this.
      *
      * @param ray The ray to find the closest intersection
      * @return The closest intersection of the ray or null if the ray does not intersect any geometry
      */
     protected final RayIntersect findClosest(Ray ray) {
-        Geometry closest = null;
-        double distance = Double.MAX_VALUE;
-        for (Geometry renderable : geometry) {
-            double newDist = renderable.getDistanceToIntersect(ray);
+        RayIntersect intersect = new RayIntersect();
+
+        return findClosest(ray, intersect) ? intersect : null;
+    }
+
+    /**
+     * Fills the given record with the closest point of geometry which intersects the ray.
+     *
+     * <p>Whatever the record held before is discarded. The geometry is only asked to record where it was hit, the
+     * normal and reflection are worked out by the record if and when they are needed.
+     *
+     * @param ray The ray to find the closest intersection
+     * @param intersect The record to fill
+     * @return Whether the ray intersects any geometry
+     */
+    protected final boolean findClosest(Ray ray, RayIntersect intersect) {
+        intersect.reset();
 
-            if (newDist < 0) {
-                continue;
+        // rays may have been traced already with the rest of their packet or wave
+        if (ray instanceof TracedRay && ((TracedRay) ray).isCurrent()) {
+            RayIntersect traced = ((TracedRay) ray).getIntersect();
+            if (!traced.isHit()) {
+                return false;
             }
+            intersect.set(traced);
+            return true;
+        }
 
-            if (newDist < distance) {
-                closest = renderable;
-                distance = newDist;
+        return scene.findClosest(ray, intersect);
+    }
+
+    /**
+     * Returns a hit record belonging to the calling thread which may be reused for every ray cast at a given depth.
+     *
+     * <p>Cameras which cast further rays while still shading an intersect, such as reflections, should use a deeper
+     * record for those rays so that the one being shaded is not overwritten.
+     *
+     * @param depth How many rays deep the record will be used, starting at 0 for rays from the lens
+     * @return The record for the calling thread and depth
+     */
+    protected final RayIntersect getIntersectRecord(int depth) {
+        RayIntersect[] records = intersects.get();
+        if (depth >= records.length) {
+            int length = records.length;
+            records = Arrays.copyOf(records, Math.max(depth + 1, length * 2));
+            for (int i = length; i < records.length; i++) {
+                records[i] = new RayIntersect();
             }
+            intersects.set(records);
         }
 
-        return closest == null ? null : closest.getIntersect(ray);
+        return records[depth];
     }
 
-    private class PointIterator implements Iterator<Point> {
-        int width;
-        int height;
-        int currentX;
-        int currentY;
+    protected Ray pointToRay(Point point) {
+        Ray cameraRay = lens.pointToRay(point);
+
+        Vector3 angle = rotate.mmul(cameraRay.getAngleVector());
+
+        return new Ray(cameraRay.getPositionVector().add(position), angle);
+    }
+
+    /**
+     * Returns a point on a surface moved off the surface along its normal, far enough for the precision of the scene
+     * that rays cast from it, such as shadows and reflections, do not hit the same surface again.
+     *
+     * @param position The point on the surface
+     * @param normal The normal of the surface at the point, facing the side rays are cast into
+     * @return The moved point
+     */
+    protected final Vector3 offsetFromSurface(Vector3 position, Vector3 normal) {
+        return position.addScaled(normal, scene.getPrecision().getOffset(position));
+    }
+
+    /**
+     * Returns whether any geometry intersects the ray between the given distances from its origin.
+     *
+     * <p>This is cheaper than {@link #findClosest(Ray)} since it may stop at the first intersect it finds and never
+     * fills a {@link RayIntersect}, so it should be used for shadow rays and any other query where only whether
+     * something is hit matters.
+     *
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether any geometry is intersected within the bounds
+     */
+    protected final boolean isOccluded(Ray ray, double minDistance, double maxDistance) {
+        return scene.isOccluded(ray, minDistance, maxDistance);
+    }
 
-        public PointIterator(int width, int height) {
-            this.width = width;
-            this.height = height;
+    /**
+     * Returns whether any geometry intersects a shadow ray cast from an intersect between the given distances from its
+     * origin, as {@link #isOccluded(Ray, double, double)} does.
+     *
+     * <p>Shadow rays cast from the intersects of rays from the lens may already have been traced together with those
+     * of neighbouring pixels, as described by {@link #getShadowRays(RayIntersect, Ray[], double[])}, in which case the
+     * answer is given back without tracing the ray again.
+     *
+     * @param intersect The intersect the shadow ray is cast from
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether any geometry is intersected within the bounds
+     */
+    protected final boolean isOccluded(RayIntersect intersect, Ray ray, double minDistance, double maxDistance) {
+        Ray from = intersect.getRay();
+        if (from instanceof TracedRay && ((TracedRay) from).isCurrent() && minDistance == 0) {
+            int occluded = ((TracedRay) from).getOccluded(ray, maxDistance);
+            if (occluded >= 0) {
+                return occluded == 1;
+            }
         }
 
-        @Override
-        public boolean hasNext() {
-            return currentY < height;
+        return scene.isOccluded(ray, minDistance, maxDistance);
+    }
+
+    private void calcRotate() {
+        rotate = MatrixUtil.rotate(angle, up, up.add(Vector3.Z));
+    }
+
+    /**
+     * The pixel and sample whose ray one rendering thread is following, which the random choices made along the ray
+     * depend on.
+     */
+    static final class CurrentSample {
+        // the pixel as y * width + x
+        int pixel;
+        int sample;
+
+        void set(int pixel, int sample) {
+            this.pixel = pixel;
+            this.sample = sample;
         }
+    }
 
-        @Override
-        public Point next() {
-            Point point = new Point(currentX++, currentY);
-            if (currentX >= width) {
-                currentX = 0;
-                ++currentY;
+    /**
+     * The rays which one rendering thread traces together, with the closest intersect of each and, for each light,
+     * the shadow ray from that intersect and whether it is occluded.
+     */
+    private static final class PacketTrace {
+        private final RayPacket packet = new RayPacket();
+        private final PacketRay[] rays = new PacketRay[RayPacket.MAX_SIZE];
+        private final RayIntersect[] intersects = new RayIntersect[RayPacket.MAX_SIZE];
+        // the ray of the trace each ray of a shadow packet was cast from
+        private final int[] slots = new int[RayPacket.MAX_SIZE];
+        private Ray[][] shadowRays = new Ray[RayPacket.MAX_SIZE][0];
+        private double[][] shadowDistances = new double[RayPacket.MAX_SIZE][0];
+        // a mask for each light of the rays whose shadow ray toward it is occluded
+        private int[] occluded = new int[0];
+        private int count;
+
+        private PacketTrace() {
+            for (int i = 0; i < intersects.length; i++) {
+                intersects[i] = new RayIntersect();
             }
+        }
 
-            return point;
+        private void clear() {
+            Arrays.fill(rays, 0, count, null);
+            count = 0;
+        }
+
+        private void add(Ray ray) {
+            rays[count] = new PacketRay(ray, this, count);
+            count++;
+        }
+
+        private void setLightCount(int lightCount) {
+            if (occluded.length != lightCount) {
+                shadowRays = new Ray[RayPacket.MAX_SIZE][lightCount];
+                shadowDistances = new double[RayPacket.MAX_SIZE][lightCount];
+                occluded = new int[lightCount];
+            }
         }
     }
 
-    protected Ray pointToRay(Point point) {
-        Ray cameraRay = lens.pointToRay(point);
+    /**
+     * A ray from the lens which has been traced as part of a packet, knowing where to find its intersect and shadows
+     * for as long as the trace holds them.
+     */
+    private static final class PacketRay extends TracedRay {
+        private final PacketTrace trace;
+        private final int index;
+
+        private PacketRay(Ray ray, PacketTrace trace, int index) {
+            super(ray);
+            this.trace = trace;
+            this.index = index;
+        }
 
-        DoubleMatrix angle = rotate.mmul(cameraRay.getAngle());
+        @Override
+        boolean isCurrent() {
+            return trace.rays[index] == this;
+        }
 
-        return new Ray(cameraRay.getPosition().add(position), angle);
+        @Override
+        RayIntersect getIntersect() {
+            return trace.intersects[index];
+        }
+
+        @Override
+        int getOccluded(Ray ray, double maxDistance) {
+            Ray[] shadows = trace.shadowRays[index];
+            for (int light = 0; light < shadows.length; light++) {
+                if (matches(shadows[light], trace.shadowDistances[index][light], ray, maxDistance)) {
+                    return (trace.occluded[light] >> index) & 1;
+                }
+            }
+            return -1;
+        }
     }
 
-    private void calcRotate() {
-        rotate = MatrixUtil.rotate(angle, up, up.add(new DoubleMatrix(new double[] {0, 0, 1})));
+    /**
+     * The sums of the samples taken for each pixel while adaptive sampling along with the mean and sum of squared
+     * differences of their brightness after the first pass.
+     */
+    private static final class PixelStats {
+        private final float[] sums;
+        private final double[] means;
+        private final double[] squares;
+
+        private PixelStats(int size) {
+            sums = new float[size * 3];
+            means = new double[size];
+            squares = new double[size];
+        }
+
+        private void add(int index, FloatColor sample) {
+            sums[index * 3] += sample.r;
+            sums[index * 3 + 1] += sample.g;
+            sums[index * 3 + 2] += sample.b;
+        }
+
+        private void getAverage(int index, int count, FloatColor color) {
+            float scale = 1.0f / count;
+            color.set(sums[index * 3] * scale, sums[index * 3 + 1] * scale, sums[index * 3 + 2] * scale);
+        }
+
+        /**
+         * Returns whether the mean brightness of a pixel differs from any of its four neighbours by more than the given
+         * contrast, in which case even samples which agree with each other may have missed something.
+         */
+        private boolean isEdge(int x, int y, int width, int height, double contrast) {
+            int index = y * width + x;
+            double mean = means[index];
+            return (x > 0 && Math.abs(means[index - 1] - mean) > contrast)
+                    || (x < width - 1 && Math.abs(means[index + 1] - mean) > contrast)
+                    || (y > 0 && Math.abs(means[index - width] - mean) > contrast)
+                    || (y < height - 1 && Math.abs(means[index + width] - mean) > contrast);
+        }
     }
 }
@@ -1,7 +1,8 @@
 package ray_tracer.cameras;
 
-import org.jblas.DoubleMatrix;
-import ray_tracer.ColorUtil;
+import ray_tracer.FloatColor;
+import ray_tracer.Scene;
+import ray_tracer.Vector3;
 import ray_tracer.geometry.Ray;
 import ray_tracer.geometry.RayIntersect;
 import ray_tracer.lights.Light;
@@ -9,74 +10,68 @@ import ray_tracer.lights.LightType;
 import ray_tracer.material.Material;
 import ray_tracer.material.TextureMapping;
 
-import java.awt.*;
-
 /**
  * Created by William Martin III on 12/25/15.
  */
 public class CartoonCamera extends Camera {
-    private static double EPSILON = 1.0E-10;
-
     private double factor = 2;
 
     @Override
-    public Color getColor(Ray ray) {
-        RayIntersect intersect = findClosest(ray);
+    public void getColor(Ray ray, FloatColor color) {
+        RayIntersect intersect = getIntersectRecord(0);
 
-        Color color = Color.black;
+        color.set(0, 0, 0);
 
-        if (intersect != null) {
+        if (findClosest(ray, intersect)) {
             if (intersect.getGeometry().getMaterial().getEmitter()) {
-                return intersect.getGeometry().getMaterial().getDiffuse();
+                color.set(intersect.getGeometry().getMaterial().getDiffuseFloat());
+                return;
             }
 
             Material material = intersect.getGeometry().getMaterial();
 
-            DoubleMatrix position = intersect.getReflection().getPosition();
-            DoubleMatrix normal = intersect.getNormal();
+            Vector3 position = intersect.getReflection().getPositionVector();
+            Vector3 normal = intersect.getNormalVector();
 
             // move point slightly away from surface
-            Ray reflection = new Ray(position.add(normal.mul(EPSILON)), intersect.getReflection().getAngle());
+            Ray reflection = new Ray(offsetFromSurface(position, normal), intersect.getReflection().getAngleVector());
 
-            for (Light light : lights) {
+            Scene scene = getScene();
+            for (int i = 0; i < scene.getLightCount(); i++) {
+                Light light = scene.getLight(i);
                 if (light.getType() == LightType.AMBIENT) {
                     // ambient
-                    color = ColorUtil.add(color, ColorUtil.multiply(
-                            ColorUtil.multiply(material.getAmbient(), light.getColor()),
-                            light.getPower()));
+                    color.addProduct(material.getAmbientFloat(), light.getColorFloat(), light.getPower());
                 } else if (light.getType() == LightType.SUN || light.getType() == LightType.POINT) {
                     Ray interference;
                     if (light.getType() == LightType.SUN) {
-                        interference = new Ray(reflection.getPosition(), light.getAngle().neg());
-                        if (findClosest(interference) != null) {
+                        interference = new Ray(reflection.getPositionVector(), light.getAngleVector().neg());
+                        if (isOccluded(interference, 0, Double.POSITIVE_INFINITY)) {
                             continue;
                         }
 
                     } else {
-                        DoubleMatrix angle = light.getPosition().sub(reflection.getPosition());
-                        interference = new Ray(reflection.getPosition(), angle);
-                        if (findClosest(interference) != null) {
+                        // only geometry between the surface and the light can cast a shadow
+                        Vector3 angle = light.getPositionVector().sub(reflection.getPositionVector());
+                        interference = new Ray(reflection.getPositionVector(), angle);
+                        if (isOccluded(interference, 0, angle.length())) {
                             continue;
                         }
                     }
 
 
-                    DoubleMatrix a1 = interference.getAngle();
+                    Vector3 a1 = interference.getAngleVector();
 
                     // lambertion
-                    double amount = intersect.getNormal().project(a1);
+                    double amount = normal.project(a1);
                     amount = amount > 0.2 ? 1 : 0;
 
-                    color = ColorUtil.add(color, ColorUtil.multiply(
-                            ColorUtil.multiply(material.getDiffuse(), light.getColor()),
-                            amount * light.getPower()));
+                    color.addProduct(material.getDiffuseFloat(), light.getColorFloat(), amount * light.getPower());
                 }
             }
 
         } else {
-            color = background.getColor(ray);
+            getScene().getBackground().getColor(ray, color);
         }
-
-        return color;
     }
 }
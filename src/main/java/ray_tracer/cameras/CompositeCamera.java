@@ -1,5 +1,6 @@
 package ray_tracer.cameras;
 
+import ray_tracer.FloatColor;
 import ray_tracer.geometry.Ray;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -21,7 +22,7 @@ public class CompositeCamera extends Camera {
     }
 
     @Override
-    public Color getColor(Ray ray) {
+    public void getColor(Ray ray, FloatColor color) {
         throw new NotImplementedException();
     }
 }
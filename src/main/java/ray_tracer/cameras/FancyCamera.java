@@ -1,7 +1,11 @@
 package ray_tracer.cameras;
 
 import org.jblas.DoubleMatrix;
-import ray_tracer.ColorUtil;
+import ray_tracer.FloatColor;
+import ray_tracer.Matrix3;
+import ray_tracer.Precision;
+import ray_tracer.Scene;
+import ray_tracer.Vector3;
 import ray_tracer.material.Material;
 import ray_tracer.geometry.Ray;
 import ray_tracer.geometry.RayIntersect;
@@ -9,139 +13,192 @@ import ray_tracer.lights.Light;
 import ray_tracer.lights.LightType;
 import ray_tracer.material.TextureMapping;
 
-import java.awt.*;
-
 /**
+ * A camera which shades with ambient, lambertian, and specular lighting, shadows, textures, and reflections.
+ *
+ * <p>Reflections are followed by a {@link ShadingEngine} until they reach the maximum depth or until what they could
+ * add to the pixel, their throughput, falls below the minimum. Mirrors facing each other would otherwise reflect
+ * forever. Russian roulette may additionally end long chains at random, weighting the chains which continue so that
+ * the image is unchanged on average.
+ *
  * Created by William Martin III on 12/25/15.
  */
 public class FancyCamera extends Camera {
-    public static final double EPSILON = 1.0E-10;
+    /**
+     * @deprecated Surfaces are now offset by {@link #offsetFromSurface(Vector3, Vector3)}, which scales with the
+     * precision of the scene and the size of the coordinates. This is the offset {@link Precision#DOUBLE} gives points
+     * within a distance of 1 from the origin.
+     */
+    @Deprecated
+    public static final double EPSILON = Precision.DOUBLE.getOffset(Vector3.ZERO);
+
+    /**
+     * @deprecated Unused since normals are rotated with {@link Vector3#Y}, which should be used instead.
+     */
+    @Deprecated
     public static final DoubleMatrix UP = new DoubleMatrix(new double[] {0, 1, 0});
 
     private boolean normalEnabled = true;
     private boolean diffuseEnabled = true;
     private boolean specularEnabled = true;
     private boolean reflectionEnabled = true;
+    private boolean wavefrontEnabled = false;
+
+    private final ShadingEngine engine = new ShadingEngine(this, this::shade);
+    private final WavefrontEngine wavefront = new WavefrontEngine(engine);
 
     @Override
-    public Color getColor(Ray ray) {
-        RayIntersect intersect = findClosest(ray);
+    public void getColor(Ray ray, FloatColor color) {
+        engine.trace(ray, color);
+    }
 
-        Color color = Color.black;
+    @Override
+    protected WavefrontEngine getWavefrontEngine() {
+        return wavefrontEnabled ? wavefront : null;
+    }
 
-        if (intersect != null) {
-            if (intersect.getGeometry().getMaterial().getEmitter()) {
-                return intersect.getGeometry().getMaterial().getDiffuse();
-            }
+    private void shade(Ray ray, RayIntersect intersect, ShadingEngine.Bounce bounce, FloatColor color) {
+        if (intersect.getGeometry().getMaterial().getEmitter()) {
+            color.set(intersect.getGeometry().getMaterial().getDiffuseFloat());
+            return;
+        }
 
-            RayIntersect oldIntersect = intersect.clone();
+        RayIntersect oldIntersect = intersect;
 
-            Material material = intersect.getGeometry().getMaterial();
-            TextureMapping textureMapping = intersect.getGeometry().getTextureMapping();
+        Material material = intersect.getGeometry().getMaterial();
+        TextureMapping textureMapping = intersect.getGeometry().getTextureMapping();
 
-            // Modify normal
-            if (normalEnabled && textureMapping != null) {
-                DoubleMatrix rotate = textureMapping.rotation(intersect, UP);
-                intersect.rotate(rotate);
-            }
+        // Modify normal, textures are still looked up with the original
+        if (normalEnabled && textureMapping != null) {
+            Matrix3 rotate = textureMapping.rotation(intersect, Vector3.Y);
+            oldIntersect = intersect.clone();
+            intersect.rotate(rotate);
+        }
 
-            DoubleMatrix position = intersect.getReflection().getPosition();
-            DoubleMatrix normal = intersect.getNormal();
-
-            // move point slightly away from surface
-            Ray reflection = new Ray(position.add(normal.mul(EPSILON)), intersect.getReflection().getAngle());
-
-            for (Light light : lights) {
-                if (light.getType() == LightType.AMBIENT) {
-                    if (diffuseEnabled) {
-                        // ambient
-                        Color ambient;
-                        if (textureMapping == null) {
-                            ambient = material.getAmbient();
-                        } else {
-                            ambient = textureMapping.getDiffuse(oldIntersect);
-                        }
-                        color = ColorUtil.add(color, ColorUtil.multiply(
-                                ColorUtil.multiply(ambient, light.getColor()),
-                                light.getPower()));
-                    }
-                } else if (light.getType() == LightType.SUN || light.getType() == LightType.POINT) {
-                    Ray interference;
-                    if (light.getType() == LightType.SUN) {
-                        interference = new Ray(reflection.getPosition(), light.getAngle().neg());
-                        if (findClosest(interference) != null) {
-                            continue;
-                        }
+        Vector3 position = intersect.getReflection().getPositionVector();
+        Vector3 normal = intersect.getNormalVector();
 
-                    } else {
-                        DoubleMatrix angle = light.getPosition().sub(reflection.getPosition());
-                        interference = new Ray(reflection.getPosition(), angle);
-                        if (findClosest(interference) != null) {
-                            continue;
-                        }
-                    }
+        // move point slightly away from surface
+        Ray reflection = new Ray(offsetFromSurface(position, normal), intersect.getReflection().getAngleVector());
 
+        // the texture is looked up once and used for both ambient and lambertion
+        FloatColor ambient = material.getAmbientFloat();
+        FloatColor lambertion = material.getDiffuseFloat();
+        if (diffuseEnabled && textureMapping != null) {
+            FloatColor texture = new FloatColor();
+            textureMapping.getDiffuse(oldIntersect, texture);
+            ambient = texture;
+            lambertion = texture;
+        }
 
-                    DoubleMatrix a1 = interference.getAngle();
-                    double amount = 0;
-
-                    // lambertion
-                    if (diffuseEnabled) {
-                        amount = normal.project(a1);
-                        if (amount < 0) {
-                            amount = 0;
-                        }
-
-                        Color lambertion;
-                        if (textureMapping == null) {
-                            lambertion = material.getDiffuse();
-                        } else {
-                            lambertion = textureMapping.getDiffuse(oldIntersect);
-                        }
-                        color = ColorUtil.add(color, ColorUtil.multiply(
-                                ColorUtil.multiply(lambertion, light.getColor()),
-                                amount * light.getPower()));
+        Scene scene = getScene();
+        for (int i = 0; i < scene.getLightCount(); i++) {
+            Light light = scene.getLight(i);
+            if (light.getType() == LightType.AMBIENT) {
+                if (diffuseEnabled) {
+                    // ambient
+                    color.addProduct(ambient, light.getColorFloat(), light.getPower());
+                }
+            } else if (light.getType() == LightType.SUN || light.getType() == LightType.POINT) {
+                Ray interference = getShadowRay(reflection.getPositionVector(), light);
+                if (isOccluded(intersect, interference, 0,
+                        getShadowDistance(reflection.getPositionVector(), light))) {
+                    continue;
+                }
+
+                Vector3 a1 = interference.getAngleVector();
+                double amount = 0;
+
+                // lambertion
+                if (diffuseEnabled) {
+                    amount = normal.project(a1);
+                    if (amount < 0) {
+                        amount = 0;
                     }
 
-                    // specular
-                    if (specularEnabled) {
-                        DoubleMatrix r = (normal.mul(2 * a1.dot(normal))).sub(a1);
+                    color.addProduct(lambertion, light.getColorFloat(), amount * light.getPower());
+                }
 
-                        amount = ray.getAngle().neg().project(r);
-                        if (amount < 0) {
-                            amount = 0;
-                        } else {
-                            amount = Math.pow(amount, 8);
-                        }
+                // specular
+                if (specularEnabled) {
+                    Vector3 r = normal.mul(2 * a1.dot(normal)).sub(a1);
 
-                        if (textureMapping != null) {
-                            amount *= textureMapping.getSpecularAmount(oldIntersect);
-                        }
+                    amount = ray.getAngleVector().neg().project(r);
+                    if (amount < 0) {
+                        amount = 0;
+                    } else {
+                        amount = Math.pow(amount, 8);
+                    }
 
-                        color = ColorUtil.add(color, ColorUtil.multiply(light.getColor(), amount * light.getPower()));
+                    if (textureMapping != null) {
+                        amount *= textureMapping.getSpecularAmount(oldIntersect);
                     }
+
+                    color.addScaled(light.getColorFloat(), amount * light.getPower());
                 }
             }
+        }
 
-            // reflection
-            if (reflectionEnabled) {
-                double reflectionAmount;
-                if (textureMapping == null) {
-                    reflectionAmount = material.getReflectAmount();
-                } else {
-                    reflectionAmount = textureMapping.getReflectionAmount(intersect);
-                }
+        // reflection
+        if (reflectionEnabled) {
+            double reflectionAmount;
+            if (textureMapping == null) {
+                reflectionAmount = material.getReflectAmount();
+            } else {
+                reflectionAmount = textureMapping.getReflectionAmount(intersect);
+            }
 
-                if (reflectionAmount > 0) {
-                    color = ColorUtil.add(color,
-                            ColorUtil.multiply(getColor(reflection), reflectionAmount));
-                }
+            bounce.follow(reflection, reflectionAmount);
+        }
+    }
+
+    /**
+     * Casts the same shadow rays as shading the intersect will, from the surface as moved by the normal map.
+     */
+    @Override
+    protected void getShadowRays(RayIntersect intersect, Ray[] rays, double[] maxDistances) {
+        if (intersect.getGeometry().getMaterial().getEmitter()) {
+            return;
+        }
+
+        TextureMapping textureMapping = intersect.getGeometry().getTextureMapping();
+        if (normalEnabled && textureMapping != null) {
+            Matrix3 rotate = textureMapping.rotation(intersect, Vector3.Y);
+            intersect = intersect.clone();
+            intersect.rotate(rotate);
+        }
+        Vector3 position = offsetFromSurface(intersect.getReflection().getPositionVector(),
+                intersect.getNormalVector());
+
+        Scene scene = getScene();
+        for (int i = 0; i < scene.getLightCount(); i++) {
+            Light light = scene.getLight(i);
+            if (light.getType() == LightType.SUN || light.getType() == LightType.POINT) {
+                rays[i] = getShadowRay(position, light);
+                maxDistances[i] = getShadowDistance(position, light);
             }
-        } else {
-            color = background.getColor(ray);
         }
+    }
 
-        return color;
+    /**
+     * Returns the ray from a point toward a sun or point light.
+     */
+    private static Ray getShadowRay(Vector3 position, Light light) {
+        if (light.getType() == LightType.SUN) {
+            return new Ray(position, light.getAngleVector().neg());
+        }
+        return new Ray(position, light.getPositionVector().sub(position));
+    }
+
+    /**
+     * Returns how far along the ray from a point toward a sun or point light geometry casts a shadow, which for a point
+     * light is only as far as the light itself.
+     */
+    private static double getShadowDistance(Vector3 position, Light light) {
+        if (light.getType() == LightType.SUN) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return light.getPositionVector().sub(position).length();
     }
 
     public FancyCamera enableNormal(boolean enable) {
@@ -163,4 +220,75 @@ public class FancyCamera extends Camera {
         reflectionEnabled = enable;
         return this;
     }
+
+    /**
+     * Specifies whether whole tiles are rendered a stage at a time by a {@link WavefrontEngine}, with the rays of every
+     * pixel found, sorted by what they hit, and shaded together before their reflections are, rather than a pixel at a
+     * time.
+     *
+     * <p>This pays off for scenes with many reflections scattering rays across many materials. Disabled by default.
+     *
+     * @param enable Whether tiles are rendered a stage at a time
+     * @return This camera
+     */
+    public FancyCamera enableWavefront(boolean enable) {
+        wavefrontEnabled = enable;
+        return this;
+    }
+
+    /**
+     * Specifies how many surfaces a ray may hit, including the first, before reflections are no longer followed.
+     *
+     * <p>Defaults to 16.
+     *
+     * @param maxDepth The greatest number of surfaces shaded for one ray from the lens
+     * @return This camera
+     * @throws IllegalArgumentException if the depth is not greater than zero
+     */
+    public FancyCamera setMaxDepth(int maxDepth) {
+        engine.setMaxDepth(maxDepth);
+        return this;
+    }
+
+    /**
+     * Specifies the throughput below which reflections are no longer followed.
+     *
+     * <p>The throughput of a reflection is the product of the reflection amounts of every surface it has bounced off
+     * and so is the most it can add to the pixel. Defaults to 1/256, the smallest step of an 8 bit color channel.
+     *
+     * @param minThroughput The least throughput a reflection must have to be followed
+     * @return This camera
+     * @throws IllegalArgumentException if the throughput is negative
+     */
+    public FancyCamera setMinThroughput(double minThroughput) {
+        engine.setMinThroughput(minThroughput);
+        return this;
+    }
+
+    /**
+     * Specifies whether reflections are randomly ended with a probability based on their throughput.
+     *
+     * <p>This adds noise but keeps the cost of scenes with many dim reflections down. Disabled by default.
+     *
+     * @param enable Whether russian roulette is used
+     * @return This camera
+     */
+    public FancyCamera enableRussianRoulette(boolean enable) {
+        engine.enableRussianRoulette(enable);
+        return this;
+    }
+
+    /**
+     * Specifies how many surfaces a ray must hit before russian roulette may end its reflections.
+     *
+     * <p>Defaults to 3.
+     *
+     * @param russianRouletteDepth The depth from which russian roulette applies
+     * @return This camera
+     * @throws IllegalArgumentException if the depth is not greater than zero
+     */
+    public FancyCamera setRussianRouletteDepth(int russianRouletteDepth) {
+        engine.setRussianRouletteDepth(russianRouletteDepth);
+        return this;
+    }
 }
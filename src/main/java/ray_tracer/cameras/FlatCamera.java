@@ -1,5 +1,6 @@
 package ray_tracer.cameras;
 
+import ray_tracer.FloatColor;
 import ray_tracer.geometry.Ray;
 import ray_tracer.geometry.RayIntersect;
 
@@ -12,13 +13,13 @@ import java.awt.image.BufferedImage;
 public class FlatCamera extends Camera{
 
     @Override
-    public Color getColor(Ray ray) {
-        RayIntersect intersect = findClosest(ray);
+    public void getColor(Ray ray, FloatColor color) {
+        RayIntersect intersect = getIntersectRecord(0);
 
-        if (intersect != null) {
-            return intersect.getGeometry().getMaterial().getDiffuse();
+        if (findClosest(ray, intersect)) {
+            color.set(intersect.getGeometry().getMaterial().getDiffuseFloat());
         } else {
-            return background.getColor(ray);
+            getScene().getBackground().getColor(ray, color);
         }
     }
 }
@@ -0,0 +1,404 @@
+package ray_tracer.cameras;
+
+import ray_tracer.FloatColor;
+import ray_tracer.image.FrameBuffer;
+import ray_tracer.image.ToneMapper;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the image of a {@link Camera} in passes of one sample per pixel which are accumulated in a persistent
+ * {@link FrameBuffer}, so a rough image is available after the first pass and improves with every pass after it.
+ *
+ * <p>Each tile is tone mapped into the image as soon as it has been rendered and the {@link Listener} is told about it,
+ * and again once every pass is complete along with the {@link Progress} of the render. Rendering stops once the
+ * maximum number of passes is reached, the time limit runs out, the estimated error of the image falls below the target
+ * error, or {@link #stop()} is called. The error is the root mean square over all pixels of the standard error of the
+ * mean of their brightness, with 1 as full white.
+ *
+ * <p>The frame buffer is kept between calls to {@link #render()} so a render which was stopped may be continued. It
+ * must be cleared with {@link #reset()} whenever anything about the camera or scene changes. Each pass uses the next
+ * sample of the camera's {@link ray_tracer.sampling.Sampler} for every pixel, so passes only differ if the camera has
+ * some blur.
+ *
+ * Created by William Martin III on 1/24/16.
+ */
+public class ProgressiveRenderer {
+    private final Camera camera;
+    private final int maxPasses;
+    private final long timeLimit;
+    private final double targetError;
+    private final ToneMapper toneMapper;
+    private final Listener listener;
+    private final Executor executor;
+    private final int parallelism;
+
+    private FrameBuffer frameBuffer;
+    // the sum of the squared brightness of the samples of each pixel
+    private double[] squares;
+    private BufferedImage image;
+    private int passes;
+    private long renderTime;
+    private volatile boolean stopped;
+
+    /**
+     * Is told as the image is updated.
+     */
+    public interface Listener {
+        /**
+         * Called once a tile of the image has been rendered and mapped into the image.
+         *
+         * <p>This is called by the thread which rendered the tile and so may be called by several threads at once.
+         *
+         * @param image The image being rendered
+         * @param x The column of the upper left pixel of the tile
+         * @param y The row of the upper left pixel of the tile
+         * @param width The width of the tile
+         * @param height The height of the tile
+         */
+        default void tileRendered(BufferedImage image, int x, int y, int width, int height) { }
+
+        /**
+         * Called by the thread which called {@link #render()} once every pixel of the image has been rendered again.
+         *
+         * @param image The image being rendered
+         * @param progress How far the render has come
+         */
+        void passRendered(BufferedImage image, Progress progress);
+    }
+
+    private ProgressiveRenderer(Builder builder) {
+        camera = builder.camera;
+        maxPasses = builder.maxPasses;
+        timeLimit = builder.timeLimit;
+        targetError = builder.targetError;
+        toneMapper = builder.toneMapper;
+        listener = builder.listener;
+        executor = builder.executor;
+        parallelism = builder.parallelism;
+    }
+
+    /**
+     * Renders passes until one of the conditions for stopping is met.
+     *
+     * <p>Continues from the passes rendered by earlier calls unless {@link #reset()} has been called since. Returns
+     * without rendering anything if {@link #stop()} was called after the last reset and no render has stopped for it.
+     *
+     * @return The image, which is the same image on every call until the size of the camera changes
+     */
+    public BufferedImage render() {
+        int width = camera.width;
+        int height = camera.height;
+        if (frameBuffer == null || frameBuffer.getWidth() != width || frameBuffer.getHeight() != height) {
+            frameBuffer = new FrameBuffer(width, height);
+            squares = new double[width * height];
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            passes = 0;
+            renderTime = 0;
+        }
+
+        long start = System.nanoTime();
+        TileScheduler tiles = camera.createTileScheduler();
+        int workers = TileWorkers.getWorkerCount(executor, parallelism, true);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        while (passes < maxPasses) {
+            if (stopped) {
+                // the stop has been seen, so the next call continues
+                stopped = false;
+                break;
+            }
+
+            // tiles not started before the time runs out are left for the next call
+            int pass = passes;
+            AtomicInteger rendered = new AtomicInteger();
+            TileWorkers.run(executor, workers, tiles.getTileCount(), tile -> {
+                renderTile(tiles, tile, pass, pixels);
+                rendered.incrementAndGet();
+            }, () -> stopped || System.nanoTime() - start >= timeLimit);
+
+            long elapsed = System.nanoTime() - start;
+            if (rendered.get() < tiles.getTileCount()) {
+                // cut short by the time limit or by a stop, which has now been seen
+                stopped = false;
+                break;
+            }
+            passes++;
+
+            Progress progress = getProgress(renderTime + elapsed, timeLimit - elapsed);
+            if (listener != null) {
+                listener.passRendered(image, progress);
+            }
+            if ((targetError > 0 && progress.getError() <= targetError) || elapsed >= timeLimit) {
+                break;
+            }
+        }
+        renderTime += System.nanoTime() - start;
+
+        return image;
+    }
+
+    /**
+     * Asks a render in progress to stop as soon as the tiles being rendered are done. May be called from any thread.
+     *
+     * <p>If no render is in progress the next call to {@link #render()} stops before rendering anything, unless
+     * {@link #reset()} is called first.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Discards every pass rendered so far along with any stop which no render has stopped for yet.
+     */
+    public void reset() {
+        stopped = false;
+        if (frameBuffer != null) {
+            frameBuffer.clear();
+            Arrays.fill(squares, 0);
+        }
+        passes = 0;
+        renderTime = 0;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    /**
+     * Returns the frame buffer the passes are accumulated in, or null if nothing has been rendered.
+     */
+    public FrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    private void renderTile(TileScheduler tiles, int tile, int pass, int[] pixels) {
+        int width = frameBuffer.getWidth();
+        FloatColor sample = new FloatColor();
+        FloatColor color = new FloatColor();
+        for (int y = tiles.getY(tile); y < tiles.getEndY(tile); y++) {
+            for (int x = tiles.getX(tile); x < tiles.getEndX(tile); x++) {
+                // pixels of a tile finished by a render which was stopped part way through the pass are already done
+                if (frameBuffer.getSampleCount(x, y) > pass) {
+                    continue;
+                }
+
+                camera.getSample(x, y, pass, maxPasses, sample);
+                frameBuffer.addSample(x, y, sample);
+                double luminance = luminance(sample);
+                squares[y * width + x] += luminance * luminance;
+                pixels[y * width + x] = toneMapper.map(frameBuffer.getColor(x, y, color));
+            }
+        }
+
+        if (listener != null) {
+            listener.tileRendered(image, tiles.getX(tile), tiles.getY(tile),
+                    tiles.getEndX(tile) - tiles.getX(tile), tiles.getEndY(tile) - tiles.getY(tile));
+        }
+    }
+
+    /**
+     * Returns the progress after a pass given the total time spent on every pass and the time left before the limit.
+     */
+    private Progress getProgress(long elapsed, long timeLeft) {
+        double error = getError();
+
+        // the error of a mean falls with the square root of the number of samples
+        long remainingPasses = maxPasses - passes;
+        if (targetError > 0 && error != Double.POSITIVE_INFINITY) {
+            double needed = Math.ceil(passes * (error / targetError) * (error / targetError)) - passes;
+            remainingPasses = Math.max(0, Math.min(remainingPasses, (long) needed));
+        }
+        long remaining = Math.max(0, Math.min(timeLeft, remainingPasses * (elapsed / passes)));
+        if (error <= targetError) {
+            remaining = 0;
+        }
+
+        return new Progress(passes, maxPasses, elapsed, remaining, error);
+    }
+
+    private double getError() {
+        if (passes < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        int width = frameBuffer.getWidth();
+        FloatColor color = new FloatColor();
+        double sum = 0;
+        for (int y = 0; y < frameBuffer.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                int count = frameBuffer.getSampleCount(x, y);
+                double mean = luminance(frameBuffer.getColor(x, y, color));
+                double variance = Math.max(0, (squares[y * width + x] - count * mean * mean) / (count - 1));
+                sum += variance / count;
+            }
+        }
+        return Math.sqrt(sum / squares.length);
+    }
+
+    private static double luminance(FloatColor color) {
+        return 0.2126 * color.r + 0.7152 * color.g + 0.0722 * color.b;
+    }
+
+    /**
+     * How far a progressive render has come and how long it is expected to take to finish.
+     */
+    public static final class Progress {
+        private final int passes;
+        private final int maxPasses;
+        private final long elapsed;
+        private final long remaining;
+        private final double error;
+
+        private Progress(int passes, int maxPasses, long elapsed, long remaining, double error) {
+            this.passes = passes;
+            this.maxPasses = maxPasses;
+            this.elapsed = elapsed;
+            this.remaining = remaining;
+            this.error = error;
+        }
+
+        public int getPasses() {
+            return passes;
+        }
+
+        public int getMaxPasses() {
+            return maxPasses;
+        }
+
+        /**
+         * Returns the time spent rendering the passes so far.
+         */
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsed);
+        }
+
+        /**
+         * Returns an estimate of the time left until the render stops, based on the time taken by each pass so far,
+         * the time limit, and how many more passes the target error needs.
+         */
+        public long getRemainingMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(remaining);
+        }
+
+        /**
+         * Returns the estimated fraction of the render which is complete, between 0 and 1.
+         */
+        public double getFraction() {
+            return elapsed + remaining == 0 ? 1 : (double) elapsed / (elapsed + remaining);
+        }
+
+        /**
+         * Returns the estimated error of the image, or positive infinity until there are enough passes to tell.
+         */
+        public double getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "pass " + passes + "/" + maxPasses + ", " + getElapsedMillis() + " ms elapsed, "
+                    + getRemainingMillis() + " ms remaining, error " + error;
+        }
+    }
+
+    public static class Builder {
+        private final Camera camera;
+        private int maxPasses = 64;
+        private long timeLimit = Long.MAX_VALUE;
+        private double targetError = 0;
+        private ToneMapper toneMapper = new ToneMapper.Builder().build();
+        private Listener listener;
+        private Executor executor = ForkJoinPool.commonPool();
+        private int parallelism = 0;
+
+        /**
+         * @param camera The camera whose image is rendered
+         */
+        public Builder(Camera camera) {
+            this.camera = camera;
+        }
+
+        /**
+         * Specifies the most passes to render, which is also the number of samples per pixel. Defaults to 64.
+         *
+         * @throws IllegalArgumentException if the number is not greater than zero
+         */
+        public Builder maxPasses(int maxPasses) {
+            if (maxPasses <= 0) {
+                throw new IllegalArgumentException("The maximum number of passes must be greater than zero.");
+            }
+            this.maxPasses = maxPasses;
+            return this;
+        }
+
+        /**
+         * Specifies how long each call to {@link #render()} may spend before it stops. Tiles already being rendered
+         * when the time runs out are finished. Defaults to no limit.
+         *
+         * @throws IllegalArgumentException if the time is negative
+         */
+        public Builder timeLimit(long time, TimeUnit unit) {
+            if (time < 0) {
+                throw new IllegalArgumentException("The time limit must not be negative.");
+            }
+            this.timeLimit = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Specifies the estimated error at which rendering stops. Defaults to 0, which never stops early.
+         *
+         * @throws IllegalArgumentException if the error is negative
+         */
+        public Builder targetError(double targetError) {
+            if (targetError < 0) {
+                throw new IllegalArgumentException("The target error must not be negative.");
+            }
+            this.targetError = targetError;
+            return this;
+        }
+
+        public Builder toneMapper(ToneMapper toneMapper) {
+            this.toneMapper = toneMapper;
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Specifies the executor which runs the workers rendering each pass. Defaults to the common pool.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Specifies the most tiles which may be rendered at once, as for {@link Camera#setParallelism(int)}. Defaults
+         * to 0, which matches the executor.
+         *
+         * @throws IllegalArgumentException if the parallelism is negative
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 0) {
+                throw new IllegalArgumentException("The parallelism must not be negative.");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public ProgressiveRenderer build() {
+            return new ProgressiveRenderer(this);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package ray_tracer.cameras;
+
+import ray_tracer.FloatColor;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+/**
+ * Follows a ray from the lens and the chain of secondary rays it spawns with a loop rather than recursion.
+ *
+ * <p>Each time a ray hits a surface the {@link Shader} gives the color of the surface itself and may ask, through the
+ * {@link Bounce}, for one secondary ray to be followed which adds some amount of whatever color it finds. The color and
+ * amount of each surface along the chain are kept in arrays belonging to the rendering thread and are combined from the
+ * deepest surface back once the chain ends. This gives the same color as shading recursively would, without the Java
+ * stack growing with every reflection.
+ *
+ * <p>A chain ends when a ray hits nothing, in which case the camera's background is used, when the shader asks for no
+ * secondary ray, when the maximum depth is reached, when the throughput falls below the minimum, or, if enabled, by
+ * russian roulette. The throughput of a ray is the product of the amounts of every surface before it and so is the most
+ * it can add to the pixel. Russian roulette draws its random numbers from the camera's sampler by the pixel, the sample
+ * and the depth, so the same image always renders the same.
+ *
+ * Created by William Martin III on 1/20/16.
+ */
+public class ShadingEngine {
+    private final Camera camera;
+    private final Shader shader;
+
+    private int maxDepth = 16;
+    private double minThroughput = 1.0 / 256;
+    private boolean russianRouletteEnabled = false;
+    private int russianRouletteDepth = 3;
+
+    private final ThreadLocal<PathState> states = ThreadLocal.withInitial(PathState::new);
+
+    /**
+     * Describes how a camera colors a single surface.
+     */
+    public interface Shader {
+        /**
+         * Sets a color to the color of the surface at the intersect, not including any secondary ray.
+         *
+         * @param ray The ray which hit the surface
+         * @param intersect Where the ray hit the surface, only valid until this method returns
+         * @param bounce Where to ask for a secondary ray to be followed
+         * @param color The color to set, black when called
+         */
+        void shade(Ray ray, RayIntersect intersect, Bounce bounce, FloatColor color);
+    }
+
+    /**
+     * Creates an engine which finds intersects and the background using a camera.
+     *
+     * @param camera The camera whose geometry and background are used
+     * @param shader How each surface is colored
+     */
+    public ShadingEngine(Camera camera, Shader shader) {
+        this.camera = camera;
+        this.shader = shader;
+    }
+
+    /**
+     * Sets a color to the color found by a ray and all of the secondary rays the shader asks for.
+     *
+     * @param ray The ray from the lens
+     * @param color The color to set
+     */
+    public void trace(Ray ray, FloatColor color) {
+        PathState state = states.get();
+        state.ensureCapacity(maxDepth);
+        RayIntersect intersect = camera.getIntersectRecord(0);
+        Bounce bounce = state.bounce;
+        Camera.CurrentSample sample = camera.getCurrentSample();
+
+        double throughput = 1;
+        int depth = 0;
+        while (true) {
+            if (!camera.findClosest(ray, intersect)) {
+                camera.getScene().getBackground().getColor(ray, color);
+                break;
+            }
+
+            bounce.reset(depth, throughput);
+            color.set(0, 0, 0);
+            shader.shade(ray, intersect, bounce, color);
+
+            double amount = getFollowAmount(bounce, depth, throughput, sample.pixel, sample.sample);
+            if (amount == 0) {
+                break;
+            }
+
+            state.colors[depth * 3] = color.r;
+            state.colors[depth * 3 + 1] = color.g;
+            state.colors[depth * 3 + 2] = color.b;
+            state.amounts[depth] = amount;
+            ray = bounce.ray;
+            throughput *= amount;
+            depth++;
+        }
+
+        // combine from the end of the chain back to the lens
+        for (int i = depth - 1; i >= 0; i--) {
+            color.mul(state.amounts[i]);
+            color.r += state.colors[i * 3];
+            color.g += state.colors[i * 3 + 1];
+            color.b += state.colors[i * 3 + 2];
+        }
+    }
+
+    /**
+     * Returns how much the color found by the secondary ray asked for from a surface adds to the color of the surface,
+     * made up for any chains russian roulette ends, or 0 if the chain ends at the surface.
+     *
+     * @param bounce Where the shader asked for the secondary ray
+     * @param depth How many surfaces were hit before the one shaded
+     * @param throughput The throughput of the ray which hit the surface
+     * @param pixel The pixel the ray from the lens was cast for, as y * width + x
+     * @param sample Which sample of the pixel the ray from the lens is
+     * @return The amount to follow the secondary ray with, or 0 if it is not followed
+     */
+    double getFollowAmount(Bounce bounce, int depth, double throughput, int pixel, int sample) {
+        double amount = bounce.amount;
+        double nextThroughput = throughput * amount;
+        if (bounce.ray == null || amount <= 0 || depth + 1 >= maxDepth || nextThroughput < minThroughput) {
+            return 0;
+        }
+
+        if (russianRouletteEnabled && depth + 1 >= russianRouletteDepth) {
+            // survivors make up for the chains which end here
+            double survival = Math.min(1, nextThroughput);
+            if (camera.getRandom(pixel, sample, depth) >= survival) {
+                return 0;
+            }
+            amount /= survival;
+        }
+        return amount;
+    }
+
+    Camera getCamera() {
+        return camera;
+    }
+
+    Shader getShader() {
+        return shader;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Specifies how many surfaces a ray may hit, including the first, before secondary rays are no longer followed.
+     *
+     * <p>Defaults to 16.
+     *
+     * @param maxDepth The greatest number of surfaces shaded for one ray from the lens
+     * @throws IllegalArgumentException if the depth is not greater than zero
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("The maximum depth must be greater than zero.");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public double getMinThroughput() {
+        return minThroughput;
+    }
+
+    /**
+     * Specifies the throughput below which secondary rays are no longer followed.
+     *
+     * <p>Defaults to 1/256, the smallest step of an 8 bit color channel.
+     *
+     * @param minThroughput The least throughput a secondary ray must have to be followed
+     * @throws IllegalArgumentException if the throughput is negative
+     */
+    public void setMinThroughput(double minThroughput) {
+        if (minThroughput < 0) {
+            throw new IllegalArgumentException("The minimum throughput must not be negative.");
+        }
+        this.minThroughput = minThroughput;
+    }
+
+    /**
+     * Specifies whether secondary rays are randomly ended with a probability based on their throughput.
+     *
+     * <p>This adds noise but keeps the cost of scenes with many dim reflections down. Disabled by default.
+     *
+     * @param enable Whether russian roulette is used
+     */
+    public void enableRussianRoulette(boolean enable) {
+        russianRouletteEnabled = enable;
+    }
+
+    /**
+     * Specifies how many surfaces a ray must hit before russian roulette may end its chain.
+     *
+     * <p>Defaults to 3.
+     *
+     * @param russianRouletteDepth The depth from which russian roulette applies
+     * @throws IllegalArgumentException if the depth is not greater than zero
+     */
+    public void setRussianRouletteDepth(int russianRouletteDepth) {
+        if (russianRouletteDepth <= 0) {
+            throw new IllegalArgumentException("The russian roulette depth must be greater than zero.");
+        }
+        this.russianRouletteDepth = russianRouletteDepth;
+    }
+
+    /**
+     * Describes the surface being shaded and collects the secondary ray to follow from it, if any.
+     */
+    public static final class Bounce {
+        private int depth;
+        private double throughput;
+        private Ray ray;
+        private double amount;
+
+        Bounce() { }
+
+        void reset(int depth, double throughput) {
+            this.depth = depth;
+            this.throughput = throughput;
+            ray = null;
+            amount = 0;
+        }
+
+        /**
+         * Returns how many surfaces were hit before this one, 0 for the surface hit by the ray from the lens.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the most that the color of this surface can add to the pixel.
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        Ray getRay() {
+            return ray;
+        }
+
+        /**
+         * Asks for a secondary ray to be followed, replacing any asked for before.
+         *
+         * @param ray The secondary ray
+         * @param amount How much of the color found by the secondary ray is added to the color of the surface
+         */
+        public void follow(Ray ray, double amount) {
+            this.ray = ray;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * The colors and amounts along the chain being followed by one thread.
+     */
+    private static final class PathState {
+        private final Bounce bounce = new Bounce();
+        private float[] colors = new float[0];
+        private double[] amounts = new double[0];
+
+        private void ensureCapacity(int depth) {
+            if (amounts.length < depth) {
+                colors = new float[depth * 3];
+                amounts = new double[depth];
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ray_tracer.cameras;
+
+/**
+ * The order in which the tiles of an image are handed out to be rendered.
+ *
+ * Created by William Martin III on 1/20/16.
+ */
+public enum TileOrder {
+    /**
+     * Left to right, then top to bottom.
+     */
+    SCANLINE,
+
+    /**
+     * Along a Z-order (Morton) curve, so that tiles rendered close together in time are also close together in the
+     * image and tend to touch the same geometry.
+     */
+    MORTON
+}
@@ -0,0 +1,107 @@
+package ray_tracer.cameras;
+
+import java.util.Arrays;
+
+/**
+ * Divides an image into square tiles and fixes the order in which they are rendered.
+ *
+ * <p>Tiles are referred to by their position in the order, so a tile index can be handed to any worker which then
+ * renders the pixels between {@link #getX(int)}, {@link #getY(int)} and {@link #getEndX(int)}, {@link #getEndY(int)}.
+ * Tiles along the right and bottom edges are clipped to the image.
+ *
+ * Created by William Martin III on 1/20/16.
+ */
+public class TileScheduler {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    // x and y of the upper left pixel of each tile in render order
+    private final int[] origins;
+
+    /**
+     * Creates a schedule for an image.
+     *
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param tileSize The width and height of each tile
+     * @param order The order in which tiles should be rendered
+     * @throws IllegalArgumentException if the tile size is not greater than zero
+     */
+    public TileScheduler(int width, int height, int tileSize, TileOrder order) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("The tile size must be greater than zero.");
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        int count = tilesX * tilesY;
+
+        long[] keys = new long[count];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int index = ty * tilesX + tx;
+                long key = order == TileOrder.MORTON ? interleave(tx) | (interleave(ty) << 1) : index;
+                keys[index] = (key << 32) | index;
+            }
+        }
+        Arrays.sort(keys);
+
+        origins = new int[count * 2];
+        for (int i = 0; i < count; i++) {
+            int index = (int) keys[i];
+            origins[i * 2] = (index % tilesX) * tileSize;
+            origins[i * 2 + 1] = (index / tilesX) * tileSize;
+        }
+    }
+
+    public int getTileCount() {
+        return origins.length / 2;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Returns the x coordinate of the leftmost column of pixels in the tile.
+     */
+    public int getX(int tile) {
+        return origins[tile * 2];
+    }
+
+    /**
+     * Returns the y coordinate of the topmost row of pixels in the tile.
+     */
+    public int getY(int tile) {
+        return origins[tile * 2 + 1];
+    }
+
+    /**
+     * Returns one past the x coordinate of the rightmost column of pixels in the tile.
+     */
+    public int getEndX(int tile) {
+        return Math.min(getX(tile) + tileSize, width);
+    }
+
+    /**
+     * Returns one past the y coordinate of the bottommost row of pixels in the tile.
+     */
+    public int getEndY(int tile) {
+        return Math.min(getY(tile) + tileSize, height);
+    }
+
+    /**
+     * Spreads the lower 16 bits of a value out to every other bit.
+     */
+    private static long interleave(int value) {
+        long x = value & 0xFFFF;
+        x = (x | (x << 8)) & 0x00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0FL;
+        x = (x | (x << 2)) & 0x33333333L;
+        x = (x | (x << 1)) & 0x55555555L;
+        return x;
+    }
+}
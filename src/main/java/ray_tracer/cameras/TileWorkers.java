@@ -0,0 +1,113 @@
+package ray_tracer.cameras;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Renders the tiles of an image on an {@link Executor} with a fixed number of workers.
+ *
+ * <p>Each worker takes the next tile in the order of the {@link TileScheduler} until there are none left, so tiles
+ * are still started in order and no more than the given number of tiles are rendered at once however many threads the
+ * executor has. Workers check whether the render has been cancelled, or whether any worker has failed, before starting
+ * each tile.
+ *
+ * Created by William Martin III on 1/25/16.
+ */
+final class TileWorkers {
+
+    private TileWorkers() { }
+
+    /**
+     * Returns how many workers to use on an executor, the given parallelism if it is greater than zero and otherwise the
+     * parallelism of a {@link ForkJoinPool} or the number of processors for any other executor.
+     *
+     * <p>The calling thread of a blocking render also works on tiles, which the common pool allows for by having one
+     * thread fewer than there are processors, so blocking renders on the common pool use one more worker.
+     */
+    static int getWorkerCount(Executor executor, int parallelism, boolean blocking) {
+        if (parallelism > 0) {
+            return parallelism;
+        }
+        if (executor instanceof ForkJoinPool) {
+            int workers = ((ForkJoinPool) executor).getParallelism();
+            return blocking && executor == ForkJoinPool.commonPool() ? workers + 1 : workers;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Renders every tile, the calling thread being one of the workers, and returns once they are all done.
+     *
+     * <p>If any worker fails the others stop before their next tile, and this returns once they all have.
+     *
+     * @throws RuntimeException whatever was first thrown while rendering a tile
+     */
+    static void run(Executor executor, int workers, int tileCount, IntConsumer action, BooleanSupplier cancelled) {
+        AtomicInteger next = new AtomicInteger();
+        // completed exceptionally by the first worker to fail, which the others check before each tile
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+
+        CompletableFuture<Void> helpers = spawn(executor, workers - 1, tileCount, next, action, cancelled, failed);
+        work(tileCount, next, action, cancelled, failed);
+
+        // waits for the helpers even if the calling thread failed, as they may still be writing into the image
+        helpers.join();
+        if (failed.isDone()) {
+            try {
+                failed.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Starts rendering every tile on the executor and returns a future which is completed once they are all done, or
+     * completed exceptionally with whatever was first thrown once every worker has stopped.
+     */
+    static CompletableFuture<Void> runAsync(Executor executor, int workers, int tileCount, IntConsumer action,
+                                            BooleanSupplier cancelled) {
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        return spawn(executor, workers, tileCount, new AtomicInteger(), action, cancelled, failed)
+                .thenCompose(ignored -> failed.isDone() ? failed : CompletableFuture.<Void>completedFuture(null));
+    }
+
+    private static CompletableFuture<Void> spawn(Executor executor, int workers, int tileCount, AtomicInteger next,
+                                                 IntConsumer action, BooleanSupplier cancelled,
+                                                 CompletableFuture<Void> failed) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[Math.max(0, Math.min(workers, tileCount))];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> work(tileCount, next, action, cancelled, failed), executor);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Renders tiles until there are none left, the render is cancelled, or some worker has failed, completing the
+     * shared failure with whatever this worker throws.
+     */
+    private static void work(int tileCount, AtomicInteger next, IntConsumer action, BooleanSupplier cancelled,
+                             CompletableFuture<Void> failed) {
+        try {
+            while (!failed.isDone() && !cancelled.getAsBoolean()) {
+                int tile = next.getAndIncrement();
+                if (tile >= tileCount) {
+                    return;
+                }
+                action.accept(tile);
+            }
+        } catch (RuntimeException | Error e) {
+            failed.completeExceptionally(e);
+        }
+    }
+}
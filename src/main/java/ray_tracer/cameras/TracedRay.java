@@ -0,0 +1,46 @@
+package ray_tracer.cameras;
+
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+/**
+ * A ray which has been traced ahead of being shaded, together with many others, and which knows where to find its
+ * intersect and whether the shadow rays cast from that intersect are occluded.
+ *
+ * <p>The camera hands these answers back when shading asks for them, as described by
+ * {@link Camera#getShadowRays(RayIntersect, Ray[], double[])}, so long as whatever traced the ray still holds them.
+ *
+ * Created by William Martin III on 1/31/16.
+ */
+abstract class TracedRay extends Ray {
+    TracedRay(Ray ray) {
+        super(ray);
+    }
+
+    /**
+     * Returns whether what was found for this ray is still held rather than replaced by what was found for the rays
+     * traced after it.
+     */
+    abstract boolean isCurrent();
+
+    /**
+     * Returns the closest intersect found for this ray, which is not a hit if the ray hit nothing.
+     */
+    abstract RayIntersect getIntersect();
+
+    /**
+     * Returns 1 if the same shadow ray as the given one was traced from this ray's intersect and was occluded, 0 if
+     * it was not occluded, or -1 if no such shadow ray was traced.
+     */
+    abstract int getOccluded(Ray ray, double maxDistance);
+
+    /**
+     * Returns whether a shadow ray which was traced is the very same as one shading asks about, in every coordinate
+     * and in the furthest distance tested.
+     */
+    static boolean matches(Ray shadow, double shadowDistance, Ray ray, double maxDistance) {
+        return shadow != null && Double.compare(shadowDistance, maxDistance) == 0
+                && shadow.getPositionVector().equals(ray.getPositionVector())
+                && shadow.getAngleVector().equals(ray.getAngleVector());
+    }
+}
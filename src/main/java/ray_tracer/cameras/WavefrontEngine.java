@@ -0,0 +1,371 @@
+package ray_tracer.cameras;
+
+import ray_tracer.FloatColor;
+import ray_tracer.Scene;
+import ray_tracer.acceleration.RayPacket;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Follows many rays from the lens at once, one stage at a time, rather than following each ray through every surface
+ * of its chain before starting the next as a {@link ShadingEngine} does.
+ *
+ * <p>The rays wait in a queue, a wave, which goes through each stage as a whole:
+ * <ol>
+ *     <li>The closest intersect of every ray is found, as packets for the rays from the lens</li>
+ *     <li>The rays which hit nothing add the background</li>
+ *     <li>The rays which hit something are sorted by the texture mapping of the surface hit, or by its material if it
+ *         has none</li>
+ *     <li>The shadow rays each surface will test, as given by
+ *         {@link Camera#getShadowRays(RayIntersect, Ray[], double[])}, are queued toward each light and traced, again
+ *         as packets for the surfaces hit by rays from the lens</li>
+ *     <li>Each surface is shaded in sorted order, with its shadow tests answered from the traced queue, and the
+ *         secondary ray it asks for goes into the next wave</li>
+ * </ol>
+ * Each stage runs one kind of work over the whole wave, so the accelerator while finding intersects, or one
+ * material's textures while shading, stays in the caches and branches go the same way for long runs. This matters most
+ * once reflections have scattered the rays, which per-pixel tracing would otherwise interleave with everything else.
+ *
+ * <p>The shader, maximum depth, minimum throughput and russian roulette are those of the {@link ShadingEngine} the
+ * engine is made from, and the colors found are the same but for rounding, since each surface adds its color to the
+ * pixel as it is shaded rather than once the chain has ended.
+ *
+ * Created by William Martin III on 1/31/16.
+ */
+public class WavefrontEngine {
+    private final ShadingEngine engine;
+
+    private final ThreadLocal<WaveState> states = ThreadLocal.withInitial(WaveState::new);
+
+    /**
+     * Creates an engine which shades as the given engine does.
+     *
+     * @param engine The engine whose camera, shader and settings are used
+     */
+    public WavefrontEngine(ShadingEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Sets the color found by each of many rays and all of the secondary rays the shader asks for.
+     *
+     * @param rays The rays from the lens, best ordered so that rays close together in the array are close together in
+     *             the image, as they are traced as packets
+     * @param pixels The pixel each ray was cast for, as y * width + x, which with its sample chooses the random numbers
+     *               russian roulette draws for it
+     * @param samples Which sample of its pixel each ray is
+     * @param count The number of rays
+     * @param colors The colors to set, one for each ray
+     */
+    public void trace(Ray[] rays, int[] pixels, int[] samples, int count, FloatColor[] colors) {
+        Camera camera = engine.getCamera();
+        Scene scene = camera.getScene();
+        boolean packets = scene.getGeometryCount() >= Camera.MIN_PACKET_GEOMETRY;
+
+        WaveState state = states.get();
+        state.keys.clear();
+        Wave wave = state.current;
+        Wave next = state.next;
+        for (int i = 0; i < count; i++) {
+            colors[i].set(0, 0, 0);
+            wave.add(rays[i], i, 1);
+        }
+
+        // secondary rays scatter too widely for packets to pay for themselves
+        for (int depth = 0; wave.count > 0; depth++) {
+            findClosest(scene, wave, packets && depth == 0, state);
+            int hits = sortHits(scene, wave, colors, state);
+            castShadows(camera, scene, wave, hits, packets && depth == 0, state);
+            shade(wave, next, hits, depth, pixels, samples, colors, state);
+
+            wave.clear();
+            Wave swap = wave;
+            wave = next;
+            next = swap;
+        }
+    }
+
+    /**
+     * Finds the closest intersect of every ray of the wave, 16 neighbouring rays at a time if traced as packets.
+     */
+    private static void findClosest(Scene scene, Wave wave, boolean packets, WaveState state) {
+        if (!packets) {
+            for (int i = 0; i < wave.count; i++) {
+                wave.intersects[i].reset();
+                scene.findClosest(wave.rays[i], wave.intersects[i]);
+            }
+            return;
+        }
+
+        RayPacket packet = state.packet;
+        for (int start = 0; start < wave.count; start += RayPacket.MAX_SIZE) {
+            int end = Math.min(start + RayPacket.MAX_SIZE, wave.count);
+            packet.clear();
+            for (int i = start; i < end; i++) {
+                wave.intersects[i].reset();
+                state.intersects[i - start] = wave.intersects[i];
+                packet.add(wave.rays[i]);
+            }
+            scene.findClosest(packet, state.intersects);
+        }
+    }
+
+    /**
+     * Adds the background to the pixel of every ray which hit nothing and orders the rest by what they hit.
+     *
+     * @return The number of rays which hit something
+     */
+    private static int sortHits(Scene scene, Wave wave, FloatColor[] colors, WaveState state) {
+        state.ensureCapacity(wave.count);
+        Map<Object, Integer> keys = state.keys;
+        Object lastKey = null;
+        int lastKind = -1;
+        int hits = 0;
+        for (int i = 0; i < wave.count; i++) {
+            RayIntersect intersect = wave.intersects[i];
+            if (!intersect.isHit()) {
+                scene.getBackground().getColor(wave.rays[i], state.color);
+                colors[wave.sources[i]].addScaled(state.color, wave.throughputs[i]);
+                state.kinds[i] = -1;
+                continue;
+            }
+
+            Geometry geometry = intersect.getGeometry();
+            Object key = geometry.getTextureMapping() != null ? geometry.getTextureMapping() : geometry.getMaterial();
+            // neighbouring rays mostly hit the same thing
+            if (key != lastKey) {
+                Integer kind = keys.get(key);
+                if (kind == null) {
+                    kind = keys.size();
+                    keys.put(key, kind);
+                }
+                lastKey = key;
+                lastKind = kind;
+            }
+            state.kinds[i] = lastKind;
+            hits++;
+        }
+
+        // a counting sort keeps the rays of each kind in the order they were queued
+        int[] starts = new int[keys.size() + 1];
+        for (int i = 0; i < wave.count; i++) {
+            if (state.kinds[i] >= 0) {
+                starts[state.kinds[i] + 1]++;
+            }
+        }
+        for (int kind = 1; kind < starts.length; kind++) {
+            starts[kind] += starts[kind - 1];
+        }
+        for (int i = 0; i < wave.count; i++) {
+            if (state.kinds[i] >= 0) {
+                state.order[starts[state.kinds[i]]++] = i;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Traces the shadow rays which shading each hit will test, toward one light at a time.
+     */
+    private static void castShadows(Camera camera, Scene scene, Wave wave, int hits, boolean packets,
+                                    WaveState state) {
+        int lightCount = scene.getLightCount();
+        wave.setLightCount(lightCount);
+        for (int i = 0; i < hits; i++) {
+            int index = state.order[i];
+            Arrays.fill(wave.shadowRays[index], null);
+            camera.getShadowRays(wave.intersects[index], wave.shadowRays[index], wave.shadowDistances[index]);
+        }
+
+        RayPacket packet = state.packet;
+        for (int light = 0; light < lightCount; light++) {
+            packet.clear();
+            for (int i = 0; i < hits; i++) {
+                int index = state.order[i];
+                Ray shadow = wave.shadowRays[index][light];
+                if (shadow == null) {
+                    continue;
+                }
+
+                double maxDistance = wave.shadowDistances[index][light];
+                if (!packets) {
+                    wave.occluded[index][light] = scene.isOccluded(shadow, 0, maxDistance);
+                    continue;
+                }
+
+                state.slots[packet.add(shadow, 0, maxDistance)] = index;
+                if (packet.size() == RayPacket.MAX_SIZE) {
+                    traceShadows(scene, wave, light, state);
+                }
+            }
+            if (!packet.isEmpty()) {
+                traceShadows(scene, wave, light, state);
+            }
+        }
+    }
+
+    /**
+     * Tests the packet of shadow rays toward a light and then empties it.
+     */
+    private static void traceShadows(Scene scene, Wave wave, int light, WaveState state) {
+        RayPacket packet = state.packet;
+        int occluded = scene.isOccluded(packet);
+        for (int slot = 0; slot < packet.size(); slot++) {
+            wave.occluded[state.slots[slot]][light] = (occluded & 1 << slot) != 0;
+        }
+        packet.clear();
+    }
+
+    /**
+     * Shades every hit in sorted order, adding the color of each surface to its pixel and queueing the secondary rays
+     * asked for into the next wave.
+     */
+    private void shade(Wave wave, Wave next, int hits, int depth, int[] pixels, int[] samples, FloatColor[] colors,
+                       WaveState state) {
+        ShadingEngine.Shader shader = engine.getShader();
+        ShadingEngine.Bounce bounce = state.bounce;
+        FloatColor color = state.color;
+        for (int i = 0; i < hits; i++) {
+            int index = state.order[i];
+            double throughput = wave.throughputs[index];
+
+            bounce.reset(depth, throughput);
+            color.set(0, 0, 0);
+            shader.shade(wave.rays[index], wave.intersects[index], bounce, color);
+            int source = wave.sources[index];
+            colors[source].addScaled(color, throughput);
+
+            double amount = engine.getFollowAmount(bounce, depth, throughput, pixels[source], samples[source]);
+            if (amount != 0) {
+                next.add(bounce.getRay(), source, throughput * amount);
+            }
+        }
+    }
+
+    /**
+     * A queue of rays which are traced together, each with the ray from the lens it continues, its throughput, its
+     * closest intersect and, for each light, the shadow ray from that intersect and whether it is occluded.
+     */
+    private static final class Wave {
+        private QueuedRay[] rays = new QueuedRay[0];
+        private RayIntersect[] intersects = new RayIntersect[0];
+        private int[] sources = new int[0];
+        private double[] throughputs = new double[0];
+        private Ray[][] shadowRays = new Ray[0][];
+        private double[][] shadowDistances = new double[0][];
+        private boolean[][] occluded = new boolean[0][];
+        private int lightCount;
+        private int count;
+
+        private void add(Ray ray, int source, double throughput) {
+            if (count == rays.length) {
+                grow(Math.max(RayPacket.MAX_SIZE, count * 2));
+            }
+
+            rays[count] = new QueuedRay(ray, this, count);
+            sources[count] = source;
+            throughputs[count] = throughput;
+            count++;
+        }
+
+        private void clear() {
+            Arrays.fill(rays, 0, count, null);
+            count = 0;
+        }
+
+        private void grow(int capacity) {
+            int length = rays.length;
+            rays = Arrays.copyOf(rays, capacity);
+            intersects = Arrays.copyOf(intersects, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            throughputs = Arrays.copyOf(throughputs, capacity);
+            shadowRays = Arrays.copyOf(shadowRays, capacity);
+            shadowDistances = Arrays.copyOf(shadowDistances, capacity);
+            occluded = Arrays.copyOf(occluded, capacity);
+            for (int i = length; i < capacity; i++) {
+                intersects[i] = new RayIntersect();
+                shadowRays[i] = new Ray[lightCount];
+                shadowDistances[i] = new double[lightCount];
+                occluded[i] = new boolean[lightCount];
+            }
+        }
+
+        private void setLightCount(int lightCount) {
+            if (this.lightCount != lightCount) {
+                this.lightCount = lightCount;
+                for (int i = 0; i < rays.length; i++) {
+                    shadowRays[i] = new Ray[lightCount];
+                    shadowDistances[i] = new double[lightCount];
+                    occluded[i] = new boolean[lightCount];
+                }
+            }
+        }
+    }
+
+    /**
+     * A ray waiting in a wave, knowing where to find its intersect and shadows for as long as the wave holds it.
+     */
+    private static final class QueuedRay extends TracedRay {
+        private final Wave wave;
+        private final int index;
+
+        private QueuedRay(Ray ray, Wave wave, int index) {
+            super(ray);
+            this.wave = wave;
+            this.index = index;
+        }
+
+        @Override
+        boolean isCurrent() {
+            return wave.rays[index] == this;
+        }
+
+        @Override
+        RayIntersect getIntersect() {
+            return wave.intersects[index];
+        }
+
+        @Override
+        int getOccluded(Ray ray, double maxDistance) {
+            Ray[] shadows = wave.shadowRays[index];
+            for (int light = 0; light < shadows.length; light++) {
+                if (matches(shadows[light], wave.shadowDistances[index][light], ray, maxDistance)) {
+                    return wave.occluded[index][light] ? 1 : 0;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The waves being traced by one thread, the one being shaded and the one its secondary rays are queued into, and
+     * what is needed to sort and trace them.
+     */
+    private static final class WaveState {
+        private final Wave current = new Wave();
+        private final Wave next = new Wave();
+        private final ShadingEngine.Bounce bounce = new ShadingEngine.Bounce();
+        private final FloatColor color = new FloatColor();
+        private final RayPacket packet = new RayPacket();
+        private final RayIntersect[] intersects = new RayIntersect[RayPacket.MAX_SIZE];
+        // the ray of the wave each ray of a shadow packet was cast from
+        private final int[] slots = new int[RayPacket.MAX_SIZE];
+        // the number given to each texture mapping or material hit, in the order they were first hit
+        private final Map<Object, Integer> keys = new IdentityHashMap<>();
+        // the number of what each ray of the wave hit, or -1 if it hit nothing, and the hits in sorted order
+        private int[] kinds = new int[0];
+        private int[] order = new int[0];
+
+        private void ensureCapacity(int count) {
+            if (kinds.length < count) {
+                kinds = new int[count];
+                order = new int[count];
+            }
+        }
+    }
+}
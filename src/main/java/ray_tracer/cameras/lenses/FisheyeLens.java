@@ -1,7 +1,6 @@
 package ray_tracer.cameras.lenses;
 
-import org.jblas.DoubleMatrix;
-import org.jblas.Geometry;
+import ray_tracer.Vector3;
 import ray_tracer.geometry.Ray;
 
 import java.awt.*;
@@ -25,9 +24,8 @@ public class FisheyeLens implements Lens {
         double x = ((double) point.x) / width * 2.0 - 1.0;
         double y = ((double) point.y) / height * 2.0 - 1.0;
 
-        DoubleMatrix angle = new DoubleMatrix(new double[] {Math.sin(x) * amount, -Math.sin(y) * amount, 1});
-        Geometry.normalize(angle);
-        DoubleMatrix position = new DoubleMatrix(angle.toArray()).mul(0.25);
+        Vector3 angle = new Vector3(Math.sin(x) * amount, -Math.sin(y) * amount, 1).normalize();
+        Vector3 position = angle.mul(0.25);
 
         return new Ray(position, angle);
 
@@ -1,5 +1,6 @@
 package ray_tracer.cameras.lenses;
 
+import ray_tracer.Vector3;
 import ray_tracer.geometry.Ray;
 
 import java.awt.*;
@@ -22,7 +23,7 @@ public class OrthographicLens implements Lens {
 
     @Override
     public Ray pointToRay(Point point) {
-        double[] position = new double[] {(point.x - halfWidth) * scaleX, -(point.y - halfHeight) * scaleY, 0};
-        return new Ray(position, new double[] {0, 0, 1});
+        Vector3 position = new Vector3((point.x - halfWidth) * scaleX, -(point.y - halfHeight) * scaleY, 0);
+        return new Ray(position, Vector3.Z);
     }
 }
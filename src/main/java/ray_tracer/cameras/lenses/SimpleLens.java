@@ -1,6 +1,6 @@
 package ray_tracer.cameras.lenses;
 
-import org.jblas.DoubleMatrix;
+import ray_tracer.Vector3;
 import ray_tracer.geometry.Ray;
 
 import java.awt.*;
@@ -30,9 +30,8 @@ public class SimpleLens implements Lens {
         x = (x - halfWidth) / smaller * scale;
         y = (y - halfHeight) / smaller * scale;
 
-        DoubleMatrix rotation = new DoubleMatrix(new double[] {x, -y, distance});
-        DoubleMatrix center = new DoubleMatrix(new double[] {0, 0, 0});
+        Vector3 rotation = new Vector3(x, -y, distance);
 
-        return new Ray(center, rotation);
+        return new Ray(Vector3.ZERO, rotation);
     }
 }
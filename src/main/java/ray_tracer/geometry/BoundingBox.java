@@ -0,0 +1,113 @@
+package ray_tracer.geometry;
+
+/**
+ * An axis-aligned box in space which fully contains some piece of geometry.
+ *
+ * <p>{@link BoundingBox}es are immutable and are primarily used by acceleration structures to quickly discard groups
+ * of geometry which a ray can not possibly intersect.
+ *
+ * Created by William Martin III on 1/16/16.
+ */
+public final class BoundingBox {
+    private final double minX;
+    private final double minY;
+    private final double minZ;
+    private final double maxX;
+    private final double maxY;
+    private final double maxZ;
+
+    /**
+     * Creates an instance based on the minimum and maximum corners of the box.
+     *
+     * @param min The corner of the box with the smallest coordinates
+     * @param max The corner of the box with the largest coordinates
+     */
+    public BoundingBox(double[] min, double[] max) {
+        this(min[0], min[1], min[2], max[0], max[1], max[2]);
+    }
+
+    /**
+     * Creates an instance based on the minimum and maximum coordinates along each axis.
+     */
+    public BoundingBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * Returns the smallest box which contains all of the given points.
+     *
+     * @param points The points to be contained, each as an {x, y, z} array
+     * @return The box containing every point
+     */
+    public static BoundingBox of(double[]... points) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double maxZ = Double.NEGATIVE_INFINITY;
+
+        for (double[] point : points) {
+            minX = Math.min(minX, point[0]);
+            minY = Math.min(minY, point[1]);
+            minZ = Math.min(minZ, point[2]);
+            maxX = Math.max(maxX, point[0]);
+            maxY = Math.max(maxY, point[1]);
+            maxZ = Math.max(maxZ, point[2]);
+        }
+
+        return new BoundingBox(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Returns the smallest box which contains both this box and the other.
+     *
+     * @param other The box to combine with
+     * @return The box containing both boxes
+     */
+    public BoundingBox union(BoundingBox other) {
+        return new BoundingBox(
+                Math.min(minX, other.minX), Math.min(minY, other.minY), Math.min(minZ, other.minZ),
+                Math.max(maxX, other.maxX), Math.max(maxY, other.maxY), Math.max(maxZ, other.maxZ));
+    }
+
+    /**
+     * Returns the minimum coordinate of the box along an axis.
+     *
+     * @param axis 0, 1, or 2 for the x, y, or z axis respectively
+     * @return The minimum coordinate along the axis
+     */
+    public double getMin(int axis) {
+        return axis == 0 ? minX : axis == 1 ? minY : minZ;
+    }
+
+    /**
+     * Returns the maximum coordinate of the box along an axis.
+     *
+     * @param axis 0, 1, or 2 for the x, y, or z axis respectively
+     * @return The maximum coordinate along the axis
+     */
+    public double getMax(int axis) {
+        return axis == 0 ? maxX : axis == 1 ? maxY : maxZ;
+    }
+
+    /**
+     * Returns the center of the box along an axis.
+     *
+     * @param axis 0, 1, or 2 for the x, y, or z axis respectively
+     * @return The center coordinate along the axis
+     */
+    public double getCenter(int axis) {
+        return (getMin(axis) + getMax(axis)) * 0.5;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + minX + ", " + minY + ", " + minZ + "],[" + maxX + ", " + maxY + ", " + maxZ + "]";
+    }
+}
@@ -1,9 +1,8 @@
 package ray_tracer.geometry;
 
 import org.jblas.DoubleMatrix;
-import org.jblas.Solve;
-import org.jblas.exceptions.LapackException;
-import ray_tracer.MatrixUtil;
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
 import ray_tracer.material.Material;
 import ray_tracer.material.TextureMapping;
 
@@ -11,8 +10,8 @@ import ray_tracer.material.TextureMapping;
  * Created by William Martin on 12/24/15.
  */
 public class Circle extends Geometry {
-    private DoubleMatrix p0;
-    private DoubleMatrix u, v, normal;
+    private Vector3 p0;
+    private Vector3 u, v, normal;
     private double radius;
 
     public Circle(double[] center, double[] p1, double[] p2, Material material, TextureMapping textureMapping) {
@@ -21,54 +20,51 @@ public class Circle extends Geometry {
 
     public Circle(DoubleMatrix center, DoubleMatrix p1, DoubleMatrix p2, Material material, TextureMapping textureMapping) {
         super(material, textureMapping);
-        this.p0 = center;
+        this.p0 = Vector3.of(center);
 
-        u = p1.sub(center);
-        v = p2.sub(center);
+        u = Vector3.of(p1).sub(this.p0);
+        v = Vector3.of(p2).sub(this.p0);
 
-        normal = MatrixUtil.cross(u, v);
-        org.jblas.Geometry.normalize(normal);
+        normal = u.cross(v).normalize();
     }
 
     @Override
     public double getDistanceToIntersect(Ray ray) {
-        DoubleMatrix angle = ray.getAngle();
-        DoubleMatrix position = ray.getPosition();
-
-        DoubleMatrix left = new DoubleMatrix(new double[][]{
-                u.toArray(),
-                v.toArray(),
-                angle.neg().toArray(),
-        }).transpose();
-
-        DoubleMatrix right = position.sub(p0);
-
-
-        try {
-            DoubleMatrix solution = Solve.solve(left, right);
-
-            if(solution.get(0) * solution.get(0) + solution.get(1) * solution.get(1) > 1) {
-                return -1.0;
-            } else {
-                return solution.get(2);
-            }
-        } catch (LapackException e) {
-            return -1.0;
-        }
+        return PlanarIntersection.ellipse(ray,
+                p0.getX(), p0.getY(), p0.getZ(),
+                u.getX(), u.getY(), u.getZ(),
+                v.getX(), v.getY(), v.getZ());
     }
 
     @Override
-    public RayIntersect getIntersect(Ray ray) {
-        double distance = getDistanceToIntersect(ray);
+    public boolean intersect(Ray ray, RayIntersect intersect) {
+        return PlanarIntersection.ellipse(ray,
+                p0.getX(), p0.getY(), p0.getZ(),
+                u.getX(), u.getY(), u.getZ(),
+                v.getX(), v.getY(), v.getZ(),
+                this, intersect);
+    }
 
-        if (distance < 0) {
-            return null;
-        }
+    @Override
+    protected Vector3 getNormal(RayIntersect intersect) {
+        return normal;
+    }
 
-        DoubleMatrix newPos = ray.getPosition().add(ray.getAngle().mul(distance));
-        DoubleMatrix newAng = org.jblas.Geometry.normalize(ray.getAngle().sub(normal.mul(ray.getAngle().dot(normal) * 2)));
-        Ray reflection = new Ray(newPos, newAng);
+    @Override
+    public Circle transform(Transform transform) {
+        return new Circle(transform.apply(p0).toArray(), transform.apply(p0.add(u)).toArray(),
+                transform.apply(p0.add(v)).toArray(), getMaterial(), getTextureMapping());
+    }
 
-        return new RayIntersect(this, normal, reflection);
+    @Override
+    public BoundingBox getBounds() {
+        // the circle spans p0 + u * cos(a) + v * sin(a) so its extent along each axis is the length of (u_i, v_i)
+        double x = Math.hypot(u.get(0), v.get(0));
+        double y = Math.hypot(u.get(1), v.get(1));
+        double z = Math.hypot(u.get(2), v.get(2));
+
+        return new BoundingBox(
+                p0.get(0) - x, p0.get(1) - y, p0.get(2) - z,
+                p0.get(0) + x, p0.get(1) + y, p0.get(2) + z);
     }
 }
@@ -1,5 +1,7 @@
 package ray_tracer.geometry;
 
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
 import ray_tracer.material.Material;
 import ray_tracer.material.TextureMapping;
 
@@ -45,15 +47,90 @@ public abstract class Geometry {
      */
     public abstract double getDistanceToIntersect(Ray ray);
 
+    /**
+     * Returns whether the ray intersects the geometric primitive at a distance from its origin between the given
+     * bounds (inclusive).
+     *
+     * <p>This answers occlusion queries such as shadow rays where only whether something is hit matters. Geometry which
+     * can answer more cheaply than by finding the closest intersect should override this.
+     *
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether an intersect was found within the bounds
+     */
+    public boolean intersects(Ray ray, double minDistance, double maxDistance) {
+        double distance = getDistanceToIntersect(ray);
+        return distance >= minDistance && distance <= maxDistance;
+    }
+
+    /**
+     * Records where the ray intersects the geometric primitive if that is closer to the ray's origin than the distance
+     * the record already holds.
+     *
+     * <p>Only what is needed to find the closest intersect is recorded: the ray, the distance, and where on the
+     * geometry it was hit. The record works out the normal and reflection from these later through
+     * {@link #getNormal(RayIntersect)} if they are asked for. Geometry which can say more cheaply while intersecting,
+     * such as barycentric coordinates, should override this.
+     *
+     * @param ray The ray to find the intersect
+     * @param intersect The record to fill, left untouched if nothing closer is found
+     * @return Whether the record was filled
+     */
+    public boolean intersect(Ray ray, RayIntersect intersect) {
+        double distance = getDistanceToIntersect(ray);
+        if (distance >= 0 && distance < intersect.getDistance()) {
+            intersect.set(this, ray, distance, -1, 0, 0);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Returns a {@link RayIntersect} describing where the given ray intersects the geometric primitive.
      *
-     * <p>Will return null if no intersect is found.
+     * <p>Will return null if no intersect is found. This creates a new record for every call; use
+     * {@link #intersect(Ray, RayIntersect)} to reuse one.
      *
      * @param ray The ray to find the intersect
      * @return A {@link RayIntersect} describing the point of intersect or null if no intersect is found
      */
-    public abstract RayIntersect getIntersect(Ray ray);
+    public RayIntersect getIntersect(Ray ray) {
+        RayIntersect intersect = new RayIntersect();
+        return intersect(ray, intersect) ? intersect : null;
+    }
+
+    /**
+     * Returns the surface normal of the geometric primitive at the point recorded in a {@link RayIntersect} filled by
+     * {@link #intersect(Ray, RayIntersect)}.
+     *
+     * @param intersect The record of where the geometry was intersected
+     * @return The surface normal at the point intersected
+     */
+    protected abstract Vector3 getNormal(RayIntersect intersect);
+
+    /**
+     * Returns an axis-aligned {@link BoundingBox} which fully contains the geometric primitive.
+     *
+     * <p>This is used by acceleration structures to skip geometry which a ray can not intersect, so the box should be
+     * as tight as is cheaply possible.
+     *
+     * @return A box containing the geometric primitive
+     */
+    public abstract BoundingBox getBounds();
+
+    /**
+     * Returns a copy of the geometric primitive moved by a transform, with the same material and texture.
+     *
+     * <p>This is how a {@link ray_tracer.SceneGraph} places geometry described relative to its node into the scene.
+     *
+     * @param transform The transform to apply
+     * @return The moved geometry
+     * @throws UnsupportedOperationException if the geometry can not be transformed
+     */
+    public Geometry transform(Transform transform) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can not be transformed.");
+    }
 
     /**
      * Returns the material of the geometric primitive.
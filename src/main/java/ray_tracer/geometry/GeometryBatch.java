@@ -0,0 +1,570 @@
+package ray_tracer.geometry;
+
+import ray_tracer.Precision;
+import ray_tracer.Vector3;
+
+/**
+ * Copies of the spheres and triangles among a collection of geometry packed into one array per coordinate, so that
+ * the primitives of a leaf of an accelerator can be tested together in one loop.
+ *
+ * <p>Testing geometry one object at a time costs a virtual call, a walk through each object's vectors, and a fresh read
+ * of the ray for every primitive. A batch reads the ray once per leaf and then only indexes flat arrays, working out
+ * exactly the same distances as {@link Sphere} and {@link Triangle} do. Any other geometry, or any subclass of those
+ * two, is still tested through its own methods.
+ *
+ * <p>In {@link Precision#FLOAT} the coordinates are packed as floats and tested with float arithmetic instead, which
+ * halves the memory each test reads at the cost of distances which are only as precise as a float.
+ *
+ * <p>The primitives are packed in chunks so that when some of the geometry moves, {@link #update} makes a batch which
+ * copies only the chunks holding what moved and shares the rest with this one, which is left as it was.
+ *
+ * Created by William Martin III on 1/30/16.
+ */
+public final class GeometryBatch {
+    private static final byte OTHER = 0;
+    private static final byte SPHERE = 1;
+    private static final byte TRIANGLE = 2;
+
+    // the number of primitives of each kind packed in each chunk, as a power of two
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    // the number of values packed for each sphere and each triangle
+    private static final int SPHERE_STRIDE = 4;
+    private static final int TRIANGLE_STRIDE = 9;
+
+    // how far past its edges, in surface coordinates, a triangle tested as floats is hit, so that rounding does not
+    // open cracks between neighbouring triangles which rays slip through
+    private static final float EDGE_TOLERANCE = 1.0E-5f;
+
+    private final Geometry[] geometry;
+    // the kind of each geometry and its position among the primitives of that kind
+    private final byte[] kinds;
+    private final int[] slots;
+
+    // the center and squared radius of each sphere, and the first corner and the two edges from it of each triangle,
+    // with the values of each primitive next to each other as they are read all at once, packed either as doubles
+    private final double[][] spheres;
+    private final double[][] triangles;
+    // or as floats
+    private final float[][] floatSpheres;
+    private final float[][] floatTriangles;
+
+    private final boolean packedAsFloats;
+    private final int packedCount;
+
+    /**
+     * Packs the spheres and triangles of the given geometry in double precision.
+     *
+     * @param geometry The geometry, each indexed by its position in the array, which must not be changed afterwards
+     */
+    public GeometryBatch(Geometry[] geometry) {
+        this(geometry, Precision.DOUBLE);
+    }
+
+    /**
+     * Packs the spheres and triangles of the given geometry in the given precision.
+     *
+     * @param geometry The geometry, each indexed by its position in the array, which must not be changed afterwards
+     * @param precision The precision in which to pack and test the primitives
+     */
+    public GeometryBatch(Geometry[] geometry, Precision precision) {
+        this.geometry = geometry;
+        kinds = new byte[geometry.length];
+        slots = new int[geometry.length];
+        packedAsFloats = precision == Precision.FLOAT;
+
+        int sphereCount = 0;
+        int triangleCount = 0;
+        for (int i = 0; i < geometry.length; i++) {
+            kinds[i] = kindOf(geometry[i]);
+            if (kinds[i] == SPHERE) {
+                slots[i] = sphereCount++;
+            } else if (kinds[i] == TRIANGLE) {
+                slots[i] = triangleCount++;
+            }
+        }
+        packedCount = sphereCount + triangleCount;
+
+        spheres = new double[packedAsFloats ? 0 : chunkCount(sphereCount)][];
+        triangles = new double[packedAsFloats ? 0 : chunkCount(triangleCount)][];
+        floatSpheres = new float[packedAsFloats ? chunkCount(sphereCount) : 0][];
+        floatTriangles = new float[packedAsFloats ? chunkCount(triangleCount) : 0][];
+        for (int chunk = 0; chunk < spheres.length; chunk++) {
+            spheres[chunk] = new double[chunkSize(chunk, sphereCount) * SPHERE_STRIDE];
+        }
+        for (int chunk = 0; chunk < triangles.length; chunk++) {
+            triangles[chunk] = new double[chunkSize(chunk, triangleCount) * TRIANGLE_STRIDE];
+        }
+        for (int chunk = 0; chunk < floatSpheres.length; chunk++) {
+            floatSpheres[chunk] = new float[chunkSize(chunk, sphereCount) * SPHERE_STRIDE];
+        }
+        for (int chunk = 0; chunk < floatTriangles.length; chunk++) {
+            floatTriangles[chunk] = new float[chunkSize(chunk, triangleCount) * TRIANGLE_STRIDE];
+        }
+
+        for (int i = 0; i < geometry.length; i++) {
+            pack(i);
+        }
+    }
+
+    /**
+     * Creates a batch over geometry in which some of another batch's geometry has been replaced by geometry of the
+     * same kind, sharing the other batch's chunks until they are packed again.
+     */
+    private GeometryBatch(GeometryBatch other, Geometry[] geometry) {
+        this.geometry = geometry;
+        kinds = other.kinds;
+        slots = other.slots;
+        spheres = other.spheres.clone();
+        triangles = other.triangles.clone();
+        floatSpheres = other.floatSpheres.clone();
+        floatTriangles = other.floatTriangles.clone();
+        packedAsFloats = other.packedAsFloats;
+        packedCount = other.packedCount;
+    }
+
+    /**
+     * Returns a batch over geometry which is the same as that of this batch except that some may have been replaced.
+     *
+     * <p>Only the chunks holding replaced spheres and triangles are copied and packed again, the rest being shared with
+     * this batch, which is left as it was so it may still be tested. If any geometry was replaced by geometry of
+     * another kind the new batch is packed from scratch.
+     *
+     * @param geometry The geometry, indexed as that of this batch, which must not be changed afterwards
+     * @param moved The indices of the geometry which may have been replaced
+     * @param count The number of indices in moved to use
+     * @return The batch over the given geometry
+     * @throws IllegalArgumentException if there is not as much geometry as this batch was packed from
+     */
+    public GeometryBatch update(Geometry[] geometry, int[] moved, int count) {
+        if (geometry.length != this.geometry.length) {
+            throw new IllegalArgumentException("A batch can only be updated over the same number of geometry.");
+        }
+        for (int i = 0; i < count; i++) {
+            if (kindOf(geometry[moved[i]]) != kinds[moved[i]]) {
+                return new GeometryBatch(geometry, packedAsFloats ? Precision.FLOAT : Precision.DOUBLE);
+            }
+        }
+
+        GeometryBatch updated = new GeometryBatch(this, geometry);
+        for (int i = 0; i < count; i++) {
+            int index = moved[i];
+            int chunk = slots[index] >> CHUNK_SHIFT;
+            if (kinds[index] == SPHERE) {
+                if (packedAsFloats && updated.floatSpheres[chunk] == floatSpheres[chunk]) {
+                    updated.floatSpheres[chunk] = floatSpheres[chunk].clone();
+                } else if (!packedAsFloats && updated.spheres[chunk] == spheres[chunk]) {
+                    updated.spheres[chunk] = spheres[chunk].clone();
+                }
+            } else if (kinds[index] == TRIANGLE) {
+                if (packedAsFloats && updated.floatTriangles[chunk] == floatTriangles[chunk]) {
+                    updated.floatTriangles[chunk] = floatTriangles[chunk].clone();
+                } else if (!packedAsFloats && updated.triangles[chunk] == triangles[chunk]) {
+                    updated.triangles[chunk] = triangles[chunk].clone();
+                }
+            }
+            updated.pack(index);
+        }
+        return updated;
+    }
+
+    private static byte kindOf(Geometry geometry) {
+        if (geometry.getClass() == Sphere.class) {
+            return SPHERE;
+        } else if (geometry.getClass() == Triangle.class) {
+            return TRIANGLE;
+        }
+        return OTHER;
+    }
+
+    private static int chunkCount(int primitives) {
+        return ((primitives - 1) >> CHUNK_SHIFT) + 1;
+    }
+
+    private static int chunkSize(int chunk, int primitives) {
+        return Math.min(CHUNK_MASK + 1, primitives - (chunk << CHUNK_SHIFT));
+    }
+
+    /**
+     * Writes the values of one sphere or triangle into the chunk holding it.
+     */
+    private void pack(int index) {
+        int chunk = slots[index] >> CHUNK_SHIFT;
+        int offset = slots[index] & CHUNK_MASK;
+        if (kinds[index] == SPHERE) {
+            Sphere sphere = (Sphere) geometry[index];
+            Vector3 center = sphere.getCenter();
+            double[] values = {center.getX(), center.getY(), center.getZ(), sphere.getRadius() * sphere.getRadius()};
+            write(values, packedAsFloats ? null : spheres[chunk], packedAsFloats ? floatSpheres[chunk] : null,
+                    offset * SPHERE_STRIDE);
+        } else if (kinds[index] == TRIANGLE) {
+            Triangle triangle = (Triangle) geometry[index];
+            Vector3 p0 = triangle.getP0();
+            Vector3 u = triangle.getU();
+            Vector3 v = triangle.getV();
+            double[] values = {
+                    p0.getX(), p0.getY(), p0.getZ(), u.getX(), u.getY(), u.getZ(), v.getX(), v.getY(), v.getZ()};
+            write(values, packedAsFloats ? null : triangles[chunk], packedAsFloats ? floatTriangles[chunk] : null,
+                    offset * TRIANGLE_STRIDE);
+        }
+    }
+
+    private static void write(double[] values, double[] doubles, float[] floats, int base) {
+        if (doubles != null) {
+            System.arraycopy(values, 0, doubles, base, values.length);
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            floats[base + i] = (float) values[i];
+        }
+    }
+
+    /**
+     * Returns the number of spheres and triangles which were packed.
+     *
+     * @return The number of packed primitives
+     */
+    public int getPackedCount() {
+        return packedCount;
+    }
+
+    /**
+     * Records the closest intersect of the ray with several of the geometry, as {@link Geometry#intersect(Ray,
+     * RayIntersect)} would for each in turn.
+     *
+     * @param indices An array holding the indices of the geometry
+     * @param start The position in the array of the first geometry to test
+     * @param end The position in the array after the last geometry to test
+     * @param ray The ray to find the intersect
+     * @param intersect The record to fill, left untouched if nothing closer is found
+     * @return The index of the geometry recorded, or -1 if the record was not filled
+     */
+    public int intersect(int[] indices, int start, int end, Ray ray, RayIntersect intersect) {
+        if (packedAsFloats) {
+            return intersectFloats(indices, start, end, ray, intersect);
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double ox = position.getX();
+        double oy = position.getY();
+        double oz = position.getZ();
+        double dx = angle.getX();
+        double dy = angle.getY();
+        double dz = angle.getZ();
+        double dd = dx * dx + dy * dy + dz * dz;
+
+        // the surface coordinates of the last triangle hit
+        double[] coordinates = intersect.candidateCoordinates;
+        int found = -1;
+        for (int i = start; i < end; i++) {
+            int index = indices[i];
+            int slot = slots[index];
+            switch (kinds[index]) {
+                case SPHERE: {
+                    double distance = sphere(slot, ox, oy, oz, dx, dy, dz, dd);
+                    if (distance >= 0 && distance < intersect.getDistance()) {
+                        intersect.set(geometry[index], ray, distance, -1, 0, 0);
+                        found = index;
+                    }
+                    break;
+                }
+                case TRIANGLE: {
+                    double distance = triangle(slot, ox, oy, oz, dx, dy, dz, coordinates);
+                    if (distance >= 0 && distance < intersect.getDistance()) {
+                        intersect.set(geometry[index], ray, distance, -1, coordinates[0], coordinates[1]);
+                        found = index;
+                    }
+                    break;
+                }
+                default:
+                    if (geometry[index].intersect(ray, intersect)) {
+                        found = index;
+                    }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns whether the ray intersects any of several of the geometry between the given distances (inclusive), as
+     * {@link Geometry#intersects(Ray, double, double)} would for each in turn.
+     *
+     * @param indices An array holding the indices of the geometry
+     * @param start The position in the array of the first geometry to test
+     * @param end The position in the array after the last geometry to test
+     * @param ray The ray to test
+     * @param minDistance The closest distance along the ray which counts as an intersect
+     * @param maxDistance The furthest distance along the ray which counts as an intersect
+     * @return Whether an intersect was found within the bounds
+     */
+    public boolean intersects(int[] indices, int start, int end, Ray ray, double minDistance, double maxDistance) {
+        if (packedAsFloats) {
+            return intersectsFloats(indices, start, end, ray, minDistance, maxDistance);
+        }
+
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double ox = position.getX();
+        double oy = position.getY();
+        double oz = position.getZ();
+        double dx = angle.getX();
+        double dy = angle.getY();
+        double dz = angle.getZ();
+        double dd = dx * dx + dy * dy + dz * dz;
+
+        for (int i = start; i < end; i++) {
+            int index = indices[i];
+            int slot = slots[index];
+            double distance;
+            switch (kinds[index]) {
+                case SPHERE:
+                    distance = sphere(slot, ox, oy, oz, dx, dy, dz, dd);
+                    break;
+                case TRIANGLE:
+                    distance = triangle(slot, ox, oy, oz, dx, dy, dz, null);
+                    break;
+                default:
+                    if (geometry[index].intersects(ray, minDistance, maxDistance)) {
+                        return true;
+                    }
+                    continue;
+            }
+            if (distance >= minDistance && distance <= maxDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the distance along the ray to a sphere as {@link Sphere#getDistanceToIntersect(Ray)} does, which is NaN
+     * if the ray misses.
+     */
+    private double sphere(int slot, double ox, double oy, double oz, double dx, double dy, double dz, double dd) {
+        double[] chunk = spheres[slot >> CHUNK_SHIFT];
+        int base = (slot & CHUNK_MASK) * SPHERE_STRIDE;
+        double cx = chunk[base] - ox;
+        double cy = chunk[base + 1] - oy;
+        double cz = chunk[base + 2] - oz;
+
+        double v = (dx * cx + dy * cy + dz * cz) / dd;
+        double c2 = cx * cx + cy * cy + cz * cz;
+        double d = chunk[base + 3] - (c2 - (v * v));
+
+        return v - Math.sqrt(d);
+    }
+
+    /**
+     * Returns the distance along the ray to a triangle as {@link Triangle#getDistanceToIntersect(Ray)} does, which is
+     * -1 if the ray misses, filling in the surface coordinates of the point hit if asked for.
+     */
+    private double triangle(int slot, double ox, double oy, double oz, double dx, double dy, double dz,
+                            double[] coordinates) {
+        double[] chunk = triangles[slot >> CHUNK_SHIFT];
+        int base = (slot & CHUNK_MASK) * TRIANGLE_STRIDE;
+        double ax = chunk[base + 3];
+        double ay = chunk[base + 4];
+        double az = chunk[base + 5];
+        double bx = chunk[base + 6];
+        double by = chunk[base + 7];
+        double bz = chunk[base + 8];
+
+        // p = d x e2
+        double px = dy * bz - dz * by;
+        double py = dz * bx - dx * bz;
+        double pz = dx * by - dy * bx;
+
+        double det = ax * px + ay * py + az * pz;
+        if (det == 0) {
+            return -1.0;
+        }
+        double inverse = 1.0 / det;
+
+        double sx = ox - chunk[base];
+        double sy = oy - chunk[base + 1];
+        double sz = oz - chunk[base + 2];
+
+        double a = (sx * px + sy * py + sz * pz) * inverse;
+        if (a < 0 || a > 1) {
+            return -1.0;
+        }
+
+        // q = s x e1
+        double qx = sy * az - sz * ay;
+        double qy = sz * ax - sx * az;
+        double qz = sx * ay - sy * ax;
+
+        double b = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (b < 0 || a + b > 1) {
+            return -1.0;
+        }
+
+        if (coordinates != null) {
+            coordinates[0] = a;
+            coordinates[1] = b;
+        }
+        return (bx * qx + by * qy + bz * qz) * inverse;
+    }
+
+    /**
+     * Records the closest intersect of the ray with several of the geometry as {@link #intersect(int[], int, int, Ray,
+     * RayIntersect)} does, testing the spheres and triangles as floats.
+     */
+    private int intersectFloats(int[] indices, int start, int end, Ray ray, RayIntersect intersect) {
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        float ox = (float) position.getX();
+        float oy = (float) position.getY();
+        float oz = (float) position.getZ();
+        float dx = (float) angle.getX();
+        float dy = (float) angle.getY();
+        float dz = (float) angle.getZ();
+        float dd = dx * dx + dy * dy + dz * dz;
+
+        // the surface coordinates of the last triangle hit
+        double[] coordinates = intersect.candidateCoordinates;
+        int found = -1;
+        for (int i = start; i < end; i++) {
+            int index = indices[i];
+            int slot = slots[index];
+            switch (kinds[index]) {
+                case SPHERE: {
+                    double distance = sphere(slot, ox, oy, oz, dx, dy, dz, dd);
+                    if (distance >= 0 && distance < intersect.getDistance()) {
+                        intersect.set(geometry[index], ray, distance, -1, 0, 0);
+                        found = index;
+                    }
+                    break;
+                }
+                case TRIANGLE: {
+                    double distance = triangle(slot, ox, oy, oz, dx, dy, dz, coordinates);
+                    if (distance >= 0 && distance < intersect.getDistance()) {
+                        intersect.set(geometry[index], ray, distance, -1, coordinates[0], coordinates[1]);
+                        found = index;
+                    }
+                    break;
+                }
+                default:
+                    if (geometry[index].intersect(ray, intersect)) {
+                        found = index;
+                    }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns whether the ray intersects any of several of the geometry as {@link #intersects(int[], int, int, Ray,
+     * double, double)} does, testing the spheres and triangles as floats.
+     */
+    private boolean intersectsFloats(int[] indices, int start, int end, Ray ray, double minDistance,
+                                     double maxDistance) {
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        float ox = (float) position.getX();
+        float oy = (float) position.getY();
+        float oz = (float) position.getZ();
+        float dx = (float) angle.getX();
+        float dy = (float) angle.getY();
+        float dz = (float) angle.getZ();
+        float dd = dx * dx + dy * dy + dz * dz;
+
+        for (int i = start; i < end; i++) {
+            int index = indices[i];
+            int slot = slots[index];
+            double distance;
+            switch (kinds[index]) {
+                case SPHERE:
+                    distance = sphere(slot, ox, oy, oz, dx, dy, dz, dd);
+                    break;
+                case TRIANGLE:
+                    distance = triangle(slot, ox, oy, oz, dx, dy, dz, null);
+                    break;
+                default:
+                    if (geometry[index].intersects(ray, minDistance, maxDistance)) {
+                        return true;
+                    }
+                    continue;
+            }
+            if (distance >= minDistance && distance <= maxDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the distance along the ray to a sphere packed as floats, worked out as
+     * {@link #sphere(int, double, double, double, double, double, double, double)} does but with float arithmetic.
+     */
+    private double sphere(int slot, float ox, float oy, float oz, float dx, float dy, float dz, float dd) {
+        float[] chunk = floatSpheres[slot >> CHUNK_SHIFT];
+        int base = (slot & CHUNK_MASK) * SPHERE_STRIDE;
+        float cx = chunk[base] - ox;
+        float cy = chunk[base + 1] - oy;
+        float cz = chunk[base + 2] - oz;
+
+        float v = (dx * cx + dy * cy + dz * cz) / dd;
+        // the squared distance from the center to the ray is taken from the vector between them rather than as the
+        // difference of two large squares, which in floats would cancel away most of its digits
+        float hx = cx - v * dx;
+        float hy = cy - v * dy;
+        float hz = cz - v * dz;
+        float d = chunk[base + 3] - (hx * hx + hy * hy + hz * hz);
+
+        return v - (float) Math.sqrt(d);
+    }
+
+    /**
+     * Returns the distance along the ray to a triangle packed as floats, worked out as
+     * {@link #triangle(int, double, double, double, double, double, double, double[])} does but with float arithmetic.
+     */
+    private double triangle(int slot, float ox, float oy, float oz, float dx, float dy, float dz,
+                            double[] coordinates) {
+        float[] chunk = floatTriangles[slot >> CHUNK_SHIFT];
+        int base = (slot & CHUNK_MASK) * TRIANGLE_STRIDE;
+        float ax = chunk[base + 3];
+        float ay = chunk[base + 4];
+        float az = chunk[base + 5];
+        float bx = chunk[base + 6];
+        float by = chunk[base + 7];
+        float bz = chunk[base + 8];
+
+        // p = d x e2
+        float px = dy * bz - dz * by;
+        float py = dz * bx - dx * bz;
+        float pz = dx * by - dy * bx;
+
+        float det = ax * px + ay * py + az * pz;
+        if (det == 0) {
+            return -1.0;
+        }
+        float inverse = 1.0f / det;
+
+        float sx = ox - chunk[base];
+        float sy = oy - chunk[base + 1];
+        float sz = oz - chunk[base + 2];
+
+        float a = (sx * px + sy * py + sz * pz) * inverse;
+        if (a < -EDGE_TOLERANCE || a > 1 + EDGE_TOLERANCE) {
+            return -1.0;
+        }
+
+        // q = s x e1
+        float qx = sy * az - sz * ay;
+        float qy = sz * ax - sx * az;
+        float qz = sx * ay - sy * ax;
+
+        float b = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (b < -EDGE_TOLERANCE || a + b > 1 + EDGE_TOLERANCE) {
+            return -1.0;
+        }
+
+        if (coordinates != null) {
+            coordinates[0] = a;
+            coordinates[1] = b;
+        }
+        return (bx * qx + by * qy + bz * qz) * inverse;
+    }
+}
@@ -0,0 +1,117 @@
+package ray_tracer.geometry;
+
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
+import ray_tracer.acceleration.Accelerator;
+import ray_tracer.acceleration.AcceleratorType;
+import ray_tracer.acceleration.GeometrySet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A collection of geometry with its own accelerator which acts as a single piece of geometry, such as an object made of
+ * many parts to be placed many times with {@link Instance}s.
+ *
+ * <p>Each part keeps its own material, and intersects record the part which was hit rather than the group, so the group
+ * itself has no material.
+ *
+ * Created by William Martin III on 1/30/16.
+ */
+public class GeometryGroup extends Geometry {
+    private final Geometry[] geometry;
+    private final AcceleratorType acceleratorType;
+    private final Accelerator accelerator;
+    private final BoundingBox bounds;
+
+    /**
+     * Groups the given geometry under a {@link ray_tracer.acceleration.BoundingVolumeHierarchy}.
+     *
+     * @param geometry The parts of the group
+     * @throws IllegalArgumentException if there are no parts
+     */
+    public GeometryGroup(List<Geometry> geometry) {
+        this(geometry, AcceleratorType.BVH);
+    }
+
+    /**
+     * Groups the given geometry under an accelerator of the given type.
+     *
+     * @param geometry The parts of the group
+     * @param acceleratorType The kind of accelerator to find intersects with the parts
+     * @throws IllegalArgumentException if there are no parts
+     */
+    public GeometryGroup(List<Geometry> geometry, AcceleratorType acceleratorType) {
+        super(null);
+
+        if (geometry.isEmpty()) {
+            throw new IllegalArgumentException("A group must have at least one part.");
+        }
+
+        this.geometry = geometry.toArray(new Geometry[geometry.size()]);
+        this.acceleratorType = acceleratorType;
+        accelerator = acceleratorType.build(new GeometrySet(this.geometry));
+
+        BoundingBox bounds = this.geometry[0].getBounds();
+        for (Geometry part : this.geometry) {
+            bounds = bounds.union(part.getBounds());
+        }
+        this.bounds = bounds;
+    }
+
+    /**
+     * Returns the number of parts in the group.
+     *
+     * @return The number of parts
+     */
+    public int size() {
+        return geometry.length;
+    }
+
+    public Geometry get(int index) {
+        return geometry[index];
+    }
+
+    @Override
+    public double getDistanceToIntersect(Ray ray) {
+        RayIntersect intersect = new RayIntersect();
+
+        return accelerator.findClosest(ray, intersect) ? intersect.getDistance() : -1.0;
+    }
+
+    @Override
+    public boolean intersects(Ray ray, double minDistance, double maxDistance) {
+        return accelerator.isOccluded(ray, minDistance, maxDistance);
+    }
+
+    @Override
+    public boolean intersect(Ray ray, RayIntersect intersect) {
+        return accelerator.findClosest(ray, intersect);
+    }
+
+    /**
+     * Groups never appear in intersects, which record the part hit instead.
+     */
+    @Override
+    protected Vector3 getNormal(RayIntersect intersect) {
+        throw new UnsupportedOperationException("Intersects record the part of a group which was hit.");
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns a group of every part moved by the transform. Placing a group with an {@link Instance} instead avoids
+     * copying it.
+     */
+    @Override
+    public GeometryGroup transform(Transform transform) {
+        Geometry[] moved = new Geometry[geometry.length];
+        for (int i = 0; i < geometry.length; i++) {
+            moved[i] = geometry[i].transform(transform);
+        }
+        return new GeometryGroup(Arrays.asList(moved), acceleratorType);
+    }
+}
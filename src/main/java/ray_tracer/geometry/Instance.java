@@ -0,0 +1,106 @@
+package ray_tracer.geometry;
+
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
+
+/**
+ * A placement of shared geometry, such as a {@link TriangleMesh} or a {@link GeometryGroup}, somewhere in space.
+ *
+ * <p>An instance holds only a reference to the geometry and a {@link Transform}, so placing the same mesh a thousand
+ * times costs a thousand transforms rather than a thousand copies of its triangles. Rays are moved into the space of
+ * the shared geometry and searched against its own accelerator, while the scene's accelerator holds the instances,
+ * giving two levels of acceleration. Moving an instance is only a matter of changing its transform, which is what
+ * {@link #transform(Transform)} does, so a {@link ray_tracer.SceneGraph} can animate instances without copying them.
+ *
+ * <p>Intersects record the shared geometry which was hit, with its own material, so shading is unaffected.
+ *
+ * Created by William Martin III on 1/30/16.
+ */
+public class Instance extends Geometry {
+    private final Geometry geometry;
+    private final Transform transform;
+    private final Transform inverse;
+    private final BoundingBox bounds;
+
+    /**
+     * Places shared geometry with a transform from its own space into the scene.
+     *
+     * @param geometry The geometry to place, which may be shared with other instances
+     * @param transform Where to place it
+     */
+    public Instance(Geometry geometry, Transform transform) {
+        super(geometry.getMaterial(), geometry.getTextureMapping());
+        this.geometry = geometry;
+        this.transform = transform;
+        inverse = transform.inverse();
+
+        // the box around every corner of the geometry's box once moved
+        BoundingBox local = geometry.getBounds();
+        double[][] corners = new double[8][];
+        for (int corner = 0; corner < 8; corner++) {
+            Vector3 point = new Vector3(
+                    (corner & 1) == 0 ? local.getMin(0) : local.getMax(0),
+                    (corner & 2) == 0 ? local.getMin(1) : local.getMax(1),
+                    (corner & 4) == 0 ? local.getMin(2) : local.getMax(2));
+            corners[corner] = transform.apply(point).toArray();
+        }
+        bounds = BoundingBox.of(corners);
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public Transform getTransform() {
+        return transform;
+    }
+
+    @Override
+    public double getDistanceToIntersect(Ray ray) {
+        return geometry.getDistanceToIntersect(toLocal(ray));
+    }
+
+    @Override
+    public boolean intersects(Ray ray, double minDistance, double maxDistance) {
+        return geometry.intersects(toLocal(ray), minDistance, maxDistance);
+    }
+
+    @Override
+    public boolean intersect(Ray ray, RayIntersect intersect) {
+        if (!geometry.intersect(toLocal(ray), intersect)) {
+            return false;
+        }
+        intersect.setInstanceTransform(transform, ray);
+        return true;
+    }
+
+    /**
+     * Instances never appear in intersects, which record the shared geometry instead.
+     */
+    @Override
+    protected Vector3 getNormal(RayIntersect intersect) {
+        throw new UnsupportedOperationException("Intersects record the geometry an instance places.");
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns an instance of the same geometry with the given transform applied after this instance's, leaving the
+     * geometry itself untouched.
+     */
+    @Override
+    public Instance transform(Transform transform) {
+        return new Instance(geometry, transform.compose(this.transform));
+    }
+
+    /**
+     * Returns the ray moved into the space of the shared geometry. As the transform is rigid the distance along the
+     * ray to any point is the same in either space.
+     */
+    private Ray toLocal(Ray ray) {
+        return new Ray(inverse.apply(ray.getPositionVector()), inverse.applyToDirection(ray.getAngleVector()));
+    }
+}
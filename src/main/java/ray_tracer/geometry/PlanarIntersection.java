@@ -0,0 +1,146 @@
+package ray_tracer.geometry;
+
+import ray_tracer.Vector3;
+
+/**
+ * Closed-form intersection tests for flat shapes spanned by two edges, as used by {@link Triangle},
+ * {@link TriangleMesh}, and {@link Circle}.
+ *
+ * <p>A shape is described by a point p0 and two edges e1 and e2. The ray o + t * d is solved against the plane
+ * p0 + a * e1 + b * e2 with Cramer's rule as in the M&ouml;ller&ndash;Trumbore algorithm, which only requires a
+ * handful of dot and cross products. Nothing is allocated and no native code is called, unlike solving the same system
+ * through LAPACK.
+ *
+ * Created by William Martin III on 1/18/16.
+ */
+final class PlanarIntersection {
+    private static final int TRIANGLE = 0;
+    private static final int ELLIPSE = 1;
+
+    private PlanarIntersection() { }
+
+    /**
+     * Returns the distance along the ray to where it intersects the triangle p0, p0 + e1, p0 + e2.
+     *
+     * <p>The front of the triangle is the side which e1 x e2 points towards. If culling is enabled rays which approach
+     * the back of the triangle never intersect it.
+     *
+     * @param cullBackface Whether the back of the triangle should be ignored
+     * @return The distance to the intersect point or -1 if no intersect is found
+     */
+    static double triangle(Ray ray,
+                           double p0x, double p0y, double p0z,
+                           double e1x, double e1y, double e1z,
+                           double e2x, double e2y, double e2z,
+                           boolean cullBackface) {
+        return distance(ray, p0x, p0y, p0z, e1x, e1y, e1z, e2x, e2y, e2z, cullBackface, TRIANGLE, null, null, -1);
+    }
+
+    /**
+     * Records where the ray intersects the triangle p0, p0 + e1, p0 + e2 if it is closer than what the record already
+     * holds. The surface coordinates recorded are the weights of p0 + e1 and p0 + e2.
+     *
+     * @param cullBackface Whether the back of the triangle should be ignored
+     * @param geometry The geometry to record as intersected
+     * @param primitive The primitive to record as intersected
+     * @param intersect The record to fill
+     * @return Whether the record was filled
+     */
+    static boolean triangle(Ray ray,
+                            double p0x, double p0y, double p0z,
+                            double e1x, double e1y, double e1z,
+                            double e2x, double e2y, double e2z,
+                            boolean cullBackface, Geometry geometry, int primitive, RayIntersect intersect) {
+        return distance(ray, p0x, p0y, p0z, e1x, e1y, e1z, e2x, e2y, e2z, cullBackface, TRIANGLE,
+                intersect, geometry, primitive) >= 0;
+    }
+
+    /**
+     * Returns the distance along the ray to where it intersects the ellipse centered on p0 with e1 and e2 as its axes.
+     *
+     * @return The distance to the intersect point or -1 if no intersect is found
+     */
+    static double ellipse(Ray ray,
+                          double p0x, double p0y, double p0z,
+                          double e1x, double e1y, double e1z,
+                          double e2x, double e2y, double e2z) {
+        return distance(ray, p0x, p0y, p0z, e1x, e1y, e1z, e2x, e2y, e2z, false, ELLIPSE, null, null, -1);
+    }
+
+    /**
+     * Records where the ray intersects the ellipse centered on p0 with e1 and e2 as its axes if it is closer than what
+     * the record already holds. The surface coordinates recorded are the distances along e1 and e2.
+     *
+     * @param geometry The geometry to record as intersected
+     * @param intersect The record to fill
+     * @return Whether the record was filled
+     */
+    static boolean ellipse(Ray ray,
+                           double p0x, double p0y, double p0z,
+                           double e1x, double e1y, double e1z,
+                           double e2x, double e2y, double e2z,
+                           Geometry geometry, RayIntersect intersect) {
+        return distance(ray, p0x, p0y, p0z, e1x, e1y, e1z, e2x, e2y, e2z, false, ELLIPSE,
+                intersect, geometry, -1) >= 0;
+    }
+
+    /**
+     * Returns the distance to the intersect point or -1 if there is none. If a record is given the intersect is only
+     * reported, and recorded, when it is closer than the record's current distance.
+     */
+    private static double distance(Ray ray,
+                                   double p0x, double p0y, double p0z,
+                                   double e1x, double e1y, double e1z,
+                                   double e2x, double e2y, double e2z,
+                                   boolean cullBackface, int shape,
+                                   RayIntersect intersect, Geometry geometry, int primitive) {
+        Vector3 position = ray.getPositionVector();
+        Vector3 angle = ray.getAngleVector();
+        double ox = position.getX();
+        double oy = position.getY();
+        double oz = position.getZ();
+        double dx = angle.getX();
+        double dy = angle.getY();
+        double dz = angle.getZ();
+
+        // p = d x e2
+        double px = dy * e2z - dz * e2y;
+        double py = dz * e2x - dx * e2z;
+        double pz = dx * e2y - dy * e2x;
+
+        // det = e1 . (d x e2) = -d . (e1 x e2), so it is positive when the ray approaches the front
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (cullBackface ? det <= 0 : det == 0) {
+            return -1.0;
+        }
+        double inverse = 1.0 / det;
+
+        double sx = ox - p0x;
+        double sy = oy - p0y;
+        double sz = oz - p0z;
+
+        double a = (sx * px + sy * py + sz * pz) * inverse;
+        if (shape == TRIANGLE && (a < 0 || a > 1)) {
+            return -1.0;
+        }
+
+        // q = s x e1
+        double qx = sy * e1z - sz * e1y;
+        double qy = sz * e1x - sx * e1z;
+        double qz = sx * e1y - sy * e1x;
+
+        double b = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (shape == TRIANGLE ? b < 0 || a + b > 1 : a * a + b * b > 1) {
+            return -1.0;
+        }
+
+        double t = (e2x * qx + e2y * qy + e2z * qz) * inverse;
+        if (intersect != null) {
+            if (!(t >= 0 && t < intersect.getDistance())) {
+                return -1.0;
+            }
+            intersect.set(geometry, ray, t, primitive, a, b);
+        }
+        return t;
+    }
+}
@@ -1,19 +1,20 @@
 package ray_tracer.geometry;
 
 import org.jblas.DoubleMatrix;
-import org.jblas.Geometry;
+import ray_tracer.Vector3;
 
 /**
  * A mathematical object describing a point in space and a direction.
  *
- * <p>Note that {@link Ray}s should not be considered mutable despite the fact that they are. Internal elements are not
- * copied for safety due to speed considerations.
+ * <p>{@link Ray}s are immutable. The position and angle are stored as {@link Vector3}s; the {@link DoubleMatrix}
+ * accessors are adapters which create a new matrix on every call and should be avoided on paths which run for every
+ * ray.
  *
  * Created by William Martin on 12/24/15.
  */
 public class Ray {
-    private DoubleMatrix position;
-    private DoubleMatrix angle;
+    private final Vector3 position;
+    private final Vector3 angle;
 
     /**
      * Copy constructor.
@@ -21,8 +22,8 @@ public class Ray {
      * @param ray The {@link Ray} to be copied
      */
     public Ray(Ray ray) {
-        this.position = new DoubleMatrix(ray.position.toArray());
-        this.angle = new DoubleMatrix(ray.angle.toArray());
+        this.position = ray.position;
+        this.angle = ray.angle;
     }
 
     /**
@@ -32,7 +33,7 @@ public class Ray {
      * @param angle The angle of the ray
      */
     public Ray(double[] position, double[] angle) {
-        this(new DoubleMatrix(position), new DoubleMatrix(angle));
+        this(Vector3.of(position), Vector3.of(angle));
     }
 
     /**
@@ -42,15 +43,33 @@ public class Ray {
      * @param angle The angle of the ray
      */
     public Ray(DoubleMatrix position, DoubleMatrix angle) {
+        this(Vector3.of(position), Vector3.of(angle));
+    }
+
+    /**
+     * Creates an instance based on {@link Vector3}s.
+     *
+     * @param position The origin of the ray
+     * @param angle The angle of the ray which will be normalized
+     */
+    public Ray(Vector3 position, Vector3 angle) {
         this.position = position;
-        this.angle = Geometry.normalize(angle);
+        this.angle = angle.normalize();
     }
 
     public DoubleMatrix getAngle() {
-        return angle;
+        return angle.toDoubleMatrix();
     }
 
     public DoubleMatrix getPosition() {
+        return position.toDoubleMatrix();
+    }
+
+    public Vector3 getAngleVector() {
+        return angle;
+    }
+
+    public Vector3 getPositionVector() {
         return position;
     }
 
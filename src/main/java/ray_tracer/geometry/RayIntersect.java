@@ -1,6 +1,12 @@
 package ray_tracer.geometry;
 
 import org.jblas.DoubleMatrix;
+import ray_tracer.Matrix3;
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
+import ray_tracer.material.TextureMapping;
+
+import java.awt.geom.Point2D;
 
 /**
  * An object describing where a ray intersects with a {@link Geometry}.
@@ -8,12 +14,44 @@ import org.jblas.DoubleMatrix;
  * <p>Provides details such as the {@link Geometry} intersected, the point intersected, the surface normal of the
  * geometry at the point of intersection, and the reflection angle given the angle of incident and the normal.
  *
+ * <p>{@link RayIntersect}s are mutable hit records meant to be reused. While searching for the closest intersection
+ * the geometry only records the ray, the distance along it, which primitive was hit, and where on that primitive (for
+ * triangles the barycentric coordinates). The normal, the reflection, and the texture coordinate are only worked out
+ * the first time they are asked for, so shading which does not need them does not pay for them.
+ *
+ * <p>Geometry reached through an {@link Instance} is intersected in its own space and the record then moved back out
+ * with {@link #setInstanceTransform(Transform, Ray)}, so that the normal is worked out where the geometry was hit and
+ * then turned into the space of the outer ray.
+ *
  * Created by William Martin on 12/25/15.
  */
 public class RayIntersect {
     private Geometry geometry;
-    private DoubleMatrix normal;
+    private int geometryId = -1;
+    private Ray ray;
+    private double distance = Double.POSITIVE_INFINITY;
+    private int primitive = -1;
+    private double u;
+    private double v;
+
+    // the transform from the space the geometry was intersected in to the space of the ray, and the ray in that space
+    private Transform instanceTransform;
+    private Ray localRay;
+
+    // worked out on demand
+    private Vector3 normal;
     private Ray reflection;
+    private TextureMapping textureMapping;
+    private Point2D.Double textureCoordinate;
+
+    // where on a triangle a ray being searched with this record hit it, filled in by a GeometryBatch before it knows
+    // whether the hit is the closest so that it need not allocate for every leaf
+    final double[] candidateCoordinates = new double[2];
+
+    /**
+     * Creates an empty record to be filled by {@link Geometry#intersect(Ray, RayIntersect)}.
+     */
+    public RayIntersect() { }
 
     /**
      * Copy constructor.
@@ -21,9 +59,7 @@ public class RayIntersect {
      * @param rayIntersect The {@link RayIntersect} to be copied
      */
     public RayIntersect(RayIntersect rayIntersect) {
-        geometry = rayIntersect.geometry;
-        normal = rayIntersect.normal;
-        reflection = rayIntersect.reflection;
+        set(rayIntersect);
     }
 
     /**
@@ -35,21 +71,215 @@ public class RayIntersect {
      * @param reflection The angle of reflection
      */
     public RayIntersect(Geometry geometry, DoubleMatrix normal, Ray reflection) {
+        this(geometry, Vector3.of(normal), reflection);
+    }
+
+    /**
+     * Creates an instance based on the geometry intersected, the surface normal at the point of intersection, and the
+     * reflection angle.
+     *
+     * @param geometry The geometry intersected
+     * @param normal The surface normal at the point intersected
+     * @param reflection The angle of reflection
+     */
+    public RayIntersect(Geometry geometry, Vector3 normal, Ray reflection) {
         this.geometry = geometry;
         this.normal = normal;
         this.reflection = reflection;
     }
 
+    /**
+     * Empties the record so that it may be reused for another ray.
+     */
+    public void reset() {
+        set(null, null, Double.POSITIVE_INFINITY, -1, 0, 0);
+    }
+
+    /**
+     * Records an intersection, replacing whatever was recorded before.
+     *
+     * @param geometry The geometry intersected
+     * @param ray The ray which intersected it
+     * @param distance The distance along the ray of the point intersected
+     * @param primitive Which part of the geometry was intersected, or -1 if the geometry is a single primitive
+     * @param u The first surface coordinate of the point intersected on the primitive
+     * @param v The second surface coordinate of the point intersected on the primitive
+     */
+    public void set(Geometry geometry, Ray ray, double distance, int primitive, double u, double v) {
+        this.geometry = geometry;
+        this.geometryId = -1;
+        this.ray = ray;
+        this.distance = distance;
+        this.primitive = primitive;
+        this.u = u;
+        this.v = v;
+        instanceTransform = null;
+        localRay = null;
+
+        normal = null;
+        reflection = null;
+        textureMapping = null;
+        textureCoordinate = null;
+    }
+
+    /**
+     * Copies another record, replacing whatever was recorded before.
+     *
+     * @param rayIntersect The record to copy
+     */
+    public void set(RayIntersect rayIntersect) {
+        geometry = rayIntersect.geometry;
+        geometryId = rayIntersect.geometryId;
+        ray = rayIntersect.ray;
+        distance = rayIntersect.distance;
+        primitive = rayIntersect.primitive;
+        u = rayIntersect.u;
+        v = rayIntersect.v;
+        instanceTransform = rayIntersect.instanceTransform;
+        localRay = rayIntersect.localRay;
+        normal = rayIntersect.normal;
+        reflection = rayIntersect.reflection;
+        textureMapping = rayIntersect.textureMapping;
+        textureCoordinate = rayIntersect.textureCoordinate;
+    }
+
+    /**
+     * Moves a record just filled by geometry searched with a ray moved into its own space back out into the space of
+     * the given ray. Records moved out of nested instances combine the transforms of each.
+     *
+     * @param transform The transform from the space the geometry was intersected in to the space of the ray
+     * @param ray The ray in the outer space, which must be the same distance along as the ray intersected
+     */
+    public void setInstanceTransform(Transform transform, Ray ray) {
+        if (instanceTransform == null) {
+            localRay = this.ray;
+            instanceTransform = transform;
+        } else {
+            instanceTransform = transform.compose(instanceTransform);
+        }
+        this.ray = ray;
+
+        normal = null;
+        reflection = null;
+        textureMapping = null;
+        textureCoordinate = null;
+    }
+
+    /**
+     * Returns whether an intersection has been recorded.
+     *
+     * @return Whether anything was intersected
+     */
+    public boolean isHit() {
+        return geometry != null;
+    }
+
     public Geometry getGeometry() {
         return geometry;
     }
 
+    /**
+     * Returns the ID of the geometry intersected within the {@link ray_tracer.Scene} searched, or -1 if the geometry
+     * was not found through a scene.
+     *
+     * @return The ID of the geometry
+     */
+    public int getGeometryId() {
+        return geometryId;
+    }
+
+    /**
+     * Records the ID of the geometry intersected within the scene being searched.
+     *
+     * @param geometryId The ID of the geometry
+     */
+    public void setGeometryId(int geometryId) {
+        this.geometryId = geometryId;
+    }
+
+    /**
+     * Returns the ray which intersected the geometry, or null if the record was not filled by a geometry.
+     *
+     * @return The incident ray
+     */
+    public Ray getRay() {
+        return ray;
+    }
+
+    /**
+     * Returns the distance along the ray of the point intersected, or positive infinity if nothing has been recorded.
+     *
+     * @return The distance to the point intersected
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns which part of the geometry was intersected, such as the index of a triangle in a {@link TriangleMesh}.
+     *
+     * @return The index of the primitive or -1 if the geometry is a single primitive
+     */
+    public int getPrimitive() {
+        return primitive;
+    }
+
+    /**
+     * Returns the first surface coordinate of the point intersected, for triangles the weight of the second vertex.
+     */
+    public double getU() {
+        return u;
+    }
+
+    /**
+     * Returns the second surface coordinate of the point intersected, for triangles the weight of the third vertex.
+     */
+    public double getV() {
+        return v;
+    }
+
     public DoubleMatrix getNormal() {
-        return new DoubleMatrix(normal.toArray());
+        return getNormalVector().toDoubleMatrix();
+    }
+
+    public Vector3 getNormalVector() {
+        if (normal == null) {
+            if (instanceTransform == null) {
+                normal = geometry.getNormal(this);
+            } else {
+                // the geometry works out its normal from the ray in its own space
+                Ray outer = ray;
+                ray = localRay;
+                Vector3 local = geometry.getNormal(this);
+                ray = outer;
+                normal = instanceTransform.applyToDirection(local);
+            }
+        }
+        return normal;
     }
 
     public Ray getReflection() {
-        return new Ray(reflection);
+        if (reflection == null) {
+            Vector3 angle = ray.getAngleVector();
+            Vector3 normal = getNormalVector();
+            Vector3 position = ray.getPositionVector().addScaled(angle, distance);
+            reflection = new Ray(position, angle.addScaled(normal, -angle.dot(normal) * 2));
+        }
+        return reflection;
+    }
+
+    /**
+     * Returns where the point intersected falls on a texture, mapping it the first time it is asked for.
+     *
+     * @param textureMapping The mapping from surface to texture
+     * @return The texture coordinate
+     */
+    public Point2D.Double getTextureCoordinate(TextureMapping textureMapping) {
+        if (textureCoordinate == null || this.textureMapping != textureMapping) {
+            textureCoordinate = textureMapping.map(this);
+            this.textureMapping = textureMapping;
+        }
+        return textureCoordinate;
     }
 
     /**
@@ -62,15 +292,28 @@ public class RayIntersect {
             throw new IllegalArgumentException("Rotation matrix must be a 3x3 matrix.");
         }
 
-        normal = org.jblas.Geometry.normalize(rotation.mmul(normal));
-        DoubleMatrix position = reflection.getPosition();
-        DoubleMatrix angle = rotation.mmul(rotation.mmul(reflection.getAngle()));
-        reflection = new Ray(position, angle);
+        rotate(Matrix3.of(rotation));
+    }
+
+    /**
+     * Rotates the surface normal using a rotation matrix and modifies the reflection angle accordingly.
+     *
+     * @param rotation The matrix describing the rotation
+     */
+    public void rotate(Matrix3 rotation) {
+        Ray reflection = getReflection();
+        normal = rotation.mmul(getNormalVector()).normalize();
+        Vector3 angle = rotation.mmul(rotation.mmul(reflection.getAngleVector()));
+        this.reflection = new Ray(reflection.getPositionVector(), angle);
+
+        // the mapping may depend on the normal
+        textureMapping = null;
+        textureCoordinate = null;
     }
 
     @Override
     public String toString() {
-        return geometry.toString() + "," + normal.toString() + "," + reflection.toString();
+        return geometry.toString() + "," + getNormalVector().toString() + "," + getReflection().toString();
     }
 
     @Override
@@ -87,16 +330,16 @@ public class RayIntersect {
         RayIntersect other = (RayIntersect) obj;
 
         return geometry.equals(other.geometry)
-                && normal.equals(other.normal)
-                && reflection.equals(other.reflection);
+                && getNormalVector().equals(other.getNormalVector())
+                && getReflection().equals(other.getReflection());
     }
 
     @Override
     public int hashCode() {
         int result = 7;
         result = 37 * result + geometry.hashCode();
-        result = 37 * result + normal.hashCode();
-        result = 37 * result + reflection.hashCode();
+        result = 37 * result + getNormalVector().hashCode();
+        result = 37 * result + getReflection().hashCode();
 
         return result;
     }
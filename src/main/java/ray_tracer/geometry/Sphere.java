@@ -1,6 +1,7 @@
 package ray_tracer.geometry;
 
-import org.jblas.DoubleMatrix;
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
 import ray_tracer.material.Material;
 import ray_tracer.material.TextureMapping;
 
@@ -8,40 +9,54 @@ import ray_tracer.material.TextureMapping;
  * Created by William Martin on 12/24/15.
  */
 public class Sphere extends Geometry {
-    private DoubleMatrix center;
+    private Vector3 center;
     private double radius;
 
     public Sphere(double[] position, double r, Material material, TextureMapping textureMapping) {
         super(material, textureMapping);
-        center = new DoubleMatrix(position);
+        center = Vector3.of(position);
         radius = r;
     }
 
     @Override
     public double getDistanceToIntersect(Ray ray) {
-        DoubleMatrix angle = ray.getAngle();
-        DoubleMatrix position = ray.getPosition();
+        Vector3 angle = ray.getAngleVector();
+        Vector3 position = ray.getPositionVector();
 
-        double v = angle.project(center.sub(position));
-        double c = position.distance2(center);
-        double d = (radius * radius) - ((c * c) - (v * v));
+        double cx = center.getX() - position.getX();
+        double cy = center.getY() - position.getY();
+        double cz = center.getZ() - position.getZ();
+
+        double v = (angle.getX() * cx + angle.getY() * cy + angle.getZ() * cz) / angle.dot(angle);
+        double c2 = cx * cx + cy * cy + cz * cz;
+        double d = (radius * radius) - (c2 - (v * v));
 
         return v - Math.sqrt(d);
     }
 
     @Override
-    public RayIntersect getIntersect(Ray ray) {
-        double distance = getDistanceToIntersect(ray);
+    protected Vector3 getNormal(RayIntersect intersect) {
+        Ray ray = intersect.getRay();
+        return ray.getPositionVector().addScaled(ray.getAngleVector(), intersect.getDistance()).sub(center);
+    }
+
+    @Override
+    public Sphere transform(Transform transform) {
+        return new Sphere(transform.apply(center).toArray(), radius, getMaterial(), getTextureMapping());
+    }
 
-        if (distance < 0) {
-            return null;
-        }
+    Vector3 getCenter() {
+        return center;
+    }
 
-        DoubleMatrix newPos = ray.getPosition().add(ray.getAngle().mul(distance));
-        DoubleMatrix normal = newPos.sub(center);
-        DoubleMatrix newAng = org.jblas.Geometry.normalize(ray.getAngle().sub(normal.mul(ray.getAngle().dot(normal) * 2)));
-        Ray reflection = new Ray(newPos, newAng);
+    double getRadius() {
+        return radius;
+    }
 
-        return new RayIntersect(this, normal, reflection);
+    @Override
+    public BoundingBox getBounds() {
+        return new BoundingBox(
+                center.getX() - radius, center.getY() - radius, center.getZ() - radius,
+                center.getX() + radius, center.getY() + radius, center.getZ() + radius);
     }
 }
@@ -1,9 +1,8 @@
 package ray_tracer.geometry;
 
 import org.jblas.DoubleMatrix;
-import org.jblas.Solve;
-import org.jblas.exceptions.LapackException;
-import ray_tracer.MatrixUtil;
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
 import ray_tracer.material.Material;
 import ray_tracer.material.TextureMapping;
 
@@ -11,8 +10,8 @@ import ray_tracer.material.TextureMapping;
  * Created by William Martin on 12/24/15.
  */
 public class Triangle extends Geometry {
-    private DoubleMatrix p0;
-    private DoubleMatrix u, v, normal;
+    private Vector3 p0;
+    private Vector3 u, v, normal;
 
     public Triangle(double[] p0, double[] p1, double[] p2, Material material, TextureMapping textureMapping) {
         this(new DoubleMatrix(p0), new DoubleMatrix(p1), new DoubleMatrix(p2), material, textureMapping);
@@ -20,54 +19,57 @@ public class Triangle extends Geometry {
 
     public Triangle(DoubleMatrix p0, DoubleMatrix p1, DoubleMatrix p2, Material material, TextureMapping textureMapping) {
         super(material, textureMapping);
-        this.p0 = p0;
+        this.p0 = Vector3.of(p0);
 
-        u = p1.sub(p0);
-        v = p2.sub(p0);
+        u = Vector3.of(p1).sub(this.p0);
+        v = Vector3.of(p2).sub(this.p0);
 
-        normal = MatrixUtil.cross(u, v);
-        org.jblas.Geometry.normalize(normal);
+        normal = u.cross(v).normalize();
     }
 
     @Override
     public double getDistanceToIntersect(Ray ray) {
-        DoubleMatrix angle = ray.getAngle();
-        DoubleMatrix position = ray.getPosition();
-
-        DoubleMatrix left = new DoubleMatrix(new double[][]{
-                u.toArray(),
-                v.toArray(),
-                angle.neg().toArray(),
-        }).transpose();
-
-        DoubleMatrix right = position.sub(p0);
-
+        return PlanarIntersection.triangle(ray,
+                p0.getX(), p0.getY(), p0.getZ(),
+                u.getX(), u.getY(), u.getZ(),
+                v.getX(), v.getY(), v.getZ(),
+                false);
+    }
 
-        try {
-            DoubleMatrix solution = Solve.solve(left, right);
+    @Override
+    public boolean intersect(Ray ray, RayIntersect intersect) {
+        return PlanarIntersection.triangle(ray,
+                p0.getX(), p0.getY(), p0.getZ(),
+                u.getX(), u.getY(), u.getZ(),
+                v.getX(), v.getY(), v.getZ(),
+                false, this, -1, intersect);
+    }
 
-            if(solution.get(0) < 0 || solution.get(1) < 0 || solution.get(0) + solution.get(1) > 1) {
-                return -1.0;
-            } else {
-                return solution.get(2);
-            }
-        } catch (LapackException e) {
-            return -1.0;
-        }
+    @Override
+    protected Vector3 getNormal(RayIntersect intersect) {
+        return normal;
     }
 
     @Override
-    public RayIntersect getIntersect(Ray ray) {
-        double distance = getDistanceToIntersect(ray);
+    public Triangle transform(Transform transform) {
+        return new Triangle(transform.apply(p0).toArray(), transform.apply(p0.add(u)).toArray(),
+                transform.apply(p0.add(v)).toArray(), getMaterial(), getTextureMapping());
+    }
+
+    Vector3 getP0() {
+        return p0;
+    }
 
-        if (distance < 0) {
-            return null;
-        }
+    Vector3 getU() {
+        return u;
+    }
 
-        DoubleMatrix newPos = ray.getPosition().add(ray.getAngle().mul(distance));
-        DoubleMatrix newAng = org.jblas.Geometry.normalize(ray.getAngle().sub(normal.mul(ray.getAngle().dot(normal) * 2)));
-        Ray reflection = new Ray(newPos, newAng);
+    Vector3 getV() {
+        return v;
+    }
 
-        return new RayIntersect(this, normal, reflection);
+    @Override
+    public BoundingBox getBounds() {
+        return BoundingBox.of(p0.toArray(), p0.add(u).toArray(), p0.add(v).toArray());
     }
 }
@@ -0,0 +1,247 @@
+package ray_tracer.geometry;
+
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
+import ray_tracer.acceleration.Accelerator;
+import ray_tracer.acceleration.BoundingVolumeHierarchy;
+import ray_tracer.acceleration.PrimitiveSet;
+import ray_tracer.material.Material;
+import ray_tracer.material.TextureMapping;
+
+import java.util.Arrays;
+
+/**
+ * A collection of triangles sharing vertices and a material, stored in flat primitive arrays.
+ *
+ * <p>Vertices are stored as consecutive x, y, z values and each triangle as three consecutive indices into the
+ * vertices, so a mesh of millions of triangles is a handful of arrays rather than millions of {@link Triangle}s. The
+ * mesh keeps its own {@link BoundingVolumeHierarchy} over its triangles so that to a camera it is a single piece of
+ * geometry no matter how many triangles it holds.
+ *
+ * <p>As with {@link Triangle} the front of a triangle is the side which (p1 - p0) x (p2 - p0) points towards. If
+ * backface culling is enabled rays only intersect triangles from the front.
+ *
+ * Created by William Martin III on 1/18/16.
+ */
+public class TriangleMesh extends Geometry {
+    private final double[] vertices;
+    private final int[] indices;
+    private final boolean cullBackfaces;
+
+    private final BoundingBox bounds;
+    private final Accelerator accelerator;
+
+    /**
+     * Creates a mesh from packed vertex and index arrays.
+     *
+     * <p>The arrays are used directly and should not be modified afterwards.
+     *
+     * @param vertices The x, y, and z coordinates of each vertex
+     * @param indices The indices of the three vertices of each triangle
+     * @param cullBackfaces Whether rays approaching the back of a triangle should pass through it
+     * @param material The material of the mesh
+     * @param textureMapping A texture and how to apply it to the mesh
+     * @throws IllegalArgumentException if either array is not a multiple of three long or an index is out of range
+     */
+    public TriangleMesh(double[] vertices, int[] indices, boolean cullBackfaces, Material material,
+                        TextureMapping textureMapping) {
+        super(material, textureMapping);
+
+        if (vertices.length % 3 != 0 || indices.length % 3 != 0) {
+            throw new IllegalArgumentException("Vertices and indices must both be grouped in threes.");
+        }
+        int vertexCount = vertices.length / 3;
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount) {
+                throw new IllegalArgumentException("Triangle index " + index + " does not refer to a vertex.");
+            }
+        }
+
+        this.vertices = vertices;
+        this.indices = indices;
+        this.cullBackfaces = cullBackfaces;
+
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int index : indices) {
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], vertices[index * 3 + axis]);
+                max[axis] = Math.max(max[axis], vertices[index * 3 + axis]);
+            }
+        }
+        bounds = new BoundingBox(min, max);
+
+        accelerator = new BoundingVolumeHierarchy(new Triangles());
+    }
+
+    /**
+     * Returns the number of triangles in the mesh.
+     *
+     * @return The number of triangles
+     */
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    @Override
+    public double getDistanceToIntersect(Ray ray) {
+        RayIntersect intersect = new RayIntersect();
+
+        return accelerator.findClosest(ray, intersect) ? intersect.getDistance() : -1.0;
+    }
+
+    @Override
+    public boolean intersects(Ray ray, double minDistance, double maxDistance) {
+        return accelerator.isOccluded(ray, minDistance, maxDistance);
+    }
+
+    @Override
+    public boolean intersect(Ray ray, RayIntersect intersect) {
+        return accelerator.findClosest(ray, intersect);
+    }
+
+    @Override
+    protected Vector3 getNormal(RayIntersect intersect) {
+        int triangle = intersect.getPrimitive();
+        int a = indices[triangle * 3] * 3;
+        int b = indices[triangle * 3 + 1] * 3;
+        int c = indices[triangle * 3 + 2] * 3;
+        Vector3 p0 = new Vector3(vertices[a], vertices[a + 1], vertices[a + 2]);
+        Vector3 u = new Vector3(vertices[b], vertices[b + 1], vertices[b + 2]).sub(p0);
+        Vector3 v = new Vector3(vertices[c], vertices[c + 1], vertices[c + 2]).sub(p0);
+
+        return u.cross(v).normalize();
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Returns a copy of the mesh with every vertex moved, sharing the triangle indices of this one. The copy builds
+     * its own hierarchy over the moved triangles.
+     */
+    @Override
+    public TriangleMesh transform(Transform transform) {
+        double[] moved = new double[vertices.length];
+        for (int i = 0; i < vertices.length; i += 3) {
+            Vector3 vertex = transform.apply(new Vector3(vertices[i], vertices[i + 1], vertices[i + 2]));
+            moved[i] = vertex.getX();
+            moved[i + 1] = vertex.getY();
+            moved[i + 2] = vertex.getZ();
+        }
+        return new TriangleMesh(moved, indices, cullBackfaces, getMaterial(), getTextureMapping());
+    }
+
+    private double getDistanceToIntersect(int triangle, Ray ray) {
+        int a = indices[triangle * 3] * 3;
+        int b = indices[triangle * 3 + 1] * 3;
+        int c = indices[triangle * 3 + 2] * 3;
+
+        return PlanarIntersection.triangle(ray,
+                vertices[a], vertices[a + 1], vertices[a + 2],
+                vertices[b] - vertices[a], vertices[b + 1] - vertices[a + 1], vertices[b + 2] - vertices[a + 2],
+                vertices[c] - vertices[a], vertices[c + 1] - vertices[a + 1], vertices[c + 2] - vertices[a + 2],
+                cullBackfaces);
+    }
+
+    /**
+     * Exposes the triangles of the mesh to its acceleration structure.
+     */
+    private class Triangles implements PrimitiveSet {
+        @Override
+        public int size() {
+            return getTriangleCount();
+        }
+
+        @Override
+        public BoundingBox getBounds(int index) {
+            int a = indices[index * 3] * 3;
+            int b = indices[index * 3 + 1] * 3;
+            int c = indices[index * 3 + 2] * 3;
+
+            return new BoundingBox(
+                    Math.min(vertices[a], Math.min(vertices[b], vertices[c])),
+                    Math.min(vertices[a + 1], Math.min(vertices[b + 1], vertices[c + 1])),
+                    Math.min(vertices[a + 2], Math.min(vertices[b + 2], vertices[c + 2])),
+                    Math.max(vertices[a], Math.max(vertices[b], vertices[c])),
+                    Math.max(vertices[a + 1], Math.max(vertices[b + 1], vertices[c + 1])),
+                    Math.max(vertices[a + 2], Math.max(vertices[b + 2], vertices[c + 2])));
+        }
+
+        @Override
+        public boolean intersect(int index, Ray ray, RayIntersect intersect) {
+            int a = indices[index * 3] * 3;
+            int b = indices[index * 3 + 1] * 3;
+            int c = indices[index * 3 + 2] * 3;
+
+            return PlanarIntersection.triangle(ray,
+                    vertices[a], vertices[a + 1], vertices[a + 2],
+                    vertices[b] - vertices[a], vertices[b + 1] - vertices[a + 1], vertices[b + 2] - vertices[a + 2],
+                    vertices[c] - vertices[a], vertices[c + 1] - vertices[a + 1], vertices[c + 2] - vertices[a + 2],
+                    cullBackfaces, TriangleMesh.this, index, intersect);
+        }
+
+        @Override
+        public boolean intersects(int index, Ray ray, double minDistance, double maxDistance) {
+            double distance = TriangleMesh.this.getDistanceToIntersect(index, ray);
+            return distance >= minDistance && distance <= maxDistance;
+        }
+    }
+
+    public static class Builder {
+        private double[] vertices = new double[3 * 64];
+        private int[] indices = new int[3 * 64];
+        private int vertexCount = 0;
+        private int indexCount = 0;
+
+        private boolean cullBackfaces = false;
+        private final Material material;
+        private TextureMapping textureMapping = null;
+
+        public Builder(Material material) {
+            this.material = material;
+        }
+
+        /**
+         * Adds a vertex to the mesh.
+         *
+         * @return The index of the vertex to be used with {@link #triangle(int, int, int)}
+         */
+        public int vertex(double x, double y, double z) {
+            if (vertexCount * 3 == vertices.length) {
+                vertices = Arrays.copyOf(vertices, vertices.length * 2);
+            }
+            vertices[vertexCount * 3] = x;
+            vertices[vertexCount * 3 + 1] = y;
+            vertices[vertexCount * 3 + 2] = z;
+            return vertexCount++;
+        }
+
+        public Builder triangle(int p0, int p1, int p2) {
+            if (indexCount == indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[indexCount++] = p0;
+            indices[indexCount++] = p1;
+            indices[indexCount++] = p2;
+            return this;
+        }
+
+        public Builder cullBackfaces(boolean cullBackfaces) {
+            this.cullBackfaces = cullBackfaces;
+            return this;
+        }
+
+        public Builder textureMapping(TextureMapping textureMapping) {
+            this.textureMapping = textureMapping;
+            return this;
+        }
+
+        public TriangleMesh build() {
+            return new TriangleMesh(Arrays.copyOf(vertices, vertexCount * 3), Arrays.copyOf(indices, indexCount),
+                    cullBackfaces, material, textureMapping);
+        }
+    }
+}
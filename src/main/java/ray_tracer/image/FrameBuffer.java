@@ -0,0 +1,117 @@
+package ray_tracer.image;
+
+import ray_tracer.FloatColor;
+
+import java.util.Arrays;
+
+/**
+ * A high dynamic range image which accumulates samples as 32 bit floating point linear RGB.
+ *
+ * <p>Each pixel keeps the sum of the samples added to it and how many there were, so more samples can be added at any
+ * time and nothing is lost to 8 bit rounding or clamping until a {@link ToneMapper} turns the buffer into an image.
+ * The same buffer may be tone mapped any number of times, such as with a different exposure, without rendering again.
+ *
+ * <p>Different threads may add samples to different pixels at the same time but not to the same pixel.
+ *
+ * Created by William Martin III on 1/22/16.
+ */
+public class FrameBuffer {
+    private final int width;
+    private final int height;
+    private final float[] sums;
+    private final int[] counts;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param width The width in pixels
+     * @param height The height in pixels
+     * @throws IllegalArgumentException if either dimension is negative
+     */
+    public FrameBuffer(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("The size of a frame buffer must not be negative.");
+        }
+        this.width = width;
+        this.height = height;
+        sums = new float[width * height * 3];
+        counts = new int[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Adds a sample to a pixel.
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @param color The color of the sample
+     */
+    public void addSample(int x, int y, FloatColor color) {
+        int pixel = y * width + x;
+        sums[pixel * 3] += color.r;
+        sums[pixel * 3 + 1] += color.g;
+        sums[pixel * 3 + 2] += color.b;
+        counts[pixel]++;
+    }
+
+    /**
+     * Adds several samples to a pixel at once given their average.
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @param average The average color of the samples
+     * @param count The number of samples
+     */
+    public void addSamples(int x, int y, FloatColor average, int count) {
+        int pixel = y * width + x;
+        sums[pixel * 3] += average.r * count;
+        sums[pixel * 3 + 1] += average.g * count;
+        sums[pixel * 3 + 2] += average.b * count;
+        counts[pixel] += count;
+    }
+
+    /**
+     * Sets a color to the average of the samples added to a pixel, or black if there are none.
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @param color The color to set
+     * @return The color set
+     */
+    public FloatColor getColor(int x, int y, FloatColor color) {
+        int pixel = y * width + x;
+        int count = counts[pixel];
+        if (count == 0) {
+            return color.set(0, 0, 0);
+        }
+
+        float scale = 1.0f / count;
+        return color.set(sums[pixel * 3] * scale, sums[pixel * 3 + 1] * scale, sums[pixel * 3 + 2] * scale);
+    }
+
+    /**
+     * Returns how many samples have been added to a pixel.
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @return The number of samples
+     */
+    public int getSampleCount(int x, int y) {
+        return counts[y * width + x];
+    }
+
+    /**
+     * Removes every sample from every pixel.
+     */
+    public void clear() {
+        Arrays.fill(sums, 0);
+        Arrays.fill(counts, 0);
+    }
+}
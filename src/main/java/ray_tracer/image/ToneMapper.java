@@ -0,0 +1,151 @@
+package ray_tracer.image;
+
+import ray_tracer.ColorUtil;
+import ray_tracer.FloatColor;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.stream.IntStream;
+
+/**
+ * Turns a {@link FrameBuffer} into a displayable 8 bit image.
+ *
+ * <p>Each pixel is scaled by the exposure, brought into range by a {@link ToneOperator}, and encoded with either a
+ * plain linear scale or the sRGB transfer curve. The sRGB curve is read from a lookup table rather than computed with
+ * a power for every channel. Rows of the image are mapped in parallel.
+ *
+ * <p>{@link ToneMapper}s are immutable. The defaults, no exposure change with {@link ToneOperator#CLAMP} and linear
+ * encoding, round each channel the same way a camera does when it renders without a frame buffer.
+ *
+ * Created by William Martin III on 1/22/16.
+ */
+public class ToneMapper {
+    private static final int SRGB_TABLE_SIZE = 4096;
+    private static final int[] SRGB_TABLE = new int[SRGB_TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= SRGB_TABLE_SIZE; i++) {
+            double linear = (double) i / SRGB_TABLE_SIZE;
+            double encoded = linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+            SRGB_TABLE[i] = (int) (encoded * ColorUtil.MAX + 0.5);
+        }
+    }
+
+    private final float scale;
+    private final double exposure;
+    private final ToneOperator operator;
+    private final boolean srgb;
+
+    private ToneMapper(Builder builder) {
+        exposure = builder.exposure;
+        scale = (float) Math.pow(2, exposure);
+        operator = builder.operator;
+        srgb = builder.srgb;
+    }
+
+    public double getExposure() {
+        return exposure;
+    }
+
+    public ToneOperator getOperator() {
+        return operator;
+    }
+
+    public boolean getSrgb() {
+        return srgb;
+    }
+
+    /**
+     * Creates a new image of the same size as the frame buffer and maps the frame buffer into it.
+     *
+     * @param frameBuffer The frame buffer to map
+     * @return The mapped image
+     */
+    public BufferedImage toImage(FrameBuffer frameBuffer) {
+        BufferedImage image = new BufferedImage(frameBuffer.getWidth(), frameBuffer.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        apply(frameBuffer, image);
+        return image;
+    }
+
+    /**
+     * Maps the frame buffer into an existing image of the same size.
+     *
+     * @param frameBuffer The frame buffer to map
+     * @param image An image of type {@link BufferedImage#TYPE_INT_RGB} to write to
+     * @throws IllegalArgumentException if the image is not the same size as the frame buffer or is of another type
+     */
+    public void apply(FrameBuffer frameBuffer, BufferedImage image) {
+        if (image.getWidth() != frameBuffer.getWidth() || image.getHeight() != frameBuffer.getHeight()) {
+            throw new IllegalArgumentException("The image must be the same size as the frame buffer.");
+        }
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("The image must be of type TYPE_INT_RGB.");
+        }
+
+        int width = frameBuffer.getWidth();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        IntStream.range(0, frameBuffer.getHeight()).parallel().forEach(y -> {
+            FloatColor color = new FloatColor();
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = map(frameBuffer.getColor(x, y, color));
+            }
+        });
+    }
+
+    /**
+     * Maps a single linear color to a packed 8 bit RGB value.
+     *
+     * @param color The linear color
+     * @return The color packed as by {@link java.awt.Color#getRGB()} without alpha
+     */
+    public int map(FloatColor color) {
+        return (encode(color.r) << 16) | (encode(color.g) << 8) | encode(color.b);
+    }
+
+    private int encode(float value) {
+        value = operator.map(value * scale);
+        if (!(value > 0)) {
+            return 0;
+        } else if (value >= 1) {
+            return ColorUtil.MAX;
+        } else if (srgb) {
+            return SRGB_TABLE[(int) (value * SRGB_TABLE_SIZE + 0.5f)];
+        } else {
+            return (int) (value * ColorUtil.MAX + 0.5f);
+        }
+    }
+
+    public static class Builder {
+        private double exposure = 0;
+        private ToneOperator operator = ToneOperator.CLAMP;
+        private boolean srgb = false;
+
+        public Builder() { }
+
+        /**
+         * Specifies how many stops brighter (or darker, if negative) the image should be.
+         */
+        public Builder exposure(double exposure) {
+            this.exposure = exposure;
+            return this;
+        }
+
+        public Builder operator(ToneOperator operator) {
+            this.operator = operator;
+            return this;
+        }
+
+        /**
+         * Specifies whether the frame buffer is encoded with the sRGB transfer curve rather than scaled linearly.
+         */
+        public Builder srgb(boolean srgb) {
+            this.srgb = srgb;
+            return this;
+        }
+
+        public ToneMapper build() {
+            return new ToneMapper(this);
+        }
+    }
+}
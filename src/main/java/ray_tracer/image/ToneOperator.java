@@ -0,0 +1,46 @@
+package ray_tracer.image;
+
+/**
+ * The curves which may be used by a {@link ToneMapper} to bring high dynamic range values into the displayable range.
+ *
+ * Created by William Martin III on 1/22/16.
+ */
+public enum ToneOperator {
+    /**
+     * Leaves values as they are so that anything brighter than 1 is clipped.
+     */
+    CLAMP {
+        @Override
+        public float map(float value) {
+            return value;
+        }
+    },
+
+    /**
+     * Reinhard's operator x / (1 + x), which compresses highlights smoothly but never reaches white.
+     */
+    REINHARD {
+        @Override
+        public float map(float value) {
+            return value / (1 + value);
+        }
+    },
+
+    /**
+     * 1 - e^-x, which behaves like film exposure: linear in the shadows and saturating gently towards white.
+     */
+    EXPONENTIAL {
+        @Override
+        public float map(float value) {
+            return (float) -Math.expm1(-value);
+        }
+    };
+
+    /**
+     * Maps a linear value of zero or more to a display value which will be clamped to between 0 and 1.
+     *
+     * @param value The exposed linear value
+     * @return The display value
+     */
+    public abstract float map(float value);
+}
@@ -1,5 +1,7 @@
 package ray_tracer.lights;
 
+import ray_tracer.Transform;
+
 import java.awt.*;
 
 /**
@@ -9,4 +11,12 @@ public class AmbientLight extends Light {
     public AmbientLight(Color color, double power) {
         super(LightType.AMBIENT, color, new double[] {0, 0, 0}, new double[] {0, 0, 0}, power);
     }
+
+    /**
+     * Returns this light, as ambient light is the same everywhere.
+     */
+    @Override
+    public AmbientLight transform(Transform transform) {
+        return this;
+    }
 }
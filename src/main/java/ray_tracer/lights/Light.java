@@ -1,6 +1,9 @@
 package ray_tracer.lights;
 
 import org.jblas.DoubleMatrix;
+import ray_tracer.FloatColor;
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
 import ray_tracer.geometry.Ray;
 
 import java.awt.*;
@@ -11,6 +14,7 @@ import java.awt.*;
 public abstract class Light {
     protected final LightType type;
     protected final Color color;
+    protected final FloatColor colorFloat;
     protected final double power;
     protected final Ray ray;
 
@@ -21,6 +25,7 @@ public abstract class Light {
     protected Light(LightType type, Color color, DoubleMatrix position, DoubleMatrix angle, double power) {
         this.type = type;
         this.color = color;
+        this.colorFloat = new FloatColor(color);
         this.ray = new Ray(position, angle);
         this.power = power;
     }
@@ -33,6 +38,13 @@ public abstract class Light {
         return color;
     }
 
+    /**
+     * Returns the color as a {@link FloatColor}, which is shared and must not be modified.
+     */
+    public FloatColor getColorFloat() {
+        return colorFloat;
+    }
+
     public DoubleMatrix getPosition() {
         return ray.getPosition();
     }
@@ -41,7 +53,23 @@ public abstract class Light {
         return ray.getAngle();
     }
 
+    public Vector3 getPositionVector() {
+        return ray.getPositionVector();
+    }
+
+    public Vector3 getAngleVector() {
+        return ray.getAngleVector();
+    }
+
     public double getPower() {
         return power;
     }
+
+    /**
+     * Returns a copy of the light moved by a transform, with the same color and power.
+     *
+     * @param transform The transform to apply
+     * @return The moved light
+     */
+    public abstract Light transform(Transform transform);
 }
@@ -1,5 +1,7 @@
 package ray_tracer.lights;
 
+import ray_tracer.Transform;
+
 import java.awt.*;
 
 /**
@@ -9,4 +11,9 @@ public class PointLight extends Light {
     public PointLight(Color color, double[] position, double power) {
         super(LightType.POINT, color, position, new double[] {0, 0, 0}, power);
     }
+
+    @Override
+    public PointLight transform(Transform transform) {
+        return new PointLight(color, transform.apply(getPositionVector()).toArray(), power);
+    }
 }
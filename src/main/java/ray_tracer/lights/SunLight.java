@@ -1,5 +1,7 @@
 package ray_tracer.lights;
 
+import ray_tracer.Transform;
+
 import java.awt.*;
 
 /**
@@ -9,4 +11,12 @@ public class SunLight extends Light {
     public SunLight(Color color, double[] angle, double power) {
         super(LightType.SUN, color, new double[] {0, 0, 0}, angle, power);
     }
+
+    /**
+     * Returns a copy of the light shining in the rotated direction, as sunlight has no position to move.
+     */
+    @Override
+    public SunLight transform(Transform transform) {
+        return new SunLight(color, transform.applyToDirection(getAngleVector()).toArray(), power);
+    }
 }
@@ -1,6 +1,7 @@
 package ray_tracer.material;
 
 import org.jblas.DoubleMatrix;
+import ray_tracer.Vector3;
 import ray_tracer.geometry.RayIntersect;
 
 import java.awt.geom.Point2D;
@@ -10,11 +11,15 @@ import java.awt.image.BufferedImage;
  * Created by William Martin on 12/27/15.
  */
 public class FlatMap extends TextureMapping {
-    private final DoubleMatrix x;
-    private final DoubleMatrix y;
-    private final DoubleMatrix origin;
+    private final Vector3 x;
+    private final Vector3 y;
+    private final Vector3 origin;
 
     public FlatMap(DoubleMatrix x, DoubleMatrix y, DoubleMatrix origin, Texture texture) {
+        this(Vector3.of(x), Vector3.of(y), Vector3.of(origin), texture);
+    }
+
+    public FlatMap(Vector3 x, Vector3 y, Vector3 origin, Texture texture) {
         super(texture);
         this.x = x;
         this.y = y;
@@ -23,8 +28,7 @@ public class FlatMap extends TextureMapping {
 
     @Override
     public Point2D.Double map(RayIntersect intersect) {
-        DoubleMatrix point = intersect.getReflection().getPosition();
-        point = point.sub(origin);
+        Vector3 point = intersect.getReflection().getPositionVector().sub(origin);
         double x = this.x.project(point) * texture.getWidth();
         double y = this.y.project(point) * texture.getHeight();
         return new Point2D.Double(x, y);
@@ -32,6 +36,11 @@ public class FlatMap extends TextureMapping {
 
     @Override
     public DoubleMatrix getUp() {
+        return y.toDoubleMatrix();
+    }
+
+    @Override
+    public Vector3 getUpVector() {
         return y;
     }
 }
@@ -1,5 +1,7 @@
 package ray_tracer.material;
 
+import ray_tracer.FloatColor;
+
 import java.awt.*;
 
 /**
@@ -11,6 +13,12 @@ public class Material {
     private final Color specular;
     private final Color reflect;
 
+    // converted once for shading
+    private final FloatColor ambientFloat;
+    private final FloatColor diffuseFloat;
+    private final FloatColor specularFloat;
+    private final FloatColor reflectFloat;
+
     private final double refractIndex;
     private final double refractAmount;
     private final double transparency;
@@ -24,6 +32,11 @@ public class Material {
         specular = builder.specular;
         reflect = builder.reflect;
 
+        ambientFloat = new FloatColor(ambient);
+        diffuseFloat = new FloatColor(diffuse);
+        specularFloat = new FloatColor(specular);
+        reflectFloat = new FloatColor(reflect);
+
         transparency = builder.transparency;
         refractIndex = builder.refractIndex;
         refractAmount = builder.refractAmount;
@@ -48,6 +61,34 @@ public class Material {
         return reflect;
     }
 
+    /**
+     * Returns the ambient color as a {@link FloatColor}, which is shared and must not be modified.
+     */
+    public FloatColor getAmbientFloat() {
+        return ambientFloat;
+    }
+
+    /**
+     * Returns the diffuse color as a {@link FloatColor}, which is shared and must not be modified.
+     */
+    public FloatColor getDiffuseFloat() {
+        return diffuseFloat;
+    }
+
+    /**
+     * Returns the specular color as a {@link FloatColor}, which is shared and must not be modified.
+     */
+    public FloatColor getSpecularFloat() {
+        return specularFloat;
+    }
+
+    /**
+     * Returns the reflect color as a {@link FloatColor}, which is shared and must not be modified.
+     */
+    public FloatColor getReflectFloat() {
+        return reflectFloat;
+    }
+
     public double getTransparency() {
         return transparency;
     }
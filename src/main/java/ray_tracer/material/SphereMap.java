@@ -1,6 +1,7 @@
 package ray_tracer.material;
 
 import org.jblas.DoubleMatrix;
+import ray_tracer.Vector3;
 import ray_tracer.geometry.RayIntersect;
 
 import java.awt.geom.Point2D;
@@ -9,7 +10,7 @@ import java.awt.geom.Point2D;
  * Created by William Martin on 12/27/15.
  */
 public class SphereMap extends TextureMapping {
-    private static final DoubleMatrix UP = new DoubleMatrix(new double[] {0, 0, 1});
+    private static final Vector3 UP = Vector3.Z;
 
     public SphereMap(Texture texture) {
         super(texture);
@@ -17,10 +18,10 @@ public class SphereMap extends TextureMapping {
 
     @Override
     public Point2D.Double map(RayIntersect intersect) {
-        DoubleMatrix normal = intersect.getNormal();
+        Vector3 normal = intersect.getNormalVector();
 
-        double x = Math.asin(normal.get(0)) / Math.PI + 0.5;
-        double y = Math.asin(normal.get(1)) / Math.PI + 0.5;
+        double x = Math.asin(normal.getX()) / Math.PI + 0.5;
+        double y = Math.asin(normal.getY()) / Math.PI + 0.5;
         x *= texture.getWidth() * 2.0;
         y *= texture.getHeight() * 2.0;
 
@@ -29,6 +30,11 @@ public class SphereMap extends TextureMapping {
 
     @Override
     public DoubleMatrix getUp() {
+        return UP.toDoubleMatrix();
+    }
+
+    @Override
+    public Vector3 getUpVector() {
         return UP;
     }
 }
@@ -1,8 +1,9 @@
 package ray_tracer.material;
 
 import org.jblas.DoubleMatrix;
-import org.jblas.Geometry;
 import ray_tracer.ColorUtil;
+import ray_tracer.FloatColor;
+import ray_tracer.Vector3;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -40,37 +41,49 @@ public class Texture {
         return getPixel(diffuse, x, y);
     }
 
+    /**
+     * Sets a {@link FloatColor} to the diffuse color of the texture at a point.
+     *
+     * @param x The horizontal position in pixels
+     * @param y The vertical position in pixels
+     * @param color The color to set
+     */
+    public void getDiffuse(double x, double y, FloatColor color) {
+        getPixel(diffuse, x, y, color);
+    }
+
     public DoubleMatrix getNormal(double x, double y) {
+        return getNormalVector(x, y).toDoubleMatrix();
+    }
+
+    public Vector3 getNormalVector(double x, double y) {
         if (normal == null) {
-            return new DoubleMatrix(new double[] {0, 1, 0});
+            return Vector3.Y;
         }
 
-        Color result = getPixel(normal, x, y);
+        FloatColor result = getPixel(normal, x, y, new FloatColor());
 
-        double scale = ColorUtil.MAX;
-        DoubleMatrix normal = new DoubleMatrix(new double[] {
-                -(result.getRed() / scale - 0.5) * 2,
-                -(result.getGreen() / scale - 0.5) * 2,
-                (result.getBlue() / scale - 0.5)
-        });
-        Geometry.normalize(normal);
-        return normal;
+        return new Vector3(
+                -(result.r - 0.5) * 2,
+                -(result.g - 0.5) * 2,
+                (result.b - 0.5)
+        ).normalize();
     }
 
     public double getSpecular(double x, double y) {
         if (specular == null) {
             return 0;
         }
-        Color result = getPixel(specular, x, y);
-        return (double) (result.getRed() + result.getGreen() + result.getBlue()) / (ColorUtil.MAX * 3.0);
+        FloatColor result = getPixel(specular, x, y, new FloatColor());
+        return (result.r + result.g + result.b) / 3.0;
     }
 
     public double getReflection(double x, double y) {
         if (reflection == null) {
             return 0;
         }
-        Color result = getPixel(reflection, x, y);
-        return (double) (result.getRed() + result.getGreen() + result.getBlue()) / (ColorUtil.MAX * 3);
+        FloatColor result = getPixel(reflection, x, y, new FloatColor());
+        return (result.r + result.g + result.b) / 3.0;
     }
 
     public int getWidth() {
@@ -145,6 +158,19 @@ public class Texture {
     }
 
     protected Color getPixel(BufferedImage image, double x, double y) {
+        return getPixel(image, x, y, new FloatColor()).toColor();
+    }
+
+    /**
+     * Sets a {@link FloatColor} to the color of an image at a point, blending the four nearest pixels.
+     *
+     * @param image The image to sample
+     * @param x The horizontal position in pixels
+     * @param y The vertical position in pixels
+     * @param color The color to set
+     * @return The color set
+     */
+    protected FloatColor getPixel(BufferedImage image, double x, double y, FloatColor color) {
         x = x % image.getWidth();
         y = y % image.getHeight();
 
@@ -161,25 +187,23 @@ public class Texture {
         int right = (left + 1) % image.getWidth();
         int upper = (lower + 1) % image.getHeight();
 
-        Color lowerLeft = new Color(image.getRGB(left, lower));
-        Color lowerRight = new Color(image.getRGB(right, lower));
-        Color upperLeft = new Color(image.getRGB(left, upper));
-        Color upperRight = new Color(image.getRGB(right, upper));
-
-
-        Color down = ColorUtil.add(
-                ColorUtil.multiply(lowerLeft, x - left),
-                ColorUtil.multiply(lowerRight, left + 1 - x)
-        );
-
-        Color up = ColorUtil.add(
-                ColorUtil.multiply(upperLeft, x - left),
-                ColorUtil.multiply(upperRight, left + 1 - x)
-        );
+        double leftAmount = x - left;
+        double rightAmount = left + 1 - x;
+        double lowerAmount = y - lower;
+        double upperAmount = lower + 1 - y;
+
+        color.set(0, 0, 0);
+        addPixel(color, image.getRGB(left, lower), leftAmount * lowerAmount);
+        addPixel(color, image.getRGB(right, lower), rightAmount * lowerAmount);
+        addPixel(color, image.getRGB(left, upper), leftAmount * upperAmount);
+        addPixel(color, image.getRGB(right, upper), rightAmount * upperAmount);
+        return color;
+    }
 
-        return ColorUtil.add(
-                ColorUtil.multiply(down, y - lower),
-                ColorUtil.multiply(up, lower + 1 - y)
-        );
+    private static void addPixel(FloatColor color, int rgb, double amount) {
+        float scale = (float) (amount / ColorUtil.MAX);
+        color.r += ((rgb >> 16) & 0xFF) * scale;
+        color.g += ((rgb >> 8) & 0xFF) * scale;
+        color.b += (rgb & 0xFF) * scale;
     }
 }
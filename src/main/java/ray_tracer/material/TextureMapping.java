@@ -3,10 +3,12 @@ package ray_tracer.material;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import org.jblas.DoubleMatrix;
-import org.jblas.Solve;
 import org.w3c.dom.Text;
 import ray_tracer.ColorUtil;
+import ray_tracer.FloatColor;
+import ray_tracer.Matrix3;
 import ray_tracer.MatrixUtil;
+import ray_tracer.Vector3;
 import ray_tracer.geometry.Ray;
 import ray_tracer.geometry.RayIntersect;
 
@@ -19,7 +21,9 @@ import java.util.concurrent.TimeUnit;
  * Created by William Martin on 12/27/15.
  */
 public abstract class TextureMapping {
-    private DoubleMatrix IDENTITY_NORMAL = new DoubleMatrix(new double[] {0, 1, 0});
+    private static final Vector3 IDENTITY_NORMAL = Vector3.Y;
+    private static final Vector3 BACK_UP_OFFSET = new Vector3(0, 0, 0.1);
+
     protected Texture texture;
 
     protected TextureMapping(Texture texture) {
@@ -30,40 +34,66 @@ public abstract class TextureMapping {
 
     public abstract DoubleMatrix getUp();
 
+    /**
+     * Returns the same direction as {@link #getUp()} as a {@link Vector3}.
+     *
+     * <p>Implementations with a fixed up direction should override this to avoid converting it on every call.
+     *
+     * @return The up direction of the texture
+     */
+    public Vector3 getUpVector() {
+        return Vector3.of(getUp());
+    }
+
     public final Color getDiffuse(RayIntersect intersect) {
-        Point2D.Double coordinate = map(intersect);
+        Point2D.Double coordinate = intersect.getTextureCoordinate(this);
         return texture.getDiffuse(coordinate.x, coordinate.y);
     }
 
+    /**
+     * Sets a {@link FloatColor} to the diffuse color of the texture where it is intersected.
+     *
+     * @param intersect Where the geometry was intersected
+     * @param color The color to set
+     */
+    public final void getDiffuse(RayIntersect intersect, FloatColor color) {
+        Point2D.Double coordinate = intersect.getTextureCoordinate(this);
+        texture.getDiffuse(coordinate.x, coordinate.y, color);
+    }
+
     public final double getSpecularAmount(RayIntersect intersect) {
-        Point2D.Double coordinate = map(intersect);
+        Point2D.Double coordinate = intersect.getTextureCoordinate(this);
         return texture.getSpecular(coordinate.x, coordinate.y);
     }
 
     public final double getReflectionAmount(RayIntersect intersect) {
-        Point2D.Double coordinate = map(intersect);
+        Point2D.Double coordinate = intersect.getTextureCoordinate(this);
         return texture.getReflection(coordinate.x, coordinate.y);
     }
 
     public final DoubleMatrix rotation(RayIntersect intersect, DoubleMatrix up) {
+        return rotation(intersect, Vector3.of(up)).toDoubleMatrix();
+    }
+
+    public final Matrix3 rotation(RayIntersect intersect, Vector3 up) {
         // Get normal color
-        Point2D.Double coordinate = map(intersect);
+        Point2D.Double coordinate = intersect.getTextureCoordinate(this);
 
         // Get rotation vector
-        DoubleMatrix imageNormal = texture.getNormal(coordinate.x, coordinate.y);
+        Vector3 imageNormal = texture.getNormalVector(coordinate.x, coordinate.y);
         if (IDENTITY_NORMAL.equals(imageNormal)) {
-            return DoubleMatrix.eye(3);
+            return Matrix3.IDENTITY;
         }
 
         // Get rotation matrix
-        DoubleMatrix rotate = MatrixUtil.rotate(imageNormal, getUp(),
-                getUp().add(new DoubleMatrix(new double[] {0, 0, 0.1})));
+        Vector3 textureUp = getUpVector();
+        Matrix3 rotate = MatrixUtil.rotate(imageNormal, textureUp, textureUp.add(BACK_UP_OFFSET));
 
         // Get rotation matrix from world space to normal space
-        DoubleMatrix normalRotate = MatrixUtil.rotate(intersect.getNormal(), up,
-                up.add(new DoubleMatrix(new double[] {0, 0, 0.1})));
+        Matrix3 normalRotate = MatrixUtil.rotate(intersect.getNormalVector(), up, up.add(BACK_UP_OFFSET));
 
-        DoubleMatrix normalInv = Solve.pinv(normalRotate);
+        // the basis is orthonormal so its transpose is its inverse
+        Matrix3 normalInv = normalRotate.transpose();
 
         return normalRotate.mmul(rotate.mmul(normalInv));
     }
@@ -0,0 +1,40 @@
+package ray_tracer.sampling;
+
+/**
+ * A {@link Sampler} whose error is spread between neighbouring pixels as high frequency, blue, noise.
+ *
+ * <p>Each pixel follows the R2 sequence, the two dimensional generalization of the golden ratio sequence built on the
+ * plastic number, shifted by an offset which is itself given by the R2 sequence over the pixel coordinates. Neighbouring
+ * pixels therefore start from very different points so what error remains looks like fine grain rather than blotches,
+ * which the eye and any later filtering average out more easily than white noise.
+ *
+ * Created by William Martin III on 1/23/16.
+ */
+public class BlueNoiseSampler implements Sampler {
+    // 1 / p and 1 / p^2 where p is the plastic number, the real root of x^3 = x + 1
+    private static final double ALPHA_1 = 0.7548776662466927;
+    private static final double ALPHA_2 = 0.5698402909980532;
+
+    private final double offsetX;
+    private final double offsetY;
+
+    /**
+     * @param seed Shifts the pattern as a whole
+     */
+    public BlueNoiseSampler(long seed) {
+        long hash = SampleHash.pixel(seed, 0, 0);
+        offsetX = SampleHash.toUnit(SampleHash.sample(hash, 0, 0));
+        offsetY = SampleHash.toUnit(SampleHash.sample(hash, 0, 1));
+    }
+
+    @Override
+    public void get2D(int x, int y, int index, int count, double[] point) {
+        double dither = fraction(x * ALPHA_1 + y * ALPHA_2);
+        point[0] = fraction(offsetX + dither + index * ALPHA_1);
+        point[1] = fraction(offsetY + dither + index * ALPHA_2);
+    }
+
+    private static double fraction(double value) {
+        return value - Math.floor(value);
+    }
+}
@@ -0,0 +1,47 @@
+package ray_tracer.sampling;
+
+/**
+ * A {@link Sampler} which follows the Halton sequence in bases 2 and 3.
+ *
+ * <p>Each prefix of the sequence covers the square evenly, so any number of samples is well distributed without
+ * knowing the count in advance. Every pixel shifts the sequence by its own random offset (wrapping around the square)
+ * so that neighbouring pixels do not share the same error.
+ *
+ * Created by William Martin III on 1/23/16.
+ */
+public class HaltonSampler implements Sampler {
+    private final long seed;
+
+    /**
+     * @param seed Chooses the offset of each pixel
+     */
+    public HaltonSampler(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void get2D(int x, int y, int index, int count, double[] point) {
+        long pixel = SampleHash.pixel(seed, x, y);
+        point[0] = wrap(radicalInverse(index, 2) + SampleHash.toUnit(SampleHash.sample(pixel, 0, 0)));
+        point[1] = wrap(radicalInverse(index, 3) + SampleHash.toUnit(SampleHash.sample(pixel, 0, 1)));
+    }
+
+    /**
+     * Mirrors the digits of the index in the given base about the decimal point.
+     */
+    static double radicalInverse(int index, int base) {
+        double inverse = 1.0 / base;
+        double scale = inverse;
+        double result = 0;
+        while (index > 0) {
+            result += (index % base) * scale;
+            index /= base;
+            scale *= inverse;
+        }
+        return result;
+    }
+
+    static double wrap(double value) {
+        return value >= 1 ? value - 1 : value;
+    }
+}
@@ -0,0 +1,26 @@
+package ray_tracer.sampling;
+
+/**
+ * A {@link Sampler} which places every sample independently at random.
+ *
+ * <p>This converges the slowest but has no structure which could show up as patterns in the image.
+ *
+ * Created by William Martin III on 1/23/16.
+ */
+public class RandomSampler implements Sampler {
+    private final long seed;
+
+    /**
+     * @param seed Chooses the random values, the same seed always giving the same samples
+     */
+    public RandomSampler(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void get2D(int x, int y, int index, int count, double[] point) {
+        long pixel = SampleHash.pixel(seed, x, y);
+        point[0] = SampleHash.toUnit(SampleHash.sample(pixel, index, 0));
+        point[1] = SampleHash.toUnit(SampleHash.sample(pixel, index, 1));
+    }
+}
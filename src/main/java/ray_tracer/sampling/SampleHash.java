@@ -0,0 +1,42 @@
+package ray_tracer.sampling;
+
+/**
+ * Hashing used by samplers to derive per-pixel random values without any shared state.
+ *
+ * Created by William Martin III on 1/23/16.
+ */
+final class SampleHash {
+    private static final double UNIT = 1.0 / (1L << 53);
+
+    private SampleHash() { }
+
+    /**
+     * Scrambles the bits of a value thoroughly, as the final step of the SplitMix64 generator.
+     */
+    static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Returns a hash of a pixel under a seed.
+     */
+    static long pixel(long seed, int x, int y) {
+        return mix(seed * 0x9E3779B97F4A7C15L + mix(((long) x << 32) ^ (y & 0xFFFFFFFFL)));
+    }
+
+    /**
+     * Returns a hash of one value of a sample of a pixel, given the pixel's hash.
+     */
+    static long sample(long pixel, int index, int dimension) {
+        return mix(pixel + mix(((long) index << 8) ^ dimension));
+    }
+
+    /**
+     * Returns a value in [0, 1) taken from the high bits of a hash.
+     */
+    static double toUnit(long hash) {
+        return (hash >>> 11) * UNIT;
+    }
+}
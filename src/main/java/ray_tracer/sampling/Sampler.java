@@ -0,0 +1,43 @@
+package ray_tracer.sampling;
+
+/**
+ * Chooses where within the unit square each sample of a pixel is taken.
+ *
+ * <p>A sample depends only on the pixel, which sample of the pixel it is, and the seed of the sampler, so samplers hold
+ * no state which changes while rendering. Any number of threads may take samples at once without contending for a
+ * shared random number generator, and an image renders the same no matter how its pixels are divided between threads.
+ *
+ * Created by William Martin III on 1/23/16.
+ */
+public interface Sampler {
+
+    /**
+     * Sets the two dimensional position of a sample of a pixel, each coordinate in [0, 1).
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @param index Which sample of the pixel, starting at 0
+     * @param count How many samples the pixel is expected to take, which stratifying samplers divide the square by
+     * @param point An array of at least two elements to set
+     */
+    void get2D(int x, int y, int index, int count, double[] point);
+
+    /**
+     * Returns a value in [0, 1) for one of the random choices made while following the ray of a sample, such as whether
+     * russian roulette ends its chain of reflections.
+     *
+     * <p>Like the position of a sample, the value depends only on the pixel, which sample of the pixel it is, and which
+     * choice is made, so an image which makes random choices still renders the same however its pixels are divided
+     * between threads. The values are independent of the sampler's seed and of where the sample is placed.
+     *
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @param index Which sample of the pixel, starting at 0
+     * @param dimension Which choice, starting at 0
+     * @return The value of the choice
+     */
+    default double get1D(int x, int y, int index, int dimension) {
+        // the first two dimensions of each sample are those samplers place it with
+        return SampleHash.toUnit(SampleHash.sample(SampleHash.pixel(0, x, y), index, dimension + 2));
+    }
+}
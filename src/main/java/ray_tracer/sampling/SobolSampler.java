@@ -0,0 +1,51 @@
+package ray_tracer.sampling;
+
+/**
+ * A {@link Sampler} which follows the first two dimensions of the Sobol sequence.
+ *
+ * <p>Every run of 2^k samples starting at a multiple of 2^k places exactly one sample in each cell of any 2^a by 2^b
+ * grid of the square with a + b = k, so power of two sample counts are stratified in every direction at once. Every
+ * pixel scrambles the sequence by flipping bits chosen at random, which keeps that property.
+ *
+ * Created by William Martin III on 1/23/16.
+ */
+public class SobolSampler implements Sampler {
+    private static final double UNIT = 1.0 / (1L << 32);
+    private static final int[] SECOND_DIMENSION = new int[32];
+
+    static {
+        // the second dimension is generated by the primitive polynomial x + 1
+        SECOND_DIMENSION[0] = 1 << 31;
+        for (int i = 1; i < 32; i++) {
+            SECOND_DIMENSION[i] = SECOND_DIMENSION[i - 1] ^ (SECOND_DIMENSION[i - 1] >>> 1);
+        }
+    }
+
+    private final long seed;
+
+    /**
+     * @param seed Chooses the scrambling of each pixel
+     */
+    public SobolSampler(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void get2D(int x, int y, int index, int count, double[] point) {
+        long pixel = SampleHash.pixel(seed, x, y);
+
+        // the first dimension is the van der Corput sequence, the bits of the index reversed
+        int first = Integer.reverse(index);
+        int second = 0;
+        for (int i = 0, bits = index; bits != 0; i++, bits >>>= 1) {
+            if ((bits & 1) != 0) {
+                second ^= SECOND_DIMENSION[i];
+            }
+        }
+
+        first ^= (int) pixel;
+        second ^= (int) (pixel >>> 32);
+        point[0] = (first & 0xFFFFFFFFL) * UNIT;
+        point[1] = (second & 0xFFFFFFFFL) * UNIT;
+    }
+}
@@ -0,0 +1,56 @@
+package ray_tracer.sampling;
+
+/**
+ * A {@link Sampler} which divides the square into a grid of about as many cells as there are samples and places one
+ * sample at random within each cell.
+ *
+ * <p>The cells are visited in a different order for every pixel so that a pixel which takes fewer samples than there
+ * are cells is not biased towards one side of the square. Samples beyond the number of cells are placed at random.
+ *
+ * Created by William Martin III on 1/23/16.
+ */
+public class StratifiedSampler implements Sampler {
+    private final long seed;
+
+    /**
+     * @param seed Chooses the order of cells and where in each cell samples fall
+     */
+    public StratifiedSampler(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public void get2D(int x, int y, int index, int count, double[] point) {
+        long pixel = SampleHash.pixel(seed, x, y);
+        double jitterX = SampleHash.toUnit(SampleHash.sample(pixel, index, 0));
+        double jitterY = SampleHash.toUnit(SampleHash.sample(pixel, index, 1));
+
+        int side = (int) Math.ceil(Math.sqrt(Math.max(count, 1)));
+        int cells = side * side;
+        if (index >= cells) {
+            point[0] = jitterX;
+            point[1] = jitterY;
+            return;
+        }
+
+        // stepping through the cells by a stride coprime to their number visits each exactly once
+        int stride = (int) Long.remainderUnsigned(pixel, cells) | 1;
+        while (gcd(stride, cells) != 1) {
+            stride += 2;
+        }
+        int offset = (int) Long.remainderUnsigned(pixel >>> 32, cells);
+        int cell = (int) ((index * (long) stride + offset) % cells);
+
+        point[0] = (cell % side + jitterX) / side;
+        point[1] = (cell / side + jitterY) / side;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int temp = a % b;
+            a = b;
+            b = temp;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,112 @@
+package ray_tracer;
+
+import org.junit.Test;
+import ray_tracer.background.GradientBackground;
+import ray_tracer.cameras.FancyCamera;
+import ray_tracer.cameras.lenses.SimpleLens;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.geometry.Triangle;
+import ray_tracer.lights.AmbientLight;
+import ray_tracer.lights.PointLight;
+import ray_tracer.lights.SunLight;
+import ray_tracer.material.Material;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by William Martin III on 1/31/16.
+ */
+public class PrecisionTest {
+    private static final int SIZE = 96;
+
+    @Test
+    public void shouldRenderFloatSceneCloseToDouble() {
+        Scene.Builder builder = createScene();
+        BufferedImage expected = render(builder.precision(Precision.DOUBLE).build());
+        BufferedImage actual = render(builder.precision(Precision.FLOAT).build());
+
+        double totalError = 0;
+        int visible = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int error = Math.abs((a >> shift & 0xFF) - (b >> shift & 0xFF));
+                    totalError += error;
+                    if (error > 2) {
+                        visible++;
+                    }
+                }
+            }
+        }
+        double meanError = totalError / (SIZE * SIZE * 3);
+
+        // surfaces which shadowed themselves through rounding would speckle a large part of the image
+        String report = "mean error " + meanError + ", channels off by more than 2: " + visible;
+        assertTrue(report, meanError < 0.05);
+        assertTrue(report, visible <= SIZE * SIZE * 3 / 1000);
+    }
+
+    /**
+     * Creates a lit field of triangles with spheres resting on it, far enough from the origin that float rounding is
+     * well above the offsets doubles need.
+     */
+    private static Scene.Builder createScene() {
+        Material ground = new Material.Builder().color(Color.GREEN).build();
+        Material ball = new Material.Builder().color(Color.RED).build();
+        List<Geometry> geometry = new ArrayList<>();
+
+        int n = 24;
+        double[][] heights = new double[n + 1][n + 1];
+        Random random = new Random(3);
+        for (int i = 0; i <= n; i++) {
+            for (int j = 0; j <= n; j++) {
+                heights[i][j] = Math.sin(i * 0.4) * Math.cos(j * 0.3) + random.nextDouble() * 0.2 - 2;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double x0 = -10 + 20.0 * i / n;
+                double x1 = -10 + 20.0 * (i + 1) / n;
+                double z0 = -10 + 20.0 * j / n;
+                double z1 = -10 + 20.0 * (j + 1) / n;
+                geometry.add(new Triangle(new double[] {x0, heights[i][j], z0},
+                        new double[] {x1, heights[i + 1][j], z0},
+                        new double[] {x1, heights[i + 1][j + 1], z1}, ground, null));
+                geometry.add(new Triangle(new double[] {x0, heights[i][j], z0},
+                        new double[] {x1, heights[i + 1][j + 1], z1},
+                        new double[] {x0, heights[i][j + 1], z1}, ground, null));
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            geometry.add(new Sphere(new double[] {random.nextDouble() * 12 - 6, random.nextDouble(),
+                    random.nextDouble() * 12 - 6}, 0.5 + random.nextDouble(), ball, null));
+        }
+
+        return new Scene.Builder()
+                .geometry(geometry)
+                .light(new SunLight(Color.WHITE, new double[] {0.3, -1, 0.2}, 0.7))
+                .light(new PointLight(Color.WHITE, new double[] {0, 5, 0}, 0.5))
+                .light(new AmbientLight(Color.WHITE, 0.1))
+                .background(new GradientBackground(Color.BLACK, Color.BLUE));
+    }
+
+    private static BufferedImage render(Scene scene) {
+        FancyCamera camera = new FancyCamera();
+        camera.setWidth(SIZE);
+        camera.setHeight(SIZE);
+        camera.setLens(new SimpleLens(SIZE, SIZE, 2.0, 3.0));
+        camera.setScene(scene);
+        camera.setPosition(new double[] {0, 3, -14});
+        camera.setAngle(new double[] {0, 4, -14});
+        return camera.render();
+    }
+}
@@ -0,0 +1,186 @@
+package ray_tracer;
+
+import org.junit.Test;
+import ray_tracer.background.FlatBackground;
+import ray_tracer.cameras.FlatCamera;
+import ray_tracer.cameras.lenses.SimpleLens;
+import ray_tracer.geometry.Ray;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by William Martin III on 1/26/16.
+ */
+public class RendererTest {
+
+    @Test
+    public void shouldNotKeepSmallJobWaitingBehindLargeJob() {
+        try (Renderer renderer = new Renderer(2)) {
+            Renderer.Job large = new Renderer.Job.Builder(createCamera(32, 8)).build();
+            Renderer.Job small = new Renderer.Job.Builder(createCamera(8, 8)).build();
+            BufferedImage[] sunk = new BufferedImage[1];
+            Renderer.Job sinking = new Renderer.Job.Builder(createCamera(8, 8)).sink(image -> sunk[0] = image).build();
+
+            CompletableFuture<BufferedImage> largeImage = renderer.submit(large);
+            CompletableFuture<BufferedImage> smallImage = renderer.submit(small);
+            CompletableFuture<BufferedImage> sinkingImage = renderer.submit(sinking);
+
+            assertEquals(8, smallImage.join().getWidth());
+            assertSame(sinkingImage.join(), sunk[0]);
+            assertFalse(largeImage.isDone());
+
+            assertEquals(32, largeImage.join().getWidth());
+            assertEquals(16, large.getStats().getTiles());
+            assertEquals(1, small.getStats().getTiles());
+            assertTrue(large.getStats().isFinished());
+        }
+    }
+
+    @Test
+    public void shouldFailJobWhoseSinkThrows() throws InterruptedException {
+        try (Renderer renderer = new Renderer(2)) {
+            IllegalStateException failure = new IllegalStateException("encoder failed");
+            Renderer.Job job = new Renderer.Job.Builder(createCamera(8, 8)).sink(image -> {
+                throw failure;
+            }).build();
+
+            try {
+                renderer.submit(job).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void shouldStopCancelledJob() {
+        try (Renderer renderer = new Renderer(2)) {
+            Renderer.Job cancelled = new Renderer.Job.Builder(createCamera(32, 8)).build();
+            Renderer.Job other = new Renderer.Job.Builder(createCamera(16, 8)).build();
+
+            CompletableFuture<BufferedImage> cancelledImage = renderer.submit(cancelled);
+            CompletableFuture<BufferedImage> otherImage = renderer.submit(other);
+            cancelledImage.cancel(false);
+
+            otherImage.join();
+            assertTrue(cancelledImage.isCancelled());
+            assertEquals(4, other.getStats().getTiles());
+            assertTrue(cancelled.getStats().getTiles() < 16);
+            assertFalse(cancelled.getStats().isFinished());
+        }
+    }
+
+    @Test
+    public void shouldCancelJobBetweenPhasesOnClose() throws InterruptedException, ExecutionException {
+        SlowCamera camera = createCamera(8, 8);
+        // adaptive sampling takes the first samples of every pixel before any pixel takes more
+        Renderer.Job job = new Renderer.Job.Builder(camera).samples(8).adaptiveSampling(true).build();
+
+        CompletableFuture<BufferedImage> image;
+        try (Renderer renderer = new Renderer(2)) {
+            image = renderer.submit(job);
+            // the only tile of the first phase has been taken so the job is in no queue
+            camera.started.await();
+        }
+
+        try {
+            image.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException e) {
+            assertTrue(image.isCancelled());
+        } catch (TimeoutException e) {
+            fail("The job was neither finished nor cancelled.");
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotSubmitToClosedRenderer() {
+        Renderer renderer = new Renderer(1);
+        renderer.close();
+        renderer.submit(new Renderer.Job.Builder(createCamera(8, 8)).build());
+    }
+
+    @Test
+    public void shouldLeaveCameraUnchangedWhenRejected() {
+        SlowCamera camera = createCamera(8, 8);
+        camera.render();
+        Scene scene = camera.getScene();
+        Renderer.Job job = new Renderer.Job.Builder(camera)
+                .scene(new Scene.Builder().background(new FlatBackground(Color.RED)).build())
+                .size(16, 16)
+                .build();
+
+        Renderer closed = new Renderer(1);
+        closed.close();
+        try {
+            closed.submit(job);
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(scene, camera.getScene());
+            // the sample counts of the camera's latest render are still those of its own size
+            assertEquals(8, camera.getSampleCountMap().getWidth());
+            assertEquals(0, job.getStats().getQueuedMillis());
+        }
+
+        // the rejected job may still be rendered elsewhere
+        try (Renderer renderer = new Renderer(1)) {
+            assertEquals(16, renderer.submit(job).join().getWidth());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotSubmitJobTwice() {
+        try (Renderer renderer = new Renderer(1)) {
+            Renderer.Job job = new Renderer.Job.Builder(createCamera(8, 8)).build();
+            renderer.submit(job);
+            renderer.submit(job);
+        }
+    }
+
+    /**
+     * Creates a camera looking at nothing but a flat background, divided into square tiles of the given size.
+     */
+    private static SlowCamera createCamera(int size, int tileSize) {
+        SlowCamera camera = new SlowCamera();
+        camera.setWidth(size);
+        camera.setHeight(size);
+        camera.setTileSize(tileSize);
+        camera.setLens(new SimpleLens(size, size, 2.0, 3.0));
+        camera.setScene(new Scene.Builder().background(new FlatBackground(Color.BLUE)).build());
+        camera.setPosition(new double[] {0, 0, -5});
+        camera.setAngle(new double[] {0, 0, 1});
+        return camera;
+    }
+
+    /**
+     * A camera which takes a millisecond for every ray.
+     */
+    private static final class SlowCamera extends FlatCamera {
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        @Override
+        public void getColor(Ray ray, FloatColor color) {
+            started.countDown();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.getColor(ray, color);
+        }
+    }
+}
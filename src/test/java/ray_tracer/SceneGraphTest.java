@@ -0,0 +1,320 @@
+package ray_tracer;
+
+import org.junit.Test;
+import ray_tracer.acceleration.Accelerator;
+import ray_tracer.acceleration.AcceleratorType;
+import ray_tracer.acceleration.GeometrySet;
+import ray_tracer.acceleration.LinearAccelerator;
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.lights.AmbientLight;
+import ray_tracer.lights.Light;
+import ray_tracer.lights.PointLight;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static ray_tracer.TestUtil.closest;
+
+/**
+ * Created by William Martin III on 1/27/16.
+ */
+public class SceneGraphTest {
+
+    @Test
+    public void shouldPlaceChildrenWhereTheirGroupIs() {
+        SceneGraph graph = new SceneGraph();
+        SceneGraph.Node group = graph.getRoot().createChild();
+        SceneGraph.Node left = group.createChild().setTransform(translation(-2, 0, 0))
+                .setGeometry(new Sphere(new double[] {0, 0, 0}, 0.5, null, null));
+        SceneGraph.Node right = group.createChild().setTransform(translation(2, 0, 0))
+                .setGeometry(new Sphere(new double[] {0, 0, 0}, 0.5, null, null));
+
+        Scene scene = graph.update();
+        assertEquals(1, graph.getRebuildCount());
+        assertEquals(0, graph.getRefitCount());
+        assertHits(scene, left, -2, 0, 0);
+        assertHits(scene, right, 2, 0, 0);
+
+        for (int frame = 1; frame <= 5; frame++) {
+            // the child is marked before its group but must be placed after it
+            right.setTransform(translation(2, frame, 0));
+            group.setTransform(translation(0, 0, frame * 3));
+
+            scene = graph.update();
+            assertEquals(1, graph.getRebuildCount());
+            assertEquals(frame, graph.getRefitCount());
+            assertHits(scene, left, -2, 0, frame * 3);
+            assertHits(scene, right, 2, frame, frame * 3);
+            assertMatchesLinearSearch(scene, new Random(frame));
+        }
+        assertEquals(0, left.getGeometryId());
+        assertEquals(1, right.getGeometryId());
+
+        // nothing changed so nothing is done
+        assertSame(scene, graph.update());
+        assertEquals(5, graph.getRefitCount());
+    }
+
+    @Test
+    public void shouldRebuildOnlyWhenGeometryIsAdded() {
+        SceneGraph graph = new SceneGraph();
+        Random random = new Random(1);
+        List<SceneGraph.Node> nodes = addSpheres(graph, random, 100);
+
+        graph.update();
+        assertEquals(1, graph.getRebuildCount());
+
+        for (int frame = 1; frame <= 3; frame++) {
+            // replacing a node's geometry moves it without adding to the scene
+            SceneGraph.Node node = nodes.get(random.nextInt(nodes.size()));
+            node.setGeometry(new Sphere(new double[] {0, 0, 0}, 0.2 + frame * 0.1, null, null));
+
+            Scene scene = graph.update();
+            assertEquals(1, graph.getRebuildCount());
+            assertEquals(frame, graph.getRefitCount());
+            assertEquals(100, scene.getGeometryCount());
+            // the new sphere is placed where the node is
+            double radius = 0.2 + frame * 0.1;
+            Vector3 center = node.getTransform().getTranslation();
+            BoundingBox bounds = scene.getGeometry(node.getGeometryId()).getBounds();
+            assertEquals(center.getX() - radius, bounds.getMin(0), 1.0E-9);
+            assertEquals(center.getZ() + radius, bounds.getMax(2), 1.0E-9);
+            assertMatchesLinearSearch(scene, random);
+        }
+
+        SceneGraph.Node added = graph.getRoot().createChild().setTransform(translation(0, 0, 30))
+                .setGeometry(new Sphere(new double[] {0, 0, 0}, 1, null, null));
+        Scene scene = graph.update();
+        assertEquals(2, graph.getRebuildCount());
+        assertEquals(3, graph.getRefitCount());
+        assertEquals(101, scene.getGeometryCount());
+        assertEquals(100, added.getGeometryId());
+        assertHits(scene, added, 0, 0, 30);
+        assertMatchesLinearSearch(scene, random);
+
+        // moving geometry after it was added goes back to refitting
+        added.setTransform(translation(0, 0, 31));
+        scene = graph.update();
+        assertEquals(2, graph.getRebuildCount());
+        assertEquals(4, graph.getRefitCount());
+        assertHits(scene, added, 0, 0, 31);
+        assertMatchesLinearSearch(scene, random);
+    }
+
+    @Test
+    public void shouldRebuildOnceRefittingHasLoosenedTheHierarchy() {
+        SceneGraph graph = new SceneGraph();
+        Random random = new Random(2);
+        List<SceneGraph.Node> nodes = addSpheres(graph, random, 500);
+        graph.update();
+
+        // a few spheres moving a little keep the hierarchy tight
+        for (int i = 0; i < 5; i++) {
+            SceneGraph.Node node = nodes.get(random.nextInt(nodes.size()));
+            Vector3 translation = node.getTransform().getTranslation();
+            node.setTransform(Transform.translation(translation.add(new Vector3(0.01, 0, 0))));
+        }
+        graph.update();
+        assertEquals(1, graph.getRebuildCount());
+        assertEquals(1, graph.getRefitCount());
+
+        // scattering every sphere leaves boxes spanning the scene, which is refit once and then rebuilt
+        for (SceneGraph.Node node : nodes) {
+            node.setTransform(randomTranslation(random));
+        }
+        Scene scene = graph.update();
+        assertEquals(1, graph.getRebuildCount());
+        assertEquals(2, graph.getRefitCount());
+        assertMatchesLinearSearch(scene, random);
+
+        nodes.get(0).setTransform(randomTranslation(random));
+        scene = graph.update();
+        assertEquals(2, graph.getRebuildCount());
+        assertEquals(2, graph.getRefitCount());
+        assertMatchesLinearSearch(scene, random);
+
+        nodes.get(1).setTransform(randomTranslation(random));
+        scene = graph.update();
+        assertEquals(2, graph.getRebuildCount());
+        assertEquals(3, graph.getRefitCount());
+        assertMatchesLinearSearch(scene, random);
+    }
+
+    @Test
+    public void shouldBuildAgainForNewAcceleratorTypeOrPrecision() {
+        SceneGraph graph = new SceneGraph();
+        Random random = new Random(3);
+        List<SceneGraph.Node> nodes = addSpheres(graph, random, 200);
+        Scene scene = graph.update();
+
+        // setting what is already set changes nothing
+        graph.setAcceleratorType(AcceleratorType.BVH);
+        graph.setPrecision(Precision.DOUBLE);
+        assertSame(scene, graph.update());
+        assertEquals(1, graph.getRebuildCount());
+
+        graph.setAcceleratorType(AcceleratorType.GRID);
+        scene = graph.update();
+        assertEquals(AcceleratorType.GRID, scene.getAcceleratorType());
+        assertEquals(2, graph.getRebuildCount());
+        assertMatchesLinearSearch(scene, random);
+
+        // only a hierarchy is refit, anything else is built again when geometry moves
+        nodes.get(0).setTransform(randomTranslation(random));
+        scene = graph.update();
+        assertEquals(3, graph.getRebuildCount());
+        assertEquals(0, graph.getRefitCount());
+        assertMatchesLinearSearch(scene, random);
+
+        graph.setPrecision(Precision.FLOAT);
+        scene = graph.update();
+        assertEquals(Precision.FLOAT, scene.getPrecision());
+        assertEquals(4, graph.getRebuildCount());
+        assertMatchesLinearSearch(scene, random);
+
+        graph.setAcceleratorType(AcceleratorType.BVH);
+        graph.update();
+        nodes.get(1).setTransform(randomTranslation(random));
+        scene = graph.update();
+        assertEquals(AcceleratorType.BVH, scene.getAcceleratorType());
+        assertEquals(Precision.FLOAT, scene.getPrecision());
+        assertEquals(5, graph.getRebuildCount());
+        assertEquals(1, graph.getRefitCount());
+        assertMatchesLinearSearch(scene, random);
+    }
+
+    @Test
+    public void shouldLeaveEarlierScenesAsTheyWere() {
+        SceneGraph graph = new SceneGraph();
+        Random random = new Random(4);
+        List<SceneGraph.Node> nodes = addSpheres(graph, random, 200);
+        SceneGraph.Node lamp = graph.getRoot().createChild().setTransform(translation(0, 5, 0))
+                .setLight(new PointLight(Color.WHITE, new double[] {0, 0, 0}, 1));
+
+        Scene first = graph.update();
+        List<Geometry> geometry = new ArrayList<>(first.getGeometry());
+        List<Light> lights = new ArrayList<>(first.getLights());
+        Accelerator linear = new LinearAccelerator(new GeometrySet(geometry));
+        Ray[] rays = randomRays(random, 500);
+        Geometry[] expected = new Geometry[rays.length];
+        for (int i = 0; i < rays.length; i++) {
+            expected[i] = closest(linear, rays[i]);
+        }
+
+        for (int frame = 1; frame <= 5; frame++) {
+            for (int i = 0; i < 20; i++) {
+                nodes.get(random.nextInt(nodes.size())).setTransform(randomTranslation(random));
+            }
+            nodes.get(frame).setGeometry(new Sphere(new double[] {0, 0, 0}, 1, null, null));
+            lamp.setTransform(translation(frame, 5, 0));
+            if (frame == 3) {
+                nodes.add(graph.getRoot().createChild().setTransform(randomTranslation(random))
+                        .setGeometry(new Sphere(new double[] {0, 0, 0}, 0.5, null, null)));
+                graph.getRoot().createChild().setLight(new AmbientLight(Color.WHITE, 0.1));
+            }
+            Scene scene = graph.update();
+            assertNotSame(first, scene);
+            assertMatchesLinearSearch(scene, random);
+        }
+
+        assertEquals(geometry, first.getGeometry());
+        assertEquals(lights, first.getLights());
+        for (int i = 0; i < rays.length; i++) {
+            assertSame(expected[i], closest(first, rays[i]));
+        }
+    }
+
+    @Test
+    public void shouldShareGeometryWhenOnlyLightsChange() {
+        SceneGraph graph = new SceneGraph();
+        addSpheres(graph, new Random(5), 50);
+        SceneGraph.Node lamp = graph.getRoot().createChild()
+                .setLight(new PointLight(Color.WHITE, new double[] {0, 5, 0}, 1));
+        Scene first = graph.update();
+
+        lamp.setTransform(translation(1, 0, 0));
+        Scene second = graph.update();
+
+        assertNotSame(first, second);
+        assertSame(first.getAcceleratorStats(), second.getAcceleratorStats());
+        assertEquals(first.getGeometry(), second.getGeometry());
+        assertNotSame(first.getLight(0), second.getLight(0));
+        assertEquals(1, graph.getRebuildCount());
+        assertEquals(0, graph.getRefitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotHaveNullAcceleratorType() {
+        new SceneGraph().setAcceleratorType(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotHaveNullPrecision() {
+        new SceneGraph().setPrecision(null);
+    }
+
+    /**
+     * Adds nodes below the root, each holding a sphere at its origin and moved to a random point.
+     */
+    private static List<SceneGraph.Node> addSpheres(SceneGraph graph, Random random, int count) {
+        List<SceneGraph.Node> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            nodes.add(graph.getRoot().createChild()
+                    .setTransform(randomTranslation(random))
+                    .setGeometry(new Sphere(new double[] {0, 0, 0}, random.nextDouble() * 0.5 + 0.1, null, null)));
+        }
+        return nodes;
+    }
+
+    private static Transform randomTranslation(Random random) {
+        return translation(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, random.nextDouble() * 20);
+    }
+
+    private static Transform translation(double x, double y, double z) {
+        return Transform.translation(new Vector3(x, y, z));
+    }
+
+    private static Ray[] randomRays(Random random, int count) {
+        Ray[] rays = new Ray[count];
+        for (int i = 0; i < count; i++) {
+            rays[i] = new Ray(new double[] {random.nextDouble() * 30 - 15, random.nextDouble() * 30 - 15, -5},
+                    new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble()});
+        }
+        return rays;
+    }
+
+    /**
+     * Asserts that a ray cast straight down the z axis at a point hits the geometry of a node first.
+     */
+    private static void assertHits(Scene scene, SceneGraph.Node node, double x, double y, double z) {
+        Ray ray = new Ray(new double[] {x, y, z - 5}, new double[] {0, 0, 1});
+        assertSame(scene.getGeometry(node.getGeometryId()), closest(scene, ray));
+    }
+
+    /**
+     * Asserts that the scene finds the same geometry as testing each of its geometry in turn.
+     */
+    private static void assertMatchesLinearSearch(Scene scene, Random random) {
+        Accelerator linear = new LinearAccelerator(new GeometrySet(
+                scene.getGeometry().toArray(new Geometry[scene.getGeometryCount()]), scene.getPrecision()));
+        int hits = 0;
+        for (Ray ray : randomRays(random, 300)) {
+            Geometry expected = closest(linear, ray);
+            assertSame(expected, closest(scene, ray));
+            assertEquals(linear.isOccluded(ray, 0, 10), scene.isOccluded(ray, 0, 10));
+            if (expected != null) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 0 || scene.getGeometryCount() < 10);
+    }
+}
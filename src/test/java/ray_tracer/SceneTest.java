@@ -0,0 +1,131 @@
+package ray_tracer;
+
+import org.junit.Test;
+import ray_tracer.background.Background;
+import ray_tracer.background.FlatBackground;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.lights.AmbientLight;
+import ray_tracer.lights.Light;
+import ray_tracer.lights.PointLight;
+import ray_tracer.material.Material;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by William Martin III on 1/26/16.
+ */
+public class SceneTest {
+    private static final Material RED = new Material.Builder().color(Color.RED).build();
+    private static final Material BLUE = new Material.Builder().color(Color.BLUE).build();
+
+    @Test
+    public void shouldShareGeometryWithNewLightsAndBackground() {
+        Scene scene = createScene();
+        Light light = new AmbientLight(Color.WHITE, 1);
+        Background background = new FlatBackground(Color.BLACK);
+        List<Light> lights = new ArrayList<>(scene.getLights());
+        Background original = scene.getBackground();
+
+        Scene lit = scene.withLights(Collections.singletonList(light));
+        Scene backed = scene.withBackground(background);
+
+        for (Scene shared : new Scene[] {lit, backed}) {
+            assertSame(scene.getGeometry(), shared.getGeometry());
+            assertSame(scene.getAcceleratorStats(), shared.getAcceleratorStats());
+            assertSame(scene.getAcceleratorType(), shared.getAcceleratorType());
+            assertSame(scene.getPrecision(), shared.getPrecision());
+
+            RayIntersect intersect = new RayIntersect();
+            assertTrue(shared.findClosest(new Ray(new double[] {0, 0, 0}, new double[] {0, 0, 1}), intersect));
+            assertSame(scene.getGeometry(1), intersect.getGeometry());
+        }
+        assertEquals(Collections.singletonList(light), lit.getLights());
+        assertSame(scene.getBackground(), lit.getBackground());
+        assertEquals(scene.getLights(), backed.getLights());
+        assertSame(background, backed.getBackground());
+
+        // the original is left as it was
+        assertEquals(lights, scene.getLights());
+        assertSame(original, scene.getBackground());
+    }
+
+    @Test
+    public void shouldNumberMaterialsInOrderOfFirstUse() {
+        Scene scene = createScene();
+        // derived before the materials are first numbered, so it numbers them itself
+        Scene early = scene.withBackground(new FlatBackground(Color.BLACK));
+
+        assertEquals(2, scene.getMaterialCount());
+        assertSame(BLUE, scene.getMaterial(0));
+        assertSame(RED, scene.getMaterial(1));
+        int[] ids = {0, 1, 0, 1};
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], scene.getMaterialId(i));
+            // asking again gives the same ID
+            assertEquals(ids[i], scene.getMaterialId(i));
+        }
+
+        // derived after, so it shares the numbering
+        Scene late = scene.withLights(Collections.<Light>emptyList());
+        for (Scene derived : new Scene[] {early, late}) {
+            assertEquals(scene.getMaterialCount(), derived.getMaterialCount());
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(ids[i], derived.getMaterialId(i));
+                assertSame(scene.getMaterial(ids[i]), derived.getMaterial(ids[i]));
+            }
+        }
+    }
+
+    @Test
+    public void shouldLeaveSourceUnchangedWhenCopiedByBuilder() {
+        Scene scene = createScene();
+        Geometry sphere = new Sphere(new double[] {0, 0, 2}, 0.5, RED, null);
+
+        Scene copy = new Scene.Builder(scene)
+                .geometry(sphere)
+                .light(new AmbientLight(Color.WHITE, 1))
+                .background(new FlatBackground(Color.WHITE))
+                .build();
+
+        assertEquals(5, copy.getGeometryCount());
+        assertEquals(3, copy.getLightCount());
+        assertEquals(scene.getGeometry(), copy.getGeometry().subList(0, 4));
+        assertEquals(scene.getLights(), copy.getLights().subList(0, 2));
+
+        assertEquals(4, scene.getGeometryCount());
+        assertEquals(2, scene.getLightCount());
+        assertEquals(2, scene.getMaterialCount());
+        RayIntersect intersect = new RayIntersect();
+        assertTrue(scene.findClosest(new Ray(new double[] {0, 0, 0}, new double[] {0, 0, 1}), intersect));
+        assertSame(scene.getGeometry(1), intersect.getGeometry());
+
+        intersect = new RayIntersect();
+        assertTrue(copy.findClosest(new Ray(new double[] {0, 0, 0}, new double[] {0, 0, 1}), intersect));
+        assertSame(sphere, intersect.getGeometry());
+    }
+
+    /**
+     * Four spheres, the first three on the z axis, alternating between two materials, the first of which is blue.
+     */
+    private static Scene createScene() {
+        return new Scene.Builder()
+                .geometry(new Sphere(new double[] {0, 0, 20}, 1, BLUE, null))
+                .geometry(new Sphere(new double[] {0, 0, 10}, 1, RED, null))
+                .geometry(new Sphere(new double[] {0, 0, 30}, 1, BLUE, null))
+                .geometry(new Sphere(new double[] {5, 0, 10}, 1, RED, null))
+                .light(new PointLight(Color.WHITE, new double[] {0, 5, 0}, 0.5))
+                .light(new AmbientLight(Color.WHITE, 0.1))
+                .background(new FlatBackground(Color.BLUE))
+                .build();
+    }
+}
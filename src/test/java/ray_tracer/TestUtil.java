@@ -3,6 +3,15 @@ package ray_tracer;
 import org.jblas.DoubleMatrix;
 import org.junit.Assert;
 import org.junit.ComparisonFailure;
+import ray_tracer.acceleration.Accelerator;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+import ray_tracer.geometry.Sphere;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static junit.framework.TestCase.failNotEquals;
 
@@ -19,4 +28,34 @@ public class TestUtil {
             failNotEquals("", expected.toString(), actual.toString());
         }
     }
+
+    /**
+     * Returns the geometry an accelerator finds closest along a ray, or null if it finds none.
+     */
+    public static Geometry closest(Accelerator accelerator, Ray ray) {
+        RayIntersect intersect = new RayIntersect();
+        accelerator.findClosest(ray, intersect);
+        return intersect.getGeometry();
+    }
+
+    /**
+     * Returns the geometry a scene finds closest along a ray, or null if it finds none.
+     */
+    public static Geometry closest(Scene scene, Ray ray) {
+        RayIntersect intersect = new RayIntersect();
+        scene.findClosest(ray, intersect);
+        return intersect.getGeometry();
+    }
+
+    /**
+     * Returns spheres of random sizes scattered through the box from (-10, -10, 0) to (10, 10, 20).
+     */
+    public static List<Geometry> randomSpheres(Random random, int count) {
+        List<Geometry> geometry = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double[] center = {random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, random.nextDouble() * 20};
+            geometry.add(new Sphere(center, random.nextDouble() * 0.5 + 0.1, null, null));
+        }
+        return geometry;
+    }
 }
@@ -0,0 +1,105 @@
+package ray_tracer.acceleration;
+
+import org.junit.Test;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.geometry.Triangle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static ray_tracer.TestUtil.closest;
+import static ray_tracer.TestUtil.randomSpheres;
+
+/**
+ * Checks that every {@link AcceleratorType} answers queries the same way as testing every primitive.
+ *
+ * Created by William Martin III on 1/28/16.
+ */
+public class AcceleratorTest {
+
+    @Test
+    public void shouldFindNothingWithoutGeometry() {
+        Ray ray = new Ray(new double[] {0, 0, 0}, new double[] {0, 0, 1});
+
+        for (AcceleratorType type : AcceleratorType.values()) {
+            Accelerator accelerator = type.build(new GeometrySet(new ArrayList<>()));
+            RayIntersect intersect = new RayIntersect();
+
+            assertFalse(type.name(), accelerator.findClosest(ray, intersect));
+            assertFalse(type.name(), intersect.isHit());
+            assertFalse(type.name(), accelerator.isOccluded(ray, 0, 10));
+        }
+    }
+
+    @Test
+    public void shouldFindClosestOfOverlappingSpheres() {
+        List<Geometry> geometry = new ArrayList<>();
+        geometry.add(new Sphere(new double[] {0, 0, 20}, 1, null, null));
+        geometry.add(new Sphere(new double[] {0, 0, 10}, 1, null, null));
+        geometry.add(new Sphere(new double[] {0, 0, 15}, 1, null, null));
+
+        for (AcceleratorType type : AcceleratorType.values()) {
+            Accelerator accelerator = type.build(new GeometrySet(geometry));
+
+            assertSame(type.name(), geometry.get(1),
+                    closest(accelerator, new Ray(new double[] {0, 0, 0}, new double[] {0, 0, 1})));
+            assertSame(type.name(), geometry.get(0),
+                    closest(accelerator, new Ray(new double[] {0, 0, 30}, new double[] {0, 0, -1})));
+        }
+    }
+
+    @Test
+    public void shouldOnlyBeOccludedWithinBounds() {
+        List<Geometry> geometry = new ArrayList<>();
+        geometry.add(new Sphere(new double[] {0, 0, 10}, 1, null, null));
+        // a second sphere off the ray so that the grid has more than one cell
+        geometry.add(new Sphere(new double[] {5, 5, 30}, 1, null, null));
+        Ray ray = new Ray(new double[] {0, 0, 0}, new double[] {0, 0, 1});
+
+        for (AcceleratorType type : AcceleratorType.values()) {
+            Accelerator accelerator = type.build(new GeometrySet(geometry));
+
+            assertTrue(type.name(), accelerator.isOccluded(ray, 0, Double.POSITIVE_INFINITY));
+            assertTrue(type.name(), accelerator.isOccluded(ray, 0, 9));
+            assertFalse(type.name(), accelerator.isOccluded(ray, 0, 8.5));
+            assertFalse(type.name(), accelerator.isOccluded(ray, 9.5, Double.POSITIVE_INFINITY));
+        }
+    }
+
+    @Test
+    public void shouldMatchLinearSearch() {
+        Random random = new Random(1);
+        List<Geometry> geometry = randomSpheres(random, 500);
+        // large flat primitives which span many cells and nodes
+        for (int i = 0; i < 5; i++) {
+            double z = random.nextDouble() * 20;
+            geometry.add(new Triangle(new double[] {-10, -10, z}, new double[] {10, -10, z + 2},
+                    new double[] {-10, 10, z + 1}, null, null));
+        }
+        GeometrySet primitives = new GeometrySet(geometry);
+        Accelerator linear = new LinearAccelerator(primitives);
+
+        Ray[] rays = new Ray[1000];
+        for (int i = 0; i < rays.length; i++) {
+            rays[i] = new Ray(new double[] {random.nextDouble() * 30 - 15, random.nextDouble() * 30 - 15, -5},
+                    new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.2});
+        }
+
+        for (AcceleratorType type : AcceleratorType.values()) {
+            Accelerator accelerator = type.build(primitives);
+
+            for (Ray ray : rays) {
+                assertSame(type.name(), closest(linear, ray), closest(accelerator, ray));
+                assertEquals(type.name(), linear.isOccluded(ray, 0, 10), accelerator.isOccluded(ray, 0, 10));
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ray_tracer.acceleration;
+
+import org.junit.Test;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.geometry.Triangle;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static ray_tracer.TestUtil.closest;
+import static ray_tracer.TestUtil.randomSpheres;
+
+/**
+ * Created by William Martin III on 1/16/16.
+ */
+public class BoundingVolumeHierarchyTest {
+
+    @Test
+    public void shouldMatchLinearSearchAfterRefit() {
+        Random random = new Random(2);
+        Geometry[] geometry = randomSpheres(random, 200).toArray(new Geometry[0]);
+        BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(new GeometrySet(geometry.clone()));
+
+        int[] moved = new int[20];
+        for (int i = 0; i < moved.length; i++) {
+            moved[i] = random.nextInt(geometry.length);
+            double[] center = {random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, random.nextDouble() * 20};
+            geometry[moved[i]] = new Sphere(center, 0.5, null, null);
+        }
+        GeometrySet primitives = new GeometrySet(geometry);
+        Accelerator linear = new LinearAccelerator(primitives);
+        BoundingVolumeHierarchy refit = hierarchy.refit(primitives, moved, moved.length);
+
+        assertTrue(refit.getDegradation() >= 1);
+        for (int i = 0; i < 1000; i++) {
+            Ray ray = new Ray(new double[] {0, 0, -5},
+                    new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1});
+
+            assertSame(closest(linear, ray), closest(refit, ray));
+            assertEquals(linear.isOccluded(ray, 0, 10), refit.isOccluded(ray, 0, 10));
+        }
+    }
+
+    @Test
+    public void shouldLeaveHierarchyAndPrimitivesAsTheyWereWhenRefit() {
+        Random random = new Random(4);
+        // enough spheres and triangles to fill several chunks of each
+        Geometry[] before = new Geometry[2000];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = randomGeometry(random, i % 2 == 0);
+        }
+        GeometrySet primitives = new GeometrySet(before.clone());
+        BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(primitives);
+
+        Geometry[] after = before.clone();
+        int[] moved = new int[50];
+        for (int i = 0; i < moved.length; i++) {
+            moved[i] = random.nextInt(after.length);
+            after[moved[i]] = randomGeometry(random, moved[i] % 2 == 0);
+        }
+        GeometrySet updated = primitives.update(after.clone(), moved, moved.length);
+        BoundingVolumeHierarchy refit = hierarchy.refit(updated, moved, moved.length);
+
+        // a sphere replaced by a triangle packs the updated primitives again from scratch
+        after[0] = randomGeometry(random, false);
+        GeometrySet repacked = updated.update(after.clone(), new int[] {0}, 1);
+        BoundingVolumeHierarchy repackedRefit = refit.refit(repacked, new int[] {0}, 1);
+
+        Accelerator linearBefore = new LinearAccelerator(new GeometrySet(before));
+        Accelerator linearAfter = new LinearAccelerator(new GeometrySet(after));
+        for (int i = 0; i < 1000; i++) {
+            Ray ray = new Ray(new double[] {0, 0, -5},
+                    new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1});
+
+            assertSame(closest(linearBefore, ray), closest(hierarchy, ray));
+            assertSame(closest(linearAfter, ray), closest(repackedRefit, ray));
+            assertEquals(linearBefore.isOccluded(ray, 0, 10), hierarchy.isOccluded(ray, 0, 10));
+            assertEquals(linearAfter.isOccluded(ray, 0, 10), repackedRefit.isOccluded(ray, 0, 10));
+        }
+    }
+
+    @Test
+    public void shouldMatchSingleRaysInPackets() {
+        Random random = new Random(3);
+        List<Geometry> geometry = randomSpheres(random, 500);
+        Accelerator hierarchy = new BoundingVolumeHierarchy(new GeometrySet(geometry));
+
+        RayPacket packet = new RayPacket();
+        RayIntersect[] intersects = new RayIntersect[RayPacket.MAX_SIZE];
+        for (int i = 0; i < intersects.length; i++) {
+            intersects[i] = new RayIntersect();
+        }
+        for (int i = 0; i < 200; i++) {
+            // most packets spread a little around one direction, some point every which way
+            double spread = i % 4 == 0 ? 1 : 0.05;
+            double dx = random.nextDouble() - 0.5;
+            double dy = random.nextDouble() - 0.5;
+            packet.clear();
+            for (int j = 0; j < RayPacket.MAX_SIZE; j++) {
+                // the first ray lies flat so that the packet has a ray parallel to the boxes' faces
+                double x = dx + (random.nextDouble() - 0.5) * spread;
+                double y = j == 0 ? 0 : dy + (random.nextDouble() - 0.5) * spread;
+                Ray ray = new Ray(new double[] {0, 0, -5}, new double[] {x, y, 1});
+                packet.add(ray, 0, random.nextDouble() * 20);
+                intersects[j].reset();
+            }
+
+            int found = hierarchy.findClosest(packet, intersects);
+            int occluded = hierarchy.isOccluded(packet);
+            for (int j = 0; j < packet.size(); j++) {
+                Ray ray = packet.getRay(j);
+                assertSame(closest(hierarchy, ray), intersects[j].getGeometry());
+                assertEquals(intersects[j].isHit(), (found & 1 << j) != 0);
+                assertEquals(hierarchy.isOccluded(ray, 0, packet.getMaxDistance(j)), (occluded & 1 << j) != 0);
+            }
+        }
+    }
+
+    private static Geometry randomGeometry(Random random, boolean sphere) {
+        double[] center = {random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, random.nextDouble() * 20};
+        if (sphere) {
+            return new Sphere(center, random.nextDouble() * 0.5 + 0.1, null, null);
+        }
+        return new Triangle(center, new double[] {center[0] + 0.5, center[1], center[2]},
+                new double[] {center[0], center[1] + 0.5, center[2] + 0.2}, null, null);
+    }
+}
@@ -0,0 +1,76 @@
+package ray_tracer.acceleration;
+
+import org.junit.Test;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.Sphere;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static ray_tracer.TestUtil.closest;
+import static ray_tracer.TestUtil.randomSpheres;
+
+/**
+ * Created by William Martin III on 1/30/16.
+ */
+public class CompressedHierarchyTest {
+
+    @Test
+    public void shouldNotShrinkTouchingBoxes() {
+        Random random = new Random(1);
+        List<Geometry> geometry = randomSpheres(random, 2000);
+        // spheres touching at a point, whose boxes must not be shrunk by quantization
+        List<Geometry> touching = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            touching.add(new Sphere(new double[] {i * 2 + 1, 0, 25}, 1, null, null));
+        }
+        geometry.addAll(touching);
+        Accelerator compressed = new CompressedHierarchy(new GeometrySet(geometry));
+
+        assertSame(touching.get(0), closest(compressed, new Ray(new double[] {-5, 0, 25}, new double[] {1, 0, 0})));
+        for (int i = 0; i < touching.size(); i++) {
+            Ray ray = new Ray(new double[] {i * 2 + 1, 0, 30}, new double[] {0, 0, -1});
+            assertSame(touching.get(i), closest(compressed, ray));
+        }
+    }
+
+    @Test
+    public void shouldTakeLessThanHalfTheMemoryOfHierarchy() {
+        GeometrySet primitives = new GeometrySet(randomSpheres(new Random(2), 2000));
+
+        Accelerator hierarchy = new BoundingVolumeHierarchy(primitives);
+        Accelerator compressed = new CompressedHierarchy(primitives);
+
+        assertTrue(compressed.getStats().getMemoryBytes() * 2 < hierarchy.getStats().getMemoryBytes());
+    }
+
+    @Test
+    public void shouldMatchLinearSearchAlongAxes() {
+        Random random = new Random(3);
+        GeometrySet primitives = new GeometrySet(randomSpheres(random, 2000));
+        Accelerator linear = new LinearAccelerator(primitives);
+        Accelerator compressed = new CompressedHierarchy(primitives);
+        double[][] axes = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+        int hits = 0;
+        for (int i = 0; i < 3000; i++) {
+            // a zero direction component makes the slab distances on that axis NaN, which skips its test
+            double[] origin = {random.nextDouble() * 30 - 15, random.nextDouble() * 30 - 15,
+                    random.nextDouble() * 30 - 5};
+            Ray ray = new Ray(origin, axes[i % axes.length]);
+
+            Geometry expected = closest(linear, ray);
+            assertSame(expected, closest(compressed, ray));
+            assertEquals(linear.isOccluded(ray, 0, 10), compressed.isOccluded(ray, 0, 10));
+            if (expected != null) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 100);
+    }
+}
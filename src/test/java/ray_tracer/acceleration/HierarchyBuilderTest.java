@@ -0,0 +1,137 @@
+package ray_tracer.acceleration;
+
+import org.junit.Test;
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Sphere;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by William Martin III on 1/29/16.
+ */
+public class HierarchyBuilderTest {
+    private static final int MAX_DEPTH = 64;
+
+    @Test
+    public void shouldBuildSameTreeInParallel() {
+        GeometrySet primitives = new GeometrySet(clusters(new Random(1), 20000));
+
+        Tree serial = new Tree(new HierarchyBuilder(primitives, MAX_DEPTH, Integer.MAX_VALUE));
+        // a low threshold forks a task for nearly every node
+        Tree forked = new Tree(new HierarchyBuilder(primitives, MAX_DEPTH, 16));
+        Tree parallel = new Tree(new HierarchyBuilder(primitives, MAX_DEPTH));
+
+        for (Tree tree : new Tree[] {forked, parallel}) {
+            assertArrayEquals(serial.order, tree.order);
+            assertArrayEquals(serial.nodeBounds, tree.nodeBounds, 0);
+            assertArrayEquals(serial.nodeData, tree.nodeData);
+            assertArrayEquals(serial.parents, tree.parents);
+            assertArrayEquals(serial.leaves, tree.leaves);
+        }
+    }
+
+    @Test
+    public void shouldCostNoMoreThanMedianSplit() {
+        Geometry[] geometry = clusters(new Random(2), 5000);
+        double cost = new BoundingVolumeHierarchy(new GeometrySet(geometry)).getStats().getSahCost();
+
+        BoundingBox[] boxes = new BoundingBox[geometry.length];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = geometry[i].getBounds();
+        }
+        double[] areas = new double[2];
+        double rootArea = medianSplit(boxes, 0, areas);
+        double medianCost = (HierarchyBuilder.TRAVERSAL_COST * areas[0] + HierarchyBuilder.INTERSECT_COST * areas[1])
+                / rootArea;
+
+        assertTrue(cost <= medianCost);
+    }
+
+    /**
+     * Spheres of various sizes gathered into a few dense clusters, where splitting at the median of the centers cuts
+     * through clusters rather than between them.
+     */
+    private static Geometry[] clusters(Random random, int count) {
+        double[][] clusters = new double[8][];
+        for (int i = 0; i < clusters.length; i++) {
+            clusters[i] = new double[] {random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100};
+        }
+        Geometry[] geometry = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            double[] cluster = clusters[random.nextInt(clusters.length)];
+            double[] center = {cluster[0] + random.nextGaussian() * 2, cluster[1] + random.nextGaussian() * 2,
+                    cluster[2] + random.nextGaussian() * 2};
+            geometry[i] = new Sphere(center, random.nextDouble() * 0.3 + 0.05, null, null);
+        }
+        return geometry;
+    }
+
+    /**
+     * Adds up the areas of the tree built over the boxes by splitting each node at the median of the centers along the
+     * axis in which they are most spread out, as hierarchies were built before the surface area heuristic, and returns
+     * the area of its root. The total area of the interior nodes is added to the first area and that of the leaves,
+     * each times the number of primitives it holds, to the second.
+     */
+    private static double medianSplit(BoundingBox[] boxes, int depth, double[] areas) {
+        double[] box = new double[6];
+        double[] centerMin = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] centerMax = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        Arrays.fill(box, 0, 3, Double.POSITIVE_INFINITY);
+        Arrays.fill(box, 3, 6, Double.NEGATIVE_INFINITY);
+        for (BoundingBox bounds : boxes) {
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(box[axis], bounds.getMin(axis));
+                box[3 + axis] = Math.max(box[3 + axis], bounds.getMax(axis));
+                centerMin[axis] = Math.min(centerMin[axis], bounds.getCenter(axis));
+                centerMax[axis] = Math.max(centerMax[axis], bounds.getCenter(axis));
+            }
+        }
+        double area = HierarchyBuilder.area(box, 0);
+
+        if (boxes.length <= 4 || depth >= MAX_DEPTH - 1) {
+            areas[1] += area * boxes.length;
+            return area;
+        }
+        areas[0] += area;
+
+        int axis = 0;
+        for (int i = 1; i < 3; i++) {
+            if (centerMax[i] - centerMin[i] > centerMax[axis] - centerMin[axis]) {
+                axis = i;
+            }
+        }
+        int splitAxis = axis;
+        BoundingBox[] sorted = boxes.clone();
+        Arrays.sort(sorted, Comparator.comparingDouble(bounds -> bounds.getCenter(splitAxis)));
+        int middle = sorted.length / 2;
+        medianSplit(Arrays.copyOfRange(sorted, 0, middle), depth + 1, areas);
+        medianSplit(Arrays.copyOfRange(sorted, middle, sorted.length), depth + 1, areas);
+        return area;
+    }
+
+    /**
+     * The arrays a builder writes.
+     */
+    private static final class Tree {
+        private final int[] order;
+        private final double[] nodeBounds;
+        private final int[] nodeData;
+        private final int[] parents;
+        private final int[] leaves;
+
+        private Tree(HierarchyBuilder builder) {
+            order = builder.getOrder();
+            nodeBounds = new double[builder.getNodeCount() * 6];
+            nodeData = new int[builder.getNodeCount() * 2];
+            parents = new int[builder.getNodeCount()];
+            leaves = new int[order.length];
+            builder.write(nodeBounds, nodeData, parents, leaves);
+        }
+    }
+}
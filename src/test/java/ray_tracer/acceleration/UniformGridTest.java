@@ -0,0 +1,183 @@
+package ray_tracer.acceleration;
+
+import org.junit.Test;
+import ray_tracer.Vector3;
+import ray_tracer.geometry.BoundingBox;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.geometry.Triangle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static ray_tracer.TestUtil.closest;
+import static ray_tracer.TestUtil.randomSpheres;
+
+/**
+ * Created by William Martin III on 1/28/16.
+ */
+public class UniformGridTest {
+    private static final double[][] AXES = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+    @Test
+    public void shouldTestUnboundedPrimitivesAgainstEveryRay() {
+        Random random = new Random(1);
+        List<Geometry> geometry = randomSpheres(random, 200);
+        geometry.add(new Floor(-5));
+        GeometrySet primitives = new GeometrySet(geometry);
+        Accelerator linear = new LinearAccelerator(primitives);
+        Accelerator grid = new UniformGrid(primitives);
+
+        // rays from far outside the bounds of the spheres, which the grid clips away, must still hit the floor
+        Ray outside = new Ray(new double[] {100, 0, 100}, new double[] {0, -1, 0});
+        assertSame(geometry.get(200), closest(grid, outside));
+        assertTrue(grid.isOccluded(outside, 0, 10));
+        assertFalse(grid.isOccluded(outside, 0, 4));
+
+        for (int i = 0; i < 1000; i++) {
+            Ray ray = new Ray(new double[] {random.nextDouble() * 60 - 30, random.nextDouble() * 20 - 5, -5},
+                    new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.7, random.nextDouble()});
+
+            assertSame(closest(linear, ray), closest(grid, ray));
+            assertEquals(linear.isOccluded(ray, 0, 10), grid.isOccluded(ray, 0, 10));
+        }
+    }
+
+    @Test
+    public void shouldHoldOnlyUnboundedPrimitives() {
+        List<Geometry> geometry = new ArrayList<>();
+        geometry.add(new Floor(-5));
+        Accelerator grid = new UniformGrid(new GeometrySet(geometry));
+        Ray ray = new Ray(new double[] {3, 0, 7}, new double[] {0.1, -1, 0.2});
+
+        assertSame(geometry.get(0), closest(grid, ray));
+        assertTrue(grid.isOccluded(ray, 0, 10));
+        assertEquals(0, grid.getStats().getNodeCount());
+    }
+
+    @Test
+    public void shouldMatchLinearSearchInFlatScene() {
+        Random random = new Random(2);
+        // triangles lying in the plane z = 5, which gives the grid no depth
+        List<Geometry> geometry = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            double x = random.nextDouble() * 20 - 10;
+            double y = random.nextDouble() * 20 - 10;
+            geometry.add(new Triangle(new double[] {x, y, 5}, new double[] {x + 0.5, y, 5},
+                    new double[] {x, y + 0.5, 5}, null, null));
+        }
+        GeometrySet primitives = new GeometrySet(geometry);
+        Accelerator linear = new LinearAccelerator(primitives);
+        Accelerator grid = new UniformGrid(primitives);
+
+        int hits = 0;
+        for (int i = 0; i < 1000; i++) {
+            double[] origin = {random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, -5};
+            // every other ray runs straight along z, parallel to the other two axes
+            double[] direction = i % 2 == 0 ? new double[] {0, 0, 1}
+                    : new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1};
+            Ray ray = new Ray(origin, direction);
+
+            Geometry expected = closest(linear, ray);
+            assertSame(expected, closest(grid, ray));
+            assertEquals(linear.isOccluded(ray, 0, 20), grid.isOccluded(ray, 0, 20));
+            if (expected != null) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 50);
+
+        // a ray lying in the plane of the grid starts inside its zero thickness
+        Ray inPlane = new Ray(new double[] {-20, 0, 5}, new double[] {1, 0, 0});
+        assertSame(closest(linear, inPlane), closest(grid, inPlane));
+    }
+
+    @Test
+    public void shouldFindSinglePoint() {
+        List<Geometry> geometry = new ArrayList<>();
+        geometry.add(new Sphere(new double[] {1, 2, 3}, 0, null, null));
+        Accelerator grid = new UniformGrid(new GeometrySet(geometry));
+
+        assertSame(geometry.get(0), closest(grid, new Ray(new double[] {1, 2, -2}, new double[] {0, 0, 1})));
+        assertSame(geometry.get(0), closest(grid, new Ray(new double[] {1, 7, 3}, new double[] {0, -1, 0})));
+        assertTrue(grid.isOccluded(new Ray(new double[] {-4, 2, 3}, new double[] {1, 0, 0}), 0, 10));
+        assertFalse(grid.isOccluded(new Ray(new double[] {1, 2.5, -2}, new double[] {0, 0, 1}), 0, 10));
+    }
+
+    @Test
+    public void shouldMatchLinearSearchAlongAxes() {
+        Random random = new Random(3);
+        GeometrySet primitives = new GeometrySet(randomSpheres(random, 500));
+        Accelerator linear = new LinearAccelerator(primitives);
+        Accelerator grid = new UniformGrid(primitives);
+
+        for (int i = 0; i < 3000; i++) {
+            // origins reach past the bounds of the grid so that some rays miss it on an axis they do not move along
+            double[] origin = {random.nextDouble() * 30 - 15, random.nextDouble() * 30 - 15,
+                    random.nextDouble() * 30 - 5};
+            Ray ray = new Ray(origin, AXES[i % AXES.length]);
+
+            assertSame(closest(linear, ray), closest(grid, ray));
+            assertEquals(linear.isOccluded(ray, 0, 10), grid.isOccluded(ray, 0, 10));
+        }
+    }
+
+    @Test
+    public void shouldMatchLinearSearchWhenBuiltInParallel() {
+        Random random = new Random(4);
+        // enough primitives for the grid to be counted and filled by several threads
+        List<Geometry> geometry = randomSpheres(random, 10000);
+        geometry.add(new Floor(-5));
+        GeometrySet primitives = new GeometrySet(geometry);
+        Accelerator linear = new LinearAccelerator(primitives);
+        Accelerator grid = new UniformGrid(primitives);
+
+        for (int i = 0; i < 1000; i++) {
+            Ray ray = new Ray(new double[] {random.nextDouble() * 30 - 15, random.nextDouble() * 30 - 15, -5},
+                    new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1});
+
+            assertSame(closest(linear, ray), closest(grid, ray));
+            assertEquals(linear.isOccluded(ray, 0, 10), grid.isOccluded(ray, 0, 10));
+        }
+    }
+
+    /**
+     * The endless plane y = height, facing up, whose box is unbounded along x and z.
+     */
+    private static class Floor extends Geometry {
+        private final double height;
+
+        Floor(double height) {
+            super(null);
+            this.height = height;
+        }
+
+        @Override
+        public double getDistanceToIntersect(Ray ray) {
+            Vector3 position = ray.getPositionVector();
+            Vector3 angle = ray.getAngleVector();
+            if (angle.getY() == 0) {
+                return -1;
+            }
+            return (height - position.getY()) / angle.getY();
+        }
+
+        @Override
+        protected Vector3 getNormal(RayIntersect intersect) {
+            return Vector3.Y;
+        }
+
+        @Override
+        public BoundingBox getBounds() {
+            return new BoundingBox(Double.NEGATIVE_INFINITY, height, Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY, height, Double.POSITIVE_INFINITY);
+        }
+    }
+}
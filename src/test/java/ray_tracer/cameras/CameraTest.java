@@ -0,0 +1,204 @@
+package ray_tracer.cameras;
+
+import org.junit.Test;
+import ray_tracer.FloatColor;
+import ray_tracer.Scene;
+import ray_tracer.background.FlatBackground;
+import ray_tracer.cameras.lenses.SimpleLens;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.material.Material;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by William Martin III on 1/23/16.
+ */
+public class CameraTest {
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotCountSamplesBeforeRendering() {
+        createCamera(new FlatCamera(), 8, 8).getSampleCount(0, 0);
+    }
+
+    @Test
+    public void shouldCountSamplesOfLatestRender() {
+        Camera camera = createCamera(new FlatCamera(), 8, 6);
+        camera.setSamples(3);
+        camera.render();
+
+        camera.setWidth(20);
+        camera.setHeight(20);
+        camera.setSamples(5);
+
+        BufferedImage map = camera.getSampleCountMap();
+        assertEquals(8, map.getWidth());
+        assertEquals(6, map.getHeight());
+        assertEquals(255, map.getRaster().getSample(7, 5, 0));
+        assertEquals(3, camera.getSampleCount(7, 5));
+    }
+
+    @Test
+    public void shouldTakeMoreSamplesOnlyAtEdges() {
+        int size = 32;
+        Camera camera = createCamera(new FlatCamera(), size, size);
+        camera.setSamples(16);
+        camera.setBlur(0.01);
+        camera.enableAdaptiveSampling(true);
+        int[] pixels = pixels(camera.render());
+
+        // a corner shows nothing but the background and the middle nothing but the sphere
+        assertEquals(camera.getMinSamples(), camera.getSampleCount(0, 0));
+        assertEquals(camera.getMinSamples(), camera.getSampleCount(size / 2, size / 2));
+
+        // the first pixel of the middle row which is not pure background lies on the sphere's silhouette
+        int y = size / 2;
+        int x = 0;
+        while (pixels[y * size + x] == pixels[y * size]) {
+            x++;
+        }
+        assertTrue(x < size / 2);
+        assertEquals(16, camera.getSampleCount(x, y));
+    }
+
+    @Test
+    public void shouldCopySettings() {
+        Camera camera = createCamera(new FlatCamera(), 8, 6);
+        camera.setSamples(3);
+        camera.setBlur(0.01);
+        camera.setTileSize(4);
+
+        Camera copy = new FlatCamera();
+        copy.copy(camera);
+
+        assertArrayEquals(pixels(camera.render()), pixels(copy.render()));
+        assertEquals(3, copy.getSampleCount(0, 0));
+    }
+
+    @Test
+    public void shouldNotRenderMoreTilesAtOnceThanParallelism() {
+        CountingCamera camera = new CountingCamera();
+        createCamera(camera, 32, 32);
+        camera.setTileSize(8);
+        camera.setParallelism(2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            camera.render(executor);
+            assertEquals(32 * 32, camera.rendered.get());
+            assertTrue(camera.maxActive.get() <= 2);
+
+            camera.setParallelism(3);
+            camera.renderAsync(executor).join();
+            assertTrue(camera.maxActive.get() <= 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldStopCancelledRenderBeforeEveryTile() throws InterruptedException {
+        CountingCamera camera = new CountingCamera();
+        createCamera(camera, 32, 32);
+        camera.setTileSize(8);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CompletableFuture<BufferedImage> future = camera.renderAsync(executor);
+        camera.started.await();
+        future.cancel(false);
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        // each worker finishes the tile it is on, at most a quarter of the image
+        assertTrue(camera.rendered.get() <= 32 * 32 / 4);
+    }
+
+    @Test
+    public void shouldStopEveryWorkerWhenOneFails() throws InterruptedException {
+        CountingCamera camera = new CountingCamera();
+        createCamera(camera, 32, 32);
+        camera.setTileSize(8);
+        camera.setParallelism(4);
+        camera.failAt = 100;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            camera.render(executor);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+
+        // every worker has stopped by the time the render throws
+        int rendered = camera.rendered.get();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(rendered, camera.rendered.get());
+        assertTrue(rendered < 32 * 32 / 2);
+    }
+
+    /**
+     * Points a camera at a sphere in front of a flat background.
+     */
+    static Camera createCamera(Camera camera, int width, int height) {
+        Material material = new Material.Builder().color(Color.RED).build();
+        camera.setWidth(width);
+        camera.setHeight(height);
+        camera.setLens(new SimpleLens(width, height, 2.0, 3.0));
+        camera.setScene(new Scene.Builder()
+                .geometry(new Sphere(new double[] {0, 0, 0}, 1, material, null))
+                .background(new FlatBackground(Color.BLUE))
+                .build());
+        camera.setPosition(new double[] {0, 0, -5});
+        // the angle points from what is seen back to the camera
+        camera.setAngle(new double[] {0, 0, -1});
+        return camera;
+    }
+
+    static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * A camera which takes a millisecond for every ray and counts the rays and how many are traced at once.
+     */
+    private static final class CountingCamera extends FlatCamera {
+        private final AtomicInteger rendered = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        // the ray which throws, counting from 1
+        private volatile int failAt = 0;
+
+        @Override
+        public void getColor(Ray ray, FloatColor color) {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                if (rendered.incrementAndGet() == failAt) {
+                    throw new IllegalStateException("failed");
+                }
+                started.countDown();
+                Thread.sleep(1);
+                super.getColor(ray, color);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ray_tracer.cameras;
+
+import org.junit.Test;
+import ray_tracer.FloatColor;
+import ray_tracer.geometry.Ray;
+import ray_tracer.image.FrameBuffer;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by William Martin III on 1/24/16.
+ */
+public class ProgressiveRendererTest {
+
+    @Test
+    public void shouldStopAtMaxPasses() {
+        ProgressiveRenderer renderer = new ProgressiveRenderer.Builder(createCamera(new FlatCamera()))
+                .maxPasses(3)
+                .build();
+
+        renderer.render();
+
+        assertEquals(3, renderer.getPasses());
+        assertSampleCounts(renderer.getFrameBuffer(), 3);
+    }
+
+    @Test
+    public void shouldStopAtTargetError() {
+        Camera camera = createCamera(new FlatCamera());
+        camera.setBlur(0.05);
+        ProgressiveRenderer renderer = new ProgressiveRenderer.Builder(camera)
+                .maxPasses(1000)
+                .targetError(0.01)
+                .build();
+
+        renderer.render();
+
+        assertTrue(renderer.getPasses() >= 2);
+        assertTrue(renderer.getPasses() < 1000);
+        assertSampleCounts(renderer.getFrameBuffer(), renderer.getPasses());
+    }
+
+    @Test
+    public void shouldStopAtTimeLimit() {
+        ProgressiveRenderer renderer = new ProgressiveRenderer.Builder(createCamera(new SlowCamera()))
+                .maxPasses(1000)
+                .timeLimit(100, TimeUnit.MILLISECONDS)
+                .build();
+
+        long start = System.nanoTime();
+        renderer.render();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(renderer.getPasses() < 1000);
+        // only the tiles already started when the time runs out are finished
+        assertTrue("took " + elapsed + " ms", elapsed < 2000);
+    }
+
+    @Test
+    public void shouldResumeStoppedRenderWithoutCountingPixelsTwice() {
+        AtomicInteger tiles = new AtomicInteger();
+        ProgressiveRenderer[] renderer = new ProgressiveRenderer[1];
+        renderer[0] = new ProgressiveRenderer.Builder(createCamera(new FlatCamera()))
+                .maxPasses(4)
+                .parallelism(1)
+                .listener(new ProgressiveRenderer.Listener() {
+                    @Override
+                    public void tileRendered(BufferedImage image, int x, int y, int width, int height) {
+                        // stops part way through the second pass
+                        if (tiles.incrementAndGet() == 6) {
+                            renderer[0].stop();
+                        }
+                    }
+
+                    @Override
+                    public void passRendered(BufferedImage image, ProgressiveRenderer.Progress progress) { }
+                })
+                .build();
+
+        renderer[0].render();
+        assertEquals(1, renderer[0].getPasses());
+        assertEquals(2, renderer[0].getFrameBuffer().getSampleCount(0, 0));
+        assertEquals(1, renderer[0].getFrameBuffer().getSampleCount(31, 31));
+
+        renderer[0].render();
+        assertEquals(4, renderer[0].getPasses());
+        assertSampleCounts(renderer[0].getFrameBuffer(), 4);
+    }
+
+    @Test
+    public void shouldStopRenderWhichStartsAfterStop() {
+        ProgressiveRenderer renderer = new ProgressiveRenderer.Builder(createCamera(new FlatCamera()))
+                .maxPasses(2)
+                .build();
+
+        renderer.stop();
+        renderer.render();
+        assertEquals(0, renderer.getPasses());
+        assertSampleCounts(renderer.getFrameBuffer(), 0);
+
+        // the stop has been seen, so the next render continues
+        renderer.render();
+        assertEquals(2, renderer.getPasses());
+
+        // a reset discards a stop no render has seen
+        renderer.reset();
+        renderer.stop();
+        renderer.reset();
+        renderer.render();
+        assertEquals(2, renderer.getPasses());
+    }
+
+    @Test
+    public void shouldDiscardPassesOnReset() {
+        ProgressiveRenderer renderer = new ProgressiveRenderer.Builder(createCamera(new FlatCamera()))
+                .maxPasses(2)
+                .build();
+
+        renderer.render();
+        renderer.reset();
+        assertEquals(0, renderer.getPasses());
+        assertSampleCounts(renderer.getFrameBuffer(), 0);
+
+        renderer.render();
+        assertEquals(2, renderer.getPasses());
+        assertSampleCounts(renderer.getFrameBuffer(), 2);
+    }
+
+    private static Camera createCamera(Camera camera) {
+        CameraTest.createCamera(camera, 32, 32);
+        camera.setTileSize(16);
+        return camera;
+    }
+
+    private static void assertSampleCounts(FrameBuffer frameBuffer, int count) {
+        for (int y = 0; y < frameBuffer.getHeight(); y++) {
+            for (int x = 0; x < frameBuffer.getWidth(); x++) {
+                assertEquals(count, frameBuffer.getSampleCount(x, y));
+            }
+        }
+    }
+
+    /**
+     * A camera which takes a millisecond for every ray.
+     */
+    private static final class SlowCamera extends FlatCamera {
+        @Override
+        public void getColor(Ray ray, FloatColor color) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.getColor(ray, color);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ray_tracer.cameras;
+
+import org.junit.Test;
+import ray_tracer.FloatColor;
+import ray_tracer.Scene;
+import ray_tracer.geometry.Ray;
+import ray_tracer.geometry.RayIntersect;
+import ray_tracer.geometry.Triangle;
+import ray_tracer.material.Material;
+
+import java.awt.Color;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Created by William Martin III on 1/20/16.
+ */
+public class ShadingEngineTest {
+    private static final int SIZE = 100;
+
+    @Test
+    public void shouldStopFacingMirrorsAtMaxDepth() {
+        Mirrors mirrors = new Mirrors(1);
+        ShadingEngine engine = new ShadingEngine(mirrors.camera, mirrors);
+        engine.setMaxDepth(5);
+        engine.setMinThroughput(0);
+
+        FloatColor color = new FloatColor();
+        engine.trace(mirrors.ray, color);
+
+        assertEquals(5, mirrors.shaded);
+        assertEquals(0.5, color.r, 1.0E-6);
+    }
+
+    @Test
+    public void shouldStopFacingMirrorsBelowMinThroughput() {
+        Mirrors mirrors = new Mirrors(0.5);
+        ShadingEngine engine = new ShadingEngine(mirrors.camera, mirrors);
+        engine.setMaxDepth(100);
+        engine.setMinThroughput(0.1);
+
+        engine.trace(mirrors.ray, new FloatColor());
+
+        // the fourth surface is reached with a throughput of 1/8, the fifth would be reached with 1/16
+        assertEquals(4, mirrors.shaded);
+    }
+
+    @Test
+    public void shouldKeepRussianRouletteUnbiased() {
+        Mirrors mirrors = new Mirrors(0.5);
+        ShadingEngine engine = new ShadingEngine(mirrors.camera, mirrors);
+        engine.setMaxDepth(32);
+        engine.setMinThroughput(0);
+        engine.enableRussianRoulette(true);
+        engine.setRussianRouletteDepth(1);
+
+        FloatColor color = new FloatColor();
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = 0;
+        for (int pixel = 0; pixel < SIZE * SIZE; pixel++) {
+            mirrors.camera.getCurrentSample().set(pixel, 0);
+            engine.trace(mirrors.ray, color);
+            sum += color.r;
+            min = Math.min(min, color.r);
+            max = Math.max(max, color.r);
+        }
+
+        // without russian roulette every chain adds 0.1 * (1 + 1/2 + 1/4 + ...) to the pixel
+        assertEquals(0.2, sum / (SIZE * SIZE), 0.005);
+        assertNotEquals(min, max, 0);
+    }
+
+    @Test
+    public void shouldRepeatRussianRoulette() {
+        Mirrors mirrors = new Mirrors(0.5);
+        ShadingEngine engine = new ShadingEngine(mirrors.camera, mirrors);
+        engine.setMinThroughput(0);
+        engine.enableRussianRoulette(true);
+        engine.setRussianRouletteDepth(1);
+
+        FloatColor first = new FloatColor();
+        FloatColor second = new FloatColor();
+        for (int sample = 0; sample < 64; sample++) {
+            mirrors.camera.getCurrentSample().set(SIZE + 1, sample);
+            engine.trace(mirrors.ray, first);
+            engine.trace(mirrors.ray, second);
+            assertEquals(first.r, second.r, 0);
+        }
+    }
+
+    /**
+     * Two mirrors facing each other along the z axis, the ray between them, and a shader which adds 0.1 of red at every
+     * surface and reflects a given amount.
+     */
+    private static final class Mirrors implements ShadingEngine.Shader {
+        private final FlatCamera camera = new FlatCamera();
+        private final Ray ray = new Ray(new double[] {0, 0, 5}, new double[] {0, 0, 1});
+        private final double amount;
+        private int shaded = 0;
+
+        private Mirrors(double amount) {
+            this.amount = amount;
+
+            Material mirror = new Material.Builder().color(Color.WHITE).reflectAmount(1).build();
+            camera.setWidth(SIZE);
+            camera.setHeight(SIZE);
+            camera.setScene(new Scene.Builder()
+                    .geometry(new Triangle(new double[] {-10, -10, 0}, new double[] {10, -10, 0},
+                            new double[] {0, 10, 0}, mirror, null))
+                    .geometry(new Triangle(new double[] {-10, -10, 10}, new double[] {0, 10, 10},
+                            new double[] {10, -10, 10}, mirror, null))
+                    .build());
+        }
+
+        @Override
+        public void shade(Ray ray, RayIntersect intersect, ShadingEngine.Bounce bounce, FloatColor color) {
+            shaded++;
+            color.set(0.1f, 0, 0);
+
+            Ray reflection = intersect.getReflection();
+            bounce.follow(new Ray(reflection.getPositionVector().addScaled(reflection.getAngleVector(), 1.0E-6),
+                    reflection.getAngleVector()), amount);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ray_tracer.cameras;
+
+import org.junit.Test;
+import ray_tracer.Scene;
+import ray_tracer.background.GradientBackground;
+import ray_tracer.cameras.lenses.SimpleLens;
+import ray_tracer.geometry.Geometry;
+import ray_tracer.geometry.Sphere;
+import ray_tracer.geometry.Triangle;
+import ray_tracer.lights.AmbientLight;
+import ray_tracer.lights.Light;
+import ray_tracer.lights.PointLight;
+import ray_tracer.lights.SunLight;
+import ray_tracer.material.Material;
+import ray_tracer.material.SphereMap;
+import ray_tracer.material.Texture;
+import ray_tracer.material.TextureMapping;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static ray_tracer.cameras.CameraTest.pixels;
+
+/**
+ * Created by William Martin III on 1/31/16.
+ */
+public class WavefrontEngineTest {
+    private static final int SIZE = 48;
+
+    @Test
+    public void shouldMatchPerPixelTracingWithoutPackets() {
+        Scene scene = createScene(Camera.MIN_PACKET_GEOMETRY / 4);
+        assertTrue(scene.getGeometryCount() < Camera.MIN_PACKET_GEOMETRY);
+
+        assertSameImage(scene);
+    }
+
+    @Test
+    public void shouldMatchPerPixelTracingWithPackets() {
+        Scene scene = createScene(400);
+        assertTrue(scene.getGeometryCount() >= Camera.MIN_PACKET_GEOMETRY);
+
+        assertSameImage(scene);
+    }
+
+    @Test
+    public void shouldMatchPerPixelTracingAsLightsChange() {
+        Scene scene = createScene(400);
+        List<Light> lights = new ArrayList<>(scene.getLights());
+        FancyCamera wavefront = createCamera(scene).enableWavefront(true);
+        FancyCamera perPixel = createCamera(scene);
+
+        // one thread keeps its waves from render to render, so they must be resized for each new number of lights
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<List<Light>> changes = Arrays.asList(
+                    lights,
+                    lights.subList(0, 1),
+                    Collections.<Light>emptyList(),
+                    concat(lights, new PointLight(Color.WHITE, new double[] {-4, 6, -2}, 0.4)),
+                    lights);
+            for (List<Light> change : changes) {
+                Scene lit = scene.withLights(change);
+                wavefront.setScene(lit);
+                perPixel.setScene(lit);
+
+                assertArrayEquals(pixels(perPixel.render(executor)), pixels(wavefront.render(executor)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertSameImage(Scene scene) {
+        BufferedImage perPixel = createCamera(scene).render();
+        BufferedImage wavefront = createCamera(scene).enableWavefront(true).render();
+
+        assertArrayEquals(pixels(perPixel), pixels(wavefront));
+    }
+
+    private static FancyCamera createCamera(Scene scene) {
+        FancyCamera camera = new FancyCamera();
+        camera.setWidth(SIZE);
+        camera.setHeight(SIZE);
+        camera.setLens(new SimpleLens(SIZE, SIZE, 2.0, 3.0));
+        camera.setScene(scene);
+        camera.setPosition(new double[] {0, 4, -16});
+        // the angle points from what is seen back to the camera, here looking slightly down toward the spheres
+        camera.setAngle(new double[] {0, 0.2, -1});
+        return camera;
+    }
+
+    /**
+     * A mirrored floor under spheres of several materials, some reflective and some textured, lit by a sun, a point
+     * light and ambient light. Rays bounce between the spheres and floor, hit many materials and cast shadows toward
+     * every light.
+     */
+    private static Scene createScene(int spheres) {
+        Random random = new Random(1);
+        Material floor = new Material.Builder().color(Color.GRAY).reflectAmount(0.5).build();
+        Material[] materials = {
+                new Material.Builder().color(Color.RED).build(),
+                new Material.Builder().color(Color.WHITE).reflectAmount(0.8).build(),
+                new Material.Builder().color(Color.GREEN).reflectAmount(0.3).build(),
+                new Material.Builder().diffuse(Color.ORANGE).specular(Color.WHITE).build()
+        };
+        TextureMapping checkers = new SphereMap(new Texture.Builder(checkers()).build());
+
+        List<Geometry> geometry = new ArrayList<>();
+        geometry.add(new Triangle(new double[] {-40, -1, -40}, new double[] {-40, -1, 40},
+                new double[] {40, -1, -40}, floor, null));
+        geometry.add(new Triangle(new double[] {40, -1, 40}, new double[] {40, -1, -40},
+                new double[] {-40, -1, 40}, floor, null));
+        for (int i = 0; i < spheres; i++) {
+            double[] center = {random.nextDouble() * 16 - 8, random.nextDouble() * 6 - 0.5, random.nextDouble() * 16};
+            Material material = materials[i % materials.length];
+            TextureMapping mapping = i % 5 == 0 ? checkers : null;
+            geometry.add(new Sphere(center, random.nextDouble() * 0.4 + 0.2, material, mapping));
+        }
+
+        return new Scene.Builder()
+                .geometry(geometry)
+                .light(new SunLight(Color.WHITE, new double[] {0.3, -1, 0.2}, 0.6))
+                .light(new PointLight(Color.WHITE, new double[] {2, 8, 4}, 0.5))
+                .light(new AmbientLight(Color.WHITE, 0.1))
+                .background(new GradientBackground(Color.BLACK, Color.BLUE))
+                .build();
+    }
+
+    private static BufferedImage checkers() {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                image.setRGB(x, y, (x + y) % 2 == 0 ? 0xffffff : 0x204080);
+            }
+        }
+        return image;
+    }
+
+    private static List<Light> concat(List<Light> lights, Light light) {
+        List<Light> all = new ArrayList<>(lights);
+        all.add(light);
+        return all;
+    }
+}
@@ -0,0 +1,126 @@
+package ray_tracer.geometry;
+
+import org.junit.Test;
+import ray_tracer.Precision;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by William Martin III on 1/30/16.
+ */
+public class GeometryBatchTest {
+    // the number of primitives tested together, as in a leaf of a hierarchy
+    private static final int LEAF_SIZE = 8;
+
+    @Test
+    public void shouldMatchSpheresAndTrianglesInDoubles() {
+        Random random = new Random(1);
+        Geometry[] geometry = randomGeometry(random, 400);
+        GeometryBatch batch = new GeometryBatch(geometry, Precision.DOUBLE);
+        int[] indices = indices(geometry.length);
+
+        int hits = 0;
+        for (int i = 0; i < 2000; i++) {
+            Ray ray = randomRay(random);
+            RayIntersect expected = closest(geometry, ray);
+            RayIntersect actual = closest(batch, indices, ray);
+
+            assertSame(expected.getGeometry(), actual.getGeometry());
+            assertEquals(expected.getDistance(), actual.getDistance(), 0);
+            assertEquals(expected.getU(), actual.getU(), 0);
+            assertEquals(expected.getV(), actual.getV(), 0);
+
+            double maxDistance = random.nextDouble() * 40;
+            assertEquals(isOccluded(geometry, ray, maxDistance), batch.intersects(indices, 0, indices.length, ray,
+                    0, maxDistance));
+            if (expected.isHit()) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 200);
+    }
+
+    @Test
+    public void shouldNearlyMatchSpheresAndTrianglesInFloats() {
+        Random random = new Random(2);
+        Geometry[] geometry = randomGeometry(random, 400);
+        GeometryBatch batch = new GeometryBatch(geometry, Precision.FLOAT);
+        int[] indices = indices(geometry.length);
+
+        int differences = 0;
+        for (int i = 0; i < 2000; i++) {
+            Ray ray = randomRay(random);
+            RayIntersect expected = closest(geometry, ray);
+            RayIntersect actual = closest(batch, indices, ray);
+
+            // a ray grazing an edge or a sphere may hit or miss depending on rounding
+            if (expected.isHit() != actual.isHit()) {
+                differences++;
+                continue;
+            }
+            if (expected.isHit()) {
+                assertEquals(expected.getDistance(), actual.getDistance(), 1.0E-4 * expected.getDistance());
+            }
+        }
+        assertTrue(differences < 20);
+    }
+
+    private static Geometry[] randomGeometry(Random random, int count) {
+        Geometry[] geometry = new Geometry[count];
+        for (int i = 0; i < count; i++) {
+            double[] center = {random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10, random.nextDouble() * 20};
+            if (i % 2 == 0) {
+                geometry[i] = new Sphere(center, random.nextDouble() * 0.5 + 0.1, null, null);
+            } else {
+                geometry[i] = new Triangle(center,
+                        new double[] {center[0] + random.nextDouble(), center[1], center[2] + random.nextDouble()},
+                        new double[] {center[0], center[1] + random.nextDouble(), center[2]}, null, null);
+            }
+        }
+        return geometry;
+    }
+
+    private static Ray randomRay(Random random) {
+        return new Ray(new double[] {0, 0, -5}, new double[] {random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1});
+    }
+
+    private static int[] indices(int count) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    private static RayIntersect closest(Geometry[] geometry, Ray ray) {
+        RayIntersect intersect = new RayIntersect();
+        for (Geometry g : geometry) {
+            g.intersect(ray, intersect);
+        }
+        return intersect;
+    }
+
+    /**
+     * Tests the batch a leaf at a time, reusing the record as a hierarchy does.
+     */
+    private static RayIntersect closest(GeometryBatch batch, int[] indices, Ray ray) {
+        RayIntersect intersect = new RayIntersect();
+        for (int start = 0; start < indices.length; start += LEAF_SIZE) {
+            batch.intersect(indices, start, Math.min(indices.length, start + LEAF_SIZE), ray, intersect);
+        }
+        return intersect;
+    }
+
+    private static boolean isOccluded(Geometry[] geometry, Ray ray, double maxDistance) {
+        for (Geometry g : geometry) {
+            if (g.intersects(ray, 0, maxDistance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
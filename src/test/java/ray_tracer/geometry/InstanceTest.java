@@ -0,0 +1,110 @@
+package ray_tracer.geometry;
+
+import org.junit.Test;
+import ray_tracer.Matrix3;
+import ray_tracer.Transform;
+import ray_tracer.Vector3;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by William Martin III on 1/30/16.
+ */
+public class InstanceTest {
+
+    private static TriangleMesh pyramid() {
+        TriangleMesh.Builder builder = new TriangleMesh.Builder(null);
+        int a = builder.vertex(-1, -1, 0);
+        int b = builder.vertex(1, -1, 0);
+        int c = builder.vertex(0, 1, 0);
+        int d = builder.vertex(0, 0, 2);
+        return builder.triangle(a, b, c).triangle(a, b, d).triangle(b, c, d).triangle(c, a, d).build();
+    }
+
+    private static Transform turn(double radians, Vector3 translation) {
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        return new Transform(new Matrix3(cos, -sin, 0, sin, cos, 0, 0, 0, 1), translation);
+    }
+
+    @Test
+    public void shouldMatchTransformedCopy() {
+        TriangleMesh mesh = pyramid();
+        Transform transform = turn(0.7, new Vector3(3, -2, 10));
+        Instance instance = new Instance(mesh, transform);
+        TriangleMesh copy = mesh.transform(transform);
+
+        assertHitsMatch(copy, instance, new Vector3(3, -2, 10));
+    }
+
+    @Test
+    public void shouldMatchTransformedCopyThroughNestedInstances() {
+        TriangleMesh mesh = pyramid();
+        Sphere sphere = new Sphere(new double[] {0, 0, 3}, 0.5, null, null);
+        Transform inner = turn(-1.2, new Vector3(0.5, 0, 0));
+        Transform outer = turn(2.1, new Vector3(-1, 1, 8));
+        GeometryGroup group = new GeometryGroup(Arrays.asList(new Instance(mesh, inner), sphere));
+        Instance instance = new Instance(group, outer);
+        GeometryGroup copy = new GeometryGroup(Arrays.asList(
+                mesh.transform(outer.compose(inner)), sphere.transform(outer)));
+
+        assertHitsMatch(copy, instance, new Vector3(-1, 1, 8));
+    }
+
+    @Test
+    public void shouldMoveWithoutCopyingGeometry() {
+        TriangleMesh mesh = pyramid();
+        Instance instance = new Instance(mesh, turn(0.3, new Vector3(1, 2, 3)));
+
+        Instance moved = instance.transform(Transform.translation(new Vector3(0, 0, 5)));
+
+        assertSame(mesh, moved.getGeometry());
+        assertEquals(8, moved.getTransform().getTranslation().getZ(), 1.0E-10);
+        assertEquals(instance.getBounds().getMin(2) + 5, moved.getBounds().getMin(2), 1.0E-10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotBePlacedByScalingTransform() {
+        new Instance(pyramid(), new Transform(new Matrix3(2, 0, 0, 0, 2, 0, 0, 0, 2), Vector3.ZERO));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotBePlacedByShearingTransform() {
+        new Instance(pyramid(), new Transform(new Matrix3(1, 0.5, 0, 0, 1, 0, 0, 0, 1), Vector3.ZERO));
+    }
+
+    private static void assertHitsMatch(Geometry expected, Geometry actual, Vector3 target) {
+        Random random = new Random(1);
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            double x = target.getX() + random.nextDouble() * 4 - 2;
+            double y = target.getY() + random.nextDouble() * 4 - 2;
+            Ray ray = new Ray(new double[] {x, y, 0},
+                    new double[] {random.nextDouble() * 0.2 - 0.1, random.nextDouble() * 0.2 - 0.1, 1});
+            RayIntersect expectedIntersect = new RayIntersect();
+            RayIntersect actualIntersect = new RayIntersect();
+
+            boolean hit = expected.intersect(ray, expectedIntersect);
+            assertEquals(hit, actual.intersect(ray, actualIntersect));
+            assertEquals(expected.intersects(ray, 0, 10), actual.intersects(ray, 0, 10));
+            if (hit) {
+                hits++;
+                assertEquals(expectedIntersect.getDistance(), actualIntersect.getDistance(), 1.0E-9);
+                Vector3 expectedNormal = expectedIntersect.getNormalVector();
+                Vector3 actualNormal = actualIntersect.getNormalVector();
+                assertEquals(expectedNormal.getX(), actualNormal.getX(), 1.0E-9);
+                assertEquals(expectedNormal.getY(), actualNormal.getY(), 1.0E-9);
+                assertEquals(expectedNormal.getZ(), actualNormal.getZ(), 1.0E-9);
+                Vector3 expectedPoint = expectedIntersect.getReflection().getPositionVector();
+                Vector3 actualPoint = actualIntersect.getReflection().getPositionVector();
+                assertEquals(0, expectedPoint.sub(actualPoint).dot(expectedPoint.sub(actualPoint)), 1.0E-12);
+            }
+        }
+        assertTrue(hits > 25);
+    }
+}
@@ -0,0 +1,94 @@
+package ray_tracer.geometry;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import ray_tracer.TestUtil;
+
+/**
+ * Created by William Martin III on 1/18/16.
+ */
+public class TriangleMeshTest {
+
+    private static TriangleMesh quad(boolean cullBackfaces) {
+        TriangleMesh.Builder builder = new TriangleMesh.Builder(null).cullBackfaces(cullBackfaces);
+        int a = builder.vertex(1, -1, 0);
+        int b = builder.vertex(-1, -1, 0);
+        int c = builder.vertex(-1, 1, 0);
+        int d = builder.vertex(1, 1, 0);
+        return builder.triangle(a, b, c).triangle(a, c, d).build();
+    }
+
+    @Test
+    public void shouldIntersectRay() {
+        TriangleMesh mesh = quad(false);
+        Ray ray = new Ray(new double[]{0.5, 0.5, -10}, new double[]{0, 0, 1});
+
+        RayIntersect intersect = mesh.getIntersect(ray);
+
+        assertNotNull(intersect);
+        assertEquals(10, mesh.getDistanceToIntersect(ray), 1.0E-10);
+        TestUtil.assertEquals(new DoubleMatrix(new double[]{0.5, 0.5, 0}), intersect.getReflection().getPosition());
+        TestUtil.assertEquals(new DoubleMatrix(new double[]{0, 0, -1}), intersect.getReflection().getAngle());
+    }
+
+    @Test
+    public void shouldRecordTriangleAndBarycentrics() {
+        TriangleMesh mesh = quad(false);
+        Ray ray = new Ray(new double[]{0.5, 0.5, -10}, new double[]{0, 0, 1});
+        RayIntersect intersect = new RayIntersect();
+
+        assertTrue(mesh.intersect(ray, intersect));
+        assertSame(mesh, intersect.getGeometry());
+        assertEquals(1, intersect.getPrimitive());
+        assertEquals(10, intersect.getDistance(), 1.0E-10);
+        assertEquals(0.25, intersect.getU(), 1.0E-10);
+        assertEquals(0.5, intersect.getV(), 1.0E-10);
+    }
+
+    @Test
+    public void shouldNotIntersectRayOutsideTriangles() {
+        TriangleMesh mesh = quad(false);
+        Ray ray = new Ray(new double[]{1.5, 0, -10}, new double[]{0, 0, 1});
+
+        assertNull(mesh.getIntersect(ray));
+        assertEquals(-1, mesh.getDistanceToIntersect(ray), 0);
+    }
+
+    @Test
+    public void shouldIntersectBackfaceUnlessCulled() {
+        Ray ray = new Ray(new double[]{-0.5, -0.5, 10}, new double[]{0, 0, -1});
+
+        assertNotNull(quad(false).getIntersect(ray));
+        assertNull(quad(true).getIntersect(ray));
+    }
+
+    @Test
+    public void shouldFindClosestOfManyTriangles() {
+        TriangleMesh.Builder builder = new TriangleMesh.Builder(null);
+        for (int i = 0; i < 100; i++) {
+            int a = builder.vertex(1, -1, i);
+            int b = builder.vertex(-1, -1, i);
+            int c = builder.vertex(0, 1, i);
+            builder.triangle(a, b, c);
+        }
+        TriangleMesh mesh = builder.build();
+
+        assertEquals(100, mesh.getTriangleCount());
+        assertEquals(0.75, mesh.getDistanceToIntersect(new Ray(new double[]{0, 0, 41.25}, new double[]{0, 0, 1})),
+                1.0E-10);
+        assertEquals(0.25, mesh.getDistanceToIntersect(new Ray(new double[]{0, 0, 41.25}, new double[]{0, 0, -1})),
+                1.0E-10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectIndexWithoutVertex() {
+        new TriangleMesh(new double[]{0, 0, 0, 1, 0, 0, 0, 1, 0}, new int[]{0, 1, 3}, false, null, null);
+    }
+}
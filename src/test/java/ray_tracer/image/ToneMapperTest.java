@@ -0,0 +1,54 @@
+package ray_tracer.image;
+
+import org.junit.Test;
+import ray_tracer.FloatColor;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created by William Martin III on 1/22/16.
+ */
+public class ToneMapperTest {
+
+    @Test
+    public void shouldMatchDirectOutputByDefault() {
+        ToneMapper toneMapper = new ToneMapper.Builder().build();
+
+        for (float value = -0.5f; value < 1.5f; value += 0.001f) {
+            FloatColor color = new FloatColor(value, value * 0.5f, 1 - value);
+            assertEquals(color.toRGB(), toneMapper.map(color));
+        }
+    }
+
+    @Test
+    public void shouldEncodeSrgb() {
+        ToneMapper toneMapper = new ToneMapper.Builder().srgb(true).build();
+
+        // linear 0.214 is sRGB 0.5, give or take the resolution of the lookup table
+        assertEquals(127.5, toneMapper.map(new FloatColor(0.214f, 0.214f, 0.214f)) & 0xFF, 1);
+        assertEquals(0xFFFFFF, toneMapper.map(new FloatColor(2, 2, 2)));
+        assertEquals(0, toneMapper.map(new FloatColor(0, 0, 0)));
+    }
+
+    @Test
+    public void shouldApplyExposure() {
+        ToneMapper toneMapper = new ToneMapper.Builder().exposure(1).build();
+
+        assertEquals(new FloatColor(0.5f, 0.25f, 0).toRGB(), toneMapper.map(new FloatColor(0.25f, 0.125f, 0)));
+    }
+
+    @Test
+    public void shouldAverageSamples() {
+        FrameBuffer frameBuffer = new FrameBuffer(2, 1);
+        frameBuffer.addSample(1, 0, new FloatColor(1, 0, 0));
+        frameBuffer.addSample(1, 0, new FloatColor(0, 0, 0.5f));
+
+        BufferedImage image = new ToneMapper.Builder().build().toImage(frameBuffer);
+
+        assertEquals(2, frameBuffer.getSampleCount(1, 0));
+        assertEquals(0, image.getRGB(0, 0) & 0xFFFFFF);
+        assertEquals(new FloatColor(0.5f, 0, 0.25f).toRGB(), image.getRGB(1, 0) & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,62 @@
+package ray_tracer.sampling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by William Martin III on 1/23/16.
+ */
+public class SamplerTest {
+    private static final Sampler[] SAMPLERS = {
+            new RandomSampler(1),
+            new StratifiedSampler(1),
+            new HaltonSampler(1),
+            new SobolSampler(1),
+            new BlueNoiseSampler(1)
+    };
+
+    @Test
+    public void shouldStayWithinUnitSquare() {
+        double[] point = new double[2];
+        for (Sampler sampler : SAMPLERS) {
+            for (int i = 0; i < 1000; i++) {
+                sampler.get2D(i % 7, i / 7, i, 64, point);
+                assertTrue(point[0] >= 0 && point[0] < 1);
+                assertTrue(point[1] >= 0 && point[1] < 1);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRepeatSamples() {
+        double[] first = new double[2];
+        double[] second = new double[2];
+        for (Sampler sampler : SAMPLERS) {
+            sampler.get2D(3, 5, 7, 16, first);
+            sampler.get2D(3, 5, 7, 16, second);
+            assertArrayEquals(first, second, 0);
+        }
+    }
+
+    @Test
+    public void shouldStratifyPowerOfTwoCounts() {
+        assertCoversGrid(new SobolSampler(1), 4);
+        assertCoversGrid(new StratifiedSampler(1), 4);
+    }
+
+    private static void assertCoversGrid(Sampler sampler, int side) {
+        int count = side * side;
+        boolean[] covered = new boolean[count];
+        double[] point = new double[2];
+        for (int i = 0; i < count; i++) {
+            sampler.get2D(2, 9, i, count, point);
+            covered[(int) (point[1] * side) * side + (int) (point[0] * side)] = true;
+        }
+
+        for (boolean cell : covered) {
+            assertTrue(cell);
+        }
+    }
+}